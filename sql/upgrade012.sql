@@ -0,0 +1,8 @@
+-- set picUpdatedAt on every update of Picture, also by external tools,
+-- so that the cache stamp and delta refreshes see all changes
+
+-- to update DB:
+-- mysql -u nicz -p herbier < upgrade012.sql
+
+ALTER TABLE Picture
+	MODIFY picUpdatedAt DATETIME DEFAULT NULL ON UPDATE CURRENT_TIMESTAMP;
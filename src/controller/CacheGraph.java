@@ -0,0 +1,169 @@
+package controller;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.Vector;
+
+import model.DataObject;
+import model.HerbierPic;
+import model.Location;
+import model.Taxon;
+
+import common.base.Logger;
+
+/**
+ * The whole graph of locations, taxa and pictures, as fetched by
+ * {@link DataAccess#fetchCacheGraph()} to fill the caches.
+ *
+ * <p>Objects are added as rows arrive, then linked together by {@link #link()}
+ * in a single linear pass. Parents, locations and taxa are resolved
+ * through arrays indexed by database idx, without any map lookup.
+ *
+ * @author nicz
+ *
+ */
+public class CacheGraph {
+
+	private static final Logger log = new Logger("CacheGraph", true);
+
+	private final Vector<Location>   vecLocations;
+	private final Vector<Taxon>      vecTaxa;
+	private final Vector<HerbierPic> vecPics;
+
+	/** The top-level taxa, set by {@link #link()} */
+	private final Set<Taxon> setTopLevel;
+
+	/** The location idx of each picture, in the order of vecPics */
+	private int[] idxPicLocations;
+
+
+	/**
+	 * Constructor.
+	 */
+	public CacheGraph() {
+		vecLocations = new Vector<>();
+		vecTaxa      = new Vector<>();
+		vecPics      = new Vector<>();
+		setTopLevel  = new TreeSet<>();
+		idxPicLocations = new int[1024];
+	}
+
+	/**
+	 * Adds a fetched location.
+	 * @param location  the location to add
+	 */
+	public void addLocation(Location location) {
+		vecLocations.add(location);
+	}
+
+	/**
+	 * Adds a fetched taxon. Its parent is set by {@link #link()}.
+	 * @param taxon  the taxon to add
+	 */
+	public void addTaxon(Taxon taxon) {
+		vecTaxa.add(taxon);
+	}
+
+	/**
+	 * Adds a fetched picture. Its taxon and location are set by {@link #link()}.
+	 * @param pic          the picture to add
+	 * @param idxLocation  the database index of the picture location
+	 */
+	public void addPicture(HerbierPic pic, int idxLocation) {
+		int iPic = vecPics.size();
+		if (iPic == idxPicLocations.length) {
+			idxPicLocations = Arrays.copyOf(idxPicLocations, 2*iPic);
+		}
+		idxPicLocations[iPic] = idxLocation;
+		vecPics.add(pic);
+	}
+
+	/**
+	 * Links taxa to their parent and children,
+	 * and pictures to their taxon and location.
+	 */
+	public void link() {
+		Location[] locById = new Location[getMaxIdx(vecLocations) + 1];
+		for (Location location : vecLocations) {
+			locById[location.getIdx()] = location;
+		}
+
+		Taxon[] taxById = new Taxon[getMaxIdx(vecTaxa) + 1];
+		for (Taxon taxon : vecTaxa) {
+			taxById[taxon.getIdx()] = taxon;
+		}
+
+		for (Taxon taxon : vecTaxa) {
+			int idxParent = taxon.getIdxParent();
+			if (idxParent > 0) {
+				Taxon parent = (idxParent < taxById.length ? taxById[idxParent] : null);
+				if (parent == null) {
+					log.error("Could not find parent " + idxParent + " of taxon " + taxon);
+				} else {
+					taxon.setParent(parent);
+					parent.addChild(taxon);
+				}
+			} else {
+				setTopLevel.add(taxon);
+			}
+		}
+
+		for (int iPic = 0; iPic < vecPics.size(); ++iPic) {
+			HerbierPic pic = vecPics.get(iPic);
+			int idxTaxon = pic.getIdxTaxon();
+			if (idxTaxon > 0 && idxTaxon < taxById.length && taxById[idxTaxon] != null) {
+				Taxon taxon = taxById[idxTaxon];
+				pic.setTaxon(taxon);
+				taxon.addPic(pic);
+			}
+			int idxLocation = idxPicLocations[iPic];
+			if (idxLocation > 0 && idxLocation < locById.length && locById[idxLocation] != null) {
+				Location location = locById[idxLocation];
+				pic.setLocation(location);
+				location.addPic(pic);
+			}
+		}
+
+		log.info("Linked " + vecLocations.size() + " locations, " +
+				vecTaxa.size() + " taxa and " + vecPics.size() + " pictures");
+	}
+
+	/**
+	 * Gets the database index of the location of a picture.
+	 * @param iPic  the position of the picture in {@link #getPictures()}
+	 * @return the location idx, or 0 if none
+	 */
+	public int getPictureLocationIdx(int iPic) {
+		return idxPicLocations[iPic];
+	}
+
+	public Vector<Location> getLocations() {
+		return vecLocations;
+	}
+
+	public Vector<Taxon> getTaxa() {
+		return vecTaxa;
+	}
+
+	public Vector<HerbierPic> getPictures() {
+		return vecPics;
+	}
+
+	/**
+	 * Gets the top-level taxa (without parent).
+	 * @return the set of top-level taxa, once linked.
+	 */
+	public Set<Taxon> getTopLevel() {
+		return setTopLevel;
+	}
+
+	private int getMaxIdx(Vector<? extends DataObject> vecObjects) {
+		int maxIdx = 0;
+		for (DataObject obj : vecObjects) {
+			maxIdx = Math.max(maxIdx, obj.getIdx());
+		}
+		return maxIdx;
+	}
+
+}
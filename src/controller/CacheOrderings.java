@@ -0,0 +1,237 @@
+package controller;
+
+import java.util.Comparator;
+
+import model.Expedition;
+import model.HerbierPic;
+import model.Location;
+import model.Taxon;
+
+import controller.DatabaseTools.eOrdering;
+
+/**
+ * Comparators of cached objects for each {@link eOrdering},
+ * following the ORDER BY clauses of {@link DataAccess}, with the
+ * exceptions documented on {@link #getTaxonComparator(eOrdering)}.
+ * 
+ * <p>Texts are compared without case, and null values come first, as in MySQL.
+ * Without ordering, objects are sorted by database idx.
+ * 
+ * @author nicz
+ * 
+ */
+public class CacheOrderings {
+	
+	private static final Comparator<HerbierPic> picsByIdx = new Comparator<HerbierPic>() {
+		@Override
+		public int compare(HerbierPic pic1, HerbierPic pic2) {
+			return Integer.compare(pic1.getIdx(), pic2.getIdx());
+		}
+	};
+	
+	private static final Comparator<Taxon> taxaByIdx = new Comparator<Taxon>() {
+		@Override
+		public int compare(Taxon taxon1, Taxon taxon2) {
+			return Integer.compare(taxon1.getIdx(), taxon2.getIdx());
+		}
+	};
+	
+	private static final Comparator<Location> locationsByIdx = new Comparator<Location>() {
+		@Override
+		public int compare(Location loc1, Location loc2) {
+			return Integer.compare(loc1.getIdx(), loc2.getIdx());
+		}
+	};
+	
+	
+	/**
+	 * Gets the comparator of pictures for the specified ordering.
+	 * Ties are sorted by filename, then by idx.
+	 * 
+	 * <p>As in the database, {@link eOrdering#BY_LOCATION} groups pictures
+	 * by location idx, not by location name.
+	 * 
+	 * @param order  the ordering (may be null)
+	 * @return  the comparator
+	 */
+	public static Comparator<HerbierPic> getPictureComparator(final eOrdering order) {
+		if (order == null || order == eOrdering.BY_IDX) {
+			return picsByIdx;
+		}
+		return new Comparator<HerbierPic>() {
+			@Override
+			public int compare(HerbierPic pic1, HerbierPic pic2) {
+				int result = 0;
+				switch (order) {
+				case BY_LOCATION:
+					result = compareLocationIdx(pic1.getLocation(), pic2.getLocation());
+					break;
+				case BY_REMARKS:
+					result = compareTexts(pic1.getRemarks(), pic2.getRemarks());
+					break;
+				case BY_DATE:
+					result = Long.compare(pic1.getShotAtTime(), pic2.getShotAtTime());
+					break;
+				case BY_RATING:
+					result = Integer.compare(pic1.getRating(), pic2.getRating());
+					break;
+				default:
+					break;
+				}
+				if (result == 0) {
+					result = compareTexts(pic1.getFileName(), pic2.getFileName());
+				}
+				if (result == 0) {
+					result = Integer.compare(pic1.getIdx(), pic2.getIdx());
+				}
+				return result;
+			}
+		};
+	}
+	
+	/**
+	 * Gets the comparator of taxa for the specified ordering.
+	 * Ties are sorted by latin name, then by idx.
+	 * 
+	 * <p>This deliberately differs from the SQL ordering in two ways:
+	 * ranks are sorted from kingdom to species, while the database sorts
+	 * the rank names alphabetically, and {@link eOrdering#BY_NAME_FR} sorts
+	 * by French name, while the database sorts it by rank and latin name.
+	 * 
+	 * @param order  the ordering (may be null)
+	 * @return  the comparator
+	 */
+	public static Comparator<Taxon> getTaxonComparator(final eOrdering order) {
+		if (order == null || order == eOrdering.BY_IDX) {
+			return taxaByIdx;
+		}
+		return new Comparator<Taxon>() {
+			@Override
+			public int compare(Taxon taxon1, Taxon taxon2) {
+				int result = 0;
+				switch (order) {
+				case BY_NAME:
+					break;
+				case BY_NAME_FR:
+					result = compareTexts(taxon1.getNameFr(), taxon2.getNameFr());
+					break;
+				default:
+					result = taxon1.getRank().compareTo(taxon2.getRank());
+					break;
+				}
+				if (result == 0) {
+					result = compareTexts(taxon1.getName(), taxon2.getName());
+				}
+				if (result == 0) {
+					result = Integer.compare(taxon1.getIdx(), taxon2.getIdx());
+				}
+				return result;
+			}
+		};
+	}
+	
+	/**
+	 * Gets the comparator of locations for the specified ordering.
+	 * Ties are sorted by name, then by idx.
+	 * 
+	 * @param order  the ordering (may be null)
+	 * @return  the comparator
+	 */
+	public static Comparator<Location> getLocationComparator(final eOrdering order) {
+		if (order == null || order == eOrdering.BY_IDX) {
+			return locationsByIdx;
+		}
+		return new Comparator<Location>() {
+			@Override
+			public int compare(Location loc1, Location loc2) {
+				int result = 0;
+				switch (order) {
+				case BY_KIND:
+					result = compareTexts(loc1.getKind(), loc2.getKind());
+					break;
+				case BY_TOWN:
+					result = compareTexts(loc1.getTown(), loc2.getTown());
+					break;
+				case BY_REGION:
+					result = compareTexts(loc1.getRegion(), loc2.getRegion());
+					break;
+				case BY_ALTITUDE:
+					result = Integer.compare(loc1.getAltitude(), loc2.getAltitude());
+					break;
+				default:
+					break;
+				}
+				if (result == 0) {
+					result = compareTexts(loc1.getName(), loc2.getName());
+				}
+				if (result == 0) {
+					result = Integer.compare(loc1.getIdx(), loc2.getIdx());
+				}
+				return result;
+			}
+		};
+	}
+	
+	/**
+	 * Gets the comparator of expeditions for the specified ordering.
+	 * 
+	 * @param order  the ordering (may be null)
+	 * @return  the comparator
+	 */
+	public static Comparator<Expedition> getExpeditionComparator(final eOrdering order) {
+		return new Comparator<Expedition>() {
+			@Override
+			public int compare(Expedition exp1, Expedition exp2) {
+				int result = 0;
+				if (order == null || order == eOrdering.BY_IDX) {
+					return Integer.compare(exp1.getIdx(), exp2.getIdx());
+				}
+				switch (order) {
+				case BY_LOCATION:
+					result = compareLocationIdx(exp1.getLocation(), exp2.getLocation());
+					break;
+				case BY_DATE:
+					// most recent first
+					result = compareDates(exp2, exp1);
+					break;
+				default:
+					result = compareTexts(exp1.getTitle(), exp2.getTitle());
+					if (result == 0) {
+						result = compareDates(exp1, exp2);
+					}
+					break;
+				}
+				if (result == 0) {
+					result = Integer.compare(exp1.getIdx(), exp2.getIdx());
+				}
+				return result;
+			}
+		};
+	}
+	
+	private static int compareTexts(String s1, String s2) {
+		if (s1 == null || s2 == null) {
+			return (s1 == null ? (s2 == null ? 0 : -1) : 1);
+		}
+		return String.CASE_INSENSITIVE_ORDER.compare(s1, s2);
+	}
+	
+	private static int compareLocationIdx(Location loc1, Location loc2) {
+		if (loc1 == null || loc2 == null) {
+			return (loc1 == null ? (loc2 == null ? 0 : -1) : 1);
+		}
+		return Integer.compare(loc1.getIdx(), loc2.getIdx());
+	}
+	
+	private static int compareDates(Expedition exp1, Expedition exp2) {
+		if (exp1.getDateFrom() == null || exp2.getDateFrom() == null) {
+			return (exp1.getDateFrom() == null ? (exp2.getDateFrom() == null ? 0 : -1) : 1);
+		}
+		return exp1.getDateFrom().compareTo(exp2.getDateFrom());
+	}
+	
+	/** Static class, not to be instantiated */
+	private CacheOrderings() {
+	}
+
+}
@@ -0,0 +1,447 @@
+package controller;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+
+import model.HerbierPic;
+import model.Location;
+import model.Taxon;
+import model.TaxonRank;
+
+import common.base.Logger;
+
+/**
+ * Binary snapshot of the cached locations, taxa and pictures.
+ *
+ * <p>The snapshot is a compact, versioned file, read back through a
+ * memory-mapped buffer at startup. It is only used if a cheap {@link Stamp}
+ * of the database still matches: the count, highest idx and latest picUpdatedAt
+ * of pictures, and the checksums of the taxon and location tables. As the database
+ * sets picUpdatedAt on every update (see upgrade012.sql), the stamp also sees
+ * changes made outside the application. If only pictures were added or updated
+ * since, the changed rows are fetched and applied to the snapshot. If taxa or
+ * locations changed, those small tables are fetched again.
+ *
+ * <p>The snapshot file is deleted by the {@link Controller} before it modifies
+ * the database, and written again from the database on exit.
+ *
+ * @author nicz
+ *
+ */
+public class CacheSnapshot {
+
+	private static final Logger log = new Logger("CacheSnapshot", true);
+
+	/** The snapshot file */
+	private static final String snapshotFile = Controller.appPath + "panorpa-cache.bin";
+
+	/** Magic number at the start of snapshot files: PNRP */
+	private static final int magic = 0x504E5250;
+
+	/** The snapshot format version. Increment when changing the format. */
+	private static final int version = 1;
+
+	/** Marker for null dates */
+	private static final long nullTime = Long.MIN_VALUE;
+
+	/** the singleton instance */
+	private static CacheSnapshot _instance = null;
+
+	/** Set when the database was modified since the snapshot was written */
+	private volatile boolean isDirty;
+
+
+	/**
+	 * A cheap summary of the database state, to check if a snapshot is up-to-date.
+	 */
+	public static class Stamp {
+		private final int nPics;
+		private final long tMaxPicUpdatedAt;
+		private final int maxIdxPic;
+		private final long checksumTaxa;
+		private final long checksumLocations;
+
+		public Stamp(int nPics, long tMaxPicUpdatedAt, int maxIdxPic,
+				long checksumTaxa, long checksumLocations) {
+			this.nPics = nPics;
+			this.tMaxPicUpdatedAt = tMaxPicUpdatedAt;
+			this.maxIdxPic = maxIdxPic;
+			this.checksumTaxa = checksumTaxa;
+			this.checksumLocations = checksumLocations;
+		}
+
+		public boolean hasSamePics(Stamp stamp) {
+			return nPics == stamp.nPics && tMaxPicUpdatedAt == stamp.tMaxPicUpdatedAt &&
+					maxIdxPic == stamp.maxIdxPic;
+		}
+
+		public boolean hasSameTaxa(Stamp stamp) {
+			return checksumTaxa == stamp.checksumTaxa;
+		}
+
+		public boolean hasSameLocations(Stamp stamp) {
+			return checksumLocations == stamp.checksumLocations;
+		}
+
+		@Override
+		public String toString() {
+			return "Stamp [" + nPics + " pics, max idx " + maxIdxPic +
+					", updated " + new Date(tMaxPicUpdatedAt) + "]";
+		}
+	}
+
+
+	/**
+	 * Loads the cache graph from the snapshot file, if it exists and is not stale.
+	 * Applies pictures changed since the snapshot, and reloads taxa
+	 * or locations if they changed. Writes a new snapshot if anything changed.
+	 *
+	 * @return  the linked cache graph, or null if the snapshot can't be used
+	 */
+	public CacheGraph load() {
+		File file = new File(snapshotFile);
+		if (!file.exists()) {
+			log.info("No cache snapshot found");
+			return null;
+		}
+
+		Stamp stampDb = DataAccess.getInstance().fetchCacheStamp();
+		if (stampDb == null) {
+			return null;
+		}
+
+		CacheGraph snap = new CacheGraph();
+		Stamp stampSnap = read(file, snap);
+		if (stampSnap == null) {
+			return null;
+		}
+
+		boolean isUpToDate = stampSnap.hasSamePics(stampDb) &&
+				stampSnap.hasSameTaxa(stampDb) && stampSnap.hasSameLocations(stampDb);
+		CacheGraph graph = snap;
+		if (!isUpToDate) {
+			log.info("Cache snapshot " + stampSnap + " is stale, database is " + stampDb);
+			graph = applyChanges(snap, stampSnap, stampDb);
+			if (graph == null) {
+				return null;
+			}
+		}
+
+		graph.link();
+		if (!isUpToDate) {
+			write(graph, stampDb);
+		}
+		return graph;
+	}
+
+	/**
+	 * Writes a new snapshot of the specified graph, freshly fetched from database,
+	 * if the previous snapshot was invalidated or is missing.
+	 *
+	 * @param graph  the linked graph of objects
+	 * @param stamp  the database stamp, fetched before the graph
+	 */
+	public void update(CacheGraph graph, Stamp stamp) {
+		if (isDirty || !new File(snapshotFile).exists()) {
+			write(graph, stamp);
+		}
+	}
+
+	/**
+	 * Writes a new snapshot from the database if the previous one was invalidated.
+	 */
+	public void saveIfDirty() {
+		if (isDirty || !new File(snapshotFile).exists()) {
+			Stamp stamp = DataAccess.getInstance().fetchCacheStamp();
+			CacheGraph graph = new CacheGraph();
+			if (stamp != null && DataAccess.getInstance().fetchGraphRows(graph, true, true, " WHERE 1=1 ")) {
+				graph.link();
+				write(graph, stamp);
+			}
+		}
+	}
+
+	/**
+	 * Writes a snapshot of the specified graph, fetched from database
+	 * in the state described by the specified stamp.
+	 *
+	 * @param graph  the linked graph of objects
+	 * @param stamp  the database stamp (may be null, to fetch it now)
+	 */
+	public void write(CacheGraph graph, Stamp stamp) {
+		if (stamp == null) {
+			stamp = DataAccess.getInstance().fetchCacheStamp();
+			if (stamp == null) {
+				return;
+			}
+		}
+
+		long tStart = System.currentTimeMillis();
+		File file = new File(snapshotFile);
+		File fileTmp = new File(snapshotFile + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileTmp)))) {
+			out.writeInt(magic);
+			out.writeInt(version);
+			out.writeInt(stamp.nPics);
+			out.writeLong(stamp.tMaxPicUpdatedAt);
+			out.writeInt(stamp.maxIdxPic);
+			out.writeLong(stamp.checksumTaxa);
+			out.writeLong(stamp.checksumLocations);
+
+			out.writeInt(graph.getLocations().size());
+			for (Location loc : graph.getLocations()) {
+				out.writeInt(loc.getIdx());
+				writeString(out, loc.getName());
+				writeString(out, loc.getDescription());
+				writeString(out, loc.getKind());
+				writeString(out, loc.getTown());
+				writeString(out, loc.getRegion());
+				writeString(out, loc.getState());
+				out.writeInt(loc.getAltitude());
+				out.writeInt(loc.getMapZoom());
+				out.writeDouble(loc.getLongitude() == null ? Double.NaN : loc.getLongitude().doubleValue());
+				out.writeDouble(loc.getLatitude()  == null ? Double.NaN : loc.getLatitude().doubleValue());
+			}
+
+			out.writeInt(graph.getTaxa().size());
+			for (Taxon taxon : graph.getTaxa()) {
+				out.writeInt(taxon.getIdx());
+				writeString(out, taxon.getName());
+				writeString(out, taxon.getNameFr());
+				writeString(out, taxon.getRank().name());
+				out.writeInt(taxon.getIdxParent());
+				out.writeInt(taxon.getOrder());
+				out.writeBoolean(taxon.isTypical());
+			}
+
+			out.writeInt(graph.getPictures().size());
+			for (HerbierPic pic : graph.getPictures()) {
+				out.writeInt(pic.getIdx());
+				writeString(out, pic.getFileName());
+				out.writeLong(pic.getShotAtTime());
+				out.writeLong(pic.getUpdatedAt() == null ? nullTime : pic.getUpdatedAt().getTime());
+				out.writeInt(pic.getIdxTaxon());
+				out.writeInt(pic.getLocation() == null ? 0 : pic.getLocation().getIdx());
+				out.writeInt(pic.getRating());
+				writeString(out, pic.getRemarks());
+			}
+		} catch (IOException e) {
+			log.error("Writing cache snapshot failed: " + e.getMessage());
+			fileTmp.delete();
+			return;
+		}
+
+		if (fileTmp.renameTo(file)) {
+			isDirty = false;
+			log.info("Wrote cache snapshot " + stamp + " in " +
+					(System.currentTimeMillis() - tStart) + " ms, " + file.length() + " bytes");
+		} else {
+			log.error("Failed to rename cache snapshot " + fileTmp.getName());
+		}
+	}
+
+	/**
+	 * Invalidates the snapshot, before the application modifies the database.
+	 */
+	public void invalidate() {
+		if (!isDirty) {
+			isDirty = true;
+			File file = new File(snapshotFile);
+			if (file.exists() && !file.delete()) {
+				log.error("Failed to delete stale cache snapshot");
+			}
+		}
+	}
+
+	/**
+	 * Reads the snapshot file into the specified graph, without linking it.
+	 *
+	 * @param file   the snapshot file
+	 * @param graph  the graph to fill
+	 * @return  the stamp of the snapshot, or null if reading failed
+	 */
+	private Stamp read(File file, CacheGraph graph) {
+		long tStart = System.currentTimeMillis();
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+				FileChannel channel = raf.getChannel()) {
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			if (buf.getInt() != magic || buf.getInt() != version) {
+				log.info("Ignoring cache snapshot with unknown format");
+				return null;
+			}
+			Stamp stamp = new Stamp(buf.getInt(), buf.getLong(), buf.getInt(), buf.getLong(), buf.getLong());
+
+			int nLocations = buf.getInt();
+			for (int i = 0; i < nLocations; ++i) {
+				Location loc = new Location(buf.getInt(), readString(buf));
+				loc.setDescription(readString(buf));
+				loc.setKind(readString(buf));
+				loc.setTown(readString(buf));
+				loc.setRegion(readString(buf));
+				loc.setState(readString(buf));
+				loc.setAltitude(buf.getInt());
+				loc.setMapZoom(buf.getInt());
+				loc.setLongitude(readDouble(buf));
+				loc.setLatitude(readDouble(buf));
+				graph.addLocation(loc);
+			}
+
+			int nTaxa = buf.getInt();
+			for (int i = 0; i < nTaxa; ++i) {
+				int idx = buf.getInt();
+				String name = readString(buf);
+				String nameFr = readString(buf);
+				Taxon taxon = new Taxon(idx, name, TaxonRank.valueOf(readString(buf)));
+				taxon.setNameFr(nameFr);
+				taxon.setIdxParent(buf.getInt());
+				taxon.setOrder(buf.getInt());
+				taxon.setTypical(buf.get() != 0);
+				graph.addTaxon(taxon);
+			}
+
+			int nPics = buf.getInt();
+			for (int i = 0; i < nPics; ++i) {
+				HerbierPic pic = new HerbierPic(buf.getInt(), readString(buf));
+				pic.setShotAt(readDate(buf));
+				pic.setUpdatedAt(readDate(buf));
+				pic.setIdxTaxon(buf.getInt());
+				int idxLocation = buf.getInt();
+				pic.setRating(buf.getInt());
+				pic.setRemarks(readString(buf));
+				graph.addPicture(pic, idxLocation);
+			}
+
+			log.info("Read cache snapshot " + stamp + " in " +
+					(System.currentTimeMillis() - tStart) + " ms");
+			return stamp;
+		} catch (IOException | RuntimeException e) {
+			log.error("Reading cache snapshot failed: " + e.getMessage());
+		}
+		return null;
+	}
+
+	/**
+	 * Builds an unlinked graph from a stale snapshot and the database changes.
+	 *
+	 * @param snap       the unlinked snapshot graph
+	 * @param stampSnap  the stamp of the snapshot
+	 * @param stampDb    the current database stamp
+	 * @return  the updated unlinked graph, or null if fetching changes failed
+	 */
+	private CacheGraph applyChanges(CacheGraph snap, Stamp stampSnap, Stamp stampDb) {
+		CacheGraph graph = new CacheGraph();
+		boolean isSameLocations = stampSnap.hasSameLocations(stampDb);
+		boolean isSameTaxa = stampSnap.hasSameTaxa(stampDb);
+
+		if (isSameLocations) {
+			for (Location loc : snap.getLocations()) {
+				graph.addLocation(loc);
+			}
+		}
+		if (isSameTaxa) {
+			for (Taxon taxon : snap.getTaxa()) {
+				graph.addTaxon(taxon);
+			}
+		}
+
+		// fetch changed taxa or locations, and pictures renamed or added since the snapshot
+		String wherePics = null;
+		if (!stampSnap.hasSamePics(stampDb)) {
+			wherePics = " WHERE idxPicture > " + stampSnap.maxIdxPic +
+					" OR picUpdatedAt >= " + DatabaseTools.toSqlDateTime(new Date(stampSnap.tMaxPicUpdatedAt));
+		}
+		CacheGraph delta = new CacheGraph();
+		if (!DataAccess.getInstance().fetchGraphRows(delta, !isSameLocations, !isSameTaxa, wherePics)) {
+			return null;
+		}
+		graph.getLocations().addAll(delta.getLocations());
+		graph.getTaxa().addAll(delta.getTaxa());
+
+		// pictures deleted since the snapshot
+		Set<Integer> setChanged = new HashSet<>();
+		for (HerbierPic pic : delta.getPictures()) {
+			setChanged.add(Integer.valueOf(pic.getIdx()));
+		}
+		BitSet existing = null;
+		if (snap.getPictures().size() + delta.getPictures().size() != stampDb.nPics) {
+			existing = DataAccess.getInstance().fetchPictureIndices();
+			if (existing == null) {
+				return null;
+			}
+		}
+
+		int nKept = 0;
+		for (int iPic = 0; iPic < snap.getPictures().size(); ++iPic) {
+			HerbierPic pic = snap.getPictures().get(iPic);
+			if (!setChanged.contains(Integer.valueOf(pic.getIdx())) &&
+					(existing == null || existing.get(pic.getIdx()))) {
+				graph.addPicture(pic, snap.getPictureLocationIdx(iPic));
+				nKept++;
+			}
+		}
+		for (int iPic = 0; iPic < delta.getPictures().size(); ++iPic) {
+			graph.addPicture(delta.getPictures().get(iPic), delta.getPictureLocationIdx(iPic));
+		}
+
+		log.info("Applied changes to cache snapshot: kept " + nKept + " pictures, fetched " +
+				delta.getPictures().size() + (isSameTaxa ? "" : ", reloaded taxa") +
+				(isSameLocations ? "" : ", reloaded locations"));
+		return graph;
+	}
+
+	private void writeString(DataOutputStream out, String s) throws IOException {
+		if (s == null) {
+			out.writeInt(-1);
+		} else {
+			byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private String readString(MappedByteBuffer buf) {
+		int len = buf.getInt();
+		if (len < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[len];
+		buf.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private Double readDouble(MappedByteBuffer buf) {
+		double dVal = buf.getDouble();
+		return Double.isNaN(dVal) ? null : Double.valueOf(dVal);
+	}
+
+	private Date readDate(MappedByteBuffer buf) {
+		long time = buf.getLong();
+		return time == nullTime ? null : new Date(time);
+	}
+
+
+	/** Gets the singleton instance. */
+	public static CacheSnapshot getInstance() {
+		if (_instance == null)
+			_instance = new CacheSnapshot();
+		return _instance;
+	}
+
+	/** Private singleton constructor */
+	private CacheSnapshot() {
+		isDirty = false;
+	}
+
+}
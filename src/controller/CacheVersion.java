@@ -0,0 +1,630 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+
+import model.HerbierPic;
+import model.Location;
+import model.ShotAtIndex;
+import model.Taxon;
+import model.TaxonRank;
+
+import common.base.Logger;
+
+import controller.DatabaseTools.eOrdering;
+
+/**
+ * A versioned view of the cached locations, taxa and pictures,
+ * with its own sorted lists and indexes.
+ * 
+ * <p>Cache writers hold {@link #lock} while modifying the caches, and call
+ * {@link #changed()}. The next version is built from the caches on first
+ * request after a batch of changes, and published atomically.
+ * 
+ * <p>The {@link #getCurrent() current} version copies the collections of the caches,
+ * but shares the cached objects, whose fields are modified in place by the caches
+ * and the editors. It is meant for the GUI thread, which makes these changes.
+ * Long-running readers on other threads, such as exports and quality checks,
+ * must use a {@link #getSnapshot() snapshot} instead: a version whose objects are
+ * copies, linked together, that nobody modifies. It can then be read from any
+ * thread without locks or torn reads, while the caches keep being modified.
+ * 
+ * @author nicz
+ * 
+ */
+public class CacheVersion {
+	
+	private static final Logger log = new Logger("CacheVersion", true);
+	
+	/** Lock held by cache writers, and while building a version */
+	static final Object lock = new Object();
+	
+	/** The current version, or null if the caches changed since it was built */
+	private static volatile CacheVersion current = null;
+	
+	/** The number of the latest version built, guarded by the lock */
+	private static long lastNumber = 0;
+	
+	private final long number;
+	
+	private final List<Location> locations;
+	private final List<Taxon> taxa;
+	private final Set<Taxon> topLevel;
+	private final List<HerbierPic> pics;
+	
+	private final IntObjectMap<Location> locationsById;
+	private final IntObjectMap<Taxon> taxaById;
+	private final IntObjectMap<HerbierPic> picsById;
+	private final Map<String, Taxon> taxaByName;
+	
+	/** Children of each taxon with children, by taxon idx */
+	private final IntObjectMap<List<Taxon>> childrenByTaxon;
+	
+	/** Pictures of each taxon with pictures, by taxon idx */
+	private final IntObjectMap<List<HerbierPic>> picsByTaxon;
+	
+	/** Pictures of each location with pictures, by location idx */
+	private final IntObjectMap<List<HerbierPic>> picsByLocation;
+	
+	/** Sorted arrays of objects, by kind and ordering, computed on first use */
+	private final ConcurrentHashMap<String, Object[]> mapSorted;
+	
+	/** Pictures of each taxon and its descendants, by taxon idx, computed on first use */
+	private final ConcurrentHashMap<Integer, List<HerbierPic>> picsCascadeByTaxon;
+	
+	/** The snapshot of this version, built on first request */
+	private volatile CacheVersion snapshot;
+	
+	/** Indexes of this version, built on first use */
+	private volatile TaxonIndex taxonIndex;
+	private volatile LocationIndex locationIndex;
+	private volatile ShotAtIndex shotAtIndex;
+	private volatile TextIndex<Taxon> taxonTextIndex;
+	private volatile TextIndex<Location> locationTextIndex;
+	private volatile TextIndex<HerbierPic> pictureTextIndex;
+	
+	
+	/**
+	 * Gets the current version of the caches.
+	 * The version is built if the caches changed since the previous one.
+	 * 
+	 * @return  the current version, never null
+	 */
+	public static CacheVersion getCurrent() {
+		CacheVersion version = current;
+		if (version == null) {
+			synchronized (lock) {
+				version = current;
+				if (version == null) {
+					long tStart = System.currentTimeMillis();
+					version = new CacheVersion(++lastNumber,
+							LocationCache.getInstance().values(),
+							TaxonCache.getInstance().values(),
+							TaxonCache.getInstance().topLevel(),
+							PictureCache.getInstance().values());
+					current = version;
+					log.info("Built cache version " + version.number + " in " +
+							(System.currentTimeMillis() - tStart) + " ms");
+				}
+			}
+		}
+		return version;
+	}
+	
+	/**
+	 * Gets a snapshot of the current version of the caches, for background readers.
+	 * The objects of the snapshot are copies of the cached objects, made while
+	 * holding the lock, so that they don't change while being read.
+	 * The snapshot is built once per version.
+	 * 
+	 * @return  the snapshot of the current version, never null
+	 */
+	public static CacheVersion getSnapshot() {
+		CacheVersion version = getCurrent();
+		CacheVersion result = version.snapshot;
+		if (result == null) {
+			synchronized (lock) {
+				// the copies must be made from the current state of the objects
+				version = getCurrent();
+				result = version.snapshot;
+				if (result == null) {
+					long tStart = System.currentTimeMillis();
+					result = version.detach();
+					version.snapshot = result;
+					log.info("Built snapshot of cache version " + version.number + " in " +
+							(System.currentTimeMillis() - tStart) + " ms");
+				}
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Marks the current version as outdated.
+	 * Must be called by cache writers, while holding the lock.
+	 */
+	static void changed() {
+		current = null;
+	}
+	
+	/**
+	 * Copies the collections of the caches, or of linked objects built by tests.
+	 */
+	CacheVersion(long number, Collection<Location> allLocations, Collection<Taxon> allTaxa,
+			Collection<Taxon> allTopLevel, Collection<HerbierPic> allPics) {
+		this.number = number;
+		
+		locationsById  = new IntObjectMap<>(allLocations.size());
+		picsByLocation = new IntObjectMap<>(allLocations.size());
+		for (Location location : allLocations) {
+			locationsById.put(location.getIdx(), location);
+			if (!location.getPics().isEmpty()) {
+				picsByLocation.put(location.getIdx(), copyOf(location.getPics()));
+			}
+		}
+		
+		taxaById        = new IntObjectMap<>(allTaxa.size());
+		taxaByName      = new HashMap<>(allTaxa.size() * 2);
+		childrenByTaxon = new IntObjectMap<>(allTaxa.size());
+		picsByTaxon     = new IntObjectMap<>(allTaxa.size());
+		for (Taxon taxon : allTaxa) {
+			taxaById.put(taxon.getIdx(), taxon);
+			taxaByName.put(taxon.getName(), taxon);
+			if (!taxon.getChildren().isEmpty()) {
+				childrenByTaxon.put(taxon.getIdx(), copyOf(taxon.getChildren()));
+			}
+			if (!taxon.getPics().isEmpty()) {
+				picsByTaxon.put(taxon.getIdx(), copyOf(taxon.getPics()));
+			}
+		}
+		
+		picsById = new IntObjectMap<>(allPics.size());
+		for (HerbierPic pic : allPics) {
+			picsById.put(pic.getIdx(), pic);
+		}
+		
+		locations = copyOf(allLocations);
+		taxa      = copyOf(allTaxa);
+		pics      = copyOf(allPics);
+		topLevel  = Collections.unmodifiableSet(new TreeSet<>(allTopLevel));
+		
+		mapSorted = new ConcurrentHashMap<>();
+		picsCascadeByTaxon = new ConcurrentHashMap<>();
+	}
+	
+	/**
+	 * Gets the number of this version.
+	 * Versions built later have greater numbers.
+	 * @return  the version number
+	 */
+	public long getNumber() {
+		return number;
+	}
+	
+	/**
+	 * Checks if the caches changed since this version was built.
+	 * @return  true if this is still the current version, or its snapshot
+	 */
+	public boolean isCurrent() {
+		CacheVersion version = current;
+		return version != null && version.number == number;
+	}
+	
+	/**
+	 * Checks if this version is a snapshot, whose objects are private copies.
+	 * @return  true if this version was built by {@link #getSnapshot()}
+	 */
+	public boolean isSnapshot() {
+		return snapshot == this;
+	}
+	
+	public List<Location> getLocations() {
+		return locations;
+	}
+	
+	public List<Taxon> getTaxa() {
+		return taxa;
+	}
+	
+	/**
+	 * Gets top-level taxa (without parent).
+	 * @return  a read-only set of top-level taxa
+	 */
+	public Set<Taxon> getTopLevel() {
+		return topLevel;
+	}
+	
+	public List<HerbierPic> getPictures() {
+		return pics;
+	}
+	
+	/**
+	 * Gets the pictures sorted by the specified ordering.
+	 * Each ordering is sorted once per version.
+	 * 
+	 * @param order  the ordering (may be null)
+	 * @return  a read-only sorted list of pictures
+	 */
+	public List<HerbierPic> getPictures(eOrdering order) {
+		return getSorted("pics", pics, order, CacheOrderings.getPictureComparator(order));
+	}
+	
+	/**
+	 * Gets the taxa sorted by the specified ordering.
+	 * Each ordering is sorted once per version.
+	 * 
+	 * @param order  the ordering (may be null)
+	 * @return  a read-only sorted list of taxa
+	 */
+	public List<Taxon> getTaxa(eOrdering order) {
+		return getSorted("taxa", taxa, order, CacheOrderings.getTaxonComparator(order));
+	}
+	
+	/**
+	 * Gets the locations sorted by the specified ordering.
+	 * Each ordering is sorted once per version.
+	 * 
+	 * @param order  the ordering (may be null)
+	 * @return  a read-only sorted list of locations
+	 */
+	public List<Location> getLocations(eOrdering order) {
+		return getSorted("locations", locations, order, CacheOrderings.getLocationComparator(order));
+	}
+	
+	public Location getLocation(int idx) {
+		return locationsById.get(idx);
+	}
+	
+	public Taxon getTaxon(int idx) {
+		return taxaById.get(idx);
+	}
+	
+	/**
+	 * Gets a taxon by its latin name.
+	 * @param name  the taxon name
+	 * @return  the taxon, or null if not found
+	 */
+	public Taxon getTaxon(String name) {
+		return (name == null ? null : taxaByName.get(name));
+	}
+	
+	public HerbierPic getPicture(int idx) {
+		return picsById.get(idx);
+	}
+	
+	/**
+	 * Gets the children of a taxon, as they were when this version was built.
+	 * @param taxon  the parent taxon
+	 * @return  a read-only sorted list of taxa (may be empty, but never null)
+	 */
+	public List<Taxon> getChildren(Taxon taxon) {
+		return orEmpty(taxon == null ? null : childrenByTaxon.get(taxon.getIdx()));
+	}
+	
+	/**
+	 * Gets the pictures of a taxon, as they were when this version was built.
+	 * @param taxon  the taxon
+	 * @return  a read-only sorted list of pictures (may be empty, but never null)
+	 */
+	public List<HerbierPic> getPics(Taxon taxon) {
+		return orEmpty(taxon == null ? null : picsByTaxon.get(taxon.getIdx()));
+	}
+	
+	/**
+	 * Gets the pictures of a location, as they were when this version was built.
+	 * @param location  the location
+	 * @return  a read-only sorted list of pictures (may be empty, but never null)
+	 */
+	public List<HerbierPic> getPics(Location location) {
+		return orEmpty(location == null ? null : picsByLocation.get(location.getIdx()));
+	}
+	
+	/**
+	 * Gets the pictures of a taxon and all its descendants, sorted by file name,
+	 * as they were when this version was built. Computed once per taxon and version.
+	 * @param taxon  the taxon
+	 * @return  a read-only list of pictures (may be empty, but never null)
+	 */
+	public List<HerbierPic> getPicsCascade(Taxon taxon) {
+		if (taxon == null) {
+			return Collections.emptyList();
+		}
+		List<HerbierPic> result = picsCascadeByTaxon.get(taxon.getIdx());
+		if (result == null) {
+			ArrayList<HerbierPic> list = new ArrayList<>(getPics(taxon));
+			for (Taxon child : getChildren(taxon)) {
+				list.addAll(getPicsCascade(child));
+			}
+			Collections.sort(list);
+			list.trimToSize();
+			result = Collections.unmodifiableList(list);
+			List<HerbierPic> previous = picsCascadeByTaxon.putIfAbsent(taxon.getIdx(), result);
+			if (previous != null) {
+				result = previous;
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Gets the number of pictures of a taxon and all its descendants.
+	 * @param taxon  the taxon
+	 * @return  the number of pictures
+	 */
+	public int getPicsCascadeCount(Taxon taxon) {
+		return getPicsCascade(taxon).size();
+	}
+	
+	/**
+	 * Gets the highest-rated picture directly linked to a taxon,
+	 * like {@link Taxon#getBestPic()} in this version.
+	 * @param taxon  the taxon
+	 * @return  the best taxon picture, or null if no pictures
+	 */
+	public HerbierPic getBestPic(Taxon taxon) {
+		return Taxon.getHighestRated(getPics(taxon));
+	}
+	
+	/**
+	 * Gets the typical picture of a taxon, like {@link Taxon#getTypicalPic()} in this version:
+	 * the typical picture of its typical child, or else its best picture
+	 * for a species, or else the best picture of its descendants.
+	 * @param taxon  the taxon
+	 * @return  a picture (may be null)
+	 */
+	public HerbierPic getTypicalPic(Taxon taxon) {
+		HerbierPic typicalPic = null;
+		for (Taxon child : getChildren(taxon)) {
+			if (child.isTypical()) {
+				typicalPic = getTypicalPic(child);
+				break;
+			}
+		}
+		if (typicalPic == null && taxon != null && TaxonRank.SPECIES == taxon.getRank()) {
+			typicalPic = getBestPic(taxon);
+		}
+		if (typicalPic == null) {
+			typicalPic = Taxon.getHighestRated(getPicsCascade(taxon));
+		}
+		return typicalPic;
+	}
+	
+	/**
+	 * Gets the latest pictures of this version.
+	 * 
+	 * @param nLatest  the max number of pictures to get
+	 * @return  at most nLatest pictures, newest first
+	 */
+	public Vector<HerbierPic> getLatestPics(int nLatest) {
+		return getShotAtIndex().getLatest(nLatest);
+	}
+	
+	/**
+	 * Gets the pictures of this version shot between two dates, included.
+	 * 
+	 * @param tFrom  the start date
+	 * @param tTo    the end date
+	 * @return  a read-only list of pictures, oldest first
+	 */
+	public List<HerbierPic> getPicsShotBetween(Date tFrom, Date tTo) {
+		return getShotAtIndex().getBetween(tFrom, tTo);
+	}
+	
+	/**
+	 * Gets the ancestry index of the taxa of this version.
+	 * The index is built on first request. Concurrent first requests
+	 * may build it twice, but the result is the same.
+	 * 
+	 * @return  the taxon index
+	 */
+	public TaxonIndex getTaxonIndex() {
+		TaxonIndex index = taxonIndex;
+		if (index == null) {
+			index = new TaxonIndex(this);
+			taxonIndex = index;
+			log.info("Indexed " + index.size() + " taxa of version " + number);
+		}
+		return index;
+	}
+	
+	/**
+	 * Gets the spatial index of the locations of this version.
+	 * The index is built on first request.
+	 * 
+	 * @return  the location index
+	 */
+	public LocationIndex getLocationIndex() {
+		LocationIndex index = locationIndex;
+		if (index == null) {
+			index = new LocationIndex(locations);
+			locationIndex = index;
+			log.info("Indexed " + index.size() + " locations of version " + number);
+		}
+		return index;
+	}
+	
+	/**
+	 * Searches the taxa of this version by latin and french names.
+	 * 
+	 * @param filter  the search text
+	 * @return  the matching taxa, best first
+	 */
+	public List<Taxon> searchTaxa(String filter) {
+		return getTaxonTextIndex().search(filter);
+	}
+	
+	/**
+	 * Searches the locations of this version by name, region, town and kind.
+	 * 
+	 * @param filter  the search text
+	 * @return  the matching locations, best first
+	 */
+	public List<Location> searchLocations(String filter) {
+		return getLocationTextIndex().search(filter);
+	}
+	
+	/**
+	 * Searches the pictures of this version by filename and remarks.
+	 * 
+	 * @param filter  the search text
+	 * @return  the matching pictures, best first
+	 */
+	public List<HerbierPic> searchPictures(String filter) {
+		return getPictureTextIndex().search(filter);
+	}
+	
+	/**
+	 * Gets the full-text index of the taxa of this version.
+	 * The index is built on first request.
+	 * 
+	 * @return  the text index
+	 */
+	public TextIndex<Taxon> getTaxonTextIndex() {
+		TextIndex<Taxon> index = taxonTextIndex;
+		if (index == null) {
+			index = new TextIndex<>(taxa, new TextIndex.TextFields<Taxon>() {
+				@Override
+				public String[] getTexts(Taxon taxon) {
+					return new String[] { taxon.getName(), taxon.getNameFr() };
+				}
+			});
+			taxonTextIndex = index;
+			log.info("Indexed text of " + index.size() + " taxa of version " + number);
+		}
+		return index;
+	}
+	
+	/**
+	 * Gets the full-text index of the locations of this version.
+	 * The index is built on first request.
+	 * 
+	 * @return  the text index
+	 */
+	public TextIndex<Location> getLocationTextIndex() {
+		TextIndex<Location> index = locationTextIndex;
+		if (index == null) {
+			index = new TextIndex<>(locations, new TextIndex.TextFields<Location>() {
+				@Override
+				public String[] getTexts(Location location) {
+					return new String[] { location.getName(), location.getRegion(),
+							location.getTown(), location.getKind() };
+				}
+			});
+			locationTextIndex = index;
+			log.info("Indexed text of " + index.size() + " locations of version " + number);
+		}
+		return index;
+	}
+	
+	/**
+	 * Gets the full-text index of the pictures of this version.
+	 * The index is built on first request.
+	 * 
+	 * @return  the text index
+	 */
+	public TextIndex<HerbierPic> getPictureTextIndex() {
+		TextIndex<HerbierPic> index = pictureTextIndex;
+		if (index == null) {
+			index = new TextIndex<>(pics, new TextIndex.TextFields<HerbierPic>() {
+				@Override
+				public String[] getTexts(HerbierPic pic) {
+					return new String[] { pic.getFileName(), pic.getRemarks() };
+				}
+			});
+			pictureTextIndex = index;
+			log.info("Indexed text of " + index.size() + " pictures of version " + number);
+		}
+		return index;
+	}
+	
+	@Override
+	public String toString() {
+		return (isSnapshot() ? "Snapshot " : "CacheVersion ") + number + " (" + locations.size() + " locations, " +
+				taxa.size() + " taxa, " + pics.size() + " pictures)";
+	}
+	
+	/**
+	 * Gets the pictures of this version by shot-at timestamp, building the index on first request.
+	 */
+	private ShotAtIndex getShotAtIndex() {
+		ShotAtIndex index = shotAtIndex;
+		if (index == null) {
+			index = new ShotAtIndex();
+			for (HerbierPic pic : pics) {
+				index.add(pic);
+			}
+			shotAtIndex = index;
+		}
+		return index;
+	}
+	
+	/**
+	 * Builds a snapshot of this version, with copies of its objects
+	 * linked together as the cached objects are.
+	 * Must be called while holding the lock, on the current version.
+	 */
+	private CacheVersion detach() {
+		CacheGraph graph = new CacheGraph();
+		for (Location location : locations) {
+			graph.addLocation(location.copy());
+		}
+		for (Taxon taxon : taxa) {
+			Taxon copy = taxon.copy();
+			copy.setIdxParent(taxon.getParent() == null ? 0 : taxon.getParent().getIdx());
+			graph.addTaxon(copy);
+		}
+		for (HerbierPic pic : pics) {
+			HerbierPic copy = pic.copy();
+			copy.setIdxTaxon(pic.getTaxon() == null ? 0 : pic.getTaxon().getIdx());
+			graph.addPicture(copy, pic.getLocation() == null ? 0 : pic.getLocation().getIdx());
+		}
+		graph.link();
+		
+		CacheVersion result = new CacheVersion(number, graph.getLocations(), graph.getTaxa(),
+				graph.getTopLevel(), graph.getPictures());
+		result.snapshot = result;
+		return result;
+	}
+	
+	/**
+	 * Gets a list sorted by the specified ordering, sorting it on first request.
+	 * Concurrent first requests may sort twice, but always publish the same order.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> List<T> getSorted(String kind, List<T> list, eOrdering order, Comparator<? super T> comparator) {
+		String key = kind + "." + order;
+		Object[] sorted = mapSorted.get(key);
+		if (sorted == null) {
+			sorted = list.toArray();
+			Arrays.sort(sorted, (Comparator<Object>) comparator);
+			Object[] previous = mapSorted.putIfAbsent(key, sorted);
+			if (previous != null) {
+				sorted = previous;
+			}
+		}
+		return Collections.unmodifiableList(Arrays.asList((T[]) sorted));
+	}
+	
+	private static <T> List<T> copyOf(Collection<T> collection) {
+		return Collections.unmodifiableList(new ArrayList<>(collection));
+	}
+	
+	private static <T> List<T> orEmpty(List<T> list) {
+		if (list == null) {
+			return Collections.emptyList();
+		}
+		return list;
+	}
+
+}
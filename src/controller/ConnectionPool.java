@@ -0,0 +1,265 @@
+package controller;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import common.base.Logger;
+
+/**
+ * A small pool of JDBC connections.
+ *
+ * <p>Connections are validated when borrowed, so that a connection
+ * dropped by the server (for example after MySQL <code>wait_timeout</code>
+ * or a laptop sleep) is transparently replaced by a new one.
+ *
+ * <p>At most <code>maxSize</code> connections are open at the same time.
+ * Borrowers wait when all connections are in use.
+ *
+ * @author nicz
+ *
+ */
+public class ConnectionPool {
+
+	private static final Logger log = new Logger("ConnectionPool", true);
+
+	/** Timeout in seconds when validating a connection. */
+	private static final int validationTimeout = 2;
+
+	/** Max time in milliseconds to wait for a free connection. */
+	private static final long borrowTimeout = 30000L;
+
+	/** The JDBC url of the database */
+	private final String url;
+
+	/** The maximum number of open connections */
+	private final int maxSize;
+
+	/** The idle connections, most recently released first */
+	private final Deque<Connection> idle;
+
+	/** The prepared statements of each open connection */
+	private final Map<Connection, StatementRegistry> mapRegistries;
+
+	/** The number of open connections, idle or borrowed */
+	private int nOpen;
+
+	/** Set when the pool is closed */
+	private boolean isClosed;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param url      the JDBC url of the database
+	 * @param maxSize  the maximum number of open connections
+	 */
+	public ConnectionPool(String url, int maxSize) {
+		this.url = url;
+		this.maxSize = Math.max(1, maxSize);
+		this.idle = new ArrayDeque<>();
+		this.mapRegistries = new IdentityHashMap<>();
+		this.nOpen = 0;
+		this.isClosed = false;
+		log.info("Created connection pool of size " + this.maxSize);
+	}
+
+	/**
+	 * Borrows a valid connection from the pool, opening a new one if needed.
+	 * The connection must be given back with {@link #release(Connection)}.
+	 *
+	 * <p>Connections are validated and opened outside the pool lock,
+	 * so that a slow server does not block other borrowers.
+	 *
+	 * @return a valid connection, or null if connecting failed
+	 */
+	public Connection borrow() {
+		long tEnd = System.currentTimeMillis() + borrowTimeout;
+		while (true) {
+			Connection conn;
+			synchronized (this) {
+				if (!reserve(tEnd)) {
+					return null;
+				}
+				conn = idle.poll();
+			}
+
+			if (conn == null) {
+				// a new connection was counted as open by reserve()
+				conn = open();
+				if (conn == null) {
+					forget(null);
+				}
+				return conn;
+			}
+
+			// reuse the idle connection if still valid
+			if (isValid(conn)) {
+				return conn;
+			}
+			log.info("Discarding stale database connection");
+			discard(conn);
+		}
+	}
+
+	/**
+	 * Gives back a borrowed connection to the pool.
+	 * Closes the connection if the pool is closed.
+	 *
+	 * @param conn  the connection to release (may be null)
+	 */
+	public void release(Connection conn) {
+		if (conn == null) {
+			return;
+		}
+		synchronized (this) {
+			if (!isClosed) {
+				idle.push(conn);
+				notifyAll();
+				return;
+			}
+		}
+		discard(conn);
+	}
+
+	/**
+	 * Discards a connection that failed, so that it isn't borrowed again.
+	 *
+	 * @param conn  the broken connection (may be null)
+	 */
+	public void invalidate(Connection conn) {
+		if (conn != null) {
+			discard(conn);
+		}
+	}
+
+	/**
+	 * Gets the prepared statements registry of the specified borrowed connection.
+	 *
+	 * @param conn  a connection obtained by {@link #borrow()}
+	 * @return the statement registry of the connection
+	 */
+	public synchronized StatementRegistry getStatements(Connection conn) {
+		StatementRegistry registry = mapRegistries.get(conn);
+		if (registry == null) {
+			registry = new StatementRegistry(conn);
+			mapRegistries.put(conn, registry);
+		}
+		return registry;
+	}
+
+	/**
+	 * Closes all idle connections and the pool.
+	 * Borrowed connections are closed when released.
+	 */
+	public void close() {
+		List<Connection> conns;
+		synchronized (this) {
+			isClosed = true;
+			conns = new ArrayList<>(idle);
+			idle.clear();
+			notifyAll();
+		}
+		for (Connection conn : conns) {
+			discard(conn);
+		}
+		log.info("Closed connection pool");
+	}
+
+	/**
+	 * Gets the number of open connections, idle or borrowed.
+	 * @return the number of open connections
+	 */
+	public synchronized int getOpenCount() {
+		return nOpen;
+	}
+
+	/**
+	 * Waits until an idle connection is available, or a new one may be opened.
+	 * In the latter case, the new connection is counted as open.
+	 * Called with the pool lock held.
+	 *
+	 * @param tEnd  the time when to stop waiting
+	 * @return false if the pool is closed, or on timeout
+	 */
+	private boolean reserve(long tEnd) {
+		while (!isClosed) {
+			if (!idle.isEmpty()) {
+				return true;
+			}
+			if (nOpen < maxSize) {
+				nOpen++;
+				return true;
+			}
+
+			// wait for a connection to be released
+			long tWait = tEnd - System.currentTimeMillis();
+			if (tWait <= 0) {
+				log.error("Timeout waiting for a free database connection");
+				return false;
+			}
+			try {
+				wait(tWait);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		log.error("Connection pool is closed");
+		return false;
+	}
+
+	private Connection open() {
+		try {
+			Connection conn = DriverManager.getConnection(url);
+			if (conn != null) {
+				log.info("Opened database connection " + getOpenCount() + "/" + maxSize);
+			}
+			return conn;
+		} catch (SQLException e) {
+			log.error("Opening database connection failed: " + e.getMessage());
+		}
+		return null;
+	}
+
+	private boolean isValid(Connection conn) {
+		try {
+			return !conn.isClosed() && conn.isValid(validationTimeout);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Removes a connection from the open ones, and wakes up waiting borrowers.
+	 *
+	 * @param conn  the connection, or null for a connection which failed to open
+	 * @return the statement registry of the connection, or null if none
+	 */
+	private synchronized StatementRegistry forget(Connection conn) {
+		nOpen--;
+		notifyAll();
+		return (conn == null ? null : mapRegistries.remove(conn));
+	}
+
+	/**
+	 * Closes a connection outside the pool lock.
+	 */
+	private void discard(Connection conn) {
+		StatementRegistry registry = forget(conn);
+		if (registry != null) {
+			registry.close();
+		}
+		try {
+			conn.close();
+		} catch (SQLException e) {
+			log.error("Failed to close DB connection: " + e.getMessage());
+		}
+	}
+
+}
@@ -1,12 +1,16 @@
 package controller;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.ExecutionException;
 
 import model.AppParam;
 import model.AppParamName;
@@ -83,52 +87,110 @@ public class Controller {
 	}
 	
 	public Vector<HerbierPic> getHerbierPics(eOrdering order, String filter) {
-		Vector<HerbierPic> vecHPics = DataAccess.getInstance().getHerbierPics(order, filter);
-		
-		for (HerbierPic hpic : vecHPics) {
-			hpic.setTaxon(TaxonCache.getInstance().getTaxon(hpic.getIdxTaxon()));
+		return getHerbierPics(order, filter, 0);
+	}
+	
+	/**
+	 * Gets cached pictures, sorted and filtered.
+	 * 
+	 * @param order   the ordering, or null to sort filtered pictures by relevance
+	 * @param filter  an optional search text
+	 * @param limit   the max number of pictures, or 0 for all
+	 * @return  a vector of cached pictures
+	 */
+	public Vector<HerbierPic> getHerbierPics(eOrdering order, String filter, int limit) {
+		return select(getSortedPics(order, filter), limit);
+	}
+	
+	/**
+	 * Gets cached pictures, sorted and filtered, to be browsed by rows.
+	 * Without filter, the sorted pictures of the cache version are not copied.
+	 * 
+	 * @param order   the ordering, or null to sort filtered pictures by relevance
+	 * @param filter  an optional search text
+	 * @return  the pager of pictures
+	 */
+	public PicturePager getPicturePager(eOrdering order, String filter) {
+		boolean isSorted = (order != null || !isFiltered(filter));
+		return new PicturePager(getSortedPics(order, filter), 
+				isSorted ? CacheOrderings.getPictureComparator(order) : null);
+	}
+	
+	private List<HerbierPic> getSortedPics(eOrdering order, String filter) {
+		if (isFiltered(filter)) {
+			return sortHits(PictureCache.getInstance().search(filter), 
+					order, CacheOrderings.getPictureComparator(order));
 		}
-		
-		return vecHPics;
+		return CacheVersion.getCurrent().getPictures(order);
 	}
 	
 	public Vector<HerbierPic> getLatestHerbierPics(int limit) {
-		String where = " ORDER BY picShotAt DESC LIMIT " + limit;
-		Vector<HerbierPic> vecHPics = DataAccess.getInstance().getHerbierPics(where, null, null);
-		
-		for (HerbierPic hpic : vecHPics) {
-			hpic.setTaxon(TaxonCache.getInstance().getTaxon(hpic.getIdxTaxon()));
-		}
-		
-		return vecHPics;
+		return new PictureQuery().orderBy(eOrdering.BY_DATE, true).limit(limit).select();
 	}
 	
 	public Vector<Taxon> getTaxons(eOrdering order, String filter) {
-		Vector<Taxon> vecTaxons = DataAccess.getInstance().getTaxons(null, order, filter);
-		setTaxonParentInfo(vecTaxons);
-		return vecTaxons;
+		List<Taxon> taxa;
+		if (isFiltered(filter)) {
+			taxa = sortHits(TaxonCache.getInstance().search(filter), 
+					order, CacheOrderings.getTaxonComparator(order));
+		} else {
+			taxa = CacheVersion.getCurrent().getTaxa(order);
+		}
+		return select(taxa, 0);
 	}
 	
 	public Vector<Taxon> getTaxons(TaxonRank rank) {
-		Vector<Taxon> vecTaxons = DataAccess.getInstance().getTaxons(rank);
-		setTaxonParentInfo(vecTaxons);
+		Vector<Taxon> vecTaxons = new Vector<>();
+		if (rank != null) {
+			for (Taxon taxon : CacheVersion.getCurrent().getTaxa(eOrdering.BY_DEFAULT)) {
+				if (taxon.getRank() == rank) {
+					vecTaxons.add(taxon);
+				}
+			}
+		}
 		return vecTaxons;
 	}
 	
 	public Vector<Taxon> getLatestSpecies(int nLatest) {
-		String where = "where taxRank = '" + TaxonRank.SPECIES.name() + "' order by idxTaxon desc limit " + nLatest;
-		Vector<Taxon> vecTaxons = DataAccess.getInstance().getTaxons(where, null, null);
-		//setTaxonParentInfo(vecTaxons);
+		List<Taxon> taxa = CacheVersion.getCurrent().getTaxa(eOrdering.BY_IDX);
+		Vector<Taxon> vecTaxons = new Vector<>();
+		for (int i = taxa.size() - 1; i >= 0 && vecTaxons.size() < nLatest; --i) {
+			if (taxa.get(i).getRank() == TaxonRank.SPECIES) {
+				vecTaxons.add(taxa.get(i));
+			}
+		}
 		return vecTaxons;
 	}
 	
 	public Vector<Location> getLocations(eOrdering order, String filter) {
-		Vector<Location> vecLocations = DataAccess.getInstance().getLocations(null, order, filter);
-		return vecLocations;
+		List<Location> locations;
+		if (isFiltered(filter)) {
+			locations = sortHits(LocationCache.getInstance().search(filter), 
+					order, CacheOrderings.getLocationComparator(order));
+		} else {
+			locations = CacheVersion.getCurrent().getLocations(order);
+		}
+		return select(locations, 0);
 	}
 	
 	public Vector<Expedition> getExpeditions(eOrdering order, String filter) {
-		Vector<Expedition> vecExpeditions = DataAccess.getInstance().getExpeditions(null, order, filter);
+		List<Expedition> expeditions = ExpeditionManager.getInstance().getAll();
+		
+		// few enough expeditions to be searched and sorted on each request
+		if (isFiltered(filter)) {
+			TextIndex<Expedition> index = new TextIndex<>(expeditions, new TextIndex.TextFields<Expedition>() {
+				@Override
+				public String[] getTexts(Expedition exp) {
+					return new String[] { exp.getTitle(), exp.getNotes() };
+				}
+			});
+			expeditions = sortHits(index.search(filter), 
+					order, CacheOrderings.getExpeditionComparator(order));
+		} else {
+			expeditions = new ArrayList<>(expeditions);
+			Collections.sort(expeditions, CacheOrderings.getExpeditionComparator(order));
+		}
+		Vector<Expedition> vecExpeditions = select(expeditions, 0);
 		
 		for (Expedition exp : vecExpeditions) {
 			ExpeditionManager.getInstance().setExpeditionPics(exp);
@@ -138,9 +200,9 @@ public class Controller {
 	}
 	
 	public Vector<Expedition> getRecentExpeditions(int nMax) {
-		Vector<Expedition> vecResult = new Vector<>();
-		Vector<Expedition> vecAll = DataAccess.getInstance().getExpeditions(null, eOrdering.BY_DATE, null);
-		vecResult.addAll(vecAll.subList(0, Math.min(nMax, vecAll.size())));
+		List<Expedition> expeditions = new ArrayList<>(ExpeditionManager.getInstance().getAll());
+		Collections.sort(expeditions, CacheOrderings.getExpeditionComparator(eOrdering.BY_DATE));
+		Vector<Expedition> vecResult = new Vector<>(expeditions.subList(0, Math.min(nMax, expeditions.size())));
 		
 		for (Expedition exp : vecResult) {
 			ExpeditionManager.getInstance().setExpeditionPics(exp);
@@ -157,8 +219,13 @@ public class Controller {
 	 */
 	public Vector<Expedition> getExpeditions(Location loc) {
 		if (loc != null) {
-			String where = " WHERE expLocation = " + loc.getIdx();
-			Vector<Expedition> vecResult = DataAccess.getInstance().getExpeditions(where, eOrdering.BY_DATE, null);
+			Vector<Expedition> vecResult = new Vector<>();
+			for (Expedition exp : ExpeditionManager.getInstance().getAll()) {
+				if (exp.getLocation() != null && exp.getLocation().getIdx() == loc.getIdx()) {
+					vecResult.add(exp);
+				}
+			}
+			Collections.sort(vecResult, CacheOrderings.getExpeditionComparator(eOrdering.BY_DATE));
 			
 			for (Expedition exp : vecResult) {
 				ExpeditionManager.getInstance().setExpeditionPics(exp);
@@ -170,22 +237,23 @@ public class Controller {
 	}
 	
 	public Vector<Location> getLatestLocations(int nLatest) {
+		// first pic dates are read from the shot-at index of each location
 		Vector<Location> vecLocations = new Vector<>();
-		
-		vecLocations.addAll(LocationCache.getInstance().getAll());
-		for (Location loc : vecLocations) {
-			loc.computeDateFirstPic();
+		for (Location loc : LocationCache.getInstance().getAll()) {
+			if (loc.getDateFirstPic() != null) {
+				vecLocations.add(loc);
+			}
 		}
 		
 		Collections.sort(vecLocations, new Comparator<Location>() {
 			@Override
 			public int compare(Location loc1, Location loc2) {
-				return loc1.getDateFirstPic().after(loc2.getDateFirstPic()) ? -1 : 1;
+				return loc2.getDateFirstPic().compareTo(loc1.getDateFirstPic());
 			}
 		});
 		
 		Vector<Location> result = new Vector<>();
-		result.addAll(vecLocations.subList(0, nLatest));
+		result.addAll(vecLocations.subList(0, Math.min(nLatest, vecLocations.size())));
 		
 		return result;
 	}
@@ -206,18 +274,102 @@ public class Controller {
 		long fileSize = importer.computeTotalFileSize();
 		stats.add(new StatItem("Taille totale des photos", new FileSizeNumberFormat().format(fileSize)));
 		
+		// Memory used by the cache maps
+		stats.add(getMemoryStat("Mémoire du cache des photos", 
+				PictureCache.getInstance().getMemoryFootprint(), PictureCache.getInstance().size()));
+		stats.add(getMemoryStat("Mémoire du cache des taxons", 
+				TaxonCache.getInstance().getMemoryFootprint(), TaxonCache.getInstance().size()));
+		stats.add(getMemoryStat("Mémoire du cache des lieux", 
+				LocationCache.getInstance().getMemoryFootprint(), LocationCache.getInstance().size()));
+		
 		return stats;
 	}
+	
+	/**
+	 * Creates a StatItem with the memory used by a cache map, in total and by entry,
+	 * compared with the estimated memory of a map with boxed Integer keys.
+	 * 
+	 * @param desc      the description of the stat
+	 * @param nBytes    the memory used by the cache map
+	 * @param nEntries  the number of entries in the cache
+	 * @return the stat item
+	 */
+	private StatItem getMemoryStat(String desc, long nBytes, int nEntries) {
+		String value = new FileSizeNumberFormat().format(nBytes);
+		if (nEntries > 0) {
+			value += String.format(" (%.1f octets par entrée, %.1f avec HashMap)", 
+					(double) nBytes / nEntries, 
+					(double) IntObjectMap.estimateHashMapFootprint(nEntries) / nEntries);
+		}
+		return new StatItem(desc, value);
+	}
 
 	/**
-	 * Reloads the taxon and pictures caches.
+	 * Refreshes the picture cache with the pictures added, changed
+	 * or deleted in database since the cache was last updated.
+	 */
+	public void refreshPictures() {
+		long tStart = System.currentTimeMillis();
+		PictureCache.getInstance().refreshDelta();
+		ExpeditionManager.getInstance().clearExpeditions();
+		log.info("Refreshed pictures in " + (System.currentTimeMillis() - tStart) + " ms");
+	}
+	
+	/**
+	 * Reloads the location, taxon and pictures caches.
+	 * Fetches the whole object graph at once, or falls back
+	 * to loading each cache separately if that fails.
 	 */
 	public void reloadCache() {
-		LocationCache.getInstance().loadAll();
-		TaxonCache.getInstance().loadAll();
-		PictureCache.getInstance().loadAll();
+		long tStart = System.currentTimeMillis();
+		
+		CacheSnapshot.Stamp stamp = DataAccess.getInstance().fetchCacheStamp();
+		CacheGraph graph = DataAccess.getInstance().fetchCacheGraph();
+		if (graph != null) {
+			fillCaches(graph);
+			if (stamp != null) {
+				CacheSnapshot.getInstance().update(graph, stamp);
+			}
+		} else {
+			// each cache is fetched without the cache lock, then filled under it,
+			// locations first, as pictures are linked to cached locations when fetched
+			LocationCache.getInstance().loadAll();
+			TaxonCache.getInstance().loadAll();
+			PictureCache.getInstance().loadAll();
+		}
+		ExpeditionManager.getInstance().clearExpeditions();
+		log.info("Reloaded caches in " + (System.currentTimeMillis() - tStart) + " ms");
+		
+		(new LocationChecker()).check(CacheVersion.getSnapshot());
+	}
+	
+	/**
+	 * Loads the caches at startup, from the cache snapshot if it is 
+	 * still valid, or else from database.
+	 */
+	private void loadCache() {
+		long tStart = System.currentTimeMillis();
 		
-		(new LocationChecker()).check();
+		CacheGraph graph = CacheSnapshot.getInstance().load();
+		if (graph == null) {
+			reloadCache();
+		} else {
+			fillCaches(graph);
+			log.info("Loaded caches from snapshot in " + (System.currentTimeMillis() - tStart) + " ms");
+			(new LocationChecker()).check(CacheVersion.getSnapshot());
+		}
+	}
+	
+	/**
+	 * Fills the location, taxon and picture caches from a linked graph.
+	 * @param graph  the linked graph of cached objects
+	 */
+	private void fillCaches(CacheGraph graph) {
+		synchronized (CacheVersion.lock) {
+			LocationCache.getInstance().load(graph);
+			TaxonCache.getInstance().load(graph);
+			PictureCache.getInstance().load(graph);
+		}
 	}
 	
 	/**
@@ -268,13 +420,19 @@ public class Controller {
 					vecNewFiles.add(file);
 				}
 			}
+			Vector<HerbierPic> vecNewPics = new Vector<>();
 			for (File file : vecNewFiles) {
 				HerbierPic pic = importer.importOnePicture(file);
-				addImportedPic(pic, file);
-				if (pic.getTaxon() == null) {
-					nNewPics--;
+				try {
+					if (prepareImportedPic(pic, file)) {
+						vecNewPics.add(pic);
+					}
+				} catch (ValidationException e) {
+					log.error("Skipping new picture " + file.getName() + ": " + e.getMessage());
 				}
 			}
+			savePictures(vecNewPics);
+			nNewPics = vecNewPics.size();
 			String msg = String.valueOf(nNewPics) + (nNewPics == 1 ? " nouvelle photo." : " nouvelles photos.");
 			MessageBox.info(msg);
 		}
@@ -287,6 +445,20 @@ public class Controller {
 	}
 	
 	private void addImportedPic(HerbierPic pic, File file) throws ValidationException {
+		if (prepareImportedPic(pic, file)) {
+			savePicture(pic);
+		}
+	}
+	
+	/**
+	 * Sets the taxon and default location of a newly imported picture.
+	 * 
+	 * @param pic   the imported picture
+	 * @param file  the picture file
+	 * @return true if the picture can be saved, false if its taxon is unknown
+	 * @throws ValidationException  if the image is too large
+	 */
+	private boolean prepareImportedPic(HerbierPic pic, File file) throws ValidationException {
 		log.info("... new picture: " + pic);
 		importer.checkImageSize(file);
 		TaxonFactory.getInstance().setTaxons(pic);
@@ -297,9 +469,9 @@ public class Controller {
 		
 		if (pic.getTaxon() == null) {
 			log.error("Failed to set taxons for " + pic);
-		} else {
-			savePicture(pic);
+			return false;
 		}
+		return true;
 	}
 	
 	/**
@@ -318,6 +490,16 @@ public class Controller {
 		return importer.getAvailableFilename(hpic, taxon);
 	}
 	
+	/**
+	 * Gives back a filename reserved by {@link #getAvailableFilename(HerbierPic, Taxon)}
+	 * and finally not used, e.g. when renaming is cancelled.
+	 * 
+	 * @param filename  the unused filename
+	 */
+	public void releaseFilename(String filename) {
+		importer.releaseFilename(filename);
+	}
+	
 	/**
 	 * Renames the specified picture and changes its taxon.
 	 * 
@@ -365,9 +547,14 @@ public class Controller {
 		}
 		
 		if (child.getParent() != parent) {
-			child.setParent(parent);
-			saveTaxon(child);
-			TaxonCache.getInstance().loadAll();
+			Taxon oldParent = child.getParent();
+			TaxonCache.getInstance().reparent(child, parent);
+			try {
+				saveTaxon(child);
+			} catch (ValidationException e) {
+				TaxonCache.getInstance().reparent(child, oldParent);
+				throw e;
+			}
 		}
 	}
 	
@@ -395,11 +582,61 @@ public class Controller {
 			hpic.setLocation(location);
 		}
 		
+		CacheSnapshot.getInstance().invalidate();
 		int idx = DataAccess.getInstance().savePicture(hpic);
+		if (idx > 0) {
+			PictureCache.getInstance().refresh(idx);
+		}
+		ExpeditionManager.getInstance().clearExpeditions();
 		notifyDataListeners(UpdateType.PICTURE, idx);
 		return idx;
 	}
 	
+	/**
+	 * Saves the specified pictures in a single database transaction.
+	 * All pictures are validated before saving any of them.
+	 * Their new locations are saved first, and data listeners
+	 * are notified once, after saving.
+	 * 
+	 * @param pics  the pictures to save
+	 * @return the indices of the saved pictures, in the order of <code>pics</code>
+	 * @throws ValidationException  if saving any of the pictures is invalid
+	 */
+	public int[] savePictures(Collection<HerbierPic> pics) throws ValidationException {
+		log.info("Saving " + pics.size() + " pictures");
+		for (HerbierPic hpic : pics) {
+			picValidator.validateSave(hpic);
+		}
+		
+		// save new locations first
+		Vector<Location> vecNewLocations = new Vector<>();
+		for (HerbierPic hpic : pics) {
+			Location location = hpic.getLocation();
+			if (location != null && location.getIdx() <= 0 && !vecNewLocations.contains(location)) {
+				vecNewLocations.add(location);
+			}
+		}
+		if (!vecNewLocations.isEmpty()) {
+			int[] idxLocations = storeLocations(vecNewLocations);
+			for (HerbierPic hpic : pics) {
+				int iLoc = vecNewLocations.indexOf(hpic.getLocation());
+				if (iLoc >= 0) {
+					hpic.setLocation(LocationCache.getInstance().getLocation(idxLocations[iLoc]));
+				}
+			}
+		}
+		
+		CacheSnapshot.getInstance().invalidate();
+		int[] idx = DataAccess.getInstance().savePictures(new Vector<>(pics));
+		if (idx == null) {
+			throw new ValidationException("La sauvegarde des photos a échoué");
+		}
+		PictureCache.getInstance().refresh(idx);
+		ExpeditionManager.getInstance().clearExpeditions();
+		notifyDataListeners(UpdateType.PICTURE, idx.length > 0 ? idx[idx.length-1] : 0);
+		return idx;
+	}
+	
 	/**
 	 * Saves the specified taxon to database.
 	 * Refreshes the taxon cache.
@@ -413,15 +650,18 @@ public class Controller {
 
 		taxonValidator.validateSave(taxon);
 
+		CacheSnapshot.getInstance().invalidate();
 		int idx = DataAccess.getInstance().saveTaxon(taxon);
 
 		TaxonCache.getInstance().refresh(idx);
 
-		// replace refreshed taxon in pictures
+		// replace refreshed taxon in pictures, unless the cached taxon was saved
 		Taxon taxonUpd = TaxonCache.getInstance().getTaxon(idx);
-		for (HerbierPic pic : taxon.getPics()) {
-			pic.setTaxon(taxonUpd);
-			taxonUpd.addPic(pic);
+		if (taxonUpd != taxon) {
+			for (HerbierPic pic : taxon.getPics()) {
+				pic.setTaxon(taxonUpd);
+				taxonUpd.addPic(pic);
+			}
 		}
 
 		notifyDataListeners(UpdateType.TAXON, idx);
@@ -439,8 +679,10 @@ public class Controller {
 		picValidator.validateDelete(pic);
 		
 		importer.deletePic(pic);
+		CacheSnapshot.getInstance().invalidate();
 		DataAccess.getInstance().deletePicture(pic);
-		reloadCache();
+		PictureCache.getInstance().remove(pic.getIdx());
+		ExpeditionManager.getInstance().clearExpeditions();
 		notifyDataListeners(UpdateType.PICTURE, 0);
 	}
 	
@@ -454,8 +696,9 @@ public class Controller {
 		log.info("Checking deletion of " + taxon);
 		taxonValidator.validateDelete(taxon);
 		
+		CacheSnapshot.getInstance().invalidate();
 		DataAccess.getInstance().deleteTaxon(taxon);
-		TaxonCache.getInstance().loadAll();
+		TaxonCache.getInstance().delete(taxon.getIdx());
 		notifyDataListeners(UpdateType.TAXON, 0);
 	}
 
@@ -471,13 +714,95 @@ public class Controller {
 
 		locationValidator.validateSave(location);
 
+		CacheSnapshot.getInstance().invalidate();
 		int idx = DataAccess.getInstance().saveLocation(location);
 		LocationCache.getInstance().refresh(idx);
+		ExpeditionManager.getInstance().clearExpeditions();
 
 		notifyDataListeners(UpdateType.LOCATION, idx);
 		return idx;
 	}
 
+	/**
+	 * Saves the specified taxa in a single database transaction.
+	 * Refreshes the taxon cache and notifies data listeners once.
+	 * 
+	 * @param taxa  the taxa to save
+	 * @return the indices of the saved taxa, in the order of <code>taxa</code>
+	 * @throws ValidationException  if saving any of the taxa is invalid
+	 */
+	public int[] saveTaxa(Collection<Taxon> taxa) throws ValidationException {
+		log.info("Saving " + taxa.size() + " taxa");
+		for (Taxon taxon : taxa) {
+			taxonValidator.validateSave(taxon);
+		}
+		
+		Vector<Taxon> vecTaxa = new Vector<>(taxa);
+		CacheSnapshot.getInstance().invalidate();
+		int[] idx = DataAccess.getInstance().saveTaxa(vecTaxa);
+		if (idx == null) {
+			throw new ValidationException("La sauvegarde des taxons a échoué");
+		}
+		
+		for (int i = 0; i < idx.length; ++i) {
+			TaxonCache.getInstance().refresh(idx[i]);
+			
+			// replace refreshed taxon in pictures
+			Taxon taxonUpd = TaxonCache.getInstance().getTaxon(idx[i]);
+			if (taxonUpd != vecTaxa.get(i)) {
+				for (HerbierPic pic : vecTaxa.get(i).getPics()) {
+					pic.setTaxon(taxonUpd);
+					taxonUpd.addPic(pic);
+				}
+			}
+		}
+		
+		notifyDataListeners(UpdateType.TAXON, idx.length > 0 ? idx[idx.length-1] : 0);
+		return idx;
+	}
+
+	/**
+	 * Saves the specified locations in a single database transaction.
+	 * Refreshes the saved locations in the location cache,
+	 * then notifies data listeners once.
+	 * 
+	 * @param locations  the locations to save
+	 * @return the indices of the saved locations, in the order of <code>locations</code>
+	 * @throws ValidationException  if saving any of the locations is invalid
+	 */
+	public int[] saveLocations(Collection<Location> locations) throws ValidationException {
+		int[] idx = storeLocations(locations);
+		notifyDataListeners(UpdateType.LOCATION, idx.length > 0 ? idx[idx.length-1] : 0);
+		return idx;
+	}
+	
+	/**
+	 * Saves the specified locations in a single database transaction,
+	 * and refreshes them in the location cache, without notifying data listeners.
+	 * 
+	 * @param locations  the locations to save
+	 * @return the indices of the saved locations, in the order of <code>locations</code>
+	 * @throws ValidationException  if saving any of the locations is invalid
+	 */
+	private int[] storeLocations(Collection<Location> locations) throws ValidationException {
+		log.info("Saving " + locations.size() + " locations");
+		for (Location location : locations) {
+			locationValidator.validateSave(location);
+		}
+		
+		CacheSnapshot.getInstance().invalidate();
+		int[] idx = DataAccess.getInstance().saveLocations(new Vector<>(locations));
+		if (idx == null) {
+			throw new ValidationException("La sauvegarde des lieux a échoué");
+		}
+		
+		for (int idxLocation : idx) {
+			LocationCache.getInstance().refresh(idxLocation);
+		}
+		ExpeditionManager.getInstance().clearExpeditions();
+		return idx;
+	}
+
 	/**
 	 * Saves the specified expedition to database.
 	 * 
@@ -491,6 +816,7 @@ public class Controller {
 		expeditionValidator.validateSave(expedition);
 
 		int idx = DataAccess.getInstance().saveExpedition(expedition);
+		ExpeditionManager.getInstance().clearExpeditions();
 
 		notifyDataListeners(UpdateType.EXPEDITION, idx);
 		return idx;
@@ -525,7 +851,7 @@ public class Controller {
 		// make sure caches are up-to-date before exporting
 		reloadCache();
 		
-		ExportManager.getInstance().export(TaxonCache.getInstance().getTopLevel());
+		ExportManager.getInstance().export(CacheVersion.getSnapshot());
 	}
 	
 	public void uploadWebsite(ProgressListener progress, boolean bOnlyModified) {
@@ -574,8 +900,29 @@ public class Controller {
 		return vecPics;
 	}
 	
+	/**
+	 * Makes again the thumbnails and medium-size copies of modified pictures.
+	 * @param progress  the progress listener
+	 */
+	public void regenerateThumbnails(ProgressListener progress) {
+		ThumbnailRegenerator.getInstance().regenerate(progress);
+	}
+	
+	/**
+	 * Creates a thumbnail of a picture if missing, and waits until it is created.
+	 * 
+	 * @param orig   the original picture
+	 * @param thumb  the thumbnail file
+	 */
 	public void createThumbnailIfMissing(File orig, File thumb) {
-		importer.createImageIfMissing(orig, thumb, 500, true);
+		try {
+			ThumbnailEngine.getInstance().createNowIfMissing(orig, 
+					new ThumbnailEngine.Derivative(thumb, ThumbnailEngine.mediumSize)).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			log.error("Failed to create thumbnail: " + e.getMessage());
+		}
 	}
 	
 	/**
@@ -598,10 +945,21 @@ public class Controller {
 			}
 		}
 		
+		// finish thumbnails of imported pictures
+		ThumbnailEngine.getInstance().shutdown();
+		
+		// keep parsed image metadata for next scans
+		MetadataCache.getInstance().saveIfDirty();
+		
+		// keep a fresh cache snapshot for next startup
+		CacheSnapshot.getInstance().saveIfDirty();
+		
 		// cleanup and close
-		TaxonCache.getInstance().clear();
-		PictureCache.getInstance().clear();
-		LocationCache.getInstance().clear();
+		synchronized (CacheVersion.lock) {
+			TaxonCache.getInstance().clear();
+			PictureCache.getInstance().clear();
+			LocationCache.getInstance().clear();
+		}
 		
 		DataAccess.getInstance().terminate();
 		log.info("Bye !");
@@ -637,25 +995,47 @@ public class Controller {
 	}
 
 	
-	private void setTaxonParentInfo(Vector<Taxon> taxa) {
-		for (Taxon taxon : taxa) {
-			int idxParent = taxon.getIdxParent();
-			if (idxParent > 0) {
-				Taxon parent = TaxonCache.getInstance().getTaxon(idxParent);
-				if (parent != null) {
-					taxon.setParent(parent);
-					parent.addChild(taxon);
-				}
-			}
+	/**
+	 * Sorts search results by the specified ordering, if any.
+	 * The sort is stable, so results that compare equal keep their relevance order.
+	 * 
+	 * @param hits        the search results, best first
+	 * @param order       the ordering, or null to keep relevance order
+	 * @param comparator  the comparator of the ordering
+	 * @return  the sorted results
+	 */
+	private static <T> List<T> sortHits(List<T> hits, eOrdering order, Comparator<? super T> comparator) {
+		if (order != null) {
+			Collections.sort(hits, comparator);
 		}
+		return hits;
 	}
-
+	
+	/**
+	 * Copies the first objects of a sorted list.
+	 * @param sorted  the sorted objects
+	 * @param limit   the max number of objects to copy, or 0 for all
+	 * @return  a new vector of objects
+	 */
+	private static <T> Vector<T> select(List<T> sorted, int limit) {
+		int n = (limit > 0 ? Math.min(limit, sorted.size()) : sorted.size());
+		return new Vector<>(sorted.subList(0, n));
+	}
+	
+	/**
+	 * Checks if a search filter is set.
+	 * Filtered searches are answered by the in-memory text indices.
+	 */
+	static boolean isFiltered(String filter) {
+		return filter != null && !TextIndex.normalize(filter.replace('%', ' ')).isEmpty();
+	}
+	
 
 	private Controller() {
 		vecDataListeners = new Vector<DataListener>();
 		Logger.setGlobalDebug(true);
 		
-		reloadCache();
+		loadCache();
 		
 		// set default location from app param
 		AppParam apDefLocation = getAppParam(AppParamName.DEFAULT_LOCATION);
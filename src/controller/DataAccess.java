@@ -1,14 +1,18 @@
 package controller;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.BitSet;
 import java.util.Date;
+import java.util.List;
 import java.util.Vector;
 
 import model.AppParam;
 import model.AppParamName;
+import model.DataObject;
 import model.Expedition;
 import model.HerbierPic;
 import model.Location;
@@ -18,6 +22,7 @@ import model.TaxonRank;
 
 import common.base.Logger;
 import controller.DatabaseTools.eOrdering;
+import controller.listeners.FetchListener;
 
 /**
  * Class for database access.
@@ -30,9 +35,15 @@ import controller.DatabaseTools.eOrdering;
 public class DataAccess {
 	private static final Logger log = new Logger("DataAccess", true);
 	
+	/** The default number of rows fetched per round-trip by streaming queries */
+	private static final int defaultFetchSize = 500;
+	
 	private DataObjectFactory objectFactory;
 	private DatabaseTools dbTools;
 	
+	/** The number of rows fetched per round-trip by streaming queries */
+	private int fetchSize;
+	
 	/** the singleton instance */
 	private static DataAccess instance;
 	
@@ -50,6 +61,18 @@ public class DataAccess {
 		dbTools.closeConnection();
 	}
 	
+	/**
+	 * Sets the number of rows fetched per round-trip by streaming queries.
+	 * Larger values use more memory but fewer round-trips.
+	 * 
+	 * @param fetchSize  the fetch size, must be positive
+	 */
+	public void setFetchSize(int fetchSize) {
+		if (fetchSize > 0) {
+			this.fetchSize = fetchSize;
+		}
+	}
+	
 	
 	public Vector<HerbierPic> getHerbierPics(eOrdering eOrder, String filter) {
 		return getHerbierPics(" WHERE 1=1 ", eOrder, filter);
@@ -64,7 +87,26 @@ public class DataAccess {
 		
 	public Vector<HerbierPic> getHerbierPics(String where, eOrdering eOrder, String filter) {
 		Vector<HerbierPic> vecResult = new Vector<HerbierPic>();
-				
+		if (streamHerbierPics(where, eOrder, filter, new VectorFetcher<>(vecResult)) < 0) {
+			return null;
+		}
+		log.debug("Returning " + vecResult.size() + " pictures");
+		return vecResult;
+	}
+	
+	/**
+	 * Fetches pictures from database, using a forward-only cursor.
+	 * Each picture is passed to the listener as soon as it is read,
+	 * without keeping the whole result in memory.
+	 * 
+	 * @param where     the where-clause (may not be null)
+	 * @param eOrder    optional ordering
+	 * @param filter    optional filter
+	 * @param listener  the listener of fetched pictures
+	 * @return  the number of fetched pictures, or -1 if fetching failed
+	 */
+	public int streamHerbierPics(String where, eOrdering eOrder, String filter, 
+			FetchListener<HerbierPic> listener) {
 		where += getFilterWhere(filter, "picFilename", "picLocation", "picRemarks");
 
 		String order = "";
@@ -96,29 +138,152 @@ public class DataAccess {
 		
 		String query = "SELECT * FROM Picture " +
 			where + order;
-		log.debug("SQL: " + query);
-		
+		return fetch(query, pictureReader, listener, "pics");
+	}
+	
+
+	/**
+	 * Fetches all locations, taxa and pictures, to fill the caches.
+	 * The three tables are read one after the other on a single connection,
+	 * with forward-only cursors, and then linked together by the returned graph.
+	 * 
+	 * @return  the linked graph of objects, or null if fetching failed
+	 */
+	public CacheGraph fetchCacheGraph() {
+		CacheGraph graph = new CacheGraph();
+		if (!fetchGraphRows(graph, true, true, " WHERE 1=1 ")) {
+			return null;
+		}
+		graph.link();
+		return graph;
+	}
+	
+	/**
+	 * Fetches rows of the location, taxon and picture tables into an unlinked graph.
+	 * The tables are read one after the other on a single connection,
+	 * with forward-only cursors.
+	 * 
+	 * @param graph          the graph to add fetched objects to
+	 * @param withLocations  true to fetch all locations
+	 * @param withTaxa       true to fetch all taxa
+	 * @param wherePics      the where-clause of pictures to fetch, or null for none
+	 * @return  true if fetching succeeded
+	 */
+	public boolean fetchGraphRows(CacheGraph graph, boolean withLocations, 
+			boolean withTaxa, String wherePics) {
+		Connection conn = dbTools.getConnection();
 		try {
-			Connection conn = dbTools.getConnection();
-			Statement stmt = conn.createStatement(ResultSet.TYPE_SCROLL_SENSITIVE, 
-                    ResultSet.CONCUR_UPDATABLE);
-			ResultSet rs = stmt.executeQuery(query);
-			rs.beforeFirst();
+			Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, 
+					ResultSet.CONCUR_READ_ONLY);
+			stmt.setFetchSize(fetchSize);
+			
+			if (withLocations) {
+				ResultSet rs = stmt.executeQuery("SELECT * FROM Location");
+				while (rs.next()) {
+					graph.addLocation(objectFactory.createLocation(rs));
+				}
+				rs.close();
+			}
+			
+			if (withTaxa) {
+				ResultSet rs = stmt.executeQuery("SELECT * FROM Taxon");
+				while (rs.next()) {
+					graph.addTaxon(objectFactory.createTaxon(rs));
+				}
+				rs.close();
+			}
+			
+			if (wherePics != null) {
+				String query = "SELECT * FROM Picture " + wherePics;
+				log.debug("SQL: " + query);
+				ResultSet rs = stmt.executeQuery(query);
+				while (rs.next()) {
+					graph.addPicture(objectFactory.createUnlinkedPicture(rs), rs.getInt("picIdxLocation"));
+				}
+				rs.close();
+			}
+			stmt.close();
+		} catch (SQLException e) {
+			log.error("Fetching cache graph failed: " + e.getMessage());
+			return false;
+		} finally {
+			dbTools.releaseConnection(conn);
+		}
+		return true;
+	}
+	
+	/**
+	 * Fetches the database indices of all pictures.
+	 * 
+	 * @return  the set of picture indices, or null if fetching failed
+	 */
+	public BitSet fetchPictureIndices() {
+		BitSet result = new BitSet();
+		Connection conn = dbTools.getConnection();
+		try {
+			Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, 
+					ResultSet.CONCUR_READ_ONLY);
+			stmt.setFetchSize(fetchSize);
+			ResultSet rs = stmt.executeQuery("SELECT idxPicture FROM Picture");
+			while (rs.next()) {
+				result.set(rs.getInt(1));
+			}
+			rs.close();
+			stmt.close();
+		} catch (SQLException e) {
+			log.error("Fetching picture indices failed: " + e.getMessage());
+			result = null;
+		} finally {
+			dbTools.releaseConnection(conn);
+		}
+		return result;
+	}
+	
+	/**
+	 * Fetches a cheap summary of the database state, to check 
+	 * if a cache snapshot is still up-to-date.
+	 * 
+	 * @return  the database stamp, or null if fetching failed
+	 */
+	public CacheSnapshot.Stamp fetchCacheStamp() {
+		CacheSnapshot.Stamp stamp = null;
+		Connection conn = dbTools.getConnection();
+		try {
+			Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, 
+					ResultSet.CONCUR_READ_ONLY);
+			ResultSet rs = stmt.executeQuery("SELECT count(*), max(picUpdatedAt), " +
+					"max(idxPicture) FROM Picture");
+			rs.next();
+			int nPics = rs.getInt(1);
+			Date tMaxUpdatedAt = rs.getTimestamp(2);
+			int maxIdxPic = rs.getInt(3);
+			rs.close();
+			
+			long checksumTaxa = 0;
+			long checksumLocations = 0;
+			rs = stmt.executeQuery("CHECKSUM TABLE Taxon, Location");
 			while (rs.next()) {
-				HerbierPic pic = objectFactory.createPicture(rs);
-				vecResult.add(pic);
+				String table = rs.getString(1);
+				if (table.endsWith("Taxon")) {
+					checksumTaxa = rs.getLong(2);
+				} else {
+					checksumLocations = rs.getLong(2);
+				}
 			}
-			log.debug("Returning " + vecResult.size() + " pictures");
+			rs.close();
 			stmt.close();
-			return vecResult;
 			
+			stamp = new CacheSnapshot.Stamp(nPics, 
+					tMaxUpdatedAt == null ? 0L : tMaxUpdatedAt.getTime(), 
+					maxIdxPic, checksumTaxa, checksumLocations);
 		} catch (SQLException e) {
-			log.error("Fetching pics failed: " + e.getMessage());
+			log.error("Fetching cache stamp failed: " + e.getMessage());
+		} finally {
+			dbTools.releaseConnection(conn);
 		}
-		return null;
+		return stamp;
 	}
 	
-
 	/**
 	 * Saves the specified {@link HerbierPic} to database.
 	 * 
@@ -126,57 +291,27 @@ public class DataAccess {
 	 * @return the database index of saved object
 	 */
 	protected int savePicture(HerbierPic obj) {
-		Connection conn = dbTools.getConnection();
 		log.info("Saving " + obj);
 
 		int idx = -1;
-		int idxTaxon = obj.getTaxon() == null ? -1 : obj.getTaxon().getIdx();
-		int idxLocation = obj.getLocation() == null ? -1 : obj.getLocation().getIdx();
-		
+		Connection conn = dbTools.getConnection();
 		try {
-			Statement stmt = conn.createStatement();
-			
+			PreparedStatement stmt;
 			if (obj.getIdx() > 0) {
 				// update existing
-				String query = String.format("UPDATE Picture SET picFilename = %s, " +
-						"picShotAt = %s, picIdxLocation = %s, picRemarks = %s, " +
-						"picTaxon = %s, picRating = %d, picUpdatedAt = %s " +
-						"WHERE idxPicture = %d", 
-						DatabaseTools.toSQLstring(obj.getFileName()), 
-						DatabaseTools.toSqlDateTime(obj.getShotAt()), 
-						idxLocation <= 0 ? "null" : String.valueOf(idxLocation), 
-						DatabaseTools.toSQLstring(obj.getRemarks()), 
-						idxTaxon <= 0 ? "null" : String.valueOf(idxTaxon), 
-						obj.getRating(),
-						DatabaseTools.toSqlDateTime(obj.getUpdatedAt()), 
-						obj.getIdx() );
-				log.debug("SQL: " + query);
-				stmt.execute(query);
-				idx = obj.getIdx();
+				stmt = dbTools.prepare(conn, SqlStatement.PICTURE_UPDATE);
+				int iParam = bindPicture(stmt, obj);
+				stmt.setInt(iParam, obj.getIdx());
 			} else {
 				// create new
-				String query = String.format("INSERT INTO Picture " +
-						"(idxPicture, picFilename, picShotAt, picIdxLocation, " +
-						"picRemarks, picTaxon, picRating, picUpdatedAt) " +
-						"VALUES (null, %s, %s, %s, %s, %s, %d, now() )", 
-						DatabaseTools.toSQLstring(obj.getFileName()), 
-						DatabaseTools.toSqlDateTime(obj.getShotAt()), 
-						idxLocation <= 0 ? "null" : String.valueOf(idxLocation), 
-						DatabaseTools.toSQLstring(obj.getRemarks()),
-						idxTaxon <= 0 ? "null" : String.valueOf(idxTaxon), 
-						obj.getRating() );
-				log.debug("SQL: " + query);
-				stmt.executeUpdate(query, Statement.RETURN_GENERATED_KEYS);
-				
-				// GET ID
-				ResultSet rs = stmt.getGeneratedKeys();
-				if (rs.next())
-					idx = rs.getInt(1);
-				rs.close();
+				stmt = dbTools.prepare(conn, SqlStatement.PICTURE_INSERT);
+				bindPicture(stmt, obj);
 			}
-			stmt.close();
+			idx = executeSave(stmt, obj.getIdx());
 		} catch (SQLException e) {
 			log.error("Saving Picture failed: " + e.getMessage());
+		} finally {
+			dbTools.releaseConnection(conn);
 		}
 		return idx;
 	}
@@ -187,43 +322,51 @@ public class DataAccess {
 	 * @param obj the picture to delete
 	 */
 	protected void deletePicture(HerbierPic obj) {
-		Connection conn = dbTools.getConnection();
 		log.info("Deleting " + obj);
-		try {
-			Statement stmt = conn.createStatement();
-			if (obj.getIdx() > 0) {
-				String query = String.format("DELETE FROM Picture WHERE idxPicture = %d", 
-						obj.getIdx() );
-				log.debug("SQL: " + query);
-				stmt.execute(query);
-			} else {
-				log.error("Picture to delete has invalid idx: " + obj);
-			}
-			stmt.close();
-		} catch (SQLException e) {
-			log.error("Deleting Picture failed: " + e.getMessage());
+		if (obj.getIdx() > 0) {
+			executeDelete(SqlStatement.PICTURE_DELETE, obj.getIdx());
+		} else {
+			log.error("Picture to delete has invalid idx: " + obj);
 		}
 	}
 
 	public Taxon getTaxon(int idxTaxon) {
-		String where = " WHERE idxTaxon = " + idxTaxon;
-		Vector<Taxon> taxons = getTaxons(where, null, null);
-		if (taxons.isEmpty()) {
-			return null;
-		} else {
-			return taxons.firstElement();
+		Taxon taxon = null;
+		Connection conn = dbTools.getConnection();
+		try {
+			PreparedStatement stmt = dbTools.prepare(conn, SqlStatement.TAXON_SELECT_BY_IDX);
+			stmt.setInt(1, idxTaxon);
+			ResultSet rs = stmt.executeQuery();
+			if (rs.next()) {
+				taxon = objectFactory.createTaxon(rs);
+			}
+			rs.close();
+		} catch (SQLException e) {
+			log.error("Fetching taxon " + idxTaxon + " failed: " + e.getMessage());
+		} finally {
+			dbTools.releaseConnection(conn);
 		}
+		return taxon;
 	}
 	
 	public Taxon getTaxon(String name, TaxonRank rank) {
-		String where = " WHERE taxRank = " + DatabaseTools.toSQLstring(rank.name()) +
-				" AND taxName = '" + name + "' ";
-		Vector<Taxon> taxons = getTaxons(where, null, null);
-		if (taxons.isEmpty()) {
-			return null;
-		} else {
-			return taxons.firstElement();
+		Taxon taxon = null;
+		Connection conn = dbTools.getConnection();
+		try {
+			PreparedStatement stmt = dbTools.prepare(conn, SqlStatement.TAXON_SELECT_BY_NAME);
+			stmt.setString(1, rank.name());
+			stmt.setString(2, name);
+			ResultSet rs = stmt.executeQuery();
+			if (rs.next()) {
+				taxon = objectFactory.createTaxon(rs);
+			}
+			rs.close();
+		} catch (SQLException e) {
+			log.error("Fetching taxon " + name + " failed: " + e.getMessage());
+		} finally {
+			dbTools.releaseConnection(conn);
 		}
+		return taxon;
 	}
 	
 	public Vector<Taxon> getTaxons(TaxonRank rank) {
@@ -237,7 +380,26 @@ public class DataAccess {
 	
 	public Vector<Taxon> getTaxons(String where, eOrdering eOrder, String filter) {
 		Vector<Taxon> vecResult = new Vector<>();
-				
+		if (streamTaxons(where, eOrder, filter, new VectorFetcher<>(vecResult)) < 0) {
+			return null;
+		}
+		log.debug("Returning " + vecResult.size() + " taxons");
+		return vecResult;
+	}
+	
+	/**
+	 * Fetches taxons from database, using a forward-only cursor.
+	 * Each taxon is passed to the listener as soon as it is read,
+	 * without keeping the whole result in memory.
+	 * 
+	 * @param where     optional where-clause
+	 * @param eOrder    optional ordering
+	 * @param filter    optional filter
+	 * @param listener  the listener of fetched taxons
+	 * @return  the number of fetched taxons, or -1 if fetching failed
+	 */
+	public int streamTaxons(String where, eOrdering eOrder, String filter, 
+			FetchListener<Taxon> listener) {
 		if (where == null) {
 			where = " WHERE 1=1 ";
 		}
@@ -262,25 +424,7 @@ public class DataAccess {
 		
 		String query = "SELECT * FROM Taxon " +
 			where + order;
-		
-		try {
-			Connection conn = dbTools.getConnection();
-			Statement stmt = conn.createStatement(ResultSet.TYPE_SCROLL_SENSITIVE, 
-                    ResultSet.CONCUR_UPDATABLE);
-			ResultSet rs = stmt.executeQuery(query);
-			rs.beforeFirst();
-			while (rs.next()) {
-				Taxon taxon = objectFactory.createTaxon(rs);
-				vecResult.add(taxon);
-			}
-			log.debug("Returning " + vecResult.size() + " taxons");
-			stmt.close();
-			return vecResult;
-			
-		} catch (SQLException e) {
-			log.error("Fetching taxa failed: " + e.getMessage());
-		}
-		return null;
+		return fetch(query, taxonReader, listener, "taxa");
 	}
 	
 	/**
@@ -290,19 +434,47 @@ public class DataAccess {
 	 * @return  the fetched location, or null if not found
 	 */
 	public Location getLocation(int idxLocation) {
-		String where = " WHERE idxLocation = " + idxLocation;
-		Vector<Location> locations = getLocations(where, null, null);
-		if (locations.isEmpty()) {
-			return null;
-		} else {
-			return locations.firstElement();
+		Location location = null;
+		Connection conn = dbTools.getConnection();
+		try {
+			PreparedStatement stmt = dbTools.prepare(conn, SqlStatement.LOCATION_SELECT_BY_IDX);
+			stmt.setInt(1, idxLocation);
+			ResultSet rs = stmt.executeQuery();
+			if (rs.next()) {
+				location = objectFactory.createLocation(rs);
+			}
+			rs.close();
+		} catch (SQLException e) {
+			log.error("Fetching location " + idxLocation + " failed: " + e.getMessage());
+		} finally {
+			dbTools.releaseConnection(conn);
 		}
+		return location;
 	}
 	
 
 	public Vector<Location> getLocations(String where, eOrdering eOrder, String filter) {
 		Vector<Location> vecResult = new Vector<>();
-				
+		if (streamLocations(where, eOrder, filter, new VectorFetcher<>(vecResult)) < 0) {
+			return null;
+		}
+		log.debug("Returning " + vecResult.size() + " locations");
+		return vecResult;
+	}
+	
+	/**
+	 * Fetches locations from database, using a forward-only cursor.
+	 * Each location is passed to the listener as soon as it is read,
+	 * without keeping the whole result in memory.
+	 * 
+	 * @param where     optional where-clause
+	 * @param eOrder    optional ordering
+	 * @param filter    optional filter
+	 * @param listener  the listener of fetched locations
+	 * @return  the number of fetched locations, or -1 if fetching failed
+	 */
+	public int streamLocations(String where, eOrdering eOrder, String filter, 
+			FetchListener<Location> listener) {
 		if (where == null) {
 			where = " WHERE 1=1 ";
 		}
@@ -332,25 +504,7 @@ public class DataAccess {
 		
 		String query = "SELECT * FROM Location " +
 			where + order;
-		
-		try {
-			Connection conn = dbTools.getConnection();
-			Statement stmt = conn.createStatement(ResultSet.TYPE_SCROLL_SENSITIVE, 
-                    ResultSet.CONCUR_UPDATABLE);
-			ResultSet rs = stmt.executeQuery(query);
-			rs.beforeFirst();
-			while (rs.next()) {
-				Location obj = objectFactory.createLocation(rs);
-				vecResult.add(obj);
-			}
-			log.debug("Returning " + vecResult.size() + " locations");
-			stmt.close();
-			return vecResult;
-			
-		} catch (SQLException e) {
-			log.error("Fetching locations failed: " + e.getMessage());
-		}
-		return null;
+		return fetch(query, locationReader, listener, "locations");
 	}
 
 	/**
@@ -360,63 +514,27 @@ public class DataAccess {
 	 * @return the database index of saved object
 	 */
 	protected int saveLocation(Location obj) {
-		Connection conn = dbTools.getConnection();
 		log.info("Saving " + obj);
 
 		int idx = -1;
-		
+		Connection conn = dbTools.getConnection();
 		try {
-			Statement stmt = conn.createStatement();
-			
+			PreparedStatement stmt;
 			if (obj.getIdx() > 0) {
 				// update existing
-				String query = String.format("UPDATE Location SET locName = %s, " +
-						"locDesc = %s, locKind = %s, locTown = %s, locRegion = %s, locState = %s, " +
-						"locAltitude = %d, locLongitude = %s, locLatitude = %s, locMapZoom = %d " +
-						"WHERE idxLocation = %d", 
-						DatabaseTools.toSQLstring(obj.getName()), 
-						DatabaseTools.toSQLstring(obj.getDescription()),
-						DatabaseTools.toSQLstring(obj.getKind()), 
-						DatabaseTools.toSQLstring(obj.getTown()), 
-						DatabaseTools.toSQLstring(obj.getRegion()), 
-						DatabaseTools.toSQLstring(obj.getState()),
-						obj.getAltitude(), 
-						DatabaseTools.toSQLDouble(obj.getLongitude()),
-						DatabaseTools.toSQLDouble(obj.getLatitude()),
-						obj.getMapZoom(),
-						obj.getIdx() );
-				log.debug("SQL: " + query);
-				stmt.execute(query);
-				idx = obj.getIdx();
+				stmt = dbTools.prepare(conn, SqlStatement.LOCATION_UPDATE);
+				int iParam = bindLocation(stmt, obj);
+				stmt.setInt(iParam, obj.getIdx());
 			} else {
 				// create new
-				String query = String.format("INSERT INTO Location " +
-						"(idxLocation, locName, locDesc, locKind, locTown, " +
-						"locRegion, locState, locAltitude, " +
-						"locLongitude, locLatitude, locMapZoom) " +
-						"VALUES (null, %s, %s, %s, %s, %s, %s, %d, %s, %s, %d)", 
-						DatabaseTools.toSQLstring(obj.getName()), 
-						DatabaseTools.toSQLstring(obj.getDescription()),
-						DatabaseTools.toSQLstring(obj.getKind()), 
-						DatabaseTools.toSQLstring(obj.getTown()), 
-						DatabaseTools.toSQLstring(obj.getRegion()), 
-						DatabaseTools.toSQLstring(obj.getState()), 
-						obj.getAltitude(), 
-						DatabaseTools.toSQLDouble(obj.getLongitude()),
-						DatabaseTools.toSQLDouble(obj.getLatitude()),
-						obj.getMapZoom());
-				log.debug("SQL: " + query);
-				stmt.executeUpdate(query, Statement.RETURN_GENERATED_KEYS);
-				
-				// GET ID
-				ResultSet rs = stmt.getGeneratedKeys();
-				if (rs.next())
-					idx = rs.getInt(1);
-				rs.close();
+				stmt = dbTools.prepare(conn, SqlStatement.LOCATION_INSERT);
+				bindLocation(stmt, obj);
 			}
-			stmt.close();
+			idx = executeSave(stmt, obj.getIdx());
 		} catch (SQLException e) {
 			log.error("Saving Location failed: " + e.getMessage());
+		} finally {
+			dbTools.releaseConnection(conn);
 		}
 		return idx;
 	}
@@ -431,7 +549,26 @@ public class DataAccess {
 	 */
 	public Vector<Expedition> getExpeditions(String where, eOrdering eOrder, String filter) {
 		Vector<Expedition> vecResult = new Vector<>();
-				
+		if (streamExpeditions(where, eOrder, filter, new VectorFetcher<>(vecResult)) < 0) {
+			return null;
+		}
+		log.debug("Returning " + vecResult.size() + " expeditions");
+		return vecResult;
+	}
+	
+	/**
+	 * Fetches expeditions from database, using a forward-only cursor.
+	 * Each expedition is passed to the listener as soon as it is read,
+	 * without keeping the whole result in memory.
+	 * 
+	 * @param where     optional where-clause
+	 * @param eOrder    optional ordering
+	 * @param filter    optional filter
+	 * @param listener  the listener of fetched expeditions
+	 * @return  the number of fetched expeditions, or -1 if fetching failed
+	 */
+	public int streamExpeditions(String where, eOrdering eOrder, String filter, 
+			FetchListener<Expedition> listener) {
 		if (where == null) {
 			where = " WHERE 1=1 ";
 		}
@@ -457,25 +594,7 @@ public class DataAccess {
 		
 		String query = "SELECT * FROM Expedition " +
 			where + order;
-		
-		try {
-			Connection conn = dbTools.getConnection();
-			Statement stmt = conn.createStatement(ResultSet.TYPE_SCROLL_SENSITIVE, 
-                    ResultSet.CONCUR_UPDATABLE);
-			ResultSet rs = stmt.executeQuery(query);
-			rs.beforeFirst();
-			while (rs.next()) {
-				Expedition obj = objectFactory.createExpedition(rs);
-				vecResult.add(obj);
-			}
-			log.debug("Returning " + vecResult.size() + " expeditions");
-			stmt.close();
-			return vecResult;
-			
-		} catch (SQLException e) {
-			log.error("Fetching expeditions failed: " + e.getMessage());
-		}
-		return null;
+		return fetch(query, expeditionReader, listener, "expeditions");
 	}
 
 	/**
@@ -485,74 +604,47 @@ public class DataAccess {
 	 * @return the database index of saved object
 	 */
 	protected int saveExpedition(Expedition obj) {
-		Connection conn = dbTools.getConnection();
 		log.info("Saving " + obj);
 
 		int idx = -1;
-		
+		Connection conn = dbTools.getConnection();
 		try {
-			Statement stmt = conn.createStatement();
-			
+			PreparedStatement stmt;
 			if (obj.getIdx() > 0) {
 				// update existing
-				String query = String.format("UPDATE Expedition SET expName = %s, " +
-						"expDesc = %s, expLocation = %d, expFrom = %s, expTo = %s, " +
-						"expTrack = %s " +
-						"WHERE idxExpedition = %d", 
-						DatabaseTools.toSQLstring(obj.getTitle()), 
-						DatabaseTools.toSQLstring(obj.getNotes()),
-						obj.getLocation().getIdx(), 
-						DatabaseTools.toSqlDateTime(obj.getDateFrom()), 
-						DatabaseTools.toSqlDateTime(obj.getDateTo()), 
-						DatabaseTools.toSQLstring(obj.getTrack()),
-						obj.getIdx() );
-				log.debug("SQL: " + query);
-				stmt.execute(query);
-				idx = obj.getIdx();
+				stmt = dbTools.prepare(conn, SqlStatement.EXPEDITION_UPDATE);
+				int iParam = bindExpedition(stmt, obj);
+				stmt.setInt(iParam, obj.getIdx());
 			} else {
 				// create new
-				String query = String.format("INSERT INTO Expedition " +
-						"(idxExpedition, expName, expDesc, expLocation, " +
-						"expFrom, expTo, expTrack) " +
-						"VALUES (null, %s, %s, %d, %s, %s, %s)", 
-						DatabaseTools.toSQLstring(obj.getTitle()), 
-						DatabaseTools.toSQLstring(obj.getNotes()),
-						obj.getLocation().getIdx(), 
-						DatabaseTools.toSqlDateTime(obj.getDateFrom()), 
-						DatabaseTools.toSqlDateTime(obj.getDateTo()),
-						DatabaseTools.toSQLstring(obj.getTrack()));
-				log.debug("SQL: " + query);
-				stmt.executeUpdate(query, Statement.RETURN_GENERATED_KEYS);
-				
-				// GET ID
-				ResultSet rs = stmt.getGeneratedKeys();
-				if (rs.next())
-					idx = rs.getInt(1);
-				rs.close();
+				stmt = dbTools.prepare(conn, SqlStatement.EXPEDITION_INSERT);
+				bindExpedition(stmt, obj);
 			}
-			stmt.close();
+			idx = executeSave(stmt, obj.getIdx());
 		} catch (SQLException e) {
 			log.error("Saving Expedition failed: " + e.getMessage());
+		} finally {
+			dbTools.releaseConnection(conn);
 		}
 		return idx;
 	}
 
 	protected AppParam getAppParam(AppParamName apName) {
-		String query = "SELECT * FROM AppParam WHERE apName = '" + apName.getDbName() + "'";
 		AppParam obj = null;
 		
+		Connection conn = dbTools.getConnection();
 		try {
-			Connection conn = dbTools.getConnection();
-			Statement stmt = conn.createStatement(ResultSet.TYPE_SCROLL_SENSITIVE, 
-                    ResultSet.CONCUR_UPDATABLE);
-			ResultSet rs = stmt.executeQuery(query);
-			rs.beforeFirst();
+			PreparedStatement stmt = dbTools.prepare(conn, SqlStatement.APPPARAM_SELECT_BY_NAME);
+			stmt.setString(1, apName.getDbName());
+			ResultSet rs = stmt.executeQuery();
 			while (rs.next()) {
 				obj = objectFactory.createAppParam(rs);
 			}
-			stmt.close();
+			rs.close();
 		} catch (SQLException e) {
 			log.error("Fetching AppParam " + apName.getDbName() + " failed: " + e.getMessage());
+		} finally {
+			dbTools.releaseConnection(conn);
 		}
 		
 		if (obj == null) {
@@ -574,26 +666,26 @@ public class DataAccess {
 		} else {
 			log.info("Saving " + ap);
 			
-			String strVal  = "NULL";
-			String numVal  = "NULL";
-			String dateVal = "NULL";
+			String strVal  = null;
+			Double numVal  = null;
+			Date   dateVal = null;
 			
 			switch (ap.getKind()) {
 			case BOOL:
-				numVal = ap.getBoolValue() ? "1" : "0";
+				numVal = Double.valueOf(ap.getBoolValue() ? 1.0 : 0.0);
 				break;
 			case INT:
-				numVal = String.format("%d", ap.getIntValue());
+				numVal = Double.valueOf(ap.getIntValue().doubleValue());
 				break;
 			case FLOAT:
-				numVal = String.format("%f", ap.getDoubleValue());
+				numVal = Double.valueOf(ap.getDoubleValue());
 				break;
 			case DATE:
-				dateVal = DatabaseTools.toSqlDateTime(ap.getDateValue());
+				dateVal = ap.getDateValue();
 				break;
 			case STR:
 				if (ap.getStrValue() != null && !ap.getStrValue().isEmpty()) {	
-					strVal = DatabaseTools.toSQLstring(ap.getStrValue());
+					strVal = ap.getStrValue();
 				}
 				break;
 			default:
@@ -601,18 +693,18 @@ public class DataAccess {
 				break;
 			}
 			
+			Connection conn = dbTools.getConnection();
 			try {
-				Connection conn = dbTools.getConnection();
-				Statement stmt = conn.createStatement();
-				String query = String.format("UPDATE AppParam SET " +
-						"apStrVal = %s, apNumVal = %s, apDateVal = %s " +
-						"WHERE idxAppParam = %d", 
-						strVal, numVal, dateVal, ap.getIdx() );
-				log.debug("SQL: " + query);
-				stmt.execute(query);
-				stmt.close();
+				PreparedStatement stmt = dbTools.prepare(conn, SqlStatement.APPPARAM_UPDATE);
+				DatabaseTools.bindString(stmt, 1, strVal);
+				DatabaseTools.bindDouble(stmt, 2, numVal);
+				DatabaseTools.bindDateTime(stmt, 3, dateVal);
+				stmt.setInt(4, ap.getIdx());
+				stmt.executeUpdate();
 			} catch (SQLException e) {
 				log.error("Saving " + ap + " failed: " + e.getMessage());
+			} finally {
+				dbTools.releaseConnection(conn);
 			}
 		}
 	}
@@ -625,55 +717,25 @@ public class DataAccess {
 	 */
 	protected int saveTaxon(Taxon obj) {
 		int idx = -1;
-		Connection conn = dbTools.getConnection();
 		log.info("Saving " + obj);
+		Connection conn = dbTools.getConnection();
 		try {
-			Statement stmt = conn.createStatement();
-			
-			int idxParent = -1;
-			if (obj.getParent() != null) {
-				idxParent = obj.getParent().getIdx();
-			}
-			
+			PreparedStatement stmt;
 			if (obj.getIdx() > 0) {
 				// update existing
-				String query = String.format("UPDATE Taxon SET taxName = %s, " +
-						"taxNameFr = %s, taxRank = %s, taxParent = %s, " +
-						"taxOrder = %d, taxTypical = %d " +
-						"WHERE idxTaxon = %d", 
-						DatabaseTools.toSQLstring(obj.getName()), 
-						DatabaseTools.toSQLstring(obj.getNameFr()), 
-						DatabaseTools.toSQLstring(obj.getRank().name()),
-						idxParent <= 0 ? "null" : String.valueOf(idxParent), 
-						obj.getOrder(),
-						obj.isTypical() ? 1 : 0,
-						obj.getIdx() );
-				log.debug("SQL: " + query);
-				stmt.execute(query);
-				idx = obj.getIdx();
+				stmt = dbTools.prepare(conn, SqlStatement.TAXON_UPDATE);
+				int iParam = bindTaxon(stmt, obj);
+				stmt.setInt(iParam, obj.getIdx());
 			} else {
 				// create new
-				String query = String.format("INSERT INTO Taxon " +
-						"(idxTaxon, taxName, taxNameFr, taxRank, taxParent, taxOrder, taxTypical) " +
-						"VALUES (null, %s, %s, %s, %s, %d, %d )", 
-						DatabaseTools.toSQLstring(obj.getName()), 
-						DatabaseTools.toSQLstring(obj.getNameFr()), 
-						DatabaseTools.toSQLstring(obj.getRank().name()),
-						idxParent <= 0 ? "null" : String.valueOf(idxParent), 
-						obj.getOrder(),
-						obj.isTypical() ? 1 : 0);
-				log.debug("SQL: " + query);
-				stmt.executeUpdate(query, Statement.RETURN_GENERATED_KEYS);
-				
-				// GET ID
-				ResultSet rs = stmt.getGeneratedKeys();
-				if (rs.next())
-					idx = rs.getInt(1);
-				rs.close();
+				stmt = dbTools.prepare(conn, SqlStatement.TAXON_INSERT);
+				bindTaxon(stmt, obj);
 			}
-			stmt.close();
+			idx = executeSave(stmt, obj.getIdx());
 		} catch (SQLException e) {
 			log.error("Saving Taxon failed: " + e.getMessage());
+		} finally {
+			dbTools.releaseConnection(conn);
 		}
 		return idx;
 	}
@@ -684,24 +746,71 @@ public class DataAccess {
 	 * @param obj the taxon to delete
 	 */
 	protected void deleteTaxon(Taxon obj) {
-		Connection conn = dbTools.getConnection();
 		log.info("Deleting " + obj);
-		try {
-			Statement stmt = conn.createStatement();
-			if (obj.getIdx() > 0) {
-				String query = String.format("DELETE FROM Taxon WHERE idxTaxon = %d", 
-						obj.getIdx() );
-				log.debug("SQL: " + query);
-				stmt.execute(query);
-			} else {
-				log.error("Taxon to delete has invalid idx: " + obj);
-			}
-			stmt.close();
-		} catch (SQLException e) {
-			log.error("Deleting Taxon failed: " + e.getMessage());
+		if (obj.getIdx() > 0) {
+			executeDelete(SqlStatement.TAXON_DELETE, obj.getIdx());
+		} else {
+			log.error("Taxon to delete has invalid idx: " + obj);
 		}
 	}
 	
+	/**
+	 * Saves the specified pictures to database in a single transaction,
+	 * using JDBC batches for inserts and updates.
+	 * 
+	 * @param objs  the pictures to save
+	 * @return the database indices of saved objects, in the order of <code>objs</code>,
+	 *         or null if the transaction was rolled back
+	 */
+	protected int[] savePictures(List<HerbierPic> objs) {
+		log.info("Saving " + objs.size() + " pictures in batch");
+		return saveBatch(objs, SqlStatement.PICTURE_INSERT, SqlStatement.PICTURE_UPDATE, 
+				new RowBinder<HerbierPic>() {
+			@Override
+			public int bind(PreparedStatement stmt, HerbierPic obj, boolean isUpdate) throws SQLException {
+				return bindPicture(stmt, obj);
+			}
+		});
+	}
+	
+	/**
+	 * Saves the specified taxa to database in a single transaction,
+	 * using JDBC batches for inserts and updates.
+	 * 
+	 * @param objs  the taxa to save
+	 * @return the database indices of saved objects, in the order of <code>objs</code>,
+	 *         or null if the transaction was rolled back
+	 */
+	protected int[] saveTaxa(List<Taxon> objs) {
+		log.info("Saving " + objs.size() + " taxa in batch");
+		return saveBatch(objs, SqlStatement.TAXON_INSERT, SqlStatement.TAXON_UPDATE, 
+				new RowBinder<Taxon>() {
+			@Override
+			public int bind(PreparedStatement stmt, Taxon obj, boolean isUpdate) throws SQLException {
+				return bindTaxon(stmt, obj);
+			}
+		});
+	}
+	
+	/**
+	 * Saves the specified locations to database in a single transaction,
+	 * using JDBC batches for inserts and updates.
+	 * 
+	 * @param objs  the locations to save
+	 * @return the database indices of saved objects, in the order of <code>objs</code>,
+	 *         or null if the transaction was rolled back
+	 */
+	protected int[] saveLocations(List<Location> objs) {
+		log.info("Saving " + objs.size() + " locations in batch");
+		return saveBatch(objs, SqlStatement.LOCATION_INSERT, SqlStatement.LOCATION_UPDATE, 
+				new RowBinder<Location>() {
+			@Override
+			public int bind(PreparedStatement stmt, Location obj, boolean isUpdate) throws SQLException {
+				return bindLocation(stmt, obj);
+			}
+		});
+	}
+	
 	/**
 	 * Counts distinct occurrences in the specified column of the specified table,
 	 * grouped by their value.
@@ -719,8 +828,8 @@ public class DataAccess {
 				" GROUP BY " + column + " ORDER BY " + order;
 		Vector<NamedValue> result = new Vector<>();
 		
+		Connection conn = dbTools.getConnection();
 		try {
-			Connection conn = dbTools.getConnection();
 			Statement stmt = conn.createStatement(ResultSet.TYPE_SCROLL_SENSITIVE, 
                     ResultSet.CONCUR_UPDATABLE);
 			ResultSet rs = stmt.executeQuery(query);
@@ -733,6 +842,8 @@ public class DataAccess {
 			stmt.close();
 		} catch (SQLException e) {
 			log.error("Counting failed: " + e.getMessage());
+		} finally {
+			dbTools.releaseConnection(conn);
 		}
 		return result;
 	}
@@ -743,8 +854,8 @@ public class DataAccess {
 	}
 
 	private int countAny(String query) {
+		Connection conn = dbTools.getConnection();
 		try {
-			Connection conn = dbTools.getConnection();
 			Statement stmt = conn.createStatement(ResultSet.TYPE_SCROLL_SENSITIVE, 
                     ResultSet.CONCUR_UPDATABLE);
 			ResultSet rs = stmt.executeQuery(query);
@@ -755,12 +866,15 @@ public class DataAccess {
 			return nObj;
 		} catch (SQLException e) {
 			log.error("Counting failed: " + e.getMessage());
+		} finally {
+			dbTools.releaseConnection(conn);
 		}
 		return 0;
 	}
 
 	/**
 	 * Gets a SQL filtering for the specified filter and fields.
+	 * The filter is matched literally: LIKE wildcards it contains are escaped.
 	 * @param filter  an optional filter (may be null)
 	 * @param fields  a list of fields to filter
 	 * @return an SQL filtering 
@@ -768,19 +882,351 @@ public class DataAccess {
 	private String getFilterWhere(String filter, String ... fields) {
 		if (filter == null || filter.isEmpty()) return " ";
 		String where = " AND (0=1";
+		String escaped = filter.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+		// backslashes are also escape characters in MySQL string literals
+		String pattern = DatabaseTools.toSQLstring(("%" + escaped + "%").replace("\\", "\\\\"));
 		for (String field : fields) {
-			where += " OR " + field + " LIKE '" + filter + "%' OR " +
-				field + " LIKE '%" + filter + "%'";
+			where += " OR " + field + " LIKE " + pattern + " ESCAPE '\\\\'";
 		}
 		where += ") ";
 		return where;
 	}
 	
+	/**
+	 * Reads a single object from the current row of a result-set.
+	 *
+	 * @param <T>  the class of objects to read
+	 */
+	private interface ObjectReader<T> {
+		
+		/**
+		 * Creates an object from the current row.
+		 * @param rs  the result-set
+		 * @return  the created object (may be null)
+		 * @throws SQLException  if fails to read results
+		 */
+		public T read(ResultSet rs) throws SQLException;
+	}
+	
+	/**
+	 * A fetch listener that collects objects in a vector.
+	 *
+	 * @param <T>  the class of fetched objects
+	 */
+	private static class VectorFetcher<T> implements FetchListener<T> {
+		private final Vector<T> vector;
+		
+		public VectorFetcher(Vector<T> vector) {
+			this.vector = vector;
+		}
+
+		@Override
+		public void objectFetched(T obj) {
+			vector.add(obj);
+		}
+	}
+	
+	private final ObjectReader<HerbierPic> pictureReader = new ObjectReader<HerbierPic>() {
+		@Override
+		public HerbierPic read(ResultSet rs) throws SQLException {
+			return objectFactory.createPicture(rs);
+		}
+	};
+	
+	private final ObjectReader<Taxon> taxonReader = new ObjectReader<Taxon>() {
+		@Override
+		public Taxon read(ResultSet rs) throws SQLException {
+			return objectFactory.createTaxon(rs);
+		}
+	};
+	
+	private final ObjectReader<Location> locationReader = new ObjectReader<Location>() {
+		@Override
+		public Location read(ResultSet rs) throws SQLException {
+			return objectFactory.createLocation(rs);
+		}
+	};
+	
+	private final ObjectReader<Expedition> expeditionReader = new ObjectReader<Expedition>() {
+		@Override
+		public Expedition read(ResultSet rs) throws SQLException {
+			return objectFactory.createExpedition(rs);
+		}
+	};
+	
+	/**
+	 * Runs the specified query with a forward-only, read-only cursor
+	 * and passes each created object to the listener.
+	 * Rows for which the reader returns null are skipped.
+	 * 
+	 * @param query     the SQL query
+	 * @param reader    the reader of result rows
+	 * @param listener  the listener of fetched objects
+	 * @param what      the kind of fetched objects, for logging
+	 * @return  the number of fetched objects, or -1 if fetching failed
+	 */
+	private <T> int fetch(String query, ObjectReader<T> reader, FetchListener<T> listener, String what) {
+		log.debug("SQL: " + query);
+		int nObj = 0;
+		
+		Connection conn = dbTools.getConnection();
+		try {
+			Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, 
+					ResultSet.CONCUR_READ_ONLY);
+			stmt.setFetchSize(fetchSize);
+			ResultSet rs = stmt.executeQuery(query);
+			while (rs.next()) {
+				T obj = reader.read(rs);
+				if (obj != null) {
+					listener.objectFetched(obj);
+					nObj++;
+				}
+			}
+			rs.close();
+			stmt.close();
+		} catch (SQLException e) {
+			log.error("Fetching " + what + " failed: " + e.getMessage());
+			nObj = -1;
+		} finally {
+			dbTools.releaseConnection(conn);
+		}
+		return nObj;
+	}
+	
+	/**
+	 * Binds the picture columns common to insert and update.
+	 * 
+	 * @param stmt  the prepared picture insert or update statement
+	 * @param obj   the picture to bind
+	 * @return  the index of the next parameter
+	 * @throws SQLException  if binding fails
+	 */
+	private int bindPicture(PreparedStatement stmt, HerbierPic obj) throws SQLException {
+		int idxTaxon = obj.getTaxon() == null ? -1 : obj.getTaxon().getIdx();
+		int idxLocation = obj.getLocation() == null ? -1 : obj.getLocation().getIdx();
+		
+		int iParam = 1;
+		DatabaseTools.bindString(stmt, iParam++, obj.getFileName());
+		DatabaseTools.bindDateTime(stmt, iParam++, obj.getShotAt());
+		DatabaseTools.bindIdx(stmt, iParam++, idxLocation);
+		DatabaseTools.bindString(stmt, iParam++, obj.getRemarks());
+		DatabaseTools.bindIdx(stmt, iParam++, idxTaxon);
+		stmt.setInt(iParam++, obj.getRating());
+		return iParam;
+	}
+	
+	/**
+	 * Binds the taxon columns common to insert and update.
+	 * 
+	 * @param stmt  the prepared taxon insert or update statement
+	 * @param obj   the taxon to bind
+	 * @return  the index of the next parameter
+	 * @throws SQLException  if binding fails
+	 */
+	private int bindTaxon(PreparedStatement stmt, Taxon obj) throws SQLException {
+		int idxParent = obj.getParent() == null ? -1 : obj.getParent().getIdx();
+		
+		int iParam = 1;
+		DatabaseTools.bindString(stmt, iParam++, obj.getName());
+		DatabaseTools.bindString(stmt, iParam++, obj.getNameFr());
+		DatabaseTools.bindString(stmt, iParam++, obj.getRank().name());
+		DatabaseTools.bindIdx(stmt, iParam++, idxParent);
+		stmt.setInt(iParam++, obj.getOrder());
+		stmt.setInt(iParam++, obj.isTypical() ? 1 : 0);
+		return iParam;
+	}
+	
+	/**
+	 * Binds the location columns common to insert and update.
+	 * 
+	 * @param stmt  the prepared location insert or update statement
+	 * @param obj   the location to bind
+	 * @return  the index of the next parameter
+	 * @throws SQLException  if binding fails
+	 */
+	private int bindLocation(PreparedStatement stmt, Location obj) throws SQLException {
+		int iParam = 1;
+		DatabaseTools.bindString(stmt, iParam++, obj.getName());
+		DatabaseTools.bindString(stmt, iParam++, obj.getDescription());
+		DatabaseTools.bindString(stmt, iParam++, obj.getKind());
+		DatabaseTools.bindString(stmt, iParam++, obj.getTown());
+		DatabaseTools.bindString(stmt, iParam++, obj.getRegion());
+		DatabaseTools.bindString(stmt, iParam++, obj.getState());
+		stmt.setInt(iParam++, obj.getAltitude());
+		DatabaseTools.bindDouble(stmt, iParam++, obj.getLongitude());
+		DatabaseTools.bindDouble(stmt, iParam++, obj.getLatitude());
+		stmt.setInt(iParam++, obj.getMapZoom());
+		return iParam;
+	}
+	
+	/**
+	 * Binds the expedition columns common to insert and update.
+	 * 
+	 * @param stmt  the prepared expedition insert or update statement
+	 * @param obj   the expedition to bind
+	 * @return  the index of the next parameter
+	 * @throws SQLException  if binding fails
+	 */
+	private int bindExpedition(PreparedStatement stmt, Expedition obj) throws SQLException {
+		int iParam = 1;
+		DatabaseTools.bindString(stmt, iParam++, obj.getTitle());
+		DatabaseTools.bindString(stmt, iParam++, obj.getNotes());
+		stmt.setInt(iParam++, obj.getLocation().getIdx());
+		DatabaseTools.bindDateTime(stmt, iParam++, obj.getDateFrom());
+		DatabaseTools.bindDateTime(stmt, iParam++, obj.getDateTo());
+		DatabaseTools.bindString(stmt, iParam++, obj.getTrack());
+		return iParam;
+	}
+	
+	/**
+	 * Executes a prepared insert or update statement.
+	 * 
+	 * @param stmt  the prepared statement, with bound parameters
+	 * @param idx   the database index of the updated object, or 0 when inserting
+	 * @return  the database index of the saved object, or -1 if unknown
+	 * @throws SQLException  if the statement fails
+	 */
+	private int executeSave(PreparedStatement stmt, int idx) throws SQLException {
+		stmt.executeUpdate();
+		if (idx > 0) {
+			return idx;
+		}
+		
+		// GET ID
+		int idxNew = -1;
+		ResultSet rs = stmt.getGeneratedKeys();
+		if (rs.next())
+			idxNew = rs.getInt(1);
+		rs.close();
+		return idxNew;
+	}
+	
+	/**
+	 * Binds the columns of an object to a prepared insert or update statement.
+	 *
+	 * @param <T>  the data object class
+	 */
+	private interface RowBinder<T extends DataObject> {
+		
+		/**
+		 * Binds all columns of the object except the database index.
+		 * 
+		 * @param stmt      the prepared statement
+		 * @param obj       the object to bind
+		 * @param isUpdate  true if binding an update statement
+		 * @return  the index of the next parameter
+		 * @throws SQLException  if binding fails
+		 */
+		public int bind(PreparedStatement stmt, T obj, boolean isUpdate) throws SQLException;
+	}
+	
+	/**
+	 * Saves the specified objects in a single transaction.
+	 * New objects are inserted with one batch, existing ones updated with another.
+	 * 
+	 * @param objs        the objects to save
+	 * @param stmtInsert  the insert statement
+	 * @param stmtUpdate  the update statement, with the database index as last parameter
+	 * @param binder      the binder of object columns
+	 * @return the database indices of saved objects, in the order of <code>objs</code>,
+	 *         or null if the transaction was rolled back
+	 */
+	private <T extends DataObject> int[] saveBatch(List<T> objs, SqlStatement stmtInsert, 
+			SqlStatement stmtUpdate, RowBinder<T> binder) {
+		int[] result = new int[objs.size()];
+		if (objs.isEmpty()) {
+			return result;
+		}
+		
+		Connection conn = dbTools.getConnection();
+		try {
+			conn.setAutoCommit(false);
+			
+			PreparedStatement stmtUpd = null;
+			PreparedStatement stmtIns = null;
+			Vector<Integer> vecInserted = new Vector<>();
+			for (int i = 0; i < objs.size(); ++i) {
+				T obj = objs.get(i);
+				if (obj.getIdx() > 0) {
+					if (stmtUpd == null) {
+						stmtUpd = dbTools.prepare(conn, stmtUpdate);
+					}
+					int iParam = binder.bind(stmtUpd, obj, true);
+					stmtUpd.setInt(iParam, obj.getIdx());
+					stmtUpd.addBatch();
+					result[i] = obj.getIdx();
+				} else {
+					if (stmtIns == null) {
+						stmtIns = dbTools.prepare(conn, stmtInsert);
+					}
+					binder.bind(stmtIns, obj, false);
+					stmtIns.addBatch();
+					vecInserted.add(Integer.valueOf(i));
+				}
+			}
+			
+			if (stmtUpd != null) {
+				stmtUpd.executeBatch();
+			}
+			if (stmtIns != null) {
+				stmtIns.executeBatch();
+				
+				// generated keys are returned in batch order
+				ResultSet rs = stmtIns.getGeneratedKeys();
+				for (Integer iObj : vecInserted) {
+					result[iObj.intValue()] = rs.next() ? rs.getInt(1) : -1;
+				}
+				rs.close();
+			}
+			
+			conn.commit();
+			log.info("Saved batch of " + objs.size() + " objects, " + vecInserted.size() + " new");
+		} catch (SQLException e) {
+			log.error("Saving batch failed, rolling back: " + e.getMessage());
+			result = null;
+			try {
+				conn.rollback();
+			} catch (SQLException eRollback) {
+				log.error("Rollback failed: " + eRollback.getMessage());
+			}
+		} finally {
+			try {
+				conn.setAutoCommit(true);
+			} catch (SQLException e) {
+				log.error("Failed to restore auto-commit: " + e.getMessage());
+				dbTools.invalidateConnection(conn);
+				conn = null;
+			}
+			dbTools.releaseConnection(conn);
+		}
+		return result;
+	}
+	
+	/**
+	 * Executes a prepared delete statement by database index.
+	 * 
+	 * @param sqlStmt  the delete statement
+	 * @param idx      the database index of the object to delete
+	 */
+	private void executeDelete(SqlStatement sqlStmt, int idx) {
+		Connection conn = dbTools.getConnection();
+		try {
+			PreparedStatement stmt = dbTools.prepare(conn, sqlStmt);
+			stmt.setInt(1, idx);
+			stmt.executeUpdate();
+		} catch (SQLException e) {
+			log.error("Executing " + sqlStmt.name() + " failed: " + e.getMessage());
+		} finally {
+			dbTools.releaseConnection(conn);
+		}
+	}
+	
 	/**
 	 * Private singleton constructor.
 	 */
 	private DataAccess() {
 		objectFactory = DataObjectFactory.getInstance();
 		dbTools = new DatabaseTools();
+		fetchSize = defaultFetchSize;
 	}
 }
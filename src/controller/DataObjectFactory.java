@@ -34,28 +34,41 @@ public class DataObjectFactory {
 	}
 	
 	/**
-	 * Creates a {@link HerbierPic} from the specified result-set.
+	 * Creates a {@link HerbierPic} from the specified result-set,
+	 * pointing to its cached location. The picture is not added to the
+	 * pictures of the location: only the picture cache does it, under the cache lock.
 	 * 
 	 * @param rs the result-set with Picture info
 	 * @return the created {@link HerbierPic}
 	 * @throws SQLException if fails to read results
 	 */
 	public HerbierPic createPicture(ResultSet rs) throws SQLException {
+		HerbierPic obj = createUnlinkedPicture(rs);
+		
+		Location location = LocationCache.getInstance().getLocation(rs.getInt("picIdxLocation"));
+		if (location != null) {
+			obj.setLocation(location);
+		}
+		
+		return obj;
+	}
+	
+	/**
+	 * Creates a {@link HerbierPic} from the specified result-set,
+	 * without looking up its location.
+	 * 
+	 * @param rs the result-set with Picture info
+	 * @return the created {@link HerbierPic}
+	 * @throws SQLException if fails to read results
+	 */
+	public HerbierPic createUnlinkedPicture(ResultSet rs) throws SQLException {
 		HerbierPic obj = new HerbierPic(rs.getInt("idxPicture"), 
 				rs.getString("picFilename"));
-		//obj.setLocation(LocationCache.getInstance().getLocation(rs.getInt("picIdxLocation")));
 		obj.setRemarks(rs.getString("picRemarks"));
 		obj.setShotAt(rs.getTimestamp("picShotAt"));
 		obj.setUpdatedAt(rs.getTimestamp("picUpdatedAt"));
 		obj.setIdxTaxon(rs.getInt("picTaxon"));
 		obj.setRating(rs.getInt("picRating"));
-		
-		Location location = LocationCache.getInstance().getLocation(rs.getInt("picIdxLocation"));
-		if (location != null) {
-			obj.setLocation(location);
-			location.addPic(obj);
-		}
-		
 		return obj;
 	}
 	
@@ -1,8 +1,10 @@
 package controller;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
@@ -23,50 +25,84 @@ public class DatabaseTools {
 	private static final Logger log = new Logger("DatabaseTools", true);
 	private static final String dbName  = "herbier"; 
 	
+	/** Pattern of database date strings, like 2015-09-30 */
+	private static final Pattern patSqlDate = Pattern.compile("(\\d\\d\\d\\d)\\-(\\d\\d)\\-(\\d\\d)");
+	
+	/** Pattern of single quotes to escape in SQL strings */
+	private static final Pattern patQuote = Pattern.compile("\\'");
+	
 	private static final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
 	private static final SimpleDateFormat dateTimeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
 
 	
-	/** The database connection */
-	private Connection conn;
+	/** The default number of pooled database connections */
+	private static final int defaultPoolSize = 4;
+	
+	/** The pool of database connections */
+	private final ConnectionPool pool;
+	
+	/**
+	 * Constructor. The pool size may be set with the 
+	 * <code>panorpa.db.poolSize</code> system property.
+	 */
+	public DatabaseTools() {
+		int poolSize = Integer.getInteger("panorpa.db.poolSize", defaultPoolSize).intValue();
+		pool = new ConnectionPool(String.format(
+				"jdbc:mysql://localhost:3306/%s?user=nicz&password=nico17sql&useCursorFetch=true",
+				dbName), poolSize);
+	}
 	
 	/**
-	 * Gets a database connection, creating it if needed.
+	 * Borrows a valid database connection from the pool.
+	 * The connection must be given back with {@link #releaseConnection(Connection)}.
 	 * 
-	 * @return a database connection
+	 * @return a database connection, or null if connecting failed
 	 */
 	public Connection getConnection() {
-		//log.info("Opening database connection...");
+		Connection conn = pool.borrow();
 		if (conn == null) {
-			try {
-				//Class.forName("com.mysql.cj.jdbc.Driver").newInstance();
-				conn = DriverManager.getConnection(String.format(
-						"jdbc:mysql://localhost:3306/%s?user=nicz&password=nico17sql",
-						dbName));
-				if (conn != null) {
-					log.info(String.format("Connected to database %s.", dbName));
-				} else {
-					log.error("Failed to connect to DB " + dbName);
-				}
-			} catch (Exception e) {
-				log.error("Opening database failed: " + e.getMessage());
-			}
+			log.error("Failed to connect to DB " + dbName);
 		}
 		return conn;
 	}
 	
 	/**
-	 * Closes the database connection if needed.
+	 * Gets the specified prepared statement for a borrowed connection.
+	 * The statement is prepared once per connection and must not be closed.
+	 * 
+	 * @param conn     a connection obtained by {@link #getConnection()}
+	 * @param sqlStmt  the statement name
+	 * @return  the prepared statement, with cleared parameters
+	 * @throws SQLException  if preparing the statement fails
+	 */
+	public PreparedStatement prepare(Connection conn, SqlStatement sqlStmt) throws SQLException {
+		return pool.getStatements(conn).get(sqlStmt);
+	}
+	
+	/**
+	 * Gives back a database connection to the pool.
+	 * 
+	 * @param conn  the connection obtained by {@link #getConnection()} (may be null)
+	 */
+	public void releaseConnection(Connection conn) {
+		pool.release(conn);
+	}
+	
+	/**
+	 * Discards a database connection that failed, 
+	 * so that the next borrower gets a new one.
+	 * 
+	 * @param conn  the broken connection (may be null)
+	 */
+	public void invalidateConnection(Connection conn) {
+		pool.invalidate(conn);
+	}
+	
+	/**
+	 * Closes all database connections.
 	 */
 	public void closeConnection() {
-		if (conn != null) {
-			try {
-				conn.close();
-				log.info("Closed database connection");
-			} catch (SQLException e) {
-				log.error("Failed to close DB connection: " + e.getMessage());
-			}
-		}
+		pool.close();
 	}
 
 	/**
@@ -120,8 +156,7 @@ public class DatabaseTools {
 	 */
 	public static String toPrettyDate(String sqlDate) {
 		String prettyDate = sqlDate;
-		Pattern pat = Pattern.compile("(\\d\\d\\d\\d)\\-(\\d\\d)\\-(\\d\\d)");
-		Matcher mat = pat.matcher(sqlDate);
+		Matcher mat = patSqlDate.matcher(sqlDate);
 		if (mat.find()) {
 			int iDay = Integer.valueOf(mat.group(3)).intValue();
 			String strDay = (iDay==1 ? "1er" : String.format("%d", iDay));
@@ -150,8 +185,7 @@ public class DatabaseTools {
 	 * @return the year, or 0 if failed to parse
 	 */
 	public static int getYear(String sqlDate) {
-		Pattern pat = Pattern.compile("(\\d\\d\\d\\d)\\-(\\d\\d)\\-(\\d\\d)");
-		Matcher mat = pat.matcher(sqlDate);
+		Matcher mat = patSqlDate.matcher(sqlDate);
 		if (mat.find()) {
 			return Integer.valueOf(mat.group(1)).intValue();
 		} else {
@@ -168,8 +202,7 @@ public class DatabaseTools {
 	 */
 	public static String toSQLstring(String s) {
 		if (s != null) {
-			Pattern p = Pattern.compile("\\'");
-			Matcher m = p.matcher(s);
+			Matcher m = patQuote.matcher(s);
 			s = m.replaceAll("\\'\\'");
 			return "'" + s + "'";
 		}
@@ -216,6 +249,66 @@ public class DatabaseTools {
 		return "'" + dateTimeFormat.format(date) + "'";
 	}
 	
+	/**
+	 * Binds a string parameter, which may be null.
+	 * @param stmt    the prepared statement
+	 * @param iParam  the 1-based parameter index
+	 * @param s       the string value (may be null)
+	 * @throws SQLException  if binding fails
+	 */
+	public static void bindString(PreparedStatement stmt, int iParam, String s) throws SQLException {
+		if (s == null) {
+			stmt.setNull(iParam, Types.VARCHAR);
+		} else {
+			stmt.setString(iParam, s);
+		}
+	}
+	
+	/**
+	 * Binds a foreign key parameter. Indices that are not positive are bound as null.
+	 * @param stmt    the prepared statement
+	 * @param iParam  the 1-based parameter index
+	 * @param idx     the database index of the referenced object
+	 * @throws SQLException  if binding fails
+	 */
+	public static void bindIdx(PreparedStatement stmt, int iParam, int idx) throws SQLException {
+		if (idx <= 0) {
+			stmt.setNull(iParam, Types.INTEGER);
+		} else {
+			stmt.setInt(iParam, idx);
+		}
+	}
+	
+	/**
+	 * Binds a Double parameter, which may be null.
+	 * @param stmt    the prepared statement
+	 * @param iParam  the 1-based parameter index
+	 * @param dVal    the value (may be null)
+	 * @throws SQLException  if binding fails
+	 */
+	public static void bindDouble(PreparedStatement stmt, int iParam, Double dVal) throws SQLException {
+		if (dVal == null) {
+			stmt.setNull(iParam, Types.DOUBLE);
+		} else {
+			stmt.setDouble(iParam, dVal.doubleValue());
+		}
+	}
+	
+	/**
+	 * Binds a date and time parameter, which may be null.
+	 * @param stmt    the prepared statement
+	 * @param iParam  the 1-based parameter index
+	 * @param date    the date (may be null)
+	 * @throws SQLException  if binding fails
+	 */
+	public static void bindDateTime(PreparedStatement stmt, int iParam, Date date) throws SQLException {
+		if (date == null) {
+			stmt.setNull(iParam, Types.TIMESTAMP);
+		} else {
+			stmt.setTimestamp(iParam, new Timestamp(date.getTime()));
+		}
+	}
+	
 	public static Date sqlToDate(String strDate) {
 		try {
 			return dateFormat.parse(strDate);
@@ -0,0 +1,91 @@
+package controller;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+
+import model.ImageInfo;
+
+import common.base.Logger;
+
+/**
+ * Compares the time to read the shot-at dates of a directory of pictures
+ * with {@link ExifHeaderReader}, and with the metadata library as
+ * {@link FileManager#getShotAt(File)} did before the metadata cache.
+ * Also counts the files whose dates differ, or which need the library.
+ * 
+ * <p>Usage: <code>ExifBenchmark [directory]</code>, by default a directory of raw files.
+ * Both readers are run twice, and the second run is reported, so that
+ * both read files from the system cache.
+ * 
+ * @author nicz
+ * 
+ */
+public class ExifBenchmark {
+	
+	private static final Logger log = new Logger("ExifBenchmark", true);
+	
+	private static final int nRuns = 2;
+	
+	/**
+	 * @param args  an optional directory of JPEG or NEF files
+	 */
+	public static void main(String[] args) {
+		File dir = new File(args.length > 0 ? args[0] : FileManager.pathRaw + "Nature-2021-10/raw/");
+		File[] files = dir.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				String lower = name.toLowerCase();
+				return lower.endsWith(".nef") || lower.endsWith(".jpg");
+			}
+		});
+		if (files == null || files.length == 0) {
+			log.error("No JPEG or NEF files in " + dir);
+			return;
+		}
+		
+		long tLibrary = 0;
+		long tHeader = 0;
+		int nFallbacks = 0;
+		int nMismatches = 0;
+		for (int iRun = 0; iRun < nRuns; ++iRun) {
+			ImageInfo[] infosLibrary = new ImageInfo[files.length];
+			long tStart = System.nanoTime();
+			for (int i = 0; i < files.length; ++i) {
+				infosLibrary[i] = MetadataCache.readInfoWithLibrary(files[i]);
+			}
+			tLibrary = System.nanoTime() - tStart;
+			
+			ImageInfo[] infosHeader = new ImageInfo[files.length];
+			tStart = System.nanoTime();
+			for (int i = 0; i < files.length; ++i) {
+				try {
+					infosHeader[i] = ExifHeaderReader.read(files[i]);
+				} catch (IOException e) {
+					log.error("Failed to read " + files[i].getName() + ": " + e.getMessage());
+				}
+			}
+			tHeader = System.nanoTime() - tStart;
+			
+			nFallbacks = 0;
+			nMismatches = 0;
+			for (int i = 0; i < files.length; ++i) {
+				if (infosHeader[i] == null || infosHeader[i].getShotAt() == null) {
+					nFallbacks++;
+				} else if (!infosHeader[i].getShotAt().equals(infosLibrary[i].getShotAt())) {
+					nMismatches++;
+					log.warn("Different dates for " + files[i].getName() + ": " +
+							infosHeader[i] + " / " + infosLibrary[i]);
+				}
+			}
+		}
+		
+		log.info(String.format("%d files in %s", files.length, dir));
+		log.info(String.format("Metadata library: %d ms, %.2f ms per file",
+				tLibrary / 1000000, tLibrary / 1e6 / files.length));
+		log.info(String.format("Header reader:    %d ms, %.2f ms per file, %.1f times faster",
+				tHeader / 1000000, tHeader / 1e6 / files.length, (double) tLibrary / Math.max(1, tHeader)));
+		log.info(String.format("%d files need the library, %d dates differ", nFallbacks, nMismatches));
+	}
+
+}
@@ -0,0 +1,386 @@
+package controller;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import model.ImageInfo;
+
+/**
+ * A minimal EXIF reader, decoding only the few tags we use from the start of
+ * JPEG files and of TIFF-based raw files, such as Nikon NEF.
+ * 
+ * <p>Only the first bytes of the file are memory-mapped. In a JPEG, the markers are
+ * walked up to the start of the compressed data, to find the EXIF segment and the frame
+ * size. In a NEF, the TIFF header is at the start of the file. The reader then follows
+ * the IFD0, EXIF, GPS and sub-image directories, which cameras write before the image data.
+ * 
+ * <p>The result is null if the file has another format, or if a directory or a value
+ * lies beyond the mapped bytes: the caller then falls back to the full metadata library.
+ * 
+ * @author nicz
+ * 
+ */
+public class ExifHeaderReader {
+	
+	/** Max number of bytes mapped from the start of a file */
+	private static final int headerSize = 256 * 1024;
+	
+	/** Max number of entries read in a directory, to stop on corrupt files */
+	private static final int maxEntries = 1000;
+	
+	private static final int TAG_IMAGE_WIDTH       = 0x0100;
+	private static final int TAG_IMAGE_HEIGHT      = 0x0101;
+	private static final int TAG_MAKE              = 0x010F;
+	private static final int TAG_MODEL             = 0x0110;
+	private static final int TAG_SUB_IFDS          = 0x014A;
+	private static final int TAG_EXIF_IFD          = 0x8769;
+	private static final int TAG_GPS_IFD           = 0x8825;
+	private static final int TAG_DATETIME_ORIGINAL = 0x9003;
+	private static final int TAG_EXIF_IMAGE_WIDTH  = 0xA002;
+	private static final int TAG_EXIF_IMAGE_HEIGHT = 0xA003;
+	private static final int TAG_GPS_LATITUDE_REF  = 0x0001;
+	private static final int TAG_GPS_LATITUDE      = 0x0002;
+	private static final int TAG_GPS_LONGITUDE_REF = 0x0003;
+	private static final int TAG_GPS_LONGITUDE     = 0x0004;
+	
+	private static final int TYPE_SHORT = 3;
+	private static final int TYPE_LONG  = 4;
+	
+	/** Sizes in bytes of the TIFF field types, by type number */
+	private static final int[] typeSizes = { 0, 1, 1, 2, 4, 8, 1, 1, 2, 4, 8, 4, 8 };
+	
+	/** The mapped start of the file */
+	private final MappedByteBuffer buf;
+	
+	/** The position of the TIFF header in the buffer */
+	private int tiffStart = -1;
+	
+	private Date shotAt = null;
+	private Double latitude = null;
+	private Double longitude = null;
+	private int width = 0;
+	private int height = 0;
+	private String make = null;
+	private String model = null;
+	
+	
+	/**
+	 * Reads the metadata at the start of an image file.
+	 * 
+	 * @param file  a JPEG or TIFF-based raw file
+	 * @return  the metadata, or null if they can't be read from the file start
+	 * @throws IOException  if the file can't be read
+	 */
+	public static ImageInfo read(File file) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+				FileChannel channel = raf.getChannel()) {
+			long size = Math.min(channel.size(), headerSize);
+			ExifHeaderReader reader = new ExifHeaderReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+			try {
+				return reader.parse();
+			} catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+				// a directory beyond the header, or a corrupt file
+				return null;
+			}
+		}
+	}
+	
+	private ExifHeaderReader(MappedByteBuffer buf) {
+		this.buf = buf;
+	}
+	
+	private ImageInfo parse() {
+		if (buf.limit() < 8) {
+			return null;
+		}
+		buf.order(ByteOrder.BIG_ENDIAN);
+		if ((buf.getShort(0) & 0xFFFF) == 0xFFD8) {
+			parseJpegMarkers();
+		} else {
+			tiffStart = 0;
+		}
+		if (tiffStart < 0 || !parseTiffHeader()) {
+			return null;
+		}
+		return new ImageInfo(shotAt, latitude, longitude, width, height, make, model);
+	}
+	
+	/**
+	 * Walks the JPEG markers up to the compressed data,
+	 * to find the EXIF segment and the frame size.
+	 */
+	private void parseJpegMarkers() {
+		int pos = 2;
+		while (pos + 4 <= buf.limit()) {
+			if ((buf.get(pos) & 0xFF) != 0xFF) {
+				return;
+			}
+			int marker = buf.get(pos + 1) & 0xFF;
+			if (marker == 0xFF) {
+				// fill byte
+				pos++;
+				continue;
+			}
+			if (marker == 0xDA || marker == 0xD9) {
+				// start of scan, or end of image
+				return;
+			}
+			int length = buf.getShort(pos + 2) & 0xFFFF;
+			int data = pos + 4;
+			
+			if (marker == 0xE1 && tiffStart < 0 && data + 6 <= buf.limit() && isExifHeader(data)) {
+				tiffStart = data + 6;
+			} else if (marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+				// start of frame: precision, height, width
+				height = buf.getShort(data + 1) & 0xFFFF;
+				width  = buf.getShort(data + 3) & 0xFFFF;
+			}
+			pos += 2 + length;
+		}
+	}
+	
+	private boolean isExifHeader(int pos) {
+		return buf.get(pos) == 'E' && buf.get(pos + 1) == 'x' && buf.get(pos + 2) == 'i' &&
+				buf.get(pos + 3) == 'f' && buf.get(pos + 4) == 0 && buf.get(pos + 5) == 0;
+	}
+	
+	/**
+	 * Reads the byte order and the directories of the TIFF structure.
+	 * @return false if the TIFF header is not valid
+	 */
+	private boolean parseTiffHeader() {
+		short order = buf.getShort(tiffStart);
+		if (order == 0x4949) {
+			buf.order(ByteOrder.LITTLE_ENDIAN);
+		} else if (order == 0x4D4D) {
+			buf.order(ByteOrder.BIG_ENDIAN);
+		} else {
+			return false;
+		}
+		if (buf.getShort(tiffStart + 2) != 42) {
+			return false;
+		}
+		
+		boolean isJpeg = (tiffStart > 0);
+		int ifd0 = buf.getInt(tiffStart + 4);
+		int nEntries = getEntryCount(ifd0);
+		int subIfdsEntry = -1;
+		for (int i = 0; i < nEntries; ++i) {
+			int entry = tiffStart + ifd0 + 2 + i * 12;
+			switch (buf.getShort(entry) & 0xFFFF) {
+			case TAG_MAKE:
+				make = getAscii(entry);
+				break;
+			case TAG_MODEL:
+				model = getAscii(entry);
+				break;
+			case TAG_EXIF_IFD:
+				parseExif(getLong(entry), isJpeg);
+				break;
+			case TAG_GPS_IFD:
+				parseGps(getLong(entry));
+				break;
+			case TAG_SUB_IFDS:
+				subIfdsEntry = entry;
+				break;
+			default:
+				break;
+			}
+		}
+		
+		if (!isJpeg && subIfdsEntry >= 0) {
+			// the IFD0 of a raw file describes a small preview: the raw image is the largest sub-image
+			int count = buf.getInt(subIfdsEntry + 4);
+			if (count < 0 || count > maxEntries) {
+				throw new IllegalArgumentException("Too many sub-images: " + count);
+			}
+			int offsets = (count == 1 ? subIfdsEntry + 8 : tiffStart + buf.getInt(subIfdsEntry + 8));
+			for (int i = 0; i < count; ++i) {
+				parseSubImage(buf.getInt(offsets + i * 4));
+			}
+		}
+		return true;
+	}
+	
+	private void parseExif(int ifd, boolean isJpeg) {
+		int nEntries = getEntryCount(ifd);
+		for (int i = 0; i < nEntries; ++i) {
+			int entry = tiffStart + ifd + 2 + i * 12;
+			switch (buf.getShort(entry) & 0xFFFF) {
+			case TAG_DATETIME_ORIGINAL:
+				shotAt = parseDate(getAscii(entry));
+				break;
+			case TAG_EXIF_IMAGE_WIDTH:
+				if (!isJpeg || width == 0) {
+					width = getInteger(entry);
+				}
+				break;
+			case TAG_EXIF_IMAGE_HEIGHT:
+				if (!isJpeg || height == 0) {
+					height = getInteger(entry);
+				}
+				break;
+			default:
+				break;
+			}
+		}
+	}
+	
+	private void parseGps(int ifd) {
+		int nEntries = getEntryCount(ifd);
+		String latRef = null;
+		String lonRef = null;
+		Double lat = null;
+		Double lon = null;
+		for (int i = 0; i < nEntries; ++i) {
+			int entry = tiffStart + ifd + 2 + i * 12;
+			switch (buf.getShort(entry) & 0xFFFF) {
+			case TAG_GPS_LATITUDE_REF:
+				latRef = getAscii(entry);
+				break;
+			case TAG_GPS_LATITUDE:
+				lat = getDegrees(entry);
+				break;
+			case TAG_GPS_LONGITUDE_REF:
+				lonRef = getAscii(entry);
+				break;
+			case TAG_GPS_LONGITUDE:
+				lon = getDegrees(entry);
+				break;
+			default:
+				break;
+			}
+		}
+		
+		if (lat != null && lon != null && latRef != null && lonRef != null) {
+			latitude  = ("S".equalsIgnoreCase(latRef) ? -lat : lat);
+			longitude = ("W".equalsIgnoreCase(lonRef) ? -lon : lon);
+		}
+	}
+	
+	private void parseSubImage(int ifd) {
+		int nEntries = getEntryCount(ifd);
+		int subWidth = 0;
+		int subHeight = 0;
+		for (int i = 0; i < nEntries; ++i) {
+			int entry = tiffStart + ifd + 2 + i * 12;
+			int tag = buf.getShort(entry) & 0xFFFF;
+			if (tag == TAG_IMAGE_WIDTH) {
+				subWidth = getInteger(entry);
+			} else if (tag == TAG_IMAGE_HEIGHT) {
+				subHeight = getInteger(entry);
+			}
+		}
+		if (subWidth > width) {
+			width = subWidth;
+			height = subHeight;
+		}
+	}
+	
+	private int getEntryCount(int ifd) {
+		int nEntries = buf.getShort(tiffStart + ifd) & 0xFFFF;
+		if (nEntries > maxEntries) {
+			throw new IllegalArgumentException("Too many entries: " + nEntries);
+		}
+		return nEntries;
+	}
+	
+	/**
+	 * Gets the value count of an entry, which must fit in the mapped bytes.
+	 */
+	private int getCount(int entry) {
+		long count = buf.getInt(entry + 4) & 0xFFFFFFFFL;
+		if (count > buf.limit()) {
+			throw new IllegalArgumentException("Invalid value count: " + count);
+		}
+		return (int) count;
+	}
+	
+	/**
+	 * Gets the position of the value of an entry: in the entry if it fits in 4 bytes,
+	 * else at the offset given by the entry, which must lie within the mapped bytes.
+	 */
+	private int getValuePos(int entry) {
+		int type = buf.getShort(entry + 2) & 0xFFFF;
+		long size = (long) (type < typeSizes.length ? typeSizes[type] : 1) * getCount(entry);
+		if (size <= 4) {
+			return entry + 8;
+		}
+		long pos = tiffStart + (buf.getInt(entry + 8) & 0xFFFFFFFFL);
+		if (pos + size > buf.limit()) {
+			throw new IllegalArgumentException("Value beyond header: " + pos);
+		}
+		return (int) pos;
+	}
+	
+	private int getLong(int entry) {
+		return buf.getInt(entry + 8);
+	}
+	
+	/**
+	 * Gets a SHORT or LONG value.
+	 */
+	private int getInteger(int entry) {
+		int type = buf.getShort(entry + 2) & 0xFFFF;
+		if (type == TYPE_SHORT) {
+			return buf.getShort(entry + 8) & 0xFFFF;
+		} else if (type == TYPE_LONG) {
+			return buf.getInt(entry + 8);
+		}
+		return 0;
+	}
+	
+	private String getAscii(int entry) {
+		int count = getCount(entry);
+		int pos = getValuePos(entry);
+		byte[] bytes = new byte[count];
+		for (int i = 0; i < count; ++i) {
+			bytes[i] = buf.get(pos + i);
+		}
+		int len = 0;
+		while (len < count && bytes[len] != 0) {
+			len++;
+		}
+		return new String(bytes, 0, len, StandardCharsets.ISO_8859_1).trim();
+	}
+	
+	/**
+	 * Gets degrees, minutes and seconds, as 3 rationals, in decimal degrees.
+	 */
+	private Double getDegrees(int entry) {
+		if (buf.getInt(entry + 4) != 3) {
+			return null;
+		}
+		int pos = getValuePos(entry);
+		double result = 0;
+		double unit = 1;
+		for (int i = 0; i < 3; ++i) {
+			long num = buf.getInt(pos + i * 8) & 0xFFFFFFFFL;
+			long den = buf.getInt(pos + i * 8 + 4) & 0xFFFFFFFFL;
+			if (den == 0) {
+				return null;
+			}
+			result += (double) num / den / unit;
+			unit *= 60;
+		}
+		return result;
+	}
+	
+	private static Date parseDate(String sDate) {
+		try {
+			return new SimpleDateFormat("yyyy:MM:dd HH:mm:ss").parse(sDate);
+		} catch (ParseException e) {
+			return null;
+		}
+	}
+
+}
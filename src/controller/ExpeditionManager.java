@@ -27,8 +27,11 @@ public class ExpeditionManager {
 	
 	private static final Logger log = new Logger("ExpeditionManager", true);
 	
-	// Map of recent expeditions by location
-	private final Map<Location, Expedition> mapRecentExpeditions;
+	// Map of recent expeditions by location, read-only and replaced on each change
+	private volatile Map<Location, Expedition> mapRecentExpeditions;
+	
+	// Expeditions fetched from database, or null if not fetched since the last change
+	private volatile List<Expedition> listExpeditions;
 	
 	// Minimum number of photos to create an Expedition object
 	public static final int nMinPics = 4;
@@ -83,7 +86,7 @@ public class ExpeditionManager {
 		Collections.sort(vecResult);
 		log.info("Got " + vecResult.size() + " excursions for " + loc);
 		if (!vecResult.isEmpty()) {
-			mapRecentExpeditions.put(loc, vecResult.firstElement());
+			putRecentExpedition(loc, vecResult.firstElement());
 		}
 		for (Expedition exp : vecResult) {
 			log.debug("... " + exp);
@@ -100,32 +103,71 @@ public class ExpeditionManager {
 	public List<Expedition> getRecentExpeditions(int nMax) {
 		Vector<Expedition> vecExpeditions = new Vector<>();
 		
+		// the map is never modified, so it can be read without locking
 		vecExpeditions.addAll(mapRecentExpeditions.values());
 		Collections.sort(vecExpeditions);
 		return vecExpeditions.subList(0, Math.min(vecExpeditions.size(), nMax));
 	}
 	
 	/**
-	 * Adds pictures to the specified expedition.
-	 * Any picture at the location matching the expedition date-range is added.
+	 * Sets the pictures of the specified expedition.
+	 * Any picture at the location matching the expedition date-range is set.
+	 * The set is replaced rather than modified, so that a fetched expedition
+	 * can be shared: readers of the previous set are not disturbed.
 	 * @param expedition  the expedition to update
 	 */
 	public void setExpeditionPics(Expedition expedition) {
 		log.info("Setting pics to " + expedition);
 		//log.info("Location has " + expedition.getLocation().getPics().size() + " pics");
-		for (HerbierPic pic : expedition.getLocation().getPics()) {
-			Date tShotAt = pic.getShotAt();
-			//log.debug("... checking pic shot at " + tShotAt);
-			if (!tShotAt.before(expedition.getDateFrom()) && !tShotAt.after(expedition.getDateTo())) {
-				expedition.getPics().add(pic);
-				//log.debug("... adding pic " + pic);
+		expedition.setPics(new HashSet<>(expedition.getLocation().getPicsShotBetween(
+				expedition.getDateFrom(), expedition.getDateTo())));
+		//log.info("Excursion now has " + expedition.getPics().size() + " pics");
+	}
+	
+	/**
+	 * Gets all expeditions, fetched from database on first request
+	 * and kept until {@link #clearExpeditions()} is called.
+	 * 
+	 * @return  a read-only list of expeditions, in database order
+	 */
+	public List<Expedition> getAll() {
+		List<Expedition> result = listExpeditions;
+		if (result == null) {
+			synchronized (this) {
+				result = listExpeditions;
+				if (result == null) {
+					Vector<Expedition> vecFetched = DataAccess.getInstance().getExpeditions(null, null, null);
+					if (vecFetched == null) {
+						return Collections.emptyList();
+					}
+					result = Collections.unmodifiableList(vecFetched);
+					listExpeditions = result;
+				}
 			}
 		}
-		//log.info("Excursion now has " + expedition.getPics().size() + " pics");
+		return result;
 	}
 	
-	public void clearRecentExpeditions() {
-		mapRecentExpeditions.clear();
+	/**
+	 * Drops the fetched expeditions, after they were modified in database,
+	 * or after their pictures or locations were modified.
+	 */
+	public void clearExpeditions() {
+		listExpeditions = null;
+	}
+	
+	public synchronized void clearRecentExpeditions() {
+		mapRecentExpeditions = Collections.emptyMap();
+	}
+	
+	/**
+	 * Sets the most recent expedition of a location.
+	 * The map is copied, so that concurrent readers keep a consistent one.
+	 */
+	private synchronized void putRecentExpedition(Location loc, Expedition expedition) {
+		Map<Location, Expedition> mapCopy = new HashMap<>(mapRecentExpeditions);
+		mapCopy.put(loc, expedition);
+		mapRecentExpeditions = Collections.unmodifiableMap(mapCopy);
 	}
 	
 	private Date getDateWithoutTime(Date tAt) {
@@ -140,19 +182,17 @@ public class ExpeditionManager {
 		return tResult;
 	}
 	
-	/** the singleton instance */
-	private static ExpeditionManager _instance = null;
+	/** the singleton instance, created when the class is loaded */
+	private static final ExpeditionManager _instance = new ExpeditionManager();
 	
 	/** Gets the singleton instance. */
 	public static ExpeditionManager getInstance() {
-		if (_instance == null)
-			_instance = new ExpeditionManager();
 		return _instance;
 	}
 	
 	/** Private singleton constructor */
 	private ExpeditionManager() {
-		mapRecentExpeditions = new HashMap<>();
+		mapRecentExpeditions = Collections.emptyMap();
 	}
 	
 	/**
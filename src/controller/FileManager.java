@@ -5,20 +5,14 @@ import java.io.FilenameFilter;
 import java.text.SimpleDateFormat;
 import java.util.Collections;
 import java.util.Date;
-import java.util.TimeZone;
 import java.util.Vector;
 import java.util.regex.Matcher;
 
-import com.drew.imaging.ImageMetadataReader;
-import com.drew.lang.GeoLocation;
-import com.drew.metadata.Metadata;
-import com.drew.metadata.exif.ExifSubIFDDirectory;
-import com.drew.metadata.exif.GpsDirectory;
-
 import common.base.Logger;
 import common.exceptions.AppException;
 import controller.export.ExpeditionsExporter;
 import model.HerbierPic;
+import model.ImageInfo;
 import model.OriginalPic;
 
 /**
@@ -243,45 +237,22 @@ public class FileManager {
 	 * @return  the picture shot-at date, or null if not found.
 	 */
 	public Date getShotAt(File file) {
-		Date dShotAt = null;
-		if (file != null && file.exists()) {
-			try {
-				Metadata metadata = ImageMetadataReader.readMetadata(file);
-				
-				// obtain the Exif directory
-				ExifSubIFDDirectory directory = metadata.getFirstDirectoryOfType(ExifSubIFDDirectory.class);
-
-				// query the tag's value
-				//dShotAt = directory.getDate(ExifSubIFDDirectory.TAG_DATETIME_ORIGINAL); + 1h shift
-				dShotAt = directory.getDate(ExifSubIFDDirectory.TAG_DATETIME_ORIGINAL, TimeZone.getDefault());
-			} catch (Exception e) {
-				log.error("Failed to read image date", e);
-			}
-		}
-		return dShotAt;
+		return MetadataCache.getInstance().get(file).getShotAt();
 	}
 	
 	/**
 	 * Sets GPS longitude and latitude to the specified photo.
-	 * Uses ImageMetadataReader GpsDirectory.
+	 * Uses the cached metadata of the picture file.
 	 * @param pic  the photo to update (not null)
 	 */
 	public void addGPSCoords(HerbierPic pic) {
 		String filename = Controller.picturesPath + pic.getFileName();
 		File file = new File(filename);
 		if (file.exists()) {
-			try {
-				Metadata metadata = ImageMetadataReader.readMetadata(file);
-				GpsDirectory directory = metadata.getFirstDirectoryOfType(GpsDirectory.class);
-				if (directory != null) {
-					GeoLocation location = directory.getGeoLocation();
-					if (location != null) {
-						pic.setLatitude(location.getLatitude());
-						pic.setLongitude(location.getLongitude());
-					}
-				}
-			} catch (Exception e) {
-				log.error("Failed to read image GPS location", e);
+			ImageInfo info = MetadataCache.getInstance().get(file);
+			if (info.hasGeoLocation()) {
+				pic.setLatitude(info.getLatitude());
+				pic.setLongitude(info.getLongitude());
 			}
 		} else {
 			log.error("File does not exist: " + file);
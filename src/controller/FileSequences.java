@@ -0,0 +1,155 @@
+package controller;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Index of the sequence numbers used by picture filenames, by base name.
+ * 
+ * <p>A filename like <code>pinus-sylvestris012.jpg</code> has the base name
+ * <code>pinus-sylvestris</code> and the sequence number 12. Used numbers are
+ * kept in a bitset per base name, so that the first free number or the number
+ * after the last one are found without scanning all existing filenames.
+ * 
+ * <p>All methods are synchronized, so that filenames can be recorded by
+ * imports and renames while other names are being generated.
+ * 
+ * @author nicz
+ * 
+ */
+public class FileSequences {
+	
+	/** Picture file extension */
+	public static final String sExtension = ".jpg";
+	
+	/** Max sequence number proposed by {@link #getFirstFree(String)} and {@link #allocate(String)} */
+	public static final int maxSequence = 999;
+	
+	/**
+	 * Matches a base name, a sequence number and the extension.
+	 * Longer numbers than {@link #maxSequence} are not sequences, such as dates,
+	 * and are ignored to keep the bitsets small.
+	 */
+	private static final Pattern patFileName = Pattern.compile("^(.*[^0-9])([0-9]{1,4})\\" + sExtension + "$");
+	
+	/** Used sequence numbers, by base name */
+	private final Map<String, BitSet> mapUsed;
+	
+	
+	public FileSequences() {
+		mapUsed = new HashMap<>();
+	}
+	
+	/**
+	 * Records the sequence number of an existing filename.
+	 * Filenames without sequence number are ignored.
+	 * 
+	 * @param fileName  the filename, without path
+	 */
+	public synchronized void add(String fileName) {
+		Matcher match = match(fileName);
+		if (match != null) {
+			BitSet used = mapUsed.get(match.group(1));
+			if (used == null) {
+				used = new BitSet();
+				mapUsed.put(match.group(1), used);
+			}
+			used.set(Integer.parseInt(match.group(2)));
+		}
+	}
+	
+	/**
+	 * Frees the sequence number of a filename that no longer exists.
+	 * 
+	 * @param fileName  the filename, without path
+	 */
+	public synchronized void remove(String fileName) {
+		Matcher match = match(fileName);
+		if (match != null) {
+			BitSet used = mapUsed.get(match.group(1));
+			if (used != null) {
+				used.clear(Integer.parseInt(match.group(2)));
+			}
+		}
+	}
+	
+	/**
+	 * Records a renamed file: frees the number of its old name and uses
+	 * the number of its new name, in one step.
+	 * 
+	 * @param oldFileName  the previous filename
+	 * @param newFileName  the new filename
+	 */
+	public synchronized void rename(String oldFileName, String newFileName) {
+		remove(oldFileName);
+		add(newFileName);
+	}
+	
+	/**
+	 * Gets the lowest sequence number not used with the specified base name.
+	 * 
+	 * @param baseName  the base name
+	 * @return the first free number, starting at 1
+	 */
+	public synchronized int getFirstFree(String baseName) {
+		BitSet used = mapUsed.get(baseName);
+		return (used == null ? 1 : used.nextClearBit(1));
+	}
+	
+	/**
+	 * Reserves the lowest sequence number not used with the specified base name.
+	 * Unlike {@link #getFirstFree(String)}, the number is marked as used in the
+	 * same call, so that two callers never get the same number.
+	 * Numbers above {@link #maxSequence} are returned but not reserved.
+	 * 
+	 * @param baseName  the base name
+	 * @return the reserved number, starting at 1
+	 */
+	public synchronized int allocate(String baseName) {
+		BitSet used = mapUsed.get(baseName);
+		if (used == null) {
+			used = new BitSet();
+			mapUsed.put(baseName, used);
+		}
+		int iSeq = used.nextClearBit(1);
+		if (iSeq <= maxSequence) {
+			used.set(iSeq);
+		}
+		return iSeq;
+	}
+	
+	/**
+	 * Gets the sequence number following the highest one used with the
+	 * specified base name, leaving any holes open.
+	 * 
+	 * @param baseName  the base name
+	 * @return the highest used number plus one, starting at 1
+	 */
+	public synchronized int getNextAfterLast(String baseName) {
+		BitSet used = mapUsed.get(baseName);
+		return (used == null ? 1 : Math.max(1, used.length()));
+	}
+	
+	/**
+	 * Builds a filename from a base name and a sequence number.
+	 * 
+	 * @param baseName  the base name
+	 * @param iSeq      the sequence number
+	 * @return  the filename, with a sequence of at least 3 digits
+	 */
+	public static String getFileName(String baseName, int iSeq) {
+		return baseName + String.format("%03d", iSeq) + sExtension;
+	}
+	
+	private static Matcher match(String fileName) {
+		if (fileName == null) {
+			return null;
+		}
+		Matcher match = patFileName.matcher(fileName);
+		return (match.matches() ? match : null);
+	}
+
+}
@@ -26,6 +26,9 @@ public class Importer {
 	
 	private static final Logger log = new Logger("Importer", true);
 	
+	/** Sequence numbers of the files in the photos directory, or null if not built yet */
+	private FileSequences sequences;
+	
 	/**
 	 * Imports pictures from jpg files.
 	 * 
@@ -72,6 +75,10 @@ public class Importer {
 	 * <p>Taxon should be a species or genus, and different from the picture's
 	 * current taxon. If that is not the case, the current filename is returned.
 	 * 
+	 * <p>The returned filename is reserved, so that concurrent callers get
+	 * different names. If it is not used, it must be given back with
+	 * {@link #releaseFilename(String)}.
+	 * 
 	 * @param hpic   the picture to move to a new taxon
 	 * @param taxon  the new picture taxon
 	 * @return  the first available filename in the new taxon
@@ -84,43 +91,59 @@ public class Importer {
 		if (taxon != null) {
 			TaxonRank rank = taxon.getRank();
 			if (TaxonRank.SPECIES == rank || TaxonRank.GENUS == rank) {
-				filename = taxon.getName().toLowerCase();
+				String baseFilename = taxon.getName().toLowerCase();
 				if (TaxonRank.GENUS == rank) {
-					filename += "-sp";
+					baseFilename += "-sp";
 				} else {
-					filename = filename.replace(" ", "-");
-				}
-				
-				boolean isAvailable = false;
-				String baseFilename = filename;
-				for (int iSeq = 1; iSeq<1000; ++iSeq) {
-					String sequence = String.format("%03d", iSeq);
-					String extension = ".jpg";
-					filename = baseFilename + sequence + extension;
-					
-					boolean isInUse = false;
-					for (HerbierPic taxPic : taxon.getPicsCascade()) {
-						if (filename.equals(taxPic.getFileName())) {
-							isInUse = true;
-						}
-					}
-					
-					if (!isInUse) {
-						log.info("Found available filename " + filename);
-						isAvailable = true;
-						break;
-					}
+					baseFilename = baseFilename.replace(" ", "-");
 				}
 				
-				if (!isAvailable) {
+				int iSeq = getSequences().allocate(baseFilename);
+				if (iSeq > FileSequences.maxSequence) {
 					log.warn("No available filename found for " + hpic + ", with new taxon " + taxon);
 					throw new AppException("Pas de noms de fichiers disponibles!");
 				}
+				filename = FileSequences.getFileName(baseFilename, iSeq);
+				log.info("Found available filename " + filename);
 			}
 		}
 		return filename;
 	}
 	
+	/**
+	 * Gives back a filename reserved by {@link #getAvailableFilename(HerbierPic, Taxon)}
+	 * and finally not used.
+	 * 
+	 * @param filename  the unused filename
+	 */
+	protected void releaseFilename(String filename) {
+		getSequences().remove(filename);
+	}
+	
+	/**
+	 * Gets the sequence numbers used in the photos directory.
+	 * Built on first use from the cached pictures and the files on disk,
+	 * then kept up-to-date by imports, renames and deletions.
+	 * 
+	 * @return  the filename sequences
+	 */
+	protected synchronized FileSequences getSequences() {
+		if (sequences == null) {
+			FileSequences result = new FileSequences();
+			for (HerbierPic pic : PictureCache.getInstance().getAll()) {
+				result.add(pic.getFileName());
+			}
+			String[] fileNames = new File(Controller.picturesPath).list();
+			if (fileNames != null) {
+				for (String fileName : fileNames) {
+					result.add(fileName);
+				}
+			}
+			sequences = result;
+		}
+		return sequences;
+	}
+	
 	/**
 	 * Renames the specified picture and changes its taxon.
 	 * 
@@ -143,6 +166,7 @@ public class Importer {
 		if (!(isDiffName || isDiffTaxon)) {
 			log.info("Nothing to do.");
 		} else {
+			boolean isRenamed = false;
 			if (isDiffName) {
 				File file = new File(Controller.picturesPath + filename);
 				if (file.exists()) {
@@ -157,22 +181,40 @@ public class Importer {
 								Controller.mediumPath + filename);
 						Runtime.getRuntime().exec("mv " + Controller.thumbsPath + hpic.getFileName() + " " + 
 								Controller.thumbsPath + filename);
-						hpic.setFileName(filename);
-						hpic.setUpdatedAt(new Date());
+						getSequences().rename(hpic.getFileName(), filename);
+						isRenamed = true;
 					} catch (IOException e) {
 						log.error("Rename failed: " + e.getMessage());
 					}
 				}
 			}
 			
-			if (isDiffTaxon) {
-				hpic.setTaxon(taxon);
-				hpic.setIdxTaxon(taxon.getIdx());
+			// the filename is the sort key of the pictures of taxa and locations:
+			// remove the picture from them before changing it, then add it back
+			synchronized (CacheVersion.lock) {
+				hpic.getTaxon().removePic(hpic);
+				if (hpic.getLocation() != null) {
+					hpic.getLocation().removePic(hpic);
+				}
+				
+				if (isRenamed) {
+					hpic.setFileName(filename);
+					hpic.setUpdatedAt(new Date());
+				}
+				if (isDiffTaxon) {
+					hpic.setTaxon(taxon);
+					hpic.setIdxTaxon(taxon.getIdx());
+				}
+				
+				hpic.getTaxon().addPic(hpic);
+				if (hpic.getLocation() != null) {
+					hpic.getLocation().addPic(hpic);
+				}
+				CacheVersion.changed();
 			}
 			
-			// if all went well, save the pic
+			// if all went well, save the pic (also refreshes it in cache)
 			Controller.getInstance().savePicture(hpic);
-			Controller.getInstance().reloadCache();
 		}
 	}
 	
@@ -188,6 +230,7 @@ public class Importer {
 		
 		try {
 			Runtime.getRuntime().exec("rm " + Controller.picturesPath + hpic.getFileName());
+			getSequences().remove(hpic.getFileName());
 			Runtime.getRuntime().exec("rm " + Controller.mediumPath + hpic.getFileName());
 			Runtime.getRuntime().exec("rm " + Controller.thumbsPath + hpic.getFileName());
 		} catch (IOException e) {
@@ -209,12 +252,10 @@ public class Importer {
 		
 		HerbierPic hpic = new HerbierPic(0, fileName);
 		getShotAt(hpic, file);
+		getSequences().add(fileName);
 		
-		// create thumbnail if needed
-		File thumb = new File(Controller.thumbsPath + fileName);
-		createImageIfMissing(file, thumb, 180, false);
-		File medium = new File(Controller.mediumPath + fileName);
-		createImageIfMissing(file, medium, 500, false);
+		// create thumbnails if needed, in background
+		ThumbnailEngine.getInstance().createIfMissing(file, ThumbnailEngine.getDerivatives(fileName));
 		
 		return hpic;
 	}
@@ -262,26 +303,6 @@ public class Importer {
 		}
 	}
 
-	protected void createImageIfMissing(File orig, File img, int size, boolean isWait) {
-		if (!img.exists()) { 
-		    log.info("Will create missing " + size + "px thumbnail for " + orig.getName());
-		    
-		    try {
-				Process procConvert = Runtime.getRuntime().exec("convert -resize " + size + "x" + size + " " +
-						orig.getAbsolutePath() + " " + img.getAbsolutePath());
-				if (isWait) {
-					try {
-						procConvert.waitFor();
-					} catch (InterruptedException e) {
-						
-					}
-				}
-			} catch (IOException e) {
-				log.error("Failed to resize image: " + e.getMessage());
-			}
-		}		
-	}
-	
 	/**
 	 * Get shot-at date from EXIF tags
 	 * @param hpic  the picture object to update
@@ -0,0 +1,299 @@
+package controller;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A map of objects by positive int keys, such as database indices.
+ * 
+ * <p>Keys are stored unboxed in an open-addressing table with linear probing,
+ * so that lookups don't allocate and each entry costs two array slots
+ * instead of a map entry and a boxed Integer.
+ * 
+ * @author nicz
+ * 
+ * @param <V>  the type of mapped values
+ */
+public class IntObjectMap<V> {
+	
+	/** Size in bytes of an object reference, assuming compressed oops */
+	private static final int refSize = 4;
+	
+	/** Size in bytes of an object or array header */
+	private static final int headerSize = 16;
+	
+	/** Free slots have a key of 0 */
+	private static final int freeKey = 0;
+	
+	private int[] keys;
+	private Object[] values;
+	private int size;
+	
+	/** Incremented on each structural change, to detect concurrent modifications */
+	private int modCount;
+	
+	
+	public IntObjectMap() {
+		this(16);
+	}
+	
+	/**
+	 * Constructor.
+	 * @param expectedSize  the expected number of entries
+	 */
+	public IntObjectMap(int expectedSize) {
+		int capacity = 16;
+		while (capacity * 3 / 4 < expectedSize) {
+			capacity *= 2;
+		}
+		keys = new int[capacity];
+		values = new Object[capacity];
+		size = 0;
+	}
+	
+	/**
+	 * Copy constructor. The values themselves are not copied.
+	 * @param other  the map to copy
+	 */
+	public IntObjectMap(IntObjectMap<V> other) {
+		keys = other.keys.clone();
+		values = other.values.clone();
+		size = other.size;
+	}
+	
+	/**
+	 * Gets the value mapped to a key.
+	 * @param key  the key
+	 * @return the value, or null if not found
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(int key) {
+		if (key <= 0) {
+			return null;
+		}
+		int mask = keys.length - 1;
+		for (int i = hash(key) & mask; keys[i] != freeKey; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				return (V) values[i];
+			}
+		}
+		return null;
+	}
+	
+	public boolean containsKey(int key) {
+		return get(key) != null;
+	}
+	
+	/**
+	 * Maps a value to a key.
+	 * @param key    the key, which must be positive
+	 * @param value  the value (may not be null)
+	 * @return the previous value of the key, or null if none
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(int key, V value) {
+		if (key <= 0) {
+			throw new IllegalArgumentException("Invalid key " + key);
+		}
+		if (value == null) {
+			return remove(key);
+		}
+		
+		int mask = keys.length - 1;
+		int i = hash(key) & mask;
+		for (; keys[i] != freeKey; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				V previous = (V) values[i];
+				values[i] = value;
+				return previous;
+			}
+		}
+		
+		keys[i] = key;
+		values[i] = value;
+		size++;
+		modCount++;
+		if (size > keys.length * 3 / 4) {
+			resize(keys.length * 2);
+		}
+		return null;
+	}
+	
+	/**
+	 * Removes the value of a key.
+	 * @param key  the key
+	 * @return the removed value, or null if none
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(int key) {
+		if (key <= 0) {
+			return null;
+		}
+		int mask = keys.length - 1;
+		for (int i = hash(key) & mask; keys[i] != freeKey; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				V previous = (V) values[i];
+				shiftBack(i);
+				size--;
+				modCount++;
+				return previous;
+			}
+		}
+		return null;
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	public void clear() {
+		Arrays.fill(keys, freeKey);
+		Arrays.fill(values, null);
+		size = 0;
+		modCount++;
+	}
+	
+	/**
+	 * Gets the keys of the map.
+	 * @return a new array of keys, in no particular order
+	 */
+	public int[] keys() {
+		int[] result = new int[size];
+		int n = 0;
+		for (int key : keys) {
+			if (key != freeKey) {
+				result[n++] = key;
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Gets a read-only view of the values of the map.
+	 * @return the values, in no particular order
+	 */
+	public Collection<V> values() {
+		return new AbstractCollection<V>() {
+			@Override
+			public Iterator<V> iterator() {
+				return new ValueIterator();
+			}
+			
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+	
+	/**
+	 * Estimates the heap size of the map, not counting the values themselves.
+	 * @return the size in bytes
+	 */
+	public long getMemoryFootprint() {
+		return 3 * headerSize + 4L * keys.length + (long) refSize * values.length;
+	}
+	
+	/**
+	 * Estimates the heap size of a <code>HashMap&lt;Integer, V&gt;</code>
+	 * with the specified number of entries, for comparison.
+	 * Each entry costs a node and a boxed Integer, plus a table slot.
+	 * 
+	 * @param nEntries  the number of entries
+	 * @return the size in bytes
+	 */
+	public static long estimateHashMapFootprint(int nEntries) {
+		int capacity = 16;
+		while (capacity * 3 / 4 < nEntries) {
+			capacity *= 2;
+		}
+		long nodeSize = headerSize + 4 + 3 * refSize;
+		long integerSize = headerSize;
+		return 3 * headerSize + (long) refSize * capacity + nEntries * (nodeSize + integerSize);
+	}
+	
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+	
+	/**
+	 * Frees slot i, moving back the next entries of its probe sequence if needed,
+	 * so that lookups never stop at a hole before their key.
+	 */
+	private void shiftBack(int i) {
+		int mask = keys.length - 1;
+		int free = i;
+		for (int j = (i + 1) & mask; keys[j] != freeKey; j = (j + 1) & mask) {
+			int home = hash(keys[j]) & mask;
+			// move the entry if its home slot is not in the cyclic range (free, j]
+			boolean isInRange = (free <= j) ? (free < home && home <= j) : (free < home || home <= j);
+			if (!isInRange) {
+				keys[free] = keys[j];
+				values[free] = values[j];
+				free = j;
+			}
+		}
+		keys[free] = freeKey;
+		values[free] = null;
+	}
+	
+	private void resize(int capacity) {
+		int[] oldKeys = keys;
+		Object[] oldValues = values;
+		keys = new int[capacity];
+		values = new Object[capacity];
+		int mask = capacity - 1;
+		for (int k = 0; k < oldKeys.length; ++k) {
+			if (oldKeys[k] != freeKey) {
+				int i = hash(oldKeys[k]) & mask;
+				while (keys[i] != freeKey) {
+					i = (i + 1) & mask;
+				}
+				keys[i] = oldKeys[k];
+				values[i] = oldValues[k];
+			}
+		}
+	}
+	
+	private class ValueIterator implements Iterator<V> {
+		
+		private final int expectedModCount = modCount;
+		private int next = advance(0);
+		
+		@Override
+		public boolean hasNext() {
+			return next < keys.length;
+		}
+		
+		@Override
+		@SuppressWarnings("unchecked")
+		public V next() {
+			if (modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			V value = (V) values[next];
+			next = advance(next + 1);
+			return value;
+		}
+		
+		private int advance(int i) {
+			while (i < keys.length && keys[i] == freeKey) {
+				i++;
+			}
+			return i;
+		}
+	}
+
+}
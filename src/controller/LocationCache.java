@@ -1,8 +1,7 @@
 package controller;
 
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 import java.util.Vector;
 
 import model.Location;
@@ -10,84 +9,200 @@ import model.Location;
 import common.base.Logger;
 import common.data.HasMapCoordinates;
 
-import controller.DatabaseTools.eOrdering;
+import controller.listeners.FetchListener;
 
 public class LocationCache {
 	
 	private static final Logger log = new Logger("LocationCache", true);
 	
 	/** Map of Locations by database idx. */
-	private final Map<Integer, Location> mapById;
+	private final IntObjectMap<Location> mapById;
+	
+	/** Read-only copy of the idx map, or null if the cache changed since it was copied */
+	private volatile IntObjectMap<Location> published;
 
-	/** the singleton instance */
-	private static LocationCache _instance = null;
+	/** the singleton instance, created when the class is loaded */
+	private static final LocationCache _instance = new LocationCache();
 	
 	
 	/**
-	 * Gets a location by its database index.
+	 * Gets a location by its database index, without locking unless the cache just changed.
+	 * Background jobs should rather use {@link CacheVersion#getLocation(int)}.
 	 * @param idx  the database index.
 	 * @return  the location, or null if not found.
 	 */
 	public Location getLocation(int idx) {
 		if (idx > 0) {
-			return mapById.get(Integer.valueOf(idx));
+			IntObjectMap<Location> map = published;
+			if (map == null) {
+				map = publish();
+			}
+			return map.get(idx);
 		} else {
 			return null;
 		}
 	}
 	
 	/**
-	 * Find the closest location to an object with coordinates
+	 * Publishes a read-only copy of the idx map, if the cache changed since last copied.
+	 * @return  the published map
+	 */
+	private IntObjectMap<Location> publish() {
+		synchronized (CacheVersion.lock) {
+			IntObjectMap<Location> map = published;
+			if (map == null) {
+				map = new IntObjectMap<>(mapById);
+				published = map;
+			}
+			return map;
+		}
+	}
+	
+	/**
+	 * Find the closest location to an object with coordinates,
+	 * using great-circle distances.
 	 * @param hmcTo  an object with latitude and longitude
 	 * @return the closest location, or null if no locations in cache
 	 */
 	public Location getClosestLocation(HasMapCoordinates hmcTo) {
-		Location result = null;
-		double dMinDist = 0.0;
-		
-		for (Location loc : mapById.values()) {
-			double dDist = loc.getDistance(hmcTo);
-			if (result == null || dDist < dMinDist) {
-				result = loc;
-				dMinDist = dDist;
-			}
-		}
-		
-		//log.info("Closest location is " + result);
-		return result;
+		return getIndex().getClosest(hmcTo);
+	}
+	
+	/**
+	 * Gets the spatial index of the current {@link CacheVersion}.
+	 * The index is rebuilt if the cache changed since it was last built.
+	 * 
+	 * @return  the location index
+	 */
+	public LocationIndex getIndex() {
+		return CacheVersion.getCurrent().getLocationIndex();
+	}
+	
+	/**
+	 * Searches cached locations by name, region, town and kind.
+	 * 
+	 * @param filter  the search text
+	 * @return  the matching locations, best first
+	 */
+	public List<Location> search(String filter) {
+		return getTextIndex().search(filter);
+	}
+	
+	/**
+	 * Gets the full-text index of the current {@link CacheVersion}.
+	 * The index is rebuilt if the cache changed since it was last built.
+	 * 
+	 * @return  the text index
+	 */
+	public TextIndex<Location> getTextIndex() {
+		return CacheVersion.getCurrent().getLocationTextIndex();
 	}
 	
 	/** 
 	 * Reloads the cache.
-	 * Fetches all locations from database and fills the cache. 
+	 * Fetches all locations from database, then fills the cache
+	 * while holding the cache lock. 
 	 */
 	public void loadAll() {
-		clear();
-		Vector<Location> locations = DataAccess.getInstance().getLocations(null, eOrdering.BY_NAME, null);
-		log.info("Loaded " + locations.size() + " locations");
+		final Vector<Location> locations = new Vector<>();
+		DataAccess.getInstance().streamLocations(null, null, null, 
+				new FetchListener<Location>() {
+			@Override
+			public void objectFetched(Location location) {
+				locations.add(location);
+			}
+		});
 		
-		for (Location location : locations) {
-			addLocation(location);
+		synchronized (CacheVersion.lock) {
+			clear();
+			for (Location location : locations) {
+				addLocation(location);
+			}
+			log.info("Loaded " + size() + " locations");
+		}
+	}
+	
+	/**
+	 * Fills the cache with the locations of an already linked graph.
+	 * 
+	 * @param graph  the linked graph of cached objects
+	 */
+	protected void load(CacheGraph graph) {
+		synchronized (CacheVersion.lock) {
+			clear();
+			for (Location location : graph.getLocations()) {
+				addLocation(location);
+			}
+			log.info("Loaded " + size() + " locations");
 		}
 	}
 	
+	/**
+	 * Gets all cached locations, from the current {@link CacheVersion}.
+	 * 
+	 * @return  a read-only list of locations, which won't change with the cache
+	 */
 	public Collection<Location> getAll() {
+		return CacheVersion.getCurrent().getLocations();
+	}
+	
+	/**
+	 * Gets a live view of the cached locations, for building cache versions.
+	 * Must only be used while holding the cache lock.
+	 */
+	Collection<Location> values() {
 		return mapById.values();
 	}
 	
 	
 	/**
 	 * Refresh the cache for the specified location.
+	 * The cached location is updated in place, so that it keeps its pictures
+	 * and the pictures keep pointing to it. A location not cached yet is added,
+	 * and a location no longer in database is removed.
 	 * @param idxLocation  the index of the location to refresh.
 	 */
 	public void refresh(int idxLocation) {
 		if (idxLocation > 0) {
 			Location location = DataAccess.getInstance().getLocation(idxLocation);
 			log.info("Refreshing cache for " + location);
-			addLocation(location);
+			
+			synchronized (CacheVersion.lock) {
+				Location cached = mapById.get(idxLocation);
+				if (location == null) {
+					if (cached != null) {
+						mapById.remove(idxLocation);
+						changed();
+					}
+				} else if (cached == null) {
+					addLocation(location);
+				} else {
+					cached.setName(location.getName());
+					cached.setDescription(location.getDescription());
+					cached.setKind(location.getKind());
+					cached.setTown(location.getTown());
+					cached.setRegion(location.getRegion());
+					cached.setState(location.getState());
+					cached.setAltitude(location.getAltitude());
+					cached.setMapZoom(location.getMapZoom());
+					cached.setLongitude(location.getLongitude());
+					cached.setLatitude(location.getLatitude());
+					changed();
+				}
+			}
 		}
 	}
 
+	/**
+	 * Estimates the heap size of the idx map of the cache,
+	 * not counting the cached objects themselves.
+	 * 
+	 * @return  the size in bytes
+	 */
+	public long getMemoryFootprint() {
+		return mapById.getMemoryFootprint();
+	}
+	
 	/**
 	 * Gets the size of the cache.
 	 * Size is the number of Locations with different IDs.
@@ -102,7 +217,10 @@ public class LocationCache {
 	 * Clears the cache.
 	 */
 	public void clear() {
-		mapById.clear();
+		synchronized (CacheVersion.lock) {
+			mapById.clear();
+			changed();
+		}
 	}
 	
 	/**
@@ -112,21 +230,29 @@ public class LocationCache {
 	 */
 	private void addLocation(Location location) {
 		if (location != null) {
-			mapById.put(Integer.valueOf(location.getIdx()), location);
+			mapById.put(location.getIdx(), location);
+			changed();
 		}
 	}
+	
+	/**
+	 * Drops the published map and the current cache version.
+	 * Must be called while holding the cache lock.
+	 */
+	private void changed() {
+		published = null;
+		CacheVersion.changed();
+	}
 
 	
 	/** Gets the singleton instance. */
 	public static LocationCache getInstance() {
-		if (_instance == null)
-			_instance = new LocationCache();
 		return _instance;
 	}
 
 	/** Private singleton constructor */
 	private LocationCache() {
-		mapById = new HashMap<>();
+		mapById = new IntObjectMap<>();
 	}
 
 }
@@ -0,0 +1,281 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import model.Location;
+
+import common.data.HasMapCoordinates;
+
+/**
+ * A spatial index of locations, for nearest-neighbour and radius queries
+ * with great-circle distances.
+ * 
+ * <p>Locations are stored as unit vectors on the sphere, in a k-d tree laid out
+ * in a sorted array. The straight-line (chord) distance between two unit vectors
+ * grows with the great-circle distance, so the nearest locations in 3D space
+ * are also the nearest on Earth, without special cases at poles or at 180°.
+ * 
+ * <p>The index is built once per {@link CacheVersion}, by
+ * {@link CacheVersion#getLocationIndex()}. Locations without coordinates are ignored.
+ * 
+ * @author nicz
+ * 
+ */
+public class LocationIndex {
+	
+	/** Mean radius of the Earth in km */
+	private static final double earthRadiusKm = 6371.0;
+	
+	/** The indexed locations, in k-d tree order */
+	private final Location[] locations;
+	
+	/** The unit vector of each location, in k-d tree order */
+	private final double[][] points;
+	
+	
+	/**
+	 * Builds the index of the specified locations.
+	 * 
+	 * @param all  the locations to index
+	 */
+	protected LocationIndex(Collection<Location> all) {
+		List<Location> listLocations = new ArrayList<>();
+		for (Location location : all) {
+			if (hasCoordinates(location)) {
+				listLocations.add(location);
+			}
+		}
+		
+		locations = listLocations.toArray(new Location[listLocations.size()]);
+		points = new double[locations.length][];
+		for (int i = 0; i < locations.length; ++i) {
+			points[i] = toUnitVector(locations[i]);
+		}
+		build(0, locations.length, 0);
+	}
+	
+	/**
+	 * Gets the location closest to the specified coordinates.
+	 * 
+	 * @param hmcTo  an object with latitude and longitude
+	 * @return the closest location, or null if none
+	 */
+	public Location getClosest(HasMapCoordinates hmcTo) {
+		List<Location> listClosest = getClosest(hmcTo, 1, Double.POSITIVE_INFINITY);
+		return listClosest.isEmpty() ? null : listClosest.get(0);
+	}
+	
+	/**
+	 * Gets the locations closest to the specified coordinates.
+	 * 
+	 * @param hmcTo      an object with latitude and longitude
+	 * @param iMax       the maximum number of locations to return
+	 * @param dMaxKm     the maximum distance in km
+	 * @return  a list of locations sorted by growing distance (may be empty, but never null)
+	 */
+	public List<Location> getClosest(HasMapCoordinates hmcTo, int iMax, double dMaxKm) {
+		if (!hasCoordinates(hmcTo) || iMax <= 0) {
+			return new ArrayList<>();
+		}
+		Neighbors neighbors = new Neighbors(iMax, toChord2(dMaxKm));
+		search(toUnitVector(hmcTo), 0, locations.length, 0, neighbors);
+		return neighbors.toList();
+	}
+	
+	/**
+	 * Gets all locations within the specified distance.
+	 * 
+	 * @param hmcTo   an object with latitude and longitude
+	 * @param dMaxKm  the maximum distance in km
+	 * @return  a list of locations sorted by growing distance (may be empty, but never null)
+	 */
+	public List<Location> getWithin(HasMapCoordinates hmcTo, double dMaxKm) {
+		return getClosest(hmcTo, Integer.MAX_VALUE, dMaxKm);
+	}
+	
+	/**
+	 * Gets the number of indexed locations.
+	 * @return the number of locations with coordinates
+	 */
+	public int size() {
+		return locations.length;
+	}
+	
+	/**
+	 * Computes the great-circle distance between two objects with coordinates.
+	 * 
+	 * @param hmc1  the first object
+	 * @param hmc2  the second object
+	 * @return the distance in km
+	 */
+	public static double getDistanceKm(HasMapCoordinates hmc1, HasMapCoordinates hmc2) {
+		double lat1 = Math.toRadians(hmc1.getLatitude().doubleValue());
+		double lat2 = Math.toRadians(hmc2.getLatitude().doubleValue());
+		double dLat = lat2 - lat1;
+		double dLon = Math.toRadians(hmc2.getLongitude().doubleValue() - hmc1.getLongitude().doubleValue());
+		double a =
+				Math.sin(dLat/2) * Math.sin(dLat/2) +
+				Math.cos(lat1) * Math.cos(lat2) *
+				Math.sin(dLon/2) * Math.sin(dLon/2);
+		double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1-a));
+		return earthRadiusKm * c;
+	}
+	
+	/**
+	 * Sorts a range of the index by the specified axis, then each half
+	 * by the next axis, so that the middle of each range splits it.
+	 */
+	private void build(int lo, int hi, int axis) {
+		if (hi - lo <= 1) {
+			return;
+		}
+		
+		final int iAxis = axis;
+		Integer[] order = new Integer[hi - lo];
+		for (int i = 0; i < order.length; ++i) {
+			order[i] = Integer.valueOf(lo + i);
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer i1, Integer i2) {
+				return Double.compare(points[i1.intValue()][iAxis], points[i2.intValue()][iAxis]);
+			}
+		});
+		
+		Location[] sortedLocations = new Location[order.length];
+		double[][] sortedPoints = new double[order.length][];
+		for (int i = 0; i < order.length; ++i) {
+			sortedLocations[i] = locations[order[i].intValue()];
+			sortedPoints[i] = points[order[i].intValue()];
+		}
+		System.arraycopy(sortedLocations, 0, locations, lo, order.length);
+		System.arraycopy(sortedPoints, 0, points, lo, order.length);
+		
+		int mid = (lo + hi) >>> 1;
+		build(lo, mid, (axis + 1) % 3);
+		build(mid + 1, hi, (axis + 1) % 3);
+	}
+	
+	private void search(double[] point, int lo, int hi, int axis, Neighbors neighbors) {
+		if (lo >= hi) {
+			return;
+		}
+		
+		int mid = (lo + hi) >>> 1;
+		neighbors.offer(locations[mid], getChord2(point, points[mid]));
+		
+		// search the half containing the point first, then the other one if close enough
+		double diff = point[axis] - points[mid][axis];
+		int nextAxis = (axis + 1) % 3;
+		if (diff < 0) {
+			search(point, lo, mid, nextAxis, neighbors);
+			if (diff*diff <= neighbors.getBound()) {
+				search(point, mid + 1, hi, nextAxis, neighbors);
+			}
+		} else {
+			search(point, mid + 1, hi, nextAxis, neighbors);
+			if (diff*diff <= neighbors.getBound()) {
+				search(point, lo, mid, nextAxis, neighbors);
+			}
+		}
+	}
+	
+	private static boolean hasCoordinates(HasMapCoordinates hmc) {
+		return hmc != null && hmc.getLatitude() != null && hmc.getLongitude() != null;
+	}
+	
+	private static double[] toUnitVector(HasMapCoordinates hmc) {
+		double lat = Math.toRadians(hmc.getLatitude().doubleValue());
+		double lon = Math.toRadians(hmc.getLongitude().doubleValue());
+		return new double[] {
+				Math.cos(lat) * Math.cos(lon),
+				Math.cos(lat) * Math.sin(lon),
+				Math.sin(lat) };
+	}
+	
+	private static double getChord2(double[] p1, double[] p2) {
+		double dx = p1[0] - p2[0];
+		double dy = p1[1] - p2[1];
+		double dz = p1[2] - p2[2];
+		return dx*dx + dy*dy + dz*dz;
+	}
+	
+	/**
+	 * Converts a great-circle distance to a squared chord length on the unit sphere.
+	 */
+	private static double toChord2(double dKm) {
+		double angle = Math.min(dKm / earthRadiusKm, Math.PI);
+		double chord = 2 * Math.sin(angle / 2);
+		return chord * chord;
+	}
+	
+	/**
+	 * The closest locations found so far, at most iMax within a max distance.
+	 */
+	private static class Neighbors {
+		
+		private final int iMax;
+		private final double maxChord2;
+		
+		/** Found neighbors, farthest first */
+		private final PriorityQueue<Neighbor> queue;
+		
+		public Neighbors(int iMax, double maxChord2) {
+			this.iMax = iMax;
+			this.maxChord2 = maxChord2;
+			this.queue = new PriorityQueue<>(Math.min(iMax, 16), Collections.reverseOrder());
+		}
+		
+		public void offer(Location location, double chord2) {
+			if (chord2 > maxChord2) {
+				return;
+			}
+			if (queue.size() < iMax) {
+				queue.add(new Neighbor(location, chord2));
+			} else if (chord2 < queue.peek().chord2) {
+				queue.poll();
+				queue.add(new Neighbor(location, chord2));
+			}
+		}
+		
+		/**
+		 * Gets the squared chord beyond which locations can be skipped.
+		 */
+		public double getBound() {
+			return (queue.size() < iMax ? maxChord2 : queue.peek().chord2);
+		}
+		
+		public List<Location> toList() {
+			List<Neighbor> listNeighbors = new ArrayList<>(queue);
+			Collections.sort(listNeighbors);
+			List<Location> result = new ArrayList<>(listNeighbors.size());
+			for (Neighbor neighbor : listNeighbors) {
+				result.add(neighbor.location);
+			}
+			return result;
+		}
+	}
+	
+	private static class Neighbor implements Comparable<Neighbor> {
+		
+		private final Location location;
+		private final double chord2;
+		
+		public Neighbor(Location location, double chord2) {
+			this.location = location;
+			this.chord2 = chord2;
+		}
+		
+		@Override
+		public int compareTo(Neighbor other) {
+			return Double.compare(chord2, other.chord2);
+		}
+	}
+
+}
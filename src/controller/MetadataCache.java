@@ -0,0 +1,326 @@
+package controller;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+
+import model.ImageInfo;
+
+import com.drew.imaging.ImageMetadataReader;
+import com.drew.lang.GeoLocation;
+import com.drew.metadata.Directory;
+import com.drew.metadata.Metadata;
+import com.drew.metadata.exif.ExifIFD0Directory;
+import com.drew.metadata.exif.ExifSubIFDDirectory;
+import com.drew.metadata.exif.GpsDirectory;
+import com.drew.metadata.jpeg.JpegDirectory;
+
+import common.base.Logger;
+
+/**
+ * Persistent cache of the EXIF metadata of image files,
+ * so that files are parsed again only when they change.
+ * 
+ * <p>Metadata are read by {@link ExifHeaderReader} from the start of the file,
+ * or by the metadata library if the header reader can't find them.
+ * 
+ * <p>Metadata are kept by absolute path, with the size and modification time
+ * of the file when it was parsed. A file whose size or time changed is parsed again.
+ * Files which could not be parsed are cached too, with empty metadata.
+ * 
+ * <p>The cache is read from its file on first use, and written on exit if it changed,
+ * without the files which no longer exist.
+ * 
+ * @author nicz
+ * 
+ */
+public class MetadataCache {
+	
+	private static final Logger log = new Logger("MetadataCache", true);
+	
+	/** The cache file */
+	private static final String cacheFile = Controller.appPath + "panorpa-exif.bin";
+	
+	/** Magic number at the start of cache files: EXIF */
+	private static final int magic = 0x45584946;
+	
+	/** The cache format version. Increment when changing the format. */
+	private static final int version = 1;
+	
+	/** Marker for null dates */
+	private static final long nullTime = Long.MIN_VALUE;
+	
+	private static final MetadataCache _instance = new MetadataCache();
+	
+	/** Cached metadata by absolute path, or null if not read yet */
+	private volatile Map<String, Entry> mapEntries = null;
+	
+	/** Set when metadata were added since the cache file was read */
+	private volatile boolean isDirty = false;
+	
+	
+	public static MetadataCache getInstance() {
+		return _instance;
+	}
+	
+	private MetadataCache() {
+	}
+	
+	/**
+	 * Gets the metadata of an image file, parsing it only if it changed since cached.
+	 * 
+	 * @param file  the image file
+	 * @return  the metadata, empty if the file does not exist or can't be parsed
+	 */
+	public ImageInfo get(File file) {
+		if (file == null || !file.exists()) {
+			return new ImageInfo();
+		}
+		
+		String path = file.getAbsolutePath();
+		long size = file.length();
+		long tModified = file.lastModified();
+		Map<String, Entry> map = getEntries();
+		Entry entry = map.get(path);
+		if (entry != null && entry.size == size && entry.tModified == tModified) {
+			return entry.info;
+		}
+		
+		entry = new Entry(size, tModified, readInfo(file));
+		map.put(path, entry);
+		isDirty = true;
+		return entry.info;
+	}
+	
+	/**
+	 * Writes the cache file if metadata were added.
+	 */
+	public synchronized void saveIfDirty() {
+		if (!isDirty) {
+			return;
+		}
+		
+		long tStart = System.currentTimeMillis();
+		File file = new File(cacheFile);
+		File fileTmp = new File(cacheFile + ".tmp");
+		int nEntries = 0;
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileTmp)))) {
+			out.writeInt(magic);
+			out.writeInt(version);
+			for (Iterator<Map.Entry<String, Entry>> it = mapEntries.entrySet().iterator(); it.hasNext(); ) {
+				Map.Entry<String, Entry> mapEntry = it.next();
+				if (!new File(mapEntry.getKey()).exists()) {
+					it.remove();
+					continue;
+				}
+				Entry entry = mapEntry.getValue();
+				ImageInfo info = entry.info;
+				out.writeBoolean(true);
+				writeString(out, mapEntry.getKey());
+				out.writeLong(entry.size);
+				out.writeLong(entry.tModified);
+				out.writeLong(info.getShotAt() == null ? nullTime : info.getShotAt().getTime());
+				out.writeDouble(info.getLatitude()  == null ? Double.NaN : info.getLatitude().doubleValue());
+				out.writeDouble(info.getLongitude() == null ? Double.NaN : info.getLongitude().doubleValue());
+				out.writeInt(info.getWidth());
+				out.writeInt(info.getHeight());
+				writeString(out, info.getCameraMake());
+				writeString(out, info.getCameraModel());
+				nEntries++;
+			}
+			out.writeBoolean(false);
+		} catch (IOException e) {
+			log.error("Writing metadata cache failed: " + e.getMessage());
+			fileTmp.delete();
+			return;
+		}
+		
+		if (fileTmp.renameTo(file)) {
+			isDirty = false;
+			log.info("Wrote metadata of " + nEntries + " files in " +
+					(System.currentTimeMillis() - tStart) + " ms");
+		} else {
+			log.error("Failed to rename metadata cache " + fileTmp.getName());
+		}
+	}
+	
+	/**
+	 * Gets the cached entries, reading the cache file on first call.
+	 */
+	private Map<String, Entry> getEntries() {
+		Map<String, Entry> map = mapEntries;
+		if (map == null) {
+			synchronized (this) {
+				map = mapEntries;
+				if (map == null) {
+					map = read();
+					mapEntries = map;
+				}
+			}
+		}
+		return map;
+	}
+	
+	private static Map<String, Entry> read() {
+		Map<String, Entry> map = new ConcurrentHashMap<>();
+		File file = new File(cacheFile);
+		if (!file.exists()) {
+			log.info("No metadata cache found");
+			return map;
+		}
+		
+		long tStart = System.currentTimeMillis();
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != magic || in.readInt() != version) {
+				log.warn("Ignoring metadata cache with another format");
+				return map;
+			}
+			while (in.readBoolean()) {
+				String path = readString(in);
+				long size = in.readLong();
+				long tModified = in.readLong();
+				long tShotAt = in.readLong();
+				Double latitude = readDouble(in);
+				Double longitude = readDouble(in);
+				int width = in.readInt();
+				int height = in.readInt();
+				String make = readString(in);
+				String model = readString(in);
+				map.put(path, new Entry(size, tModified, new ImageInfo(
+						(tShotAt == nullTime ? null : new Date(tShotAt)), latitude, longitude,
+						width, height, make, model)));
+			}
+		} catch (IOException e) {
+			log.error("Reading metadata cache failed: " + e.getMessage());
+			map.clear();
+		}
+		log.info("Read metadata of " + map.size() + " files in " + (System.currentTimeMillis() - tStart) + " ms");
+		return map;
+	}
+	
+	/**
+	 * Parses the metadata of an image file, from its header if possible.
+	 * 
+	 * @param file  the image file
+	 * @return  the metadata, empty if the file can't be parsed
+	 */
+	static ImageInfo readInfo(File file) {
+		try {
+			ImageInfo info = ExifHeaderReader.read(file);
+			if (info != null && info.getShotAt() != null) {
+				return info;
+			}
+		} catch (IOException | RuntimeException e) {
+			log.error("Failed to read image header of " + file.getName() + ": " + e.getMessage());
+		}
+		return readInfoWithLibrary(file);
+	}
+	
+	/**
+	 * Parses the metadata of an image file with the metadata library,
+	 * which reads all directories of the file.
+	 * 
+	 * @param file  the image file
+	 * @return  the metadata, empty if the file can't be parsed
+	 */
+	static ImageInfo readInfoWithLibrary(File file) {
+		try {
+			Metadata metadata = ImageMetadataReader.readMetadata(file);
+			
+			Date dShotAt = null;
+			int width = 0;
+			int height = 0;
+			ExifSubIFDDirectory exif = metadata.getFirstDirectoryOfType(ExifSubIFDDirectory.class);
+			if (exif != null) {
+				dShotAt = exif.getDate(ExifSubIFDDirectory.TAG_DATETIME_ORIGINAL, TimeZone.getDefault());
+				width  = getInt(exif, ExifSubIFDDirectory.TAG_EXIF_IMAGE_WIDTH);
+				height = getInt(exif, ExifSubIFDDirectory.TAG_EXIF_IMAGE_HEIGHT);
+			}
+			JpegDirectory jpeg = metadata.getFirstDirectoryOfType(JpegDirectory.class);
+			if (jpeg != null) {
+				width  = getInt(jpeg, JpegDirectory.TAG_IMAGE_WIDTH);
+				height = getInt(jpeg, JpegDirectory.TAG_IMAGE_HEIGHT);
+			}
+			
+			Double latitude = null;
+			Double longitude = null;
+			GpsDirectory gps = metadata.getFirstDirectoryOfType(GpsDirectory.class);
+			GeoLocation location = (gps == null ? null : gps.getGeoLocation());
+			if (location != null) {
+				latitude  = location.getLatitude();
+				longitude = location.getLongitude();
+			}
+			
+			String make = null;
+			String model = null;
+			ExifIFD0Directory ifd0 = metadata.getFirstDirectoryOfType(ExifIFD0Directory.class);
+			if (ifd0 != null) {
+				make  = ifd0.getString(ExifIFD0Directory.TAG_MAKE);
+				model = ifd0.getString(ExifIFD0Directory.TAG_MODEL);
+			}
+			
+			return new ImageInfo(dShotAt, latitude, longitude, width, height, make, model);
+		} catch (Exception e) {
+			log.error("Failed to read image metadata of " + file.getName(), e);
+			return new ImageInfo();
+		}
+	}
+	
+	private static int getInt(Directory directory, int tag) {
+		Integer value = directory.getInteger(tag);
+		return (value == null ? 0 : value.intValue());
+	}
+	
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		if (s == null) {
+			out.writeInt(-1);
+		} else {
+			byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+	
+	private static String readString(DataInputStream in) throws IOException {
+		int len = in.readInt();
+		if (len < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[len];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	private static Double readDouble(DataInputStream in) throws IOException {
+		double dVal = in.readDouble();
+		return Double.isNaN(dVal) ? null : Double.valueOf(dVal);
+	}
+	
+	/**
+	 * The metadata of a file, with its size and time when parsed.
+	 */
+	private static class Entry {
+		
+		private final long size;
+		private final long tModified;
+		private final ImageInfo info;
+		
+		public Entry(long size, long tModified, ImageInfo info) {
+			this.size = size;
+			this.tModified = tModified;
+			this.info = info;
+		}
+	}
+
+}
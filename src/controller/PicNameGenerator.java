@@ -1,8 +1,6 @@
 package controller;
 
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.Set;
 
 import model.HerbierPic;
 import model.Taxon;
@@ -19,10 +17,12 @@ import common.exceptions.AppException;
 public class PicNameGenerator {
 
 	private static final Logger log = new Logger("PicNameGenerator", true);
-	public  static final String sExtension = ".jpg";
+	public  static final String sExtension = FileSequences.sExtension;
 	
 	protected final Taxon taxon;
-	protected final Set<String> setNames;
+	
+	/** Sequence numbers of the existing names */
+	protected FileSequences sequences;
 
 	/**
 	 * Constructor.
@@ -31,7 +31,6 @@ public class PicNameGenerator {
 	 */
 	public PicNameGenerator(Taxon taxon) {
 		this.taxon = taxon;
-		this.setNames = new HashSet<String>();
 		reset();
 	}
 	
@@ -59,30 +58,14 @@ public class PicNameGenerator {
 		if (usePicNumber && sPicNumber != null && !sPicNumber.isEmpty()) {
 			name = baseName + sPicNumber + sExtension;
 		} else {
-			boolean isAvailable = false;
-			for (int iSeq = 1; iSeq<1000; ++iSeq) {
-				// TODO this will fill in holes in numbering, maybe better to generate max+1 ?
-				String sequence = String.format("%03d", iSeq);
-				name = baseName + sequence + sExtension;
-
-				boolean isInUse = false;
-				for (String sExistingName : setNames) {
-					if (name.equals(sExistingName)) {
-						isInUse = true;
-					}
-				}
-
-				if (!isInUse) {
-					log.info("Found available filename " + name);
-					isAvailable = true;
-					break;
-				}
-			}
-
-			if (!isAvailable) {
+			// fills in holes in numbering, see PicNameGeneratorLast to generate max+1
+			int iSeq = sequences.getFirstFree(baseName);
+			if (iSeq > FileSequences.maxSequence) {
 				log.warn("No available filename found for taxon " + taxon);
 				throw new AppException("Pas de noms de fichiers disponibles!");
 			}
+			name = FileSequences.getFileName(baseName, iSeq);
+			log.info("Found available filename " + name);
 		}
 		
 		return name;
@@ -93,16 +76,18 @@ public class PicNameGenerator {
 	 * @param names names of files already existing
 	 */
 	public void addExistingNames(Collection<String> names) {
-		setNames.addAll(names);
+		for (String name : names) {
+			sequences.add(name);
+		}
 	}
 	
 	/**
 	 * Resets the list of existing file names for our taxon.
 	 */
 	public void reset() {
-		setNames.clear();
+		sequences = new FileSequences();
 		for (HerbierPic pic : taxon.getPics()) {
-			setNames.add(pic.getFileName());
+			sequences.add(pic.getFileName());
 		}
 	}
 	
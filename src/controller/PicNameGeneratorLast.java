@@ -1,8 +1,5 @@
 package controller;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 import common.base.Logger;
 import common.exceptions.AppException;
 
@@ -52,20 +49,7 @@ public class PicNameGeneratorLast extends PicNameGenerator {
 		if (usePicNumber && sPicNumber != null && !sPicNumber.isEmpty()) {
 			name = baseName + sPicNumber + sExtension;
 		} else {
-			Pattern patTaxonFileName = Pattern.compile("^" + getBaseName() + "([0-9]+)\\.jpg");
-			int iSeq = 0;
-			for (String sExistingName : setNames) {
-				Matcher match = patTaxonFileName.matcher(sExistingName);
-				if (match.matches()) {
-					Integer picNumber = Integer.valueOf(match.group(1));
-					if (picNumber != null && picNumber.intValue() > iSeq) {
-						iSeq = picNumber.intValue();
-					}
-				}
-			}
-			
-			String sequence = String.format("%03d", iSeq+1);
-			name = baseName + sequence + sExtension;
+			name = FileSequences.getFileName(baseName, sequences.getNextAfterLast(baseName));
 		}
 		
 		return name;
@@ -1,63 +1,281 @@
 package controller;
 
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Date;
+import java.util.List;
 import java.util.Vector;
 
 import model.HerbierPic;
+import model.Location;
 import model.Taxon;
 
 import common.base.Logger;
 
+import controller.listeners.FetchListener;
+
 public class PictureCache {
 	
 	private static final Logger log = new Logger("PictureCache", true);
 	
 	/** Map of pictures by database idx. */
-	private final Map<Integer, HerbierPic> mapById;
-
-	/** the singleton instance */
-	private static PictureCache _instance = null;
+	private final IntObjectMap<HerbierPic> mapById;
+	
+	/** Read-only copy of the idx map, or null if the cache changed since it was copied */
+	private volatile IntObjectMap<HerbierPic> published;
+	
+	/** The latest picUpdatedAt in cache, or null if none */
+	private Date tHighWater;
+	
+	/** The highest picture idx in cache */
+	private int maxIdx;
+	
+	/** the singleton instance, created when the class is loaded */
+	private static final PictureCache _instance = new PictureCache();
 	
 	
 	/**
-	 * Gets a Picture by its database idx.
+	 * Gets a Picture by its database idx, without locking unless the cache just changed.
+	 * Background jobs should rather use {@link CacheVersion#getPicture(int)}.
 	 * @param idx  the database index.
 	 * @return  the picture, or null if not found.
 	 */
 	public HerbierPic getPicture(int idx) {
 		if (idx > 0) {
-			return mapById.get(Integer.valueOf(idx));
+			IntObjectMap<HerbierPic> map = published;
+			if (map == null) {
+				map = publish();
+			}
+			return map.get(idx);
 		} else {
 			return null;
 		}
 	}
 	
-	/** 
+	/**
+	 * Publishes a read-only copy of the idx map, if the cache changed since last copied.
+	 * @return  the published map
+	 */
+	private IntObjectMap<HerbierPic> publish() {
+		synchronized (CacheVersion.lock) {
+			IntObjectMap<HerbierPic> map = published;
+			if (map == null) {
+				map = new IntObjectMap<>(mapById);
+				published = map;
+			}
+			return map;
+		}
+	}
+	
+	/**
 	 * Reloads the cache.
-	 * Fetches all pictures from database and fills the cache. 
+	 * Fetches all pictures from database, then fills the cache
+	 * while holding the cache lock.
 	 */
 	public void loadAll() {
-		clear();
-		Vector<HerbierPic> pics = DataAccess.getInstance().getHerbierPics(null, null);
-		log.info("Loaded " + pics.size() + " pictures");
+		final Vector<HerbierPic> pics = new Vector<>();
+		DataAccess.getInstance().streamHerbierPics(" WHERE 1=1 ", null, null,
+				new FetchListener<HerbierPic>() {
+			@Override
+			public void objectFetched(HerbierPic pic) {
+				pics.add(pic);
+			}
+		});
 		
-		for (HerbierPic pic : pics) {
-			addPic(pic);
-			Taxon taxon = TaxonCache.getInstance().getTaxon(pic.getIdxTaxon());
-			if (taxon != null) {
-				pic.setTaxon(taxon);
-				taxon.addPic(pic);
+		synchronized (CacheVersion.lock) {
+			clear();
+			for (HerbierPic pic : pics) {
+				addPic(pic);
+				Taxon taxon = TaxonCache.getInstance().getTaxon(pic.getIdxTaxon());
+				if (taxon != null) {
+					pic.setTaxon(taxon);
+					taxon.addPic(pic);
+				}
+				if (pic.getLocation() != null) {
+					pic.getLocation().addPic(pic);
+				}
+			}
+			log.info("Loaded " + pics.size() + " pictures");
+		}
+	}
+	
+	/**
+	 * Fills the cache with the pictures of an already linked graph.
+	 * 
+	 * @param graph  the linked graph of cached objects
+	 */
+	protected void load(CacheGraph graph) {
+		synchronized (CacheVersion.lock) {
+			clear();
+			for (HerbierPic pic : graph.getPictures()) {
+				addPic(pic);
+			}
+			log.info("Loaded " + size() + " pictures");
+		}
+	}
+	
+	/**
+	 * Refreshes the cache with the pictures added or updated since
+	 * the latest picUpdatedAt in cache, and drops deleted pictures.
+	 * Cached pictures, taxa and locations are patched in place.
+	 * The database is queried without holding the cache lock.
+	 * 
+	 * <p>As picUpdatedAt only has a precision of one second, the pictures
+	 * updated in the same second as the latest one in cache are fetched again,
+	 * and skipped by {@link #applyRows(CacheGraph, boolean)} if they didn't change.
+	 */
+	public void refreshDelta() {
+		String where;
+		synchronized (CacheVersion.lock) {
+			where = getDeltaWhere(maxIdx, tHighWater);
+		}
+		CacheGraph delta = fetchRows(where);
+		if (delta != null) {
+			synchronized (CacheVersion.lock) {
+				applyRows(delta, false);
+			}
+			dropDeleted();
+		}
+	}
+	
+	/**
+	 * Gets the where-clause of the pictures to fetch by {@link #refreshDelta()}.
+	 * 
+	 * @param maxIdx      the highest picture idx in cache
+	 * @param tHighWater  the latest picUpdatedAt in cache, or null if none
+	 * @return  the where-clause
+	 */
+	static String getDeltaWhere(int maxIdx, Date tHighWater) {
+		String where = " WHERE idxPicture > " + maxIdx;
+		if (tHighWater != null) {
+			where += " OR picUpdatedAt >= " + DatabaseTools.toSqlDateTime(tHighWater);
+		}
+		return where;
+	}
+	
+	/**
+	 * Refreshes the cache for the specified pictures.
+	 * Pictures that are no longer in database are removed from cache.
+	 * If fetching fails, the cache is left unchanged.
+	 * 
+	 * @param idxPics  the database indices of the pictures to refresh
+	 */
+	public void refresh(int... idxPics) {
+		if (idxPics.length == 0) {
+			return;
+		}
+		
+		StringBuilder where = new StringBuilder(" WHERE idxPicture IN (");
+		for (int i = 0; i < idxPics.length; ++i) {
+			where.append(i == 0 ? "" : ", ").append(idxPics[i]);
+		}
+		where.append(")");
+		CacheGraph delta = fetchRows(where.toString());
+		if (delta == null) {
+			return;
+		}
+		
+		BitSet fetched = new BitSet();
+		for (HerbierPic pic : delta.getPictures()) {
+			fetched.set(pic.getIdx());
+		}
+		synchronized (CacheVersion.lock) {
+			applyRows(delta, true);
+			// remove the pictures deleted from database
+			for (int idx : idxPics) {
+				if (!fetched.get(idx)) {
+					remove(idx);
+				}
 			}
 		}
 	}
 	
+	/**
+	 * Removes the specified picture from cache, and from
+	 * the pictures of its taxon and location.
+	 * 
+	 * @param idx  the database index of the picture to remove
+	 */
+	public void remove(int idx) {
+		synchronized (CacheVersion.lock) {
+			HerbierPic pic = mapById.remove(idx);
+			if (pic != null) {
+				changed();
+				unlink(pic);
+			}
+		}
+	}
+	
+	/**
+	 * Gets all cached pictures, from the current {@link CacheVersion}.
+	 * 
+	 * @return  a read-only list of pictures, which won't change with the cache
+	 */
 	public Collection<HerbierPic> getAll() {
+		return CacheVersion.getCurrent().getPictures();
+	}
+	
+	/**
+	 * Gets the latest cached pictures, from the current {@link CacheVersion}.
+	 * 
+	 * @param nLatest  the max number of pictures to get
+	 * @return  at most nLatest pictures, newest first
+	 */
+	public Vector<HerbierPic> getLatestPics(int nLatest) {
+		return CacheVersion.getCurrent().getLatestPics(nLatest);
+	}
+	
+	/**
+	 * Gets the cached pictures shot between two dates, included,
+	 * from the current {@link CacheVersion}.
+	 * 
+	 * @param tFrom  the start date
+	 * @param tTo    the end date
+	 * @return  a read-only list of pictures, oldest first
+	 */
+	public List<HerbierPic> getPicsShotBetween(Date tFrom, Date tTo) {
+		return CacheVersion.getCurrent().getPicsShotBetween(tFrom, tTo);
+	}
+	
+	/**
+	 * Searches cached pictures by filename and remarks.
+	 * 
+	 * @param filter  the search text
+	 * @return  the matching pictures, best first
+	 */
+	public List<HerbierPic> search(String filter) {
+		return getTextIndex().search(filter);
+	}
+	
+	/**
+	 * Gets the full-text index of the current {@link CacheVersion}.
+	 * The index is rebuilt if the cache changed since it was last built.
+	 * 
+	 * @return  the text index
+	 */
+	public TextIndex<HerbierPic> getTextIndex() {
+		return CacheVersion.getCurrent().getPictureTextIndex();
+	}
+	
+	/**
+	 * Gets a live view of the cached pictures, for building cache versions.
+	 * Must only be used while holding the cache lock.
+	 */
+	Collection<HerbierPic> values() {
 		return mapById.values();
 	}
 	
-
+	
+	/**
+	 * Estimates the heap size of the idx map of the cache,
+	 * not counting the cached objects themselves.
+	 * 
+	 * @return  the size in bytes
+	 */
+	public long getMemoryFootprint() {
+		return mapById.getMemoryFootprint();
+	}
+	
 	/**
 	 * Gets the size of the cache.
 	 * Size is the number of pictures with different IDs.
@@ -67,12 +285,153 @@ public class PictureCache {
 	public int size() {
 		return mapById.size();
 	}
-
-	/** 
+	
+	/**
 	 * Clears the cache.
 	 */
 	public void clear() {
-		mapById.clear();
+		synchronized (CacheVersion.lock) {
+			mapById.clear();
+			tHighWater = null;
+			maxIdx = 0;
+			changed();
+		}
+	}
+	
+	/**
+	 * Fetches the pictures matching the specified where-clause,
+	 * with the idx of their location.
+	 * 
+	 * @param where  the where-clause of pictures to fetch
+	 * @return  the fetched pictures, or null if fetching failed
+	 */
+	private static CacheGraph fetchRows(String where) {
+		CacheGraph delta = new CacheGraph();
+		if (!DataAccess.getInstance().fetchGraphRows(delta, false, false, where)) {
+			return null;
+		}
+		return delta;
+	}
+	
+	/**
+	 * Adds fetched pictures to cache, linked to cached taxa and locations.
+	 * Cached pictures are updated in place, so that references held elsewhere
+	 * remain valid, and are moved to their new taxon and location.
+	 * Unless forced, rows that did not change are skipped.
+	 * Must be called while holding the cache lock.
+	 * 
+	 * @param delta     the pictures fetched by {@link #fetchRows(String)}
+	 * @param isForced  true to apply all rows, as the cached pictures may
+	 *                  already have been modified in place by an editor
+	 */
+	private void applyRows(CacheGraph delta, boolean isForced) {
+		Vector<HerbierPic> pics = delta.getPictures();
+		int nChanged = 0;
+		for (int iPic = 0; iPic < pics.size(); ++iPic) {
+			HerbierPic pic = pics.get(iPic);
+			Taxon taxon = TaxonCache.getInstance().getTaxon(pic.getIdxTaxon());
+			Location location = LocationCache.getInstance().getLocation(delta.getPictureLocationIdx(iPic));
+			
+			HerbierPic cached = mapById.get(pic.getIdx());
+			if (cached == null) {
+				cached = pic;
+			} else if (!isForced && isSameRow(cached, pic, taxon, location)) {
+				continue;
+			} else {
+				// remove from the sorted sets before changing the sort keys
+				unlink(cached);
+				cached.setFileName(pic.getFileName());
+				cached.setShotAt(pic.getShotAt());
+				cached.setRemarks(pic.getRemarks());
+				cached.setIdxTaxon(pic.getIdxTaxon());
+				cached.setRating(pic.getRating());
+				cached.setUpdatedAt(pic.getUpdatedAt());
+			}
+			
+			cached.setTaxon(taxon);
+			if (taxon != null) {
+				taxon.addPic(cached);
+			}
+			cached.setLocation(location);
+			if (location != null) {
+				location.addPic(cached);
+			}
+			addPic(cached);
+			nChanged++;
+		}
+		log.info("Refreshed " + nChanged + " of " + pics.size() + " fetched pictures");
+	}
+	
+	/**
+	 * Checks if a fetched picture is the same as the cached one.
+	 * 
+	 * @param cached    the cached picture
+	 * @param pic       the fetched picture
+	 * @param taxon     the cached taxon of the fetched picture
+	 * @param location  the cached location of the fetched picture
+	 * @return  true if all fetched fields and links are the same
+	 */
+	static boolean isSameRow(HerbierPic cached, HerbierPic pic, Taxon taxon, Location location) {
+		return cached.getIdxTaxon() == pic.getIdxTaxon()
+				&& cached.getTaxon() == taxon
+				&& cached.getLocation() == location
+				&& cached.getRating() == pic.getRating()
+				&& cached.getShotAtTime() == pic.getShotAtTime()
+				&& getTime(cached.getUpdatedAt()) == getTime(pic.getUpdatedAt())
+				&& isSame(cached.getFileName(), pic.getFileName())
+				&& isSame(cached.getRemarks(), pic.getRemarks());
+	}
+	
+	private static boolean isSame(String text1, String text2) {
+		return (text1 == null ? text2 == null : text1.equals(text2));
+	}
+	
+	/** Gets the time of a date, which may be a Timestamp, or Long.MIN_VALUE if null */
+	private static long getTime(Date date) {
+		return (date == null ? Long.MIN_VALUE : date.getTime());
+	}
+	
+	/**
+	 * Removes a picture from the pictures of its taxon and location.
+	 * 
+	 * @param pic  the cached picture
+	 */
+	private static void unlink(HerbierPic pic) {
+		if (pic.getTaxon() != null) {
+			pic.getTaxon().removePic(pic);
+		}
+		if (pic.getLocation() != null) {
+			pic.getLocation().removePic(pic);
+		}
+	}
+	
+	/**
+	 * Removes pictures deleted from database, if the cache size
+	 * differs from the number of pictures in database.
+	 * Pictures added to cache while fetching are kept.
+	 */
+	private void dropDeleted() {
+		int maxIdxFetched;
+		synchronized (CacheVersion.lock) {
+			maxIdxFetched = maxIdx;
+		}
+		if (DataAccess.getInstance().countPictures() == size()) {
+			return;
+		}
+		
+		BitSet existing = DataAccess.getInstance().fetchPictureIndices();
+		if (existing != null) {
+			int nDeleted = 0;
+			synchronized (CacheVersion.lock) {
+				for (int idx : mapById.keys()) {
+					if (idx <= maxIdxFetched && !existing.get(idx)) {
+						remove(idx);
+						nDeleted++;
+					}
+				}
+			}
+			log.info("Removed " + nDeleted + " deleted pictures");
+		}
 	}
 	
 	/**
@@ -82,21 +441,36 @@ public class PictureCache {
 	 */
 	private void addPic(HerbierPic pic) {
 		if (pic != null) {
-			mapById.put(Integer.valueOf(pic.getIdx()), pic);
+			mapById.put(pic.getIdx(), pic);
+			changed();
+			maxIdx = Math.max(maxIdx, pic.getIdx());
+			Date tUpdatedAt = pic.getUpdatedAt();
+			if (tUpdatedAt != null && (tHighWater == null || tUpdatedAt.after(tHighWater))) {
+				tHighWater = tUpdatedAt;
+			}
 		}
 	}
-
+	
+	/**
+	 * Drops the published map and the current cache version.
+	 * Must be called while holding the cache lock.
+	 */
+	private void changed() {
+		published = null;
+		CacheVersion.changed();
+	}
+	
 	
 	/** Gets the singleton instance. */
 	public static PictureCache getInstance() {
-		if (_instance == null)
-			_instance = new PictureCache();
 		return _instance;
 	}
-
+	
 	/** Private singleton constructor */
 	private PictureCache() {
-		mapById = new HashMap<>();
+		mapById = new IntObjectMap<>();
+		tHighWater = null;
+		maxIdx = 0;
 	}
 
 }
@@ -0,0 +1,85 @@
+package controller;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import model.HerbierPic;
+
+/**
+ * A read-only, sorted list of pictures, browsed by rows of a virtual table
+ * without copying it.
+ * 
+ * <p>Without filter, the pager wraps the sorted array kept by the {@link CacheVersion},
+ * so that opening or re-sorting a list of 100k pictures allocates nothing.
+ * Rows are positioned by their sort key: a picture is found by binary search
+ * with the comparator of the ordering, as a keyset seek would do in database.
+ * 
+ * @author nicz
+ * 
+ */
+public class PicturePager {
+	
+	private final List<HerbierPic> pics;
+	
+	/** The comparator the pictures are sorted by, or null if in relevance order */
+	private final Comparator<HerbierPic> comparator;
+	
+	
+	/**
+	 * @param pics        the sorted pictures, which must not change
+	 * @param comparator  the comparator the pictures are sorted by, or null if unknown
+	 */
+	public PicturePager(List<HerbierPic> pics, Comparator<HerbierPic> comparator) {
+		this.pics = Collections.unmodifiableList(pics);
+		this.comparator = comparator;
+	}
+	
+	public int size() {
+		return pics.size();
+	}
+	
+	public boolean isEmpty() {
+		return pics.isEmpty();
+	}
+	
+	/**
+	 * Gets the picture at the specified row.
+	 * @param index  the row index
+	 * @return  the picture, or null if out of range
+	 */
+	public HerbierPic get(int index) {
+		if (index < 0 || index >= pics.size()) {
+			return null;
+		}
+		return pics.get(index);
+	}
+	
+	/**
+	 * Gets the row of a picture.
+	 * 
+	 * @param idx  the picture idx
+	 * @return  the row index, or -1 if not found
+	 */
+	public int indexOf(int idx) {
+		HerbierPic pic = PictureCache.getInstance().getPicture(idx);
+		if (pic == null) {
+			return -1;
+		}
+		if (comparator != null) {
+			int index = Collections.binarySearch(pics, pic, comparator);
+			if (index >= 0 && pics.get(index) == pic) {
+				return index;
+			}
+		}
+		
+		// sort key changed since the list was sorted, or no known ordering
+		for (int i = 0; i < pics.size(); ++i) {
+			if (pics.get(i).getIdx() == idx) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+}
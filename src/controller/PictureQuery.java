@@ -0,0 +1,349 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Vector;
+
+import model.HerbierPic;
+import model.Location;
+import model.Taxon;
+import model.TaxonRank;
+
+import common.base.Logger;
+
+import controller.DatabaseTools.eOrdering;
+
+/**
+ * A selection of cached pictures, composed of typed criteria instead of SQL where-clauses.
+ * 
+ * <p>All criteria must be met. The query is run on the current {@link CacheVersion}:
+ * each criterion with an index (rating, date, location, taxon, text) gives a list of
+ * candidate pictures, and the shortest list is checked against the other criteria.
+ * When the shortest list is already sorted as requested, only the first pictures
+ * up to the limit are checked.
+ * 
+ * <pre>
+ * Vector&lt;HerbierPic&gt; pics = new PictureQuery().ratingAtLeast(4)
+ *     .inLocation(location).orderBy(eOrdering.BY_DATE).select();
+ * </pre>
+ * 
+ * @author nicz
+ * 
+ */
+public class PictureQuery {
+	
+	private static final Logger log = new Logger("PictureQuery", true);
+	
+	private int minRating = Integer.MIN_VALUE;
+	private int maxRating = Integer.MAX_VALUE;
+	private Date dateFrom = null;
+	private Date dateTo = null;
+	private Location location = null;
+	private Taxon taxon = null;
+	private TaxonRank rank = null;
+	private Boolean hasGps = null;
+	private String text = null;
+	
+	private eOrdering order = null;
+	private boolean isDescending = false;
+	private int limit = 0;
+	
+	
+	public PictureQuery() {
+	}
+	
+	/**
+	 * Selects pictures rated at least the specified rating.
+	 */
+	public PictureQuery ratingAtLeast(int min) {
+		return ratingBetween(min, Integer.MAX_VALUE);
+	}
+	
+	/**
+	 * Selects pictures with a rating in the specified range, included.
+	 */
+	public PictureQuery ratingBetween(int min, int max) {
+		this.minRating = min;
+		this.maxRating = max;
+		return this;
+	}
+	
+	/**
+	 * Selects pictures shot between two dates, included.
+	 * 
+	 * @param from  the start date, or null for no start
+	 * @param to    the end date, or null for no end
+	 */
+	public PictureQuery shotBetween(Date from, Date to) {
+		this.dateFrom = from;
+		this.dateTo = to;
+		return this;
+	}
+	
+	/**
+	 * Selects pictures of the specified location.
+	 */
+	public PictureQuery inLocation(Location location) {
+		this.location = location;
+		return this;
+	}
+	
+	/**
+	 * Selects pictures of the specified taxon or of its descendants.
+	 */
+	public PictureQuery inTaxon(Taxon taxon) {
+		this.taxon = taxon;
+		return this;
+	}
+	
+	/**
+	 * Selects pictures of a taxon with the specified rank.
+	 */
+	public PictureQuery withRank(TaxonRank rank) {
+		this.rank = rank;
+		return this;
+	}
+	
+	/**
+	 * Selects pictures with, or without, their own GPS coordinates.
+	 */
+	public PictureQuery withGps(boolean hasGps) {
+		this.hasGps = hasGps;
+		return this;
+	}
+	
+	/**
+	 * Selects pictures matching a search text, as in the search boxes.
+	 * Without ordering, pictures are then sorted by relevance.
+	 */
+	public PictureQuery matching(String text) {
+		this.text = text;
+		return this;
+	}
+	
+	/**
+	 * Sorts the pictures. Without ordering, they are sorted by idx.
+	 */
+	public PictureQuery orderBy(eOrdering order) {
+		return orderBy(order, false);
+	}
+	
+	/**
+	 * Sorts the pictures, in reverse order if descending.
+	 */
+	public PictureQuery orderBy(eOrdering order, boolean isDescending) {
+		this.order = order;
+		this.isDescending = isDescending;
+		return this;
+	}
+	
+	/**
+	 * Limits the number of pictures.
+	 * @param limit  the max number of pictures, or 0 for all
+	 */
+	public PictureQuery limit(int limit) {
+		this.limit = limit;
+		return this;
+	}
+	
+	/**
+	 * Runs the query on the current version of the caches.
+	 * @return  a vector of cached pictures (may be empty, but never null)
+	 */
+	public Vector<HerbierPic> select() {
+		return select(CacheVersion.getCurrent());
+	}
+	
+	/**
+	 * Runs the query on the specified version of the caches.
+	 * 
+	 * @param version  the cache version to query
+	 * @return  a vector of cached pictures (may be empty, but never null)
+	 */
+	public Vector<HerbierPic> select(CacheVersion version) {
+		Set<HerbierPic> setHits = null;
+		Candidates best = null;
+		
+		if (Controller.isFiltered(text)) {
+			List<HerbierPic> hits = version.searchPictures(text);
+			setHits = new HashSet<>(hits);
+			best = new Candidates("text", hits, null);
+			if (order == null) {
+				// keep relevance order
+				return filter(best, setHits, true);
+			}
+		}
+		if (minRating != Integer.MIN_VALUE || maxRating != Integer.MAX_VALUE) {
+			best = Candidates.shortest(best, new Candidates("rating",
+					range(version.getPictures(eOrdering.BY_RATING), eOrdering.BY_RATING, minRating, maxRating),
+					eOrdering.BY_RATING));
+		}
+		if (dateFrom != null || dateTo != null) {
+			best = Candidates.shortest(best, new Candidates("date",
+					range(version.getPictures(eOrdering.BY_DATE), eOrdering.BY_DATE,
+						(dateFrom == null ? Long.MIN_VALUE : dateFrom.getTime()),
+						(dateTo == null ? Long.MAX_VALUE : dateTo.getTime())),
+					eOrdering.BY_DATE));
+		}
+		if (location != null) {
+			best = Candidates.shortest(best, new Candidates("location", version.getPics(location), null));
+		}
+		if (taxon != null) {
+			List<HerbierPic> pics = new ArrayList<>();
+			addSubtreePics(version, taxon, pics);
+			best = Candidates.shortest(best, new Candidates("taxon", pics, null));
+		}
+		if (order != null && order != eOrdering.BY_IDX) {
+			// a sorted list of all pictures may be read up to the limit only
+			best = Candidates.shortest(best, new Candidates("all", version.getPictures(order), order), limit);
+		}
+		if (best == null) {
+			best = new Candidates("all", version.getPictures(eOrdering.BY_IDX), eOrdering.BY_IDX);
+		}
+		
+		log.debug("Querying " + best.pics.size() + " pictures by " + best.name);
+		return filter(best, setHits, best.isSortedBy(order));
+	}
+	
+	/**
+	 * Checks if a picture meets all criteria, except the search text.
+	 */
+	public boolean matches(HerbierPic pic) {
+		if (pic.getRating() < minRating || pic.getRating() > maxRating) {
+			return false;
+		}
+		if (dateFrom != null && (pic.getShotAt() == null || pic.getShotAt().before(dateFrom))) {
+			return false;
+		}
+		if (dateTo != null && (pic.getShotAt() == null || pic.getShotAt().after(dateTo))) {
+			return false;
+		}
+		if (location != null && (pic.getLocation() == null || pic.getLocation().getIdx() != location.getIdx())) {
+			return false;
+		}
+		if (taxon != null && !isInSubtree(pic.getTaxon(), taxon)) {
+			return false;
+		}
+		if (rank != null && (pic.getTaxon() == null || pic.getTaxon().getRank() != rank)) {
+			return false;
+		}
+		if (hasGps != null && hasGps != (pic.getLatitude() != null && pic.getLongitude() != null)) {
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Checks the candidate pictures, then sorts them if needed.
+	 * 
+	 * @param isSorted  true if candidates are already in the requested order
+	 */
+	private Vector<HerbierPic> filter(Candidates candidates, Set<HerbierPic> setHits, boolean isSorted) {
+		List<HerbierPic> pics = candidates.pics;
+		int nMax = (isSorted && limit > 0 ? limit : Integer.MAX_VALUE);
+		Vector<HerbierPic> vecResult = new Vector<>();
+		for (int i = 0; i < pics.size() && vecResult.size() < nMax; ++i) {
+			HerbierPic pic = pics.get(isSorted && isDescending && order != null ? pics.size() - 1 - i : i);
+			if (matches(pic) && (setHits == null || setHits.contains(pic))) {
+				vecResult.add(pic);
+			}
+		}
+		
+		if (!isSorted) {
+			Comparator<HerbierPic> comparator = CacheOrderings.getPictureComparator(order);
+			Collections.sort(vecResult, isDescending ? Collections.reverseOrder(comparator) : comparator);
+			if (limit > 0 && vecResult.size() > limit) {
+				vecResult.setSize(limit);
+			}
+		}
+		return vecResult;
+	}
+	
+	/**
+	 * Gets the pictures with a rating or timestamp in the specified range, included.
+	 * 
+	 * @param sorted  the pictures sorted by rating or by date
+	 * @param order   BY_RATING or BY_DATE
+	 */
+	private static List<HerbierPic> range(List<HerbierPic> sorted, eOrdering order, long min, long max) {
+		int iFrom = lowerBound(sorted, order, min);
+		int iTo   = (max == Long.MAX_VALUE ? sorted.size() : lowerBound(sorted, order, max + 1));
+		return sorted.subList(iFrom, Math.max(iFrom, iTo));
+	}
+	
+	/**
+	 * Gets the position of the first picture with a key not lower than the specified one.
+	 */
+	private static int lowerBound(List<HerbierPic> sorted, eOrdering order, long key) {
+		int low = 0;
+		int high = sorted.size();
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (getKey(sorted.get(mid), order) < key) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+	
+	private static long getKey(HerbierPic pic, eOrdering order) {
+		return (order == eOrdering.BY_RATING ? pic.getRating() : pic.getShotAtTime());
+	}
+	
+	private static void addSubtreePics(CacheVersion version, Taxon taxon, List<HerbierPic> pics) {
+		pics.addAll(version.getPics(taxon));
+		for (Taxon child : version.getChildren(taxon)) {
+			addSubtreePics(version, child, pics);
+		}
+	}
+	
+	private static boolean isInSubtree(Taxon taxon, Taxon root) {
+		while (taxon != null && taxon.getIdx() != root.getIdx()) {
+			taxon = taxon.getParent();
+		}
+		return (taxon != null);
+	}
+	
+	/**
+	 * A list of candidate pictures, given by an index.
+	 */
+	private static class Candidates {
+		
+		private final String name;
+		private final List<HerbierPic> pics;
+		
+		/** The ordering of the list, or null if not sorted */
+		private final eOrdering sortedBy;
+		
+		public Candidates(String name, List<HerbierPic> pics, eOrdering sortedBy) {
+			this.name = name;
+			this.pics = pics;
+			this.sortedBy = sortedBy;
+		}
+		
+		public boolean isSortedBy(eOrdering order) {
+			return (sortedBy != null && sortedBy == (order == null ? eOrdering.BY_IDX : order));
+		}
+		
+		public static Candidates shortest(Candidates best, Candidates other) {
+			return shortest(best, other, 0);
+		}
+		
+		/**
+		 * Gets the shortest list of candidates.
+		 * @param limit  if not 0, the number of pictures read in the other list
+		 */
+		public static Candidates shortest(Candidates best, Candidates other, int limit) {
+			int nOther = (limit > 0 ? Math.min(limit, other.pics.size()) : other.pics.size());
+			return (best == null || nOther < best.pics.size() ? other : best);
+		}
+	}
+
+}
@@ -0,0 +1,88 @@
+package controller;
+
+/**
+ * Enum of named, parameterized SQL statements used by {@link DataAccess}.
+ * 
+ * <p>Each statement is prepared once per database connection 
+ * by a {@link StatementRegistry}, and parameters are bound 
+ * with the typed binders of {@link DatabaseTools}.
+ * 
+ * @author nicz
+ *
+ */
+public enum SqlStatement {
+	
+	PICTURE_INSERT("INSERT INTO Picture " +
+			"(idxPicture, picFilename, picShotAt, picIdxLocation, " +
+			"picRemarks, picTaxon, picRating, picUpdatedAt) " +
+			"VALUES (null, ?, ?, ?, ?, ?, ?, now() )", true),
+	PICTURE_UPDATE("UPDATE Picture SET picFilename = ?, " +
+			"picShotAt = ?, picIdxLocation = ?, picRemarks = ?, " +
+			"picTaxon = ?, picRating = ?, picUpdatedAt = now() " +
+			"WHERE idxPicture = ?", false),
+	PICTURE_DELETE("DELETE FROM Picture WHERE idxPicture = ?", false),
+	
+	TAXON_SELECT_BY_IDX("SELECT * FROM Taxon WHERE idxTaxon = ?", false),
+	TAXON_SELECT_BY_NAME("SELECT * FROM Taxon WHERE taxRank = ? AND taxName = ?", false),
+	TAXON_INSERT("INSERT INTO Taxon " +
+			"(idxTaxon, taxName, taxNameFr, taxRank, taxParent, taxOrder, taxTypical) " +
+			"VALUES (null, ?, ?, ?, ?, ?, ? )", true),
+	TAXON_UPDATE("UPDATE Taxon SET taxName = ?, " +
+			"taxNameFr = ?, taxRank = ?, taxParent = ?, " +
+			"taxOrder = ?, taxTypical = ? " +
+			"WHERE idxTaxon = ?", false),
+	TAXON_DELETE("DELETE FROM Taxon WHERE idxTaxon = ?", false),
+	
+	LOCATION_SELECT_BY_IDX("SELECT * FROM Location WHERE idxLocation = ?", false),
+	LOCATION_INSERT("INSERT INTO Location " +
+			"(idxLocation, locName, locDesc, locKind, locTown, " +
+			"locRegion, locState, locAltitude, " +
+			"locLongitude, locLatitude, locMapZoom) " +
+			"VALUES (null, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", true),
+	LOCATION_UPDATE("UPDATE Location SET locName = ?, " +
+			"locDesc = ?, locKind = ?, locTown = ?, locRegion = ?, locState = ?, " +
+			"locAltitude = ?, locLongitude = ?, locLatitude = ?, locMapZoom = ? " +
+			"WHERE idxLocation = ?", false),
+	
+	EXPEDITION_INSERT("INSERT INTO Expedition " +
+			"(idxExpedition, expName, expDesc, expLocation, " +
+			"expFrom, expTo, expTrack) " +
+			"VALUES (null, ?, ?, ?, ?, ?, ?)", true),
+	EXPEDITION_UPDATE("UPDATE Expedition SET expName = ?, " +
+			"expDesc = ?, expLocation = ?, expFrom = ?, expTo = ?, " +
+			"expTrack = ? " +
+			"WHERE idxExpedition = ?", false),
+	
+	APPPARAM_SELECT_BY_NAME("SELECT * FROM AppParam WHERE apName = ?", false),
+	APPPARAM_UPDATE("UPDATE AppParam SET " +
+			"apStrVal = ?, apNumVal = ?, apDateVal = ? " +
+			"WHERE idxAppParam = ?", false);
+	
+	/** The parameterized SQL */
+	private final String sql;
+	
+	/** True if the statement returns generated keys */
+	private final boolean hasGeneratedKeys;
+	
+	private SqlStatement(String sql, boolean hasGeneratedKeys) {
+		this.sql = sql;
+		this.hasGeneratedKeys = hasGeneratedKeys;
+	}
+
+	/**
+	 * Gets the parameterized SQL of this statement.
+	 * @return the SQL with ? placeholders
+	 */
+	public String getSql() {
+		return sql;
+	}
+
+	/**
+	 * Checks if this statement returns generated keys.
+	 * @return true for inserts with auto-increment keys
+	 */
+	public boolean hasGeneratedKeys() {
+		return hasGeneratedKeys;
+	}
+
+}
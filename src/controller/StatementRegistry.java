@@ -0,0 +1,80 @@
+package controller;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.EnumMap;
+import java.util.Map;
+
+import common.base.Logger;
+
+/**
+ * Registry of the {@link PreparedStatement}s of a single database connection.
+ * 
+ * <p>Each {@link SqlStatement} is prepared on first use and then reused
+ * for the lifetime of the connection, so the server parses it only once.
+ * Registries are owned by the {@link ConnectionPool} and dropped
+ * with their connection.
+ * 
+ * @author nicz
+ *
+ */
+public class StatementRegistry {
+	
+	private static final Logger log = new Logger("StatementRegistry", true);
+	
+	/** The connection the statements belong to */
+	private final Connection conn;
+	
+	/** The prepared statements by name */
+	private final Map<SqlStatement, PreparedStatement> mapStatements;
+	
+	/**
+	 * Constructor.
+	 * @param conn  the connection to prepare statements on
+	 */
+	public StatementRegistry(Connection conn) {
+		this.conn = conn;
+		this.mapStatements = new EnumMap<>(SqlStatement.class);
+	}
+	
+	/**
+	 * Gets the specified prepared statement, preparing it if needed.
+	 * Parameters of a reused statement are cleared.
+	 * 
+	 * @param sqlStmt  the statement name
+	 * @return  the prepared statement
+	 * @throws SQLException  if preparing the statement fails
+	 */
+	public PreparedStatement get(SqlStatement sqlStmt) throws SQLException {
+		PreparedStatement stmt = mapStatements.get(sqlStmt);
+		if (stmt == null || stmt.isClosed()) {
+			log.debug("Preparing " + sqlStmt.name() + ": " + sqlStmt.getSql());
+			if (sqlStmt.hasGeneratedKeys()) {
+				stmt = conn.prepareStatement(sqlStmt.getSql(), Statement.RETURN_GENERATED_KEYS);
+			} else {
+				stmt = conn.prepareStatement(sqlStmt.getSql());
+			}
+			mapStatements.put(sqlStmt, stmt);
+		} else {
+			stmt.clearParameters();
+		}
+		return stmt;
+	}
+	
+	/**
+	 * Closes all prepared statements.
+	 */
+	public void close() {
+		for (PreparedStatement stmt : mapStatements.values()) {
+			try {
+				stmt.close();
+			} catch (SQLException e) {
+				log.error("Failed to close statement: " + e.getMessage());
+			}
+		}
+		mapStatements.clear();
+	}
+
+}
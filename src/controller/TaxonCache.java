@@ -2,6 +2,8 @@ package controller;
 
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
@@ -24,7 +26,7 @@ public class TaxonCache {
 	private static final Logger log = new Logger("TaxonCache", true);
 	
 	/** Map of taxons by database idx. */
-	private final Map<Integer, Taxon> mapById;
+	private final IntObjectMap<Taxon> mapById;
 	
 	/** Map of taxons by name. */
 	private final Map<String, Taxon> mapByName;
@@ -32,49 +34,178 @@ public class TaxonCache {
 	/** Set of top-level taxons */
 	private final Set<Taxon> setTopLevel;
 	
+	/** Read-only copy of the idx map, or null if the cache changed since it was copied */
+	private volatile IntObjectMap<Taxon> publishedById;
+	
+	/** Read-only copy of the name map, or null if the cache changed since it was copied */
+	private volatile Map<String, Taxon> publishedByName;
+	
 	/**
-	 * Gets a Taxon by its name.
+	 * Gets a Taxon by its name, without locking unless the cache just changed.
+	 * Background jobs should rather use {@link CacheVersion#getTaxon(String)}.
 	 * @param name  the taxon name
 	 * @return  the taxon, or null if not found.
 	 */
 	public Taxon getTaxon(String name) {
 		if (name != null) {
-			return mapByName.get(name);
+			Map<String, Taxon> map = publishedByName;
+			if (map == null) {
+				map = publishByName();
+			}
+			return map.get(name);
 		} else {
 			return null;
 		}
 	}
 	
 	/**
-	 * Gets a Taxon by its database idx.
+	 * Gets a Taxon by its database idx, without locking unless the cache just changed.
+	 * Background jobs should rather use {@link CacheVersion#getTaxon(int)}.
 	 * @param idx  the database index.
 	 * @return  the taxon, or null if not found.
 	 */
 	public Taxon getTaxon(int idx) {
 		if (idx > 0) {
-			return mapById.get(Integer.valueOf(idx));
+			IntObjectMap<Taxon> map = publishedById;
+			if (map == null) {
+				map = publishById();
+			}
+			return map.get(idx);
 		} else {
 			return null;
 		}
 	}
 	
+	/**
+	 * Publishes a read-only copy of the idx map, if the cache changed since last copied.
+	 * @return  the published map
+	 */
+	private IntObjectMap<Taxon> publishById() {
+		synchronized (CacheVersion.lock) {
+			IntObjectMap<Taxon> map = publishedById;
+			if (map == null) {
+				map = new IntObjectMap<>(mapById);
+				publishedById = map;
+			}
+			return map;
+		}
+	}
+	
+	/**
+	 * Publishes a read-only copy of the name map, if the cache changed since last copied.
+	 * @return  the published map
+	 */
+	private Map<String, Taxon> publishByName() {
+		synchronized (CacheVersion.lock) {
+			Map<String, Taxon> map = publishedByName;
+			if (map == null) {
+				map = new HashMap<>(mapByName);
+				publishedByName = map;
+			}
+			return map;
+		}
+	}
+	
 	/**
 	 * Refresh the cache for the specified taxon.
+	 * The cached taxon is updated in place, so that its children, pictures
+	 * and references held elsewhere remain valid.
 	 * @param idxTaxon  the index of the taxon to refresh.
 	 */
 	public void refresh(int idxTaxon) {
 		if (idxTaxon > 0) {
 			Taxon taxon = DataAccess.getInstance().getTaxon(idxTaxon);
 			log.info("Refreshing cache for " + taxon);
-			addTaxon(taxon);
 			
-			if (taxon.getIdxParent() > 0) {
-				Taxon parent = getTaxon(taxon.getIdxParent());
-				if (parent != null) {
-					parent.removeChild(idxTaxon);
+			synchronized (CacheVersion.lock) {
+				Taxon cached = mapById.get(idxTaxon);
+				if (taxon == null) {
+					delete(idxTaxon);
+				} else if (cached == null) {
+					insert(taxon);
+				} else {
+					detach(cached);
+					unindex(cached);
+					cached.setName(taxon.getName());
+					cached.setNameFr(taxon.getNameFr());
+					cached.setRank(taxon.getRank());
+					cached.setOrder(taxon.getOrder());
+					cached.setTypical(taxon.isTypical());
+					cached.setIdxParent(taxon.getIdxParent());
+					addTaxon(cached);
+					setParent(cached);
 				}
 			}
-			setParent(taxon);
+		}
+	}
+	
+	/**
+	 * Adds a new taxon to the cache, as a child of its parent
+	 * (found by parent idx) or as a top-level taxon.
+	 * @param taxon  the taxon to insert
+	 */
+	public void insert(Taxon taxon) {
+		synchronized (CacheVersion.lock) {
+			if (taxon != null) {
+				addTaxon(taxon);
+				setParent(taxon);
+			}
+		}
+	}
+	
+	/**
+	 * Removes the specified taxon from the cache and from the children of its parent.
+	 * Remaining children, if any, become top-level taxa.
+	 * @param idxTaxon  the index of the taxon to delete
+	 */
+	public void delete(int idxTaxon) {
+		synchronized (CacheVersion.lock) {
+			Taxon taxon = mapById.get(idxTaxon);
+			if (taxon != null) {
+				detach(taxon);
+				unindex(taxon);
+				for (Taxon child : new Vector<>(taxon.getChildren())) {
+					taxon.removeChild(child);
+					child.setParent(null);
+					child.setIdxParent(0);
+					setTopLevel.add(child);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Moves the specified taxon under a new parent.
+	 * @param taxon   the cached taxon to move
+	 * @param parent  the new parent, or null to make the taxon top-level
+	 */
+	public void reparent(Taxon taxon, Taxon parent) {
+		synchronized (CacheVersion.lock) {
+			if (taxon != null) {
+				detach(taxon);
+				taxon.setIdxParent(parent == null ? 0 : parent.getIdx());
+				setParent(taxon);
+			}
+		}
+	}
+	
+	/**
+	 * Renames the specified taxon, keeping the name map and
+	 * the sorted children of its parent consistent.
+	 * @param taxon   the cached taxon to rename
+	 * @param name    the new latin name
+	 * @param nameFr  the new french name
+	 */
+	public void rename(Taxon taxon, String name, String nameFr) {
+		synchronized (CacheVersion.lock) {
+			if (taxon != null) {
+				detach(taxon);
+				unindex(taxon);
+				taxon.setName(name);
+				taxon.setNameFr(nameFr);
+				addTaxon(taxon);
+				setParent(taxon);
+			}
 		}
 	}
 	
@@ -83,32 +214,112 @@ public class TaxonCache {
 	 * Fetches all taxons from database and fills the cache. 
 	 */
 	public void loadAll() {
-		clear();
 		Vector<Taxon> taxons = DataAccess.getInstance().getTaxons(null, eOrdering.BY_NAME, null);
 		log.info("Loaded " + taxons.size() + " taxons");
 		
-		for (Taxon taxon : taxons) {
-			addTaxon(taxon);
+		synchronized (CacheVersion.lock) {
+			clear();
+			
+			for (Taxon taxon : taxons) {
+				addTaxon(taxon);
+			}
+			
+			for (Taxon taxon : taxons) {
+				setParent(taxon);
+			}
 		}
-		
-		for (Taxon taxon : taxons) {
-			setParent(taxon);
+	}
+	
+	/**
+	 * Fills the cache with the taxa of an already linked graph.
+	 * 
+	 * @param graph  the linked graph of cached objects
+	 */
+	protected void load(CacheGraph graph) {
+		synchronized (CacheVersion.lock) {
+			clear();
+			for (Taxon taxon : graph.getTaxa()) {
+				addTaxon(taxon);
+			}
+			setTopLevel.addAll(graph.getTopLevel());
+			log.info("Loaded " + size() + " taxons");
 		}
 	}
 	
+	/**
+	 * Gets all cached taxons, from the current {@link CacheVersion}.
+	 * 
+	 * @return  a read-only list of taxons, which won't change with the cache
+	 */
 	public Collection<Taxon> getAll() {
-		return mapById.values();
+		return CacheVersion.getCurrent().getTaxa();
 	}
 	
 	/**
-	 * Gets top-level taxons (without parent).
+	 * Gets top-level taxons (without parent), from the current {@link CacheVersion}.
 	 * 
-	 * @return  a set of top-level taxons.
+	 * @return  a read-only set of top-level taxons.
 	 */
 	public Set<Taxon> getTopLevel() {
+		return CacheVersion.getCurrent().getTopLevel();
+	}
+	
+	/**
+	 * Gets a live view of the cached taxons, for building cache versions.
+	 * Must only be used while holding the cache lock.
+	 */
+	Collection<Taxon> values() {
+		return mapById.values();
+	}
+	
+	/**
+	 * Gets the live set of top-level taxons, for building cache versions.
+	 * Must only be used while holding the cache lock.
+	 */
+	Set<Taxon> topLevel() {
 		return setTopLevel;
 	}
 
+	/**
+	 * Gets the ancestry index of the current {@link CacheVersion}.
+	 * The index is rebuilt if the cache changed since it was last built.
+	 * 
+	 * @return  the taxon index
+	 */
+	public TaxonIndex getIndex() {
+		return CacheVersion.getCurrent().getTaxonIndex();
+	}
+
+	/**
+	 * Searches cached taxons by latin and french names.
+	 * 
+	 * @param filter  the search text
+	 * @return  the matching taxons, best first
+	 */
+	public List<Taxon> search(String filter) {
+		return getTextIndex().search(filter);
+	}
+	
+	/**
+	 * Gets the full-text index of the current {@link CacheVersion}.
+	 * The index is rebuilt if the cache changed since it was last built.
+	 * 
+	 * @return  the text index
+	 */
+	public TextIndex<Taxon> getTextIndex() {
+		return CacheVersion.getCurrent().getTaxonTextIndex();
+	}
+	
+	/**
+	 * Estimates the heap size of the idx map of the cache,
+	 * not counting the cached objects themselves.
+	 * 
+	 * @return  the size in bytes
+	 */
+	public long getMemoryFootprint() {
+		return mapById.getMemoryFootprint();
+	}
+	
 	/**
 	 * Gets the size of the cache.
 	 * Size is the number of taxons with different IDs.
@@ -123,9 +334,12 @@ public class TaxonCache {
 	 * Clears the cache.
 	 */
 	public void clear() {
-		mapById.clear();
-		mapByName.clear();
-		setTopLevel.clear();
+		synchronized (CacheVersion.lock) {
+			mapById.clear();
+			mapByName.clear();
+			setTopLevel.clear();
+			changed();
+		}
 	}
 	
 	/**
@@ -135,14 +349,32 @@ public class TaxonCache {
 	 */
 	private void addTaxon(Taxon taxon) {
 		if (taxon != null) {
-			mapById.put(Integer.valueOf(taxon.getIdx()), taxon);
+			mapById.put(taxon.getIdx(), taxon);
 			mapByName.put(taxon.getName(), taxon);
+			changed();
+		}
+	}
+	
+	/**
+	 * Removes the specified Taxon from the name and idx maps.
+	 * 
+	 * @param taxon  the taxon to remove
+	 */
+	private void unindex(Taxon taxon) {
+		changed();
+		mapById.remove(taxon.getIdx());
+		if (mapByName.get(taxon.getName()) == taxon) {
+			mapByName.remove(taxon.getName());
+		} else {
+			// name was modified outside the cache
+			mapByName.values().remove(taxon);
 		}
 	}
 	
 	private void setParent(Taxon taxon) {
+		changed();
 		if (taxon.getIdxParent() > 0) {
-			Taxon parent = getTaxon(taxon.getIdxParent());
+			Taxon parent = mapById.get(taxon.getIdxParent());
 			if (parent == null) {
 				log.error("Could not find parent " + taxon.getIdxParent() + " of taxon " + taxon);
 			} else {
@@ -151,23 +383,59 @@ public class TaxonCache {
 				setTopLevel.remove(taxon);
 			}
 		} else {
+			taxon.setParent(null);
 			setTopLevel.add(taxon);
 		}
 	}
 	
-	/** the singleton instance */
-	private static TaxonCache _instance = null;
+	/**
+	 * Removes the specified taxon from the children of its cached parent,
+	 * or from the top-level taxa. Must be called before changing its sort key.
+	 * The parent is found by parent idx, as the parent reference may
+	 * already have been changed by an editor.
+	 * 
+	 * @param taxon  the taxon to detach
+	 */
+	private void detach(Taxon taxon) {
+		changed();
+		Taxon parent = mapById.get(taxon.getIdxParent());
+		if (parent != null) {
+			parent.removeChild(taxon);
+		} else if (!setTopLevel.remove(taxon)) {
+			Iterator<Taxon> it = setTopLevel.iterator();
+			while (it.hasNext()) {
+				if (it.next() == taxon) {
+					it.remove();
+					break;
+				}
+			}
+		}
+		if (taxon.getParent() != null && taxon.getParent() != parent) {
+			taxon.getParent().removeChild(taxon);
+		}
+	}
+	
+	/**
+	 * Drops the published maps and the current cache version.
+	 * Must be called while holding the cache lock.
+	 */
+	private void changed() {
+		publishedById = null;
+		publishedByName = null;
+		CacheVersion.changed();
+	}
+	
+	/** the singleton instance, created when the class is loaded */
+	private static final TaxonCache _instance = new TaxonCache();
 	
 	/** Gets the singleton instance. */
 	public static TaxonCache getInstance() {
-		if (_instance == null)
-			_instance = new TaxonCache();
 		return _instance;
 	}
 	
 	/** Private singleton constructor */
 	private TaxonCache() {
-		mapById     = new HashMap<>();
+		mapById     = new IntObjectMap<>();
 		mapByName   = new HashMap<>();
 		setTopLevel = new TreeSet<>();
 	}
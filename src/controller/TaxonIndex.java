@@ -0,0 +1,190 @@
+package controller;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Vector;
+
+import model.HerbierPic;
+import model.Taxon;
+import model.TaxonRank;
+
+/**
+ * A read-only index of the taxonomy, answering ancestry questions in constant time.
+ * 
+ * <p>The taxa are numbered in a depth-first traversal of the tree (Euler tour).
+ * The subtree of a taxon is then the contiguous range <code>[tIn, tOut)</code>
+ * of the traversal, and the ancestor of each taxon at each rank is stored
+ * in an array indexed by rank and taxon database idx.
+ * 
+ * <p>The index is built once per {@link CacheVersion}, by
+ * {@link CacheVersion#getTaxonIndex()}, from the children and pictures of that version.
+ * Taxa that are not in the version are handled by walking their parents.
+ * 
+ * @author nicz
+ * 
+ */
+public class TaxonIndex {
+	
+	/** The indexed version */
+	private final CacheVersion version;
+	
+	/** The taxa in depth-first order */
+	private final Taxon[] euler;
+	
+	/** The indexed taxa, by database idx */
+	private final Taxon[] byIdx;
+	
+	/** Position of each taxon in the traversal, by database idx */
+	private final int[] tIn;
+	
+	/** End (exclusive) of the subtree of each taxon in the traversal, by database idx */
+	private final int[] tOut;
+	
+	/** Ancestor of each taxon by rank ordinal, then by database idx */
+	private final Taxon[][] ancestors;
+	
+	/** Next position in the traversal, while building */
+	private int nVisited;
+	
+	
+	/**
+	 * Builds the index of the taxa trees of a version.
+	 * 
+	 * @param version  the cache version to index
+	 */
+	protected TaxonIndex(CacheVersion version) {
+		this.version = version;
+		Collection<Taxon> taxa = version.getTaxa();
+		int maxIdx = 0;
+		for (Taxon taxon : taxa) {
+			maxIdx = Math.max(maxIdx, taxon.getIdx());
+		}
+		
+		euler = new Taxon[taxa.size()];
+		byIdx = new Taxon[maxIdx + 1];
+		tIn   = new int[maxIdx + 1];
+		tOut  = new int[maxIdx + 1];
+		ancestors = new Taxon[TaxonRank.values().length][maxIdx + 1];
+		
+		nVisited = 0;
+		for (Taxon taxon : version.getTopLevel()) {
+			visit(taxon, null);
+		}
+	}
+	
+	/**
+	 * Gets the ancestor of a taxon with the specified rank.
+	 * Same as {@link Taxon#getAncestor(TaxonRank)}, in constant time.
+	 * 
+	 * @param taxon  the taxon
+	 * @param rank   the rank of the ancestor to return
+	 * @return the ancestor (may be the taxon itself), or null if not found
+	 */
+	public Taxon getAncestor(Taxon taxon, TaxonRank rank) {
+		if (taxon == null || rank == null) {
+			return null;
+		}
+		if (!contains(taxon)) {
+			return taxon.getAncestor(rank);
+		}
+		return ancestors[rank.ordinal()][taxon.getIdx()];
+	}
+	
+	/**
+	 * Checks if a taxon is in the subtree of another taxon.
+	 * 
+	 * @param taxon     the taxon to check
+	 * @param ancestor  the root of the subtree
+	 * @return true if <code>taxon</code> is <code>ancestor</code> or one of its descendants
+	 */
+	public boolean isUnder(Taxon taxon, Taxon ancestor) {
+		if (taxon == null || ancestor == null) {
+			return false;
+		}
+		if (!contains(taxon) || !contains(ancestor)) {
+			for (Taxon parent = taxon; parent != null; parent = parent.getParent()) {
+				if (parent == ancestor) {
+					return true;
+				}
+			}
+			return false;
+		}
+		int pos = tIn[taxon.getIdx()];
+		return tIn[ancestor.getIdx()] <= pos && pos < tOut[ancestor.getIdx()];
+	}
+	
+	/**
+	 * Gets a taxon and all its descendants, in depth-first order.
+	 * 
+	 * @param taxon  the root of the subtree
+	 * @return a read-only list of taxa, empty if the taxon isn't indexed
+	 */
+	public List<Taxon> getSubtree(Taxon taxon) {
+		if (!contains(taxon)) {
+			return Collections.emptyList();
+		}
+		List<Taxon> range = Arrays.asList(euler).subList(tIn[taxon.getIdx()], tOut[taxon.getIdx()]);
+		return Collections.unmodifiableList(range);
+	}
+	
+	/**
+	 * Gets the pictures linked to a taxon and all its descendants,
+	 * grouped by taxon in depth-first order.
+	 * 
+	 * @param taxon  the root of the subtree
+	 * @return a vector of pictures (may be empty, but never null)
+	 */
+	public Vector<HerbierPic> getPicsUnder(Taxon taxon) {
+		Vector<HerbierPic> vecPics = new Vector<>();
+		for (Taxon sub : getSubtree(taxon)) {
+			vecPics.addAll(version.getPics(sub));
+		}
+		return vecPics;
+	}
+	
+	/**
+	 * Gets the number of indexed taxa.
+	 * @return the index size
+	 */
+	public int size() {
+		return nVisited;
+	}
+	
+	/**
+	 * Checks if the specified taxon was indexed.
+	 * @param taxon  the taxon to check (may be null)
+	 * @return true if the index knows this very taxon object
+	 */
+	public boolean contains(Taxon taxon) {
+		return taxon != null && taxon.getIdx() > 0 && taxon.getIdx() < byIdx.length
+				&& byIdx[taxon.getIdx()] == taxon;
+	}
+	
+	private void visit(Taxon taxon, Taxon parent) {
+		int idx = taxon.getIdx();
+		if (idx <= 0 || idx >= byIdx.length || byIdx[idx] != null || nVisited == euler.length) {
+			// not a cached taxon, or already visited
+			return;
+		}
+		
+		byIdx[idx] = taxon;
+		tIn[idx] = nVisited;
+		euler[nVisited++] = taxon;
+		
+		for (TaxonRank rank : TaxonRank.values()) {
+			if (taxon.getRank() == rank) {
+				ancestors[rank.ordinal()][idx] = taxon;
+			} else if (parent != null) {
+				ancestors[rank.ordinal()][idx] = ancestors[rank.ordinal()][parent.getIdx()];
+			}
+		}
+		
+		for (Taxon child : version.getChildren(taxon)) {
+			visit(child, taxon);
+		}
+		tOut[idx] = nVisited;
+	}
+
+}
@@ -0,0 +1,314 @@
+package controller;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * An in-memory full-text index of objects, replacing <code>LIKE '%filter%'</code>
+ * searches in database.
+ * 
+ * <p>The text fields of each object are normalized (lower case, without accents),
+ * and each 3-character sequence (trigram) of the fields points to the sorted list
+ * of objects containing it. A search term of 3 characters or more is looked up
+ * by intersecting the lists of its trigrams, then checked on the remaining
+ * candidates only. Shorter terms are checked on all objects.
+ * 
+ * <p>All terms of a search must be found, in any field. Results are ranked by
+ * how well each term matches (whole field, start of field, start of word, or
+ * anywhere), giving more weight to the first fields. Objects with the same
+ * score keep their natural order.
+ * 
+ * <p>Indices of cached objects are built once per {@link CacheVersion},
+ * from the objects of that version.
+ * 
+ * @author nicz
+ * 
+ * @param <T>  the type of indexed objects
+ */
+public class TextIndex<T extends Comparable<? super T>> {
+	
+	/**
+	 * Gets the text fields to index of an object.
+	 * 
+	 * @param <T>  the type of indexed objects
+	 */
+	public interface TextFields<T> {
+		
+		/**
+		 * @param obj  the object to index
+		 * @return  the texts of the object, most important first (may contain nulls)
+		 */
+		public String[] getTexts(T obj);
+	}
+	
+	private static final int gramLength = 3;
+	
+	private static final Pattern patMarks = Pattern.compile("\\p{M}+");
+	private static final Pattern patSpaces = Pattern.compile("\\s+");
+	
+	/** Scores of a term matching a whole field, its start, the start of a word, or anywhere */
+	private static final int scoreEquals = 8;
+	private static final int scoreStart  = 4;
+	private static final int scoreWord   = 2;
+	private static final int scoreInside = 1;
+	
+	/** The indexed objects, in natural order */
+	private final List<T> docs;
+	
+	/** The normalized fields of each object */
+	private final String[][] texts;
+	
+	/** The objects containing each trigram, as sorted positions in docs */
+	private final Map<String, Postings> mapPostings;
+	
+	
+	/**
+	 * Builds the index of the specified objects.
+	 * 
+	 * @param objects  the objects to index
+	 * @param fields   the text fields of each object
+	 */
+	public TextIndex(Collection<T> objects, TextFields<T> fields) {
+		docs = new ArrayList<>(objects);
+		Collections.sort(docs);
+		texts = new String[docs.size()][];
+		mapPostings = new HashMap<>();
+		
+		for (int iDoc = 0; iDoc < docs.size(); ++iDoc) {
+			String[] docTexts = fields.getTexts(docs.get(iDoc));
+			texts[iDoc] = new String[docTexts.length];
+			for (int iField = 0; iField < docTexts.length; ++iField) {
+				String text = normalize(docTexts[iField]);
+				texts[iDoc][iField] = text;
+				for (int i = 0; i + gramLength <= text.length(); ++i) {
+					String gram = text.substring(i, i + gramLength);
+					Postings postings = mapPostings.get(gram);
+					if (postings == null) {
+						postings = new Postings();
+						mapPostings.put(gram, postings);
+					}
+					postings.add(iDoc);
+				}
+			}
+		}
+		
+		for (Postings postings : mapPostings.values()) {
+			postings.trim();
+		}
+	}
+	
+	/**
+	 * Searches the objects matching all terms of the specified query.
+	 * 
+	 * @param query  the search text, with terms separated by spaces
+	 * @return  the matching objects, best first (may be empty, but never null)
+	 */
+	public List<T> search(String query) {
+		String[] terms = getTerms(query);
+		if (terms.length == 0) {
+			return new ArrayList<>();
+		}
+		
+		int[] candidates = getCandidates(terms);
+		List<Hit> hits = new ArrayList<>();
+		for (int iDoc : candidates) {
+			int score = 0;
+			for (String term : terms) {
+				int termScore = getScore(texts[iDoc], term);
+				if (termScore == 0) {
+					score = 0;
+					break;
+				}
+				score += termScore;
+			}
+			if (score > 0) {
+				hits.add(new Hit(iDoc, score));
+			}
+		}
+		Collections.sort(hits);
+		
+		List<T> result = new ArrayList<>(hits.size());
+		for (Hit hit : hits) {
+			result.add(docs.get(hit.iDoc));
+		}
+		return result;
+	}
+	
+	/**
+	 * Gets the number of indexed objects.
+	 * @return  the index size
+	 */
+	public int size() {
+		return docs.size();
+	}
+	
+	/**
+	 * Normalizes a text for indexing and searching:
+	 * lower case, without accents and with single spaces.
+	 * 
+	 * @param text  the text to normalize (may be null)
+	 * @return  the normalized text, empty if null
+	 */
+	public static String normalize(String text) {
+		if (text == null) {
+			return "";
+		}
+		String result = Normalizer.normalize(text, Normalizer.Form.NFD);
+		result = patMarks.matcher(result).replaceAll("");
+		result = patSpaces.matcher(result).replaceAll(" ");
+		result = result.toLowerCase(Locale.ROOT).replace("œ", "oe").replace("æ", "ae");
+		return result.trim();
+	}
+	
+	/**
+	 * Splits a query into normalized terms.
+	 * The '%' wildcard of SQL filters is handled as a separator.
+	 */
+	private static String[] getTerms(String query) {
+		String normalized = normalize(query == null ? null : query.replace('%', ' '));
+		if (normalized.isEmpty()) {
+			return new String[0];
+		}
+		return normalized.split(" ");
+	}
+	
+	/**
+	 * Gets the objects which may match all terms: those containing all trigrams
+	 * of the term with the fewest candidates, or all objects if terms are too short.
+	 */
+	private int[] getCandidates(String[] terms) {
+		int[] best = null;
+		for (String term : terms) {
+			if (term.length() < gramLength) {
+				continue;
+			}
+			int[] termDocs = null;
+			for (int i = 0; i + gramLength <= term.length(); ++i) {
+				Postings postings = mapPostings.get(term.substring(i, i + gramLength));
+				if (postings == null) {
+					return new int[0];
+				}
+				termDocs = (termDocs == null ? postings.toArray() : intersect(termDocs, postings));
+			}
+			if (best == null || termDocs.length < best.length) {
+				best = termDocs;
+			}
+		}
+		
+		if (best == null) {
+			best = new int[docs.size()];
+			for (int i = 0; i < best.length; ++i) {
+				best[i] = i;
+			}
+		}
+		return best;
+	}
+	
+	private static int[] intersect(int[] sorted, Postings postings) {
+		int[] result = new int[Math.min(sorted.length, postings.size)];
+		int n = 0;
+		int j = 0;
+		for (int i = 0; i < sorted.length && j < postings.size; ) {
+			if (sorted[i] < postings.docs[j]) {
+				i++;
+			} else if (sorted[i] > postings.docs[j]) {
+				j++;
+			} else {
+				result[n++] = sorted[i];
+				i++;
+				j++;
+			}
+		}
+		return Arrays.copyOf(result, n);
+	}
+	
+	/**
+	 * Scores a term on the fields of an object.
+	 * @return  the best weighted score of the term, or 0 if not found
+	 */
+	private static int getScore(String[] fields, String term) {
+		int best = 0;
+		for (int iField = 0; iField < fields.length; ++iField) {
+			String text = fields[iField];
+			int pos = text.indexOf(term);
+			if (pos < 0) {
+				continue;
+			}
+			
+			int score;
+			if (text.length() == term.length()) {
+				score = scoreEquals;
+			} else if (pos == 0) {
+				score = scoreStart;
+			} else if (text.contains(" " + term) || !Character.isLetterOrDigit(text.charAt(pos - 1))) {
+				score = scoreWord;
+			} else {
+				score = scoreInside;
+			}
+			best = Math.max(best, score * (fields.length - iField));
+		}
+		return best;
+	}
+	
+	/**
+	 * A growable sorted list of object positions.
+	 */
+	private static class Postings {
+		
+		private int[] docs = new int[4];
+		private int size = 0;
+		
+		/**
+		 * Adds an object, which may not be lower than the last one added.
+		 */
+		public void add(int iDoc) {
+			if (size > 0 && docs[size - 1] == iDoc) {
+				return;
+			}
+			if (size == docs.length) {
+				docs = Arrays.copyOf(docs, size * 2);
+			}
+			docs[size++] = iDoc;
+		}
+		
+		public void trim() {
+			if (size < docs.length) {
+				docs = Arrays.copyOf(docs, size);
+			}
+		}
+		
+		public int[] toArray() {
+			return Arrays.copyOf(docs, size);
+		}
+	}
+	
+	private static class Hit implements Comparable<Hit> {
+		
+		private final int iDoc;
+		private final int score;
+		
+		public Hit(int iDoc, int score) {
+			this.iDoc = iDoc;
+			this.score = score;
+		}
+		
+		@Override
+		public int compareTo(Hit other) {
+			// best score first, then natural order
+			int result = Integer.compare(other.score, score);
+			if (result == 0) {
+				result = Integer.compare(iDoc, other.iDoc);
+			}
+			return result;
+		}
+	}
+
+}
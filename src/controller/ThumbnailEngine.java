@@ -0,0 +1,624 @@
+package controller;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.color.ColorSpace;
+import java.awt.color.ICC_ColorSpace;
+import java.awt.color.ICC_Profile;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.w3c.dom.Node;
+
+import common.base.Logger;
+
+/**
+ * Creates resized copies of pictures (thumbnails, medium size) in the JVM,
+ * instead of starting a <code>convert</code> process per copy.
+ * 
+ * <p>Requests are run by a small pool of worker threads, so that an import of many
+ * pictures does not decode them all at once. Each source image is decoded once,
+ * and all its copies are made in the same task, largest first, each one scaled down
+ * from the previous one. Images are scaled by successive halvings with bilinear
+ * interpolation, which is much faster than a bicubic resize, with a similar quality.
+ * 
+ * <p>Large originals are not decoded at full resolution: the JPEG reader keeps
+ * only every n-th pixel, so that the decoded image is about twice the size
+ * of the largest copy. This divides memory and color conversion by n*n.
+ * 
+ * <p>As <code>convert</code> did, the copies keep the color profile of the original:
+ * pixels are decoded without color conversion, and the profile is written with them.
+ * The EXIF orientation is applied to the pixels, since the copies have no EXIF data.
+ * Images which ImageIO cannot decode, such as CMYK JPEGs, are still resized
+ * by <code>convert</code>.
+ * 
+ * <p>Copies are written to a uniquely named temporary file and then renamed, so that
+ * a copy which exists is always complete, even if two tasks make it at the same time.
+ * Callers which need the copies wait on the
+ * returned future. Copies displayed at once are requested with
+ * {@link #createNowIfMissing(File, Derivative...)}: they are made by a separate
+ * worker thread, so that they do not wait behind the copies of an import.
+ * 
+ * @author nicz
+ * 
+ */
+public class ThumbnailEngine {
+	
+	private static final Logger log = new Logger("ThumbnailEngine", true);
+	
+	/** Max width and height of medium-size copies */
+	public static final int mediumSize = 500;
+	
+	/** Max width and height of thumbnails */
+	public static final int thumbSize = 180;
+	
+	/** Max number of images decoded at the same time, each one may need 100 MB */
+	static final int maxThreads = 4;
+	
+	/** JPEG quality of the copies */
+	private static final float jpegQuality = 0.9f;
+	
+	/** Min ratio between the decoded size and the largest copy, for the last resize to smooth pixels */
+	private static final int subsamplingMargin = 2;
+	
+	/** The JPEG marker of EXIF data */
+	private static final int markerApp1 = 0xE1;
+	
+	private static final int TAG_ORIENTATION = 0x0112;
+	
+	private static final ThumbnailEngine _instance = new ThumbnailEngine();
+	
+	/** Workers for background requests, such as imports */
+	private final ExecutorService executor;
+	
+	/** Worker for requests that a user is waiting for */
+	private final ExecutorService interactiveExecutor;
+	
+	/** Running or waiting tasks, by source and copies, to merge duplicate requests */
+	private final ConcurrentHashMap<String, FutureTask<Boolean>> mapPending;
+	
+	
+	/**
+	 * A copy of a picture to create.
+	 */
+	public static class Derivative {
+		
+		private final File file;
+		private final int size;
+		
+		/**
+		 * @param file  the file of the copy
+		 * @param size  the max width and height of the copy, in pixels
+		 */
+		public Derivative(File file, int size) {
+			this.file = file;
+			this.size = size;
+		}
+		
+		public File getFile() {
+			return file;
+		}
+		
+		public int getSize() {
+			return size;
+		}
+	}
+	
+	/**
+	 * A decoded original, with what its copies need from its metadata.
+	 */
+	static class Decoded {
+		
+		private final BufferedImage image;
+		private final ICC_Profile profile;
+		private final int orientation;
+		
+		/**
+		 * @param image        the decoded pixels, without color conversion
+		 * @param profile      the color profile of the original, or null if sRGB
+		 * @param orientation  the EXIF orientation, from 1 to 8
+		 */
+		public Decoded(BufferedImage image, ICC_Profile profile, int orientation) {
+			this.image = image;
+			this.profile = profile;
+			this.orientation = orientation;
+		}
+		
+		public BufferedImage getImage() {
+			return image;
+		}
+		
+		public ICC_Profile getProfile() {
+			return profile;
+		}
+		
+		public int getOrientation() {
+			return orientation;
+		}
+	}
+	
+	
+	public static ThumbnailEngine getInstance() {
+		return _instance;
+	}
+	
+	private ThumbnailEngine() {
+		int nThreads = Math.max(1, Math.min(maxThreads, Runtime.getRuntime().availableProcessors()));
+		executor = newExecutor(nThreads, "thumbnails", Thread.NORM_PRIORITY - 1);
+		interactiveExecutor = newExecutor(1, "thumbnails-now", Thread.NORM_PRIORITY);
+		mapPending = new ConcurrentHashMap<>();
+	}
+	
+	private static ExecutorService newExecutor(int nThreads, final String name, final int priority) {
+		ThreadPoolExecutor result = new ThreadPoolExecutor(nThreads, nThreads, 30, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+			private int nCreated = 0;
+			
+			@Override
+			public synchronized Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, name + "-" + (++nCreated));
+				thread.setDaemon(true);
+				thread.setPriority(priority);
+				return thread;
+			}
+		});
+		result.allowCoreThreadTimeOut(true);
+		return result;
+	}
+	
+	/**
+	 * Gets the medium-size copy and the thumbnail of a picture.
+	 * 
+	 * @param fileName  the picture filename, without path
+	 * @return  the copies of the picture, largest first
+	 */
+	public static Derivative[] getDerivatives(String fileName) {
+		return new Derivative[] {
+				new Derivative(new File(Controller.mediumPath + fileName), mediumSize),
+				new Derivative(new File(Controller.thumbsPath + fileName), thumbSize) };
+	}
+	
+	/**
+	 * Creates the copies of a picture which do not exist yet.
+	 * Returns at once: the copies are created by a worker thread.
+	 * 
+	 * @param orig         the original picture
+	 * @param derivatives  the copies to create
+	 * @return  a future giving true when all copies exist, or false if one failed
+	 */
+	public Future<Boolean> createIfMissing(File orig, Derivative... derivatives) {
+		return submit(executor, orig, derivatives);
+	}
+	
+	/**
+	 * Creates the copies of a picture which do not exist yet, ahead of the
+	 * background requests. Returns at once: the copies are created by the
+	 * interactive worker thread.
+	 * 
+	 * <p>If the same copies are already waiting in the background queue,
+	 * the waiting task is run by the interactive worker instead.
+	 * 
+	 * @param orig         the original picture
+	 * @param derivatives  the copies to create
+	 * @return  a future giving true when all copies exist, or false if one failed
+	 */
+	public Future<Boolean> createNowIfMissing(File orig, Derivative... derivatives) {
+		return submit(interactiveExecutor, orig, derivatives);
+	}
+	
+	private Future<Boolean> submit(ExecutorService exec, final File orig, Derivative... derivatives) {
+		final List<Derivative> listMissing = new ArrayList<>();
+		StringBuilder key = new StringBuilder(orig.getAbsolutePath());
+		for (Derivative derivative : derivatives) {
+			if (!derivative.getFile().exists()) {
+				listMissing.add(derivative);
+				key.append('|').append(derivative.getFile().getAbsolutePath());
+			}
+		}
+		if (listMissing.isEmpty()) {
+			return done(true);
+		}
+		final String sKey = key.toString();
+		
+		FutureTask<Boolean> task = new FutureTask<>(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				try {
+					return createImages(orig, listMissing);
+				} finally {
+					mapPending.remove(sKey);
+				}
+			}
+		});
+		FutureTask<Boolean> pending = mapPending.putIfAbsent(sKey, task);
+		if (pending != null) {
+			if (exec == interactiveExecutor) {
+				// a task runs only once: whichever worker gets it first does it
+				task = pending;
+			} else {
+				return pending;
+			}
+		}
+		try {
+			exec.execute(task);
+		} catch (RuntimeException e) {
+			if (pending != null) {
+				return pending;
+			}
+			mapPending.remove(sKey);
+			log.error("Failed to queue copies of " + orig.getName() + ": " + e.getMessage());
+			return done(false);
+		}
+		return task;
+	}
+	
+	/**
+	 * Stops the worker threads, after waiting for queued copies to be created.
+	 */
+	public void shutdown() {
+		interactiveExecutor.shutdownNow();
+		executor.shutdown();
+		try {
+			if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+				log.warn("Stopping with " + mapPending.size() + " pictures left to resize");
+				executor.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * Decodes the original once, then writes the copies, largest first.
+	 * Existing copies are replaced. If the original can't be decoded,
+	 * the copies are made by <code>convert</code>.
+	 * 
+	 * @param orig             the original picture
+	 * @param listDerivatives  the copies to create
+	 * @return  true if all copies were written
+	 */
+	static boolean createImages(File orig, List<Derivative> derivatives) {
+		List<Derivative> listDerivatives = new ArrayList<>(derivatives);
+		Collections.sort(listDerivatives, new Comparator<Derivative>() {
+			@Override
+			public int compare(Derivative d1, Derivative d2) {
+				return Integer.compare(d2.getSize(), d1.getSize());
+			}
+		});
+		
+		long tStart = System.currentTimeMillis();
+		Decoded decoded;
+		try {
+			decoded = read(orig, listDerivatives.get(0).getSize());
+		} catch (IOException | RuntimeException e) {
+			log.warn("Cannot decode " + orig.getName() + ": " + e.getMessage());
+			decoded = null;
+		}
+		if (decoded == null) {
+			return convert(orig, listDerivatives);
+		}
+		
+		try {
+			BufferedImage image = decoded.getImage();
+			for (Derivative derivative : listDerivatives) {
+				log.debug("Creating " + derivative.getSize() + "px copy of " + orig.getName());
+				image = resize(image, derivative.getSize());
+				write(orient(image, decoded.getOrientation()), decoded.getProfile(), derivative.getFile());
+			}
+		} catch (IOException | RuntimeException e) {
+			log.error("Failed to resize image " + orig.getName() + ": " + e.getMessage());
+			return false;
+		}
+		log.debug("Resized " + orig.getName() + " in " + (System.currentTimeMillis() - tStart) + " ms");
+		return true;
+	}
+	
+	/**
+	 * Makes the copies of an original by <code>convert</code>, one process per copy.
+	 * 
+	 * @return  true if all copies were written
+	 */
+	private static boolean convert(File orig, List<Derivative> listDerivatives) {
+		log.info("Resizing " + orig.getName() + " with convert");
+		for (Derivative derivative : listDerivatives) {
+			File file = derivative.getFile();
+			File fileTmp = null;
+			try {
+				fileTmp = File.createTempFile("." + file.getName() + ".", ".tmp", file.getParentFile());
+				String size = derivative.getSize() + "x" + derivative.getSize();
+				Process process = new ProcessBuilder("convert", "-auto-orient", "-resize", size,
+						orig.getAbsolutePath(), "jpg:" + fileTmp.getAbsolutePath())
+						.redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.INHERIT).start();
+				int exitCode = process.waitFor();
+				if (exitCode != 0) {
+					throw new IOException("convert exited with code " + exitCode);
+				}
+				Files.move(fileTmp.toPath(), file.toPath(),
+						StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException e) {
+				log.error("Failed to resize image " + orig.getName() + ": " + e.getMessage());
+				return false;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			} finally {
+				if (fileTmp != null) {
+					fileTmp.delete();
+				}
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Decodes an image at a reduced resolution, still larger than the specified size.
+	 * The pixels are not converted to sRGB: the color profile of the image
+	 * is returned with them.
+	 * 
+	 * @param file     the image file
+	 * @param maxSize  the size of the largest copy to create
+	 * @return  the decoded image, or null if not an image
+	 */
+	static Decoded read(File file, int maxSize) throws IOException {
+		try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+			if (in == null) {
+				return null;
+			}
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+			if (!readers.hasNext()) {
+				return null;
+			}
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(in, true, false);
+				int size = Math.max(reader.getWidth(0), reader.getHeight(0));
+				int factor = Math.max(1, size / (maxSize * subsamplingMargin));
+				ImageReadParam param = reader.getDefaultReadParam();
+				param.setSourceSubsampling(factor, factor, 0, 0);
+				
+				// an embedded profile is offered as an extra type, converted by the reader
+				ICC_Profile profile = null;
+				Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+				while (types.hasNext()) {
+					ImageTypeSpecifier type = types.next();
+					ColorSpace cs = type.getColorModel().getColorSpace();
+					if (cs.isCS_sRGB() || cs == ColorSpace.getInstance(ColorSpace.CS_GRAY)) {
+						if (param.getDestinationType() == null) {
+							param.setDestinationType(type);
+						}
+					} else if (cs instanceof ICC_ColorSpace && profile == null) {
+						profile = ((ICC_ColorSpace) cs).getProfile();
+					}
+				}
+				if (param.getDestinationType() == null || (profile != null 
+						&& profile.getColorSpaceType() != ColorSpace.TYPE_RGB)) {
+					// the pixels are converted by the reader, or the copies are not gray
+					profile = null;
+				}
+				
+				BufferedImage image = reader.read(0, param);
+				return new Decoded(image, profile, getOrientation(reader.getImageMetadata(0)));
+			} finally {
+				reader.dispose();
+			}
+		}
+	}
+	
+	/**
+	 * Gets the EXIF orientation from the JPEG metadata of an image.
+	 * 
+	 * @return  the orientation, or 1 if none
+	 */
+	private static int getOrientation(IIOMetadata metadata) {
+		if (metadata == null || metadata.getNativeMetadataFormatName() == null) {
+			return 1;
+		}
+		Node root = metadata.getAsTree(metadata.getNativeMetadataFormatName());
+		for (Node node = root.getFirstChild(); node != null; node = node.getNextSibling()) {
+			if (!"markerSequence".equals(node.getNodeName())) {
+				continue;
+			}
+			for (Node marker = node.getFirstChild(); marker != null; marker = marker.getNextSibling()) {
+				if (marker instanceof IIOMetadataNode && "unknown".equals(marker.getNodeName())
+						&& String.valueOf(markerApp1).equals(((IIOMetadataNode) marker).getAttribute("MarkerTag"))) {
+					Object data = ((IIOMetadataNode) marker).getUserObject();
+					if (data instanceof byte[]) {
+						return getOrientation((byte[]) data);
+					}
+				}
+			}
+		}
+		return 1;
+	}
+	
+	/**
+	 * Gets the orientation tag from the IFD0 of an EXIF segment.
+	 * 
+	 * @param data  the segment, starting with "Exif"
+	 * @return  the orientation, or 1 if none
+	 */
+	static int getOrientation(byte[] data) {
+		if (data.length < 14 || data[0] != 'E' || data[1] != 'x' || data[2] != 'i' || data[3] != 'f') {
+			return 1;
+		}
+		try {
+			ByteBuffer buf = ByteBuffer.wrap(data, 6, data.length - 6).slice();
+			buf.order(buf.get(0) == 'I' ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+			int ifd = buf.getInt(4);
+			int nEntries = buf.getShort(ifd) & 0xFFFF;
+			for (int i = 0; i < nEntries; ++i) {
+				int entry = ifd + 2 + 12 * i;
+				if ((buf.getShort(entry) & 0xFFFF) == TAG_ORIENTATION) {
+					int orientation = buf.getShort(entry + 8) & 0xFFFF;
+					return (orientation >= 1 && orientation <= 8 ? orientation : 1);
+				}
+			}
+		} catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+			// a corrupt segment
+		}
+		return 1;
+	}
+	
+	/**
+	 * Turns or flips an image, so that it displays upright without its EXIF orientation,
+	 * as <code>convert -auto-orient</code>.
+	 */
+	static BufferedImage orient(BufferedImage image, int orientation) {
+		int w = image.getWidth();
+		int h = image.getHeight();
+		AffineTransform transform;
+		switch (orientation) {
+		case 2:  transform = new AffineTransform(-1, 0, 0, 1, w, 0);  break;
+		case 3:  transform = new AffineTransform(-1, 0, 0, -1, w, h); break;
+		case 4:  transform = new AffineTransform(1, 0, 0, -1, 0, h);  break;
+		case 5:  transform = new AffineTransform(0, 1, 1, 0, 0, 0);   break;
+		case 6:  transform = new AffineTransform(0, 1, -1, 0, h, 0);  break;
+		case 7:  transform = new AffineTransform(0, -1, -1, 0, h, w); break;
+		case 8:  transform = new AffineTransform(0, -1, 1, 0, 0, w);  break;
+		default: return image;
+		}
+		boolean isSwapped = (orientation >= 5);
+		BufferedImage result = new BufferedImage(isSwapped ? h : w, isSwapped ? w : h, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = result.createGraphics();
+		try {
+			g.drawImage(image, transform, null);
+		} finally {
+			g.dispose();
+		}
+		return result;
+	}
+	
+	/**
+	 * Resizes an image to fit in a square of the specified size, keeping its proportions,
+	 * as <code>convert -resize sizexsize</code>.
+	 */
+	static BufferedImage resize(BufferedImage image, int size) {
+		int wSrc = image.getWidth();
+		int hSrc = image.getHeight();
+		double scale = (double) size / Math.max(wSrc, hSrc);
+		int wDest = Math.max(1, (int) Math.round(wSrc * scale));
+		int hDest = Math.max(1, (int) Math.round(hSrc * scale));
+		
+		BufferedImage result = image;
+		int w = wSrc;
+		int h = hSrc;
+		do {
+			// halve until the last step scales by less than 2
+			w = (w / 2 >= wDest ? w / 2 : wDest);
+			h = (h / 2 >= hDest ? h / 2 : hDest);
+			result = draw(result, w, h);
+		} while (w != wDest || h != hDest);
+		return result;
+	}
+	
+	private static BufferedImage draw(BufferedImage image, int width, int height) {
+		BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = result.createGraphics();
+		try {
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+			g.drawImage(image, 0, 0, width, height, null);
+		} finally {
+			g.dispose();
+		}
+		return result;
+	}
+	
+	/**
+	 * Writes a JPEG image to a temporary file, then renames it.
+	 * 
+	 * @param profile  the color profile of the pixels, or null if sRGB
+	 */
+	private static void write(BufferedImage image, ICC_Profile profile, File file) throws IOException {
+		Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+		if (!writers.hasNext()) {
+			throw new IOException("No JPEG writer");
+		}
+		ImageWriter writer = writers.next();
+		File fileTmp = File.createTempFile("." + file.getName() + ".", ".tmp", file.getParentFile());
+		try {
+			try (ImageOutputStream out = ImageIO.createImageOutputStream(fileTmp)) {
+				ImageWriteParam param = writer.getDefaultWriteParam();
+				param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+				param.setCompressionQuality(jpegQuality);
+				IIOMetadata metadata = null;
+				if (profile != null) {
+					metadata = getMetadata(writer, image, param, profile);
+				}
+				writer.setOutput(out);
+				writer.write(null, new IIOImage(image, null, metadata), param);
+			}
+			Files.move(fileTmp.toPath(), file.toPath(),
+					StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException | RuntimeException e) {
+			fileTmp.delete();
+			throw e;
+		} finally {
+			writer.dispose();
+		}
+	}
+	
+	/**
+	 * Gets the JPEG metadata of an image, with a color profile.
+	 * The profile is written in the JFIF segment.
+	 */
+	private static IIOMetadata getMetadata(ImageWriter writer, BufferedImage image, 
+			ImageWriteParam param, ICC_Profile profile) throws IOException {
+		IIOMetadata metadata = writer.getDefaultImageMetadata(ImageTypeSpecifier.createFromRenderedImage(image), param);
+		String format = metadata.getNativeMetadataFormatName();
+		IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(format);
+		Node jfif = root.getElementsByTagName("app0JFIF").item(0);
+		if (jfif == null) {
+			return null;
+		}
+		IIOMetadataNode icc = new IIOMetadataNode("app2ICC");
+		icc.setUserObject(profile);
+		jfif.appendChild(icc);
+		metadata.setFromTree(format, root);
+		return metadata;
+	}
+	
+	private static Future<Boolean> done(boolean result) {
+		FutureTask<Boolean> task = new FutureTask<>(new Runnable() {
+			@Override
+			public void run() {
+			}
+		}, result);
+		task.run();
+		return task;
+	}
+
+}
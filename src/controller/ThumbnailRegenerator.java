@@ -0,0 +1,315 @@
+package controller;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+
+import common.base.Logger;
+import common.listeners.ProgressListener;
+
+/**
+ * Regenerates the thumbnails and medium-size copies of all pictures
+ * whose original changed since the copies were made.
+ * 
+ * <p>A manifest records the size, modification time and SHA-1 hash of each original,
+ * when its copies were last made. A picture is skipped without reading it if its size
+ * and time did not change, and its copies exist. Otherwise its hash is computed, and
+ * the copies are made again only if the hash changed, or if they are older than
+ * the original and not in the manifest yet.
+ * 
+ * <p>Pictures are checked and resized by a fork/join pool, whose idle workers steal
+ * queued pictures from busy ones. The pool has no more threads than
+ * {@link ThumbnailEngine}, to bound the memory of the images decoded at once. Each result is appended to the
+ * manifest as soon as it is known, so that an interrupted job resumes where it stopped.
+ * The manifest is rewritten without obsolete lines at the end of the job.
+ * 
+ * @author nicz
+ * 
+ */
+public class ThumbnailRegenerator {
+	
+	private static final Logger log = new Logger("ThumbnailRegenerator", true);
+	
+	/** The manifest file: one tab-separated line per original */
+	private static final String manifestFile = Controller.appPath + "thumbs-manifest.txt";
+	
+	/** Number of pictures between two throughput reports */
+	private static final int reportInterval = 200;
+	
+	private static final ThumbnailRegenerator _instance = new ThumbnailRegenerator();
+	
+	/** The outcome of checking one picture */
+	private enum Status { UP_TO_DATE, UNCHANGED, REGENERATED, FAILED }
+	
+	
+	public static ThumbnailRegenerator getInstance() {
+		return _instance;
+	}
+	
+	private ThumbnailRegenerator() {
+	}
+	
+	/**
+	 * Regenerates the stale copies of all pictures.
+	 * Progress is reported from the calling thread.
+	 * 
+	 * @param progress  the progress listener (may be null)
+	 * @return  the number of pictures whose copies were made again
+	 */
+	public synchronized int regenerate(ProgressListener progress) {
+		File[] files = new File(Controller.picturesPath).listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.endsWith(FileSequences.sExtension);
+			}
+		});
+		if (files == null) {
+			log.error("Cannot list pictures in " + Controller.picturesPath);
+			return 0;
+		}
+		
+		final Map<String, Entry> mapOld = load();
+		Map<String, Entry> mapEntries = new HashMap<>();
+		int nRegenerated = 0;
+		int nFailed = 0;
+		boolean isComplete = false;
+		long tStart = System.currentTimeMillis();
+		log.info("Checking copies of " + files.length + " pictures, " + mapOld.size() + " in manifest");
+		if (progress != null) {
+			progress.taskStarted(files.length);
+		}
+		
+		ForkJoinPool pool = new ForkJoinPool(
+				Math.min(ThumbnailEngine.maxThreads, Runtime.getRuntime().availableProcessors()));
+		try (Writer out = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(manifestFile, true), StandardCharsets.UTF_8))) {
+			CompletionService<Result> service = new ExecutorCompletionService<>(pool);
+			for (final File file : files) {
+				service.submit(new Callable<Result>() {
+					@Override
+					public Result call() {
+						try {
+							return check(file, mapOld.get(file.getName()));
+						} catch (IOException | RuntimeException e) {
+							log.error("Failed to check copies of " + file.getName() + ": " + e.getMessage());
+							return new Result(null, Status.FAILED);
+						}
+					}
+				});
+			}
+			
+			for (int i = 1; i <= files.length; ++i) {
+				Result result = service.take().get();
+				if (result.entry != null) {
+					mapEntries.put(result.entry.fileName, result.entry);
+					if (result.status != Status.UP_TO_DATE) {
+						out.write(result.entry.toLine());
+						out.flush();
+					}
+				}
+				if (result.status == Status.REGENERATED) {
+					nRegenerated++;
+				} else if (result.status == Status.FAILED) {
+					nFailed++;
+				}
+				
+				if (progress != null) {
+					progress.taskProgress();
+				}
+				if (i % reportInterval == 0 || i == files.length) {
+					double secs = Math.max(1, System.currentTimeMillis() - tStart) / 1000.0;
+					String msg = String.format("%d/%d photos vérifiées, %d régénérées, %d erreurs (%.1f photos/s)",
+							i, files.length, nRegenerated, nFailed, i / secs);
+					log.info(msg);
+					if (progress != null) {
+						progress.info(msg);
+					}
+				}
+			}
+			isComplete = true;
+		} catch (IOException e) {
+			log.error("Writing thumbnails manifest failed: " + e.getMessage());
+		} catch (InterruptedException e) {
+			log.warn("Regeneration interrupted, will resume from manifest");
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			log.error("Regeneration failed: " + e.getCause());
+		} finally {
+			pool.shutdownNow();
+			if (progress != null) {
+				progress.taskFinished();
+			}
+		}
+		
+		if (isComplete) {
+			write(mapEntries);
+		}
+		return nRegenerated;
+	}
+	
+	/**
+	 * Checks the copies of one picture, and makes them again if stale.
+	 * Runs in a worker thread.
+	 * 
+	 * @param file   the original picture
+	 * @param entry  its manifest entry, or null if none
+	 */
+	private static Result check(File file, Entry entry) throws IOException {
+		ThumbnailEngine.Derivative[] derivatives = ThumbnailEngine.getDerivatives(file.getName());
+		long size = file.length();
+		long tModified = file.lastModified();
+		
+		boolean hasAll = true;
+		boolean isOlder = false;
+		for (ThumbnailEngine.Derivative derivative : derivatives) {
+			hasAll &= derivative.getFile().exists();
+			isOlder |= derivative.getFile().lastModified() < tModified;
+		}
+		if (hasAll && entry != null && entry.size == size && entry.tModified == tModified) {
+			return new Result(entry, Status.UP_TO_DATE);
+		}
+		
+		Entry entryNew = new Entry(file.getName(), size, tModified, hash(file));
+		boolean isStale = (entry == null ? isOlder : !entry.hash.equals(entryNew.hash));
+		if (hasAll && !isStale) {
+			return new Result(entryNew, Status.UNCHANGED);
+		}
+		if (ThumbnailEngine.createImages(file, Arrays.asList(derivatives))) {
+			return new Result(entryNew, Status.REGENERATED);
+		}
+		return new Result(null, Status.FAILED);
+	}
+	
+	private static String hash(File file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+		byte[] buffer = new byte[64 * 1024];
+		try (InputStream in = new FileInputStream(file)) {
+			int n;
+			while ((n = in.read(buffer)) > 0) {
+				digest.update(buffer, 0, n);
+			}
+		}
+		
+		StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest()) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+			hex.append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+	
+	/**
+	 * Reads the manifest. Later lines replace earlier ones for the same picture,
+	 * and a line cut by an interruption is ignored.
+	 */
+	private static Map<String, Entry> load() {
+		Map<String, Entry> mapEntries = new HashMap<>();
+		try (BufferedReader in = new BufferedReader(new InputStreamReader(
+				new FileInputStream(manifestFile), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				Entry entry = Entry.parse(line);
+				if (entry != null) {
+					mapEntries.put(entry.fileName, entry);
+				}
+			}
+		} catch (FileNotFoundException e) {
+			log.info("No thumbnails manifest yet");
+		} catch (IOException e) {
+			log.error("Reading thumbnails manifest failed: " + e.getMessage());
+		}
+		return mapEntries;
+	}
+	
+	/**
+	 * Rewrites the manifest with one line per existing picture.
+	 */
+	private static void write(Map<String, Entry> mapEntries) {
+		File file = new File(manifestFile);
+		File fileTmp = new File(manifestFile + ".tmp");
+		try (Writer out = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(fileTmp), StandardCharsets.UTF_8))) {
+			for (Entry entry : mapEntries.values()) {
+				out.write(entry.toLine());
+			}
+		} catch (IOException e) {
+			log.error("Writing thumbnails manifest failed: " + e.getMessage());
+			fileTmp.delete();
+			return;
+		}
+		if (!fileTmp.renameTo(file)) {
+			log.error("Failed to rename thumbnails manifest " + fileTmp.getName());
+		}
+	}
+	
+	/**
+	 * The state of an original when its copies were made.
+	 */
+	private static class Entry {
+		
+		private final String fileName;
+		private final long size;
+		private final long tModified;
+		private final String hash;
+		
+		public Entry(String fileName, long size, long tModified, String hash) {
+			this.fileName = fileName;
+			this.size = size;
+			this.tModified = tModified;
+			this.hash = hash;
+		}
+		
+		public static Entry parse(String line) {
+			String[] fields = line.split("\t");
+			if (fields.length != 4 || fields[3].length() != 40) {
+				return null;
+			}
+			try {
+				return new Entry(fields[0], Long.parseLong(fields[1]), Long.parseLong(fields[2]), fields[3]);
+			} catch (NumberFormatException e) {
+				return null;
+			}
+		}
+		
+		public String toLine() {
+			return fileName + "\t" + size + "\t" + tModified + "\t" + hash + "\n";
+		}
+	}
+	
+	private static class Result {
+		
+		private final Entry entry;
+		private final Status status;
+		
+		public Result(Entry entry, Status status) {
+			this.entry = entry;
+			this.status = status;
+		}
+	}
+
+}
@@ -6,6 +6,8 @@ import model.DataProblem;
 
 import common.base.Logger;
 
+import controller.CacheVersion;
+
 public class DataCheckManager {
 	
 	private static final Logger log = new Logger("DataCheckManager", true);
@@ -50,8 +52,9 @@ public class DataCheckManager {
 		log.info("Checking data quality with " + vecCheckers.size() + " checkers");
 		clearProblems();
 		
+		CacheVersion version = CacheVersion.getSnapshot();
 		for (DataChecker checker : vecCheckers) {
-			vecProblems.addAll(checker.check());
+			vecProblems.addAll(checker.check(version));
 		}
 		
 		log.info("Detected " + vecProblems.size() + " problems.");
@@ -4,6 +4,8 @@ import java.util.Vector;
 
 import model.DataProblem;
 
+import controller.CacheVersion;
+
 
 /**
  * Interface describing the methods used to check data quality and find problems.
@@ -16,8 +18,9 @@ public interface DataChecker {
 	/**
 	 * Checks the data and generates problems accordingly.
 	 * 
+	 * @param version  the cache version to check
 	 * @return a possibly empty list of encountered problems
 	 */
-	public Vector<DataProblem> check();
+	public Vector<DataProblem> check(CacheVersion version);
 
 }
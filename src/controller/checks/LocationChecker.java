@@ -8,7 +8,7 @@ import model.Location;
 
 import common.base.Logger;
 
-import controller.LocationCache;
+import controller.CacheVersion;
 
 public class LocationChecker implements DataChecker {
 
@@ -18,10 +18,10 @@ public class LocationChecker implements DataChecker {
 	}
 
 	@Override
-	public Vector<DataProblem> check() {
+	public Vector<DataProblem> check(CacheVersion version) {
 		Vector<DataProblem> vecProblems = new Vector<>();
 		
-		Collection<Location> vecLocations = LocationCache.getInstance().getAll();
+		Collection<Location> vecLocations = version.getLocations();
 		
 		log.info("Quality check of " + vecLocations.size() + " locations");
 		
@@ -30,7 +30,7 @@ public class LocationChecker implements DataChecker {
 			if (descr == null || descr.isEmpty()) {
 				DataProblem prob = new DataProblem(location.getIdx(), ProblemKind.LOC_NO_DESCR, 
 						"Lieu '" + location.getName() + "' sans description (" +
-						location.getPics().size() + " photos)");
+						version.getPics(location).size() + " photos)");
 				vecProblems.add(prob);
 				//log.debug(prob.toString());
 			}
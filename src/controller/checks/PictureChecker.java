@@ -15,7 +15,7 @@ import model.HerbierPic;
 import common.base.Logger;
 
 import controller.Controller;
-import controller.PictureCache;
+import controller.CacheVersion;
 
 public class PictureChecker implements DataChecker {
 
@@ -28,10 +28,10 @@ public class PictureChecker implements DataChecker {
 	}
 
 	@Override
-	public Vector<DataProblem> check() {
+	public Vector<DataProblem> check(CacheVersion version) {
 		Vector<DataProblem> vecProblems = new Vector<>();
 		
-		Collection<HerbierPic> pictures = PictureCache.getInstance().getAll();
+		Collection<HerbierPic> pictures = version.getPictures();
 		
 		log.info("Quality check of " + pictures.size() + " pictures");
 		
@@ -9,7 +9,7 @@ import model.Taxon;
 
 import common.base.Logger;
 
-import controller.TaxonCache;
+import controller.CacheVersion;
 
 public class TaxonChecker implements DataChecker {
 
@@ -19,10 +19,10 @@ public class TaxonChecker implements DataChecker {
 	}
 
 	@Override
-	public Vector<DataProblem> check() {
+	public Vector<DataProblem> check(CacheVersion version) {
 		Vector<DataProblem> vecProblems = new Vector<>();
 		
-		Collection<Taxon> taxons = TaxonCache.getInstance().getAll();
+		Collection<Taxon> taxons = version.getTaxa();
 		
 		log.info("Quality check of " + taxons.size() + " taxons");
 		
@@ -34,7 +34,7 @@ public class TaxonChecker implements DataChecker {
 				vecProblems.add(problem);
 			}
 			
-			HerbierPic pic = taxon.getTypicalPic();
+			HerbierPic pic = version.getTypicalPic(taxon);
 			if (pic == null) {
 				DataProblem problem = new DataProblem(taxon.getIdx(), ProblemKind.TAX_NO_DEFPIC, 
 						"Le taxon " + taxon.toString() + " n'a pas d'image-type");
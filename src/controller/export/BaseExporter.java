@@ -15,8 +15,8 @@ import common.html.HtmlTag;
 import common.html.JavascriptHtmlTag;
 import common.html.TableHtmlTag;
 
+import controller.CacheVersion;
 import controller.Controller;
-import controller.TaxonCache;
 import controller.upload.UploadManager;
 
 /**
@@ -42,11 +42,24 @@ public class BaseExporter {
 	
 	protected DateFormat dateFormat = DateFormat.getDateInstance(DateFormat.LONG, Locale.FRANCE);
 	
+	/** The cache version to export, so that all pages show the same data */
+	protected CacheVersion version;
+	
 
 	public BaseExporter() {
 		
 	}
 	
+	/**
+	 * Sets the cache version to export.
+	 * Must be called before exporting.
+	 * 
+	 * @param version  the cache version
+	 */
+	public void setVersion(CacheVersion version) {
+		this.version = version;
+	}
+	
 	/**
 	 * Returns the filename of exported html documents for the specified taxon.
 	 * 
@@ -80,7 +93,7 @@ public class BaseExporter {
 		}
 		
 		if (TaxonRank.SPECIES == taxon.getRank() || TaxonRank.GENUS == taxon.getRank()) {
-			Taxon family = taxon.getAncestor(TaxonRank.FAMILY);
+			Taxon family = version.getTaxonIndex().getAncestor(taxon, TaxonRank.FAMILY);
 			if (family != null) {
 				tooltip += " (" + family.getNameFr() + ")";
 			}
@@ -170,7 +183,7 @@ public class BaseExporter {
 			name = mat.group(1);
 			//log.info("Remark " + remark + " matches with " + name);
 			replacement = name;
-			taxon = TaxonCache.getInstance().getTaxon(name);
+			taxon = version.getTaxon(name);
 		}
 		
 		if (taxon != null) {
@@ -8,11 +8,10 @@ import common.base.Logger;
 import common.html.HtmlTag;
 import common.io.SpecialChars;
 
+import controller.CacheVersion;
 import controller.Controller;
-import controller.DataAccess;
 import controller.DatabaseTools.eOrdering;
-import controller.PictureCache;
-import controller.TaxonCache;
+import controller.PictureQuery;
 
 import model.HerbierPic;
 import model.Location;
@@ -27,8 +26,9 @@ public class BookExporter extends BaseExporter {
 	}
 	
 	public void export() {
+		setVersion(CacheVersion.getSnapshot());
 		eOrdering order = eOrdering.BY_DEFAULT;
-		Vector<HerbierPic> vecPics = DataAccess.getInstance().getHerbierPics("WHERE picRating >= 4", order, null);
+		Vector<HerbierPic> vecPics = new PictureQuery().ratingAtLeast(4).orderBy(order).select(version);
 		int nPics = vecPics.size();
 		log.info("Exporting " + nPics + " images for a book.");
 		
@@ -42,7 +42,7 @@ public class BookExporter extends BaseExporter {
 		HtmlTag divFreewall = page.addDiv("freewall");
 		
 		for (HerbierPic hpic : vecPics) {
-			HerbierPic pic = PictureCache.getInstance().getPicture(hpic.getIdx());
+			HerbierPic pic = hpic;
 			HtmlTag div = divFreewall.addDiv(null);
 			div.setClass("item");
 			div.addImage("../html/medium/" + pic.getFileName(), pic.getFileName());
@@ -98,7 +98,7 @@ public class BookExporter extends BaseExporter {
 			name = mat.group(1);
 			//log.info("Remark " + remark + " matches with " + name);
 			replacement = name;
-			taxon = TaxonCache.getInstance().getTaxon(name);
+			taxon = version.getTaxon(name);
 		}
 		
 		if (taxon != null) {
@@ -9,6 +9,7 @@ import model.Taxon;
 import common.base.Chronometer;
 import common.base.Logger;
 
+import controller.CacheVersion;
 import controller.Controller;
 
 /**
@@ -34,10 +35,18 @@ public class ExportManager {
 	private static ExportManager _instance = null;
 	
 	
-	public void export(Set<Taxon> taxa) {
-		log.info("Exporting " + taxa.size() + " top-level taxa");
+	/**
+	 * Exports the specified cache version as a website.
+	 * All pages are created from the same version, 
+	 * even if the caches are modified while exporting.
+	 * 
+	 * @param version  the cache version to export
+	 */
+	public void export(CacheVersion version) {
+		Set<Taxon> taxa = version.getTopLevel();
+		log.info("Exporting " + taxa.size() + " top-level taxa from " + version);
 		
-		if (taxa == null || taxa.isEmpty()) {
+		if (taxa.isEmpty()) {
 			log.warn("Nothing to export, aborting");
 			return;
 		}
@@ -45,6 +54,13 @@ public class ExportManager {
 		Chronometer chrono = new Chronometer();
 		cleanup();
 		
+		websiteExporter.setVersion(version);
+		locationExporter.setVersion(version);
+		homePageExporter.setVersion(version);
+		pictureExporter.setVersion(version);
+		expeditionsExporter.setVersion(version);
+		highchartsExporter.setVersion(version);
+		
 		websiteExporter.export(taxa);
 		locationExporter.export();
 		homePageExporter.export();
@@ -10,7 +10,6 @@ import common.base.Logger;
 import common.html.HtmlTag;
 import common.html.JavascriptHtmlTag;
 import common.html.TableHtmlTag;
-import controller.TaxonCache;
 
 /**
  * Creates HTML pages containing Highcharts.
@@ -100,7 +99,7 @@ public class HighchartsExporter extends BaseExporter {
 		jsonLabels.put("enabled", true);
 		jsonSerie.put("dataLabels", jsonLabels);
 		
-		Taxon taxTop = TaxonCache.getInstance().getTaxon("Odonata");
+		Taxon taxTop = version.getTaxon("Odonata");
 		if (taxTop != null) {
 			jsonTitle.put("text", "Groupe des " + taxTop.getNameFr());
 			addTaxon(taxTop, jsonData);
@@ -111,7 +110,7 @@ public class HighchartsExporter extends BaseExporter {
 	
 	@SuppressWarnings("unchecked")
 	private void addTaxon(Taxon taxon, JSONArray json) {
-		for (Taxon taxChild : taxon.getChildren()) {
+		for (Taxon taxChild : version.getChildren(taxon)) {
 			JSONArray value = new JSONArray();
 			value.add(taxon.getName());
 			value.add(taxChild.getName());
@@ -153,7 +152,7 @@ public class HighchartsExporter extends BaseExporter {
 		
 		//for (Taxon taxon : TaxonCache.getInstance().getTopLevel()) {
 		for (Category category : Category.values()) {
-			Taxon taxon = TaxonCache.getInstance().getTaxon(category.getName());
+			Taxon taxon = version.getTaxon(category.getName());
 			if (taxon != null) {
 				JSONObject jsonValue = new JSONObject();
 				jsonValue.put("name", taxon.getNameFr());
@@ -161,7 +160,7 @@ public class HighchartsExporter extends BaseExporter {
 				if (color != null) {
 					jsonValue.put("color", color);
 				}
-				jsonValue.put("y", taxon.getPicsCascade().size());
+				jsonValue.put("y", version.getPicsCascadeCount(taxon));
 				jsonData.add(jsonValue);
 			} else {
 				log.error("Failed to find taxon named '" + category.getName() + "' in cache.");
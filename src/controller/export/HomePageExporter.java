@@ -22,8 +22,7 @@ import common.html.ListHtmlTag;
 import common.html.TableHtmlTag;
 import controller.Controller;
 import controller.DataAccess;
-import controller.PictureCache;
-import controller.TaxonCache;
+import controller.PictureQuery;
 
 /**
  * Subclass of Exporter to generate the home page of the website.
@@ -124,7 +123,7 @@ public class HomePageExporter extends BaseExporter {
 		
 		Map<TaxonRank, Integer> mapRankStats = getRankStats();
 		String sStats = "C'est aussi une collection de taxons qui compte actuellement <b>";
-		sStats += PictureCache.getInstance().size() + "</b> photos dans <b>";
+		sStats += version.getPictures().size() + "</b> photos dans <b>";
 		sStats += mapRankStats.get(TaxonRank.SPECIES) + "</b> espèces, <b>";
 		sStats += mapRankStats.get(TaxonRank.GENUS) + "</b> genres et <b>";
 		sStats += mapRankStats.get(TaxonRank.FAMILY) + "</b> familles.";
@@ -136,8 +135,8 @@ public class HomePageExporter extends BaseExporter {
 		Vector<Taxon> vecSpecies = new Vector<>();
 		for (Taxon species : vecSpeciesRaw) {
 			// get from cache to have associated pics etc.
-			Taxon speciesCached = TaxonCache.getInstance().getTaxon(species.getIdx());
-			if (speciesCached.getTypicalPic() != null) {
+			Taxon speciesCached = version.getTaxon(species.getIdx());
+			if (speciesCached != null && version.getTypicalPic(speciesCached) != null) {
 				vecSpecies.add(speciesCached);
 			}
 		}
@@ -146,7 +145,8 @@ public class HomePageExporter extends BaseExporter {
 		Collections.sort(vecSpecies, new Comparator<Taxon>() {
 			@Override
 			public int compare(Taxon tax1, Taxon tax2) {
-				return tax2.getTypicalPic().getShotAt().compareTo(tax1.getTypicalPic().getShotAt());
+				return Long.compare(version.getTypicalPic(tax2).getShotAtTime(), 
+						version.getTypicalPic(tax1).getShotAtTime());
 			}
 		});
 		
@@ -157,7 +157,7 @@ public class HomePageExporter extends BaseExporter {
 		
 		ul = divSpecies.addList();
 		for (Taxon species : vecSpecies) {
-			HerbierPic pic = species.getTypicalPic();
+			HerbierPic pic = version.getTypicalPic(species);
 			if (pic != null) {
 				//String picFile = pic.getFileName().replace(".jpg", ".html");
 				String picFile = getTaxonHtmlFileName(species);
@@ -215,13 +215,13 @@ public class HomePageExporter extends BaseExporter {
 	 */
 	private Vector<HerbierPic> getSamplePics() {
 		Vector<HerbierPic> vecBestPics = 
-				DataAccess.getInstance().getHerbierPics("WHERE picRating = 5", null, null);
+				new PictureQuery().ratingBetween(5, 5).select(version);
 		Collections.shuffle(vecBestPics);
 		Vector<HerbierPic> vecSamplePics = new Vector<>(nSamplePics);
 		
 		int nPics = 0;
 		while (nPics < vecBestPics.size() && nPics < nSamplePics) {
-			HerbierPic pic = PictureCache.getInstance().getPicture(vecBestPics.get(nPics).getIdx());
+			HerbierPic pic = vecBestPics.get(nPics);
 			vecSamplePics.add(pic);
 			nPics++;
 		}
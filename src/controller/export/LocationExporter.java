@@ -4,8 +4,8 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
 import java.util.Vector;
 
 import model.AltitudeLevel;
@@ -24,7 +24,7 @@ import common.html.TableHtmlTag;
 
 import controller.Controller;
 import controller.ExpeditionManager;
-import controller.LocationCache;
+import controller.LocationIndex;
 
 /**
  * Subclass of Exporter to create location pages.
@@ -36,8 +36,8 @@ public class LocationExporter extends BaseExporter {
 
 	private static final Logger log = new Logger("LocationExporter", true);
 	
-	/** The max distance for neighbour locations */
-	private static final double dDistanceMax = 1.0;
+	/** The max distance in km for neighbour locations */
+	private static final double dDistanceMaxKm = 100.0;
 	
 	public LocationExporter() {
 	}
@@ -68,7 +68,7 @@ public class LocationExporter extends BaseExporter {
 		TableHtmlTag table = page.addTable(2, "800px");
 		table.setClass("align-top");
 		
-		List<Location> locations = new ArrayList<>(LocationCache.getInstance().getAll());
+		List<Location> locations = new ArrayList<>(version.getLocations());
 		Collections.sort(locations, new Comparator<Location>() {
 			@Override
 			public int compare(Location loc1, Location loc2) {
@@ -89,7 +89,7 @@ public class LocationExporter extends BaseExporter {
 		HtmlTag tCell = table.addCell();
 		
 		for (Location location : locations) {
-			if (location.getPics().isEmpty()) {
+			if (version.getPics(location).isEmpty()) {
 				log.warn("Skipping location without pictures: " + location);
 			} else {
 				AltitudeLevel level = location.getAltitudeLevel();
@@ -110,7 +110,7 @@ public class LocationExporter extends BaseExporter {
 				ul.addItem(HtmlTagFactory.link(filename, location.getName(), location.getName()));
 				
 				if (location.getLongitude() != null && location.getLatitude() != null) {
-					int nPics = location.getPics().size();
+					int nPics = version.getPics(location).size();
 					String sLabel = "<a href='" + filename + "'>" + location.getName() + "</a><br>" + nPics + " photos";
 					jsRenderMap.addLine(String.format("addMapMarker(%.6f, %.6f, \"%s\");", 
 						location.getLongitude().doubleValue(), location.getLatitude().doubleValue(), sLabel));
@@ -201,7 +201,7 @@ public class LocationExporter extends BaseExporter {
 		addOpenStreetMap(location, page, tdLeft, listNeighbors, null, null);
 		
 		// Photos
-		final Set<HerbierPic> tsPics = location.getPics();
+		final List<HerbierPic> tsPics = version.getPics(location);
 		int nPics = tsPics.size();
 		page.addTitle(2, "Photos");
 		page.addSpan("pics-count", String.valueOf(nPics) + " photo" + (nPics == 1 ? "" : "s"));
@@ -222,51 +222,20 @@ public class LocationExporter extends BaseExporter {
 	 * @return  a list of locations sorted by growing distance
 	 */
 	private List<Location> getClosestLocations(final Location locFrom, int iMax) {
-		// Get all locations from cache, remove locFrom
-		List<Location> locations = new ArrayList<>(LocationCache.getInstance().getAll());
-		locations.remove(locFrom);
-		
-		// Keep only close neighbors
-		List<Location> listNeighbors = new ArrayList<>();
-		for (Location loc : locations) {
-			Double dDistance = locFrom.getDistance(loc);
-			if (dDistance != null && dDistance.doubleValue() < dDistanceMax) {
-				listNeighbors.add(loc);
+		// ask for one more, as locFrom is its own closest location
+		List<Location> listNeighbors = version.getLocationIndex().getClosest(
+				locFrom, iMax + 1, dDistanceMaxKm);
+		Iterator<Location> it = listNeighbors.iterator();
+		while (it.hasNext()) {
+			if (it.next().getIdx() == locFrom.getIdx()) {
+				it.remove();
 			}
 		}
-		
-		// Sort by distance, closest first
-		Collections.sort(listNeighbors, new Comparator<Location>() {
-			@Override
-			public int compare(Location loc1, Location loc2) {
-				Double dDist1 = locFrom.getDistance(loc1);
-				Double dDist2 = locFrom.getDistance(loc2);
-				if (dDist1 != null && dDist2 != null) {
-					return (dDist1.doubleValue() < dDist2.doubleValue() ? -1 : 1);
-				} else if (dDist1 != null) {
-					return -1;
-				} else {
-					return 1;
-				}
-			}
-			
-		});
 		return listNeighbors.subList(0, Math.min(listNeighbors.size(), iMax));
 	}
 	
 	private double getDistanceKm(HasMapCoordinates hmc1, HasMapCoordinates hmc2) {
-		final double r = 6371; // Radius of the earth in km
-		double lat1 = hmc1.getLatitude().doubleValue();
-		double lat2 = hmc2.getLatitude().doubleValue();
-		double dLat = deg2rad(lat2 - lat1);
-		double dLon = deg2rad(hmc2.getLongitude().doubleValue() - hmc1.getLongitude().doubleValue()); 
-		double a = 
-				Math.sin(dLat/2) * Math.sin(dLat/2) +
-				Math.cos(deg2rad(lat1)) * Math.cos(deg2rad(lat2)) * 
-				Math.sin(dLon/2) * Math.sin(dLon/2); 
-		double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1-a)); 
-		double d = r * c; // Distance in km
-		return d;
+		return LocationIndex.getDistanceKm(hmc1, hmc2);
 	}
 	
 	/**
@@ -301,8 +270,4 @@ public class LocationExporter extends BaseExporter {
 		return par;
 	}
 
-	private double deg2rad(double deg) {
-		return deg * (Math.PI/180.0);
-	}
-
 }
@@ -4,8 +4,6 @@ import java.text.Collator;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.Date;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Vector;
@@ -18,10 +16,9 @@ import common.html.HtmlTagFactory;
 import common.html.ListHtmlTag;
 import common.html.TableHtmlTag;
 
-import controller.DataAccess;
 import controller.DatabaseTools.eOrdering;
-import controller.PictureCache;
-import controller.TaxonCache;
+import controller.PictureQuery;
+import controller.TaxonIndex;
 
 /**
  * Subclass of Exporter to export pictures.
@@ -84,8 +81,9 @@ public class PictureExporter extends BaseExporter {
 			break;
 		}
 
-		List<Taxon> listTaxa = new ArrayList<>(TaxonCache.getInstance().getAll());
+		List<Taxon> listTaxa = new ArrayList<>(version.getTaxa());
 		Collections.sort(listTaxa, comparator);
+		TaxonIndex index = version.getTaxonIndex();
 		
 		for (Taxon taxon : listTaxa) {
 			
@@ -94,7 +92,7 @@ public class PictureExporter extends BaseExporter {
 				continue;
 			}
 			
-			if (taxon.getRank() == TaxonRank.GENUS && taxon.hasSubTaxa()) {
+			if (taxon.getRank() == TaxonRank.GENUS && !version.getChildren(taxon).isEmpty()) {
 				continue;
 			}
 			
@@ -125,7 +123,7 @@ public class PictureExporter extends BaseExporter {
 			String picFile = getTaxonHtmlFileName(taxon);
 			Vector<HtmlTag> tags = new Vector<>();
 			tags.add(HtmlTagFactory.link("pages/" + picFile, name, getTooltiptext(taxon)));
-			tags.add(HtmlTagFactory.grayFont(" - " + taxon.getAncestor(TaxonRank.FAMILY).getName()));
+			tags.add(HtmlTagFactory.grayFont(" - " + index.getAncestor(taxon, TaxonRank.FAMILY).getName()));
 			ul.addItem(tags);
 		}
 		
@@ -139,27 +137,10 @@ public class PictureExporter extends BaseExporter {
 		PanorpaHtmlPage page = new PanorpaHtmlPage("Nature - Dernières photos", htmlPath + "latest.html", "");
 		page.addTitle(1, "Dernières photos");
 		
-		Vector<HerbierPic> pics = new Vector<>(PictureCache.getInstance().getAll());
-		Collections.sort(pics, new Comparator<HerbierPic>() {
-			@Override
-			public int compare(HerbierPic pic1, HerbierPic pic2) {
-				Date date1 = pic1.getShotAt();
-				Date date2 = pic2.getShotAt();
-				if (date1.equals(date2)) {
-					return pic1.getFileName().compareTo(pic2.getFileName());
-				}
-				return date2.compareTo(date1);
-			}
-		});
-		
 		TableHtmlTag table = page.addTable(nColumns, "100%");
 		table.setClass("table-thumbs");
 		
-		Iterator<HerbierPic> it = pics.iterator();
-		int nPics = 0;
-		while (it.hasNext() && nPics < nLatestPics) {
-			HerbierPic pic = it.next();
-			nPics++;
+		for (HerbierPic pic : version.getLatestPics(nLatestPics)) {
 			exportPicture(pic, table, true);
 		}
 		
@@ -174,16 +155,16 @@ public class PictureExporter extends BaseExporter {
 		page.addTitle(1, "Florilège");
 		
 		Vector<HerbierPic> pics = 
-				DataAccess.getInstance().getHerbierPics("WHERE picRating >= 5", null, null);
+				new PictureQuery().ratingAtLeast(5).select(version);
 		Collections.sort(pics, new Comparator<HerbierPic>() {
 			@Override
 			public int compare(HerbierPic pic1, HerbierPic pic2) {
-				Date date1 = pic1.getShotAt();
-				Date date2 = pic2.getShotAt();
-				if (date1.equals(date2)) {
+				long tShot1 = pic1.getShotAtTime();
+				long tShot2 = pic2.getShotAtTime();
+				if (tShot1 == tShot2) {
 					return pic1.getFileName().compareTo(pic2.getFileName());
 				}
-				return date2.compareTo(date1);
+				return (tShot2 < tShot1 ? -1 : 1);
 			}
 		});
 
@@ -194,11 +175,7 @@ public class PictureExporter extends BaseExporter {
 		table.addAttribute("width", "100%");
 		table.setClass("table-thumbs");
 		
-		Iterator<HerbierPic> it = pics.iterator();
-		while (it.hasNext()) {
-			HerbierPic pic = it.next();
-			// reload from cache to have taxa
-			pic = PictureCache.getInstance().getPicture(pic.getIdx());
+		for (HerbierPic pic : pics) {
 			exportPicture(pic, table, true);
 		}
 		
@@ -1,6 +1,6 @@
 package controller.export;
 
-import java.util.Set;
+import java.util.List;
 import java.util.Vector;
 
 import common.html.HtmlTag;
@@ -12,6 +12,7 @@ import model.HerbierPic;
 import model.Location;
 import model.Taxon;
 import model.TaxonRank;
+import controller.CacheVersion;
 
 /**
  * Export species as HTML pages.
@@ -33,6 +34,12 @@ public class TaxonExporter extends BaseExporter {
 		taxonUrlProvider = new TaxonUrlProvider();
 	}
 	
+	@Override
+	public void setVersion(CacheVersion version) {
+		super.setVersion(version);
+		taxonUrlProvider.setIndex(version.getTaxonIndex());
+	}
+	
 	/**
 	 * Export the specified taxon as a HTML page, 
 	 * with its photos and a classification table.
@@ -41,7 +48,7 @@ public class TaxonExporter extends BaseExporter {
 	 * @param nextTaxon  the next taxon, for navigation
 	 */
 	public void exportTaxon(Taxon taxon, Taxon prevTaxon, Taxon nextTaxon) {
-		Set<HerbierPic> pics = taxon.getPics();
+		List<HerbierPic> pics = version.getPics(taxon);
 		if (pics.isEmpty()) {
 			return;
 		}
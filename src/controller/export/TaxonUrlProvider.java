@@ -8,6 +8,8 @@ import model.Taxon;
 import model.TaxonRank;
 import common.html.HtmlTagFactory;
 import common.html.ListHtmlTag;
+import controller.TaxonCache;
+import controller.TaxonIndex;
 
 /**
  * This class provides html links to external websites offering additional info about taxa,
@@ -25,6 +27,9 @@ public class TaxonUrlProvider {
 	private final Set<String> setFamilyInHomoptera;
 	private final Set<String> setPhylumInInfoFlora;
 	private final Set<String> setPhylumInMycoDb;
+	
+	/** The ancestry index of the exported taxa, or null to use the cached taxa */
+	private TaxonIndex index;
 
 	public TaxonUrlProvider() {
 		setClassInGalerieInsecte = new HashSet<String>(Arrays.asList(
@@ -41,6 +46,14 @@ public class TaxonUrlProvider {
 				new String[]{"Ascomycota", "Basidiomycota"}));
 	}
 	
+	/**
+	 * Sets the ancestry index of the exported taxa.
+	 * @param index  the taxon index of the exported version
+	 */
+	public void setIndex(TaxonIndex index) {
+		this.index = index;
+	}
+	
 	/**
 	 * Adds relevant html links for the specified taxon.
 	 * Always adds a wikipedia and wikispecies link, sometimes more.
@@ -56,7 +69,7 @@ public class TaxonUrlProvider {
 		
 		// TODO use a switch on rank and class to avoid multiple taxon lookups
 		if (TaxonRank.SPECIES == taxon.getRank()) {
-			Taxon taxClass = taxon.getAncestor(TaxonRank.CLASS);
+			Taxon taxClass = getAncestor(taxon, TaxonRank.CLASS);
 			
 			// link to galerie-insecte ?
 			if (setClassInGalerieInsecte.contains(taxClass.getName())) {
@@ -86,7 +99,7 @@ public class TaxonUrlProvider {
 				
 			} else {
 				// link to infoflora ?
-				Taxon taxPhylum = taxClass.getAncestor(TaxonRank.PHYLUM);
+				Taxon taxPhylum = getAncestor(taxClass, TaxonRank.PHYLUM);
 				if (setPhylumInInfoFlora.contains(taxPhylum.getName())) {
 					addLink(ul, taxon, getInfoFloraUrl(taxon), "InfoFlora", "infoflora.ch");
 				// link to mycoDB ?
@@ -97,7 +110,7 @@ public class TaxonUrlProvider {
 				}
 			}
 		} else if (TaxonRank.GENUS == taxon.getRank()) {
-			Taxon taxPhylum = taxon.getAncestor(TaxonRank.PHYLUM);
+			Taxon taxPhylum = getAncestor(taxon, TaxonRank.PHYLUM);
 			if ("Bryophyta".equals(taxPhylum.getName())) {
 				addLink(ul, taxon, getSwissBryophytesUrl(taxon), "Swiss bryophytes", "swissbryophytes.ch");
 			}
@@ -144,7 +157,7 @@ public class TaxonUrlProvider {
 	 */
 	protected String getPyrgusUrl(Taxon taxon) {
 		String url = null;
-		Taxon taxOrder = taxon.getAncestor(TaxonRank.ORDER);
+		Taxon taxOrder = getAncestor(taxon, TaxonRank.ORDER);
 		if (taxOrder != null && "Lepidoptera".equals(taxOrder.getName())) {
 			String sUrlName = taxon.getName().replace(' ', '_');
 			// ex: http://www.pyrgus.de/Vanessa_atalanta_en.html
@@ -157,9 +170,9 @@ public class TaxonUrlProvider {
 		//https://www.britishbugs.org.uk/homoptera/Cercopidae/Cercopis_vulnerata.html
 		//https://www.britishbugs.org.uk/heteroptera/Pentatomidae/aelia_acuminata.html
 		String url = null;
-		Taxon taxOrder = taxon.getAncestor(TaxonRank.ORDER);
+		Taxon taxOrder = getAncestor(taxon, TaxonRank.ORDER);
 		if (taxOrder != null && "Hemiptera".equals(taxOrder.getName())) {
-			Taxon taxFamily = taxon.getAncestor(TaxonRank.FAMILY);
+			Taxon taxFamily = getAncestor(taxon, TaxonRank.FAMILY);
 			if (setFamilyInHomoptera.contains(taxFamily.getName())) {
 				// Homoptera
 				String sUrlName = taxon.getName().replace(' ', '_');
@@ -183,7 +196,7 @@ public class TaxonUrlProvider {
 	 */
 	protected String getAntWikiUrl(Taxon taxon) {
 		String url = null;
-		Taxon taxFamily = taxon.getAncestor(TaxonRank.FAMILY);
+		Taxon taxFamily = getAncestor(taxon, TaxonRank.FAMILY);
 		// http://www.antwiki.org/wiki/Formica_rufa
 		if ("Formicidae".equals(taxFamily.getName())) {
 			String sUrlName = taxon.getName().replace(' ', '_');
@@ -202,7 +215,7 @@ public class TaxonUrlProvider {
 	 */
 	protected String getLibellenSchutzUrl(Taxon taxon) {
 		String url = null;
-		Taxon taxOrder = taxon.getAncestor(TaxonRank.ORDER);
+		Taxon taxOrder = getAncestor(taxon, TaxonRank.ORDER);
 		//https://libellenschutz.ch/arten/item/enallagma-cyathigerum
 		if ("Odonata".equals(taxOrder.getName())) {
 			String sUrlName = taxon.getName().replace(' ', '-');
@@ -285,4 +298,17 @@ public class TaxonUrlProvider {
 		String url = "https://www.inaturalist.org/search?q=" + taxon.getName();
 		return url;
 	}
+	
+	/**
+	 * Gets the ancestor of a taxon with the specified rank,
+	 * from the index of exported taxa.
+	 * 
+	 * @param taxon  the taxon
+	 * @param rank   the rank of the ancestor
+	 * @return the ancestor, or null if not found
+	 */
+	private Taxon getAncestor(Taxon taxon, TaxonRank rank) {
+		TaxonIndex taxonIndex = (index == null ? TaxonCache.getInstance().getIndex() : index);
+		return taxonIndex.getAncestor(taxon, rank);
+	}
 }
@@ -19,8 +19,8 @@ import common.html.ListHtmlTag;
 import common.html.TableHtmlTag;
 import common.io.SpecialChars;
 
+import controller.CacheVersion;
 import controller.Controller;
-import controller.TaxonCache;
 
 /**
  * Exports the picture collection to html pages.
@@ -41,6 +41,12 @@ public class WebsiteExporter extends BaseExporter {
 		taxonExporter = new TaxonExporter();
 	}
 	
+	@Override
+	public void setVersion(CacheVersion version) {
+		super.setVersion(version);
+		taxonExporter.setVersion(version);
+	}
+	
 	public void export(Set<Taxon> taxa) {
 		log.info("Exporting " + taxa.size() + " top-level taxa");
 		
@@ -60,7 +66,7 @@ public class WebsiteExporter extends BaseExporter {
 				
 				// create menu
 				addMenuLink(taxon);
-				for (Taxon child : taxon.getChildren()) {
+				for (Taxon child : version.getChildren(taxon)) {
 					addMenuLink(child);
 				}
 				
@@ -85,7 +91,7 @@ public class WebsiteExporter extends BaseExporter {
 		page.addAnchor(name);
 		page.addTitle(2, rank.getGuiName() + " " + taxon.getName() + taxonNameSeparator + taxon.getNameFr());
 		
-		int nPics = taxon.getPicsCascade().size();
+		int nPics = version.getPicsCascadeCount(taxon);
 		if (nPics > 0) {
 			page.addSpan("pics-count", String.valueOf(nPics) + " photo" + (nPics == 1 ? "" : "s"));
 
@@ -93,11 +99,11 @@ public class WebsiteExporter extends BaseExporter {
 				TableHtmlTag table = page.addFillTable(nColumns, "100%");
 				table.setClass("table-thumbs");
 
-				for (Taxon child : taxon.getChildren()) {
-					nPics = child.getPicsCascade().size();
+				for (Taxon child : version.getChildren(taxon)) {
+					nPics = version.getPicsCascadeCount(child);
 					if (nPics > 0) {
 						HtmlTag td = table.addCell();
-						HerbierPic hpic = child.getTypicalPic();
+						HerbierPic hpic = version.getTypicalPic(child);
 
 						// image with link to order page
 						String orderName = child.getName();
@@ -115,7 +121,7 @@ public class WebsiteExporter extends BaseExporter {
 					}
 				}
 			} else {
-				for (Taxon child : taxon.getChildren()) {
+				for (Taxon child : version.getChildren(taxon)) {
 					exportTaxon(child, page);
 				}
 			}
@@ -126,8 +132,7 @@ public class WebsiteExporter extends BaseExporter {
 		String name = phylum.getName();
 		PanorpaHtmlPage orderPage = new PanorpaHtmlPage("Nature - " + name, htmlPath + name + ".html");
 		
-		final TreeSet<HerbierPic> tsOrderPics = phylum.getPicsCascade();
-		int nPics = tsOrderPics.size();
+		int nPics = version.getPicsCascadeCount(phylum);
 
 		orderPage.addTitle(1, "Phylum " + name + taxonNameSeparator + phylum.getNameFr());
 		orderPage.addSpan("pics-count", String.valueOf(nPics) + " photo" + (nPics == 1 ? "" : "s"));
@@ -136,7 +141,7 @@ public class WebsiteExporter extends BaseExporter {
 		writeTaxonHierarchy(orderPage, phylum);
 		orderPage.addMenuItem(2, "#", "Classes");
 		
-		for (Taxon child : phylum.getChildren()) {
+		for (Taxon child : version.getChildren(phylum)) {
 			//addRankIcon(orderPage, child.getRank());
 			orderPage.addMenuItem(3, "#" + child.getName(), child.getName());
 			exportTaxon(child, orderPage);
@@ -152,8 +157,7 @@ public class WebsiteExporter extends BaseExporter {
 		String name = order.getName();
 		PanorpaHtmlPage orderPage = new PanorpaHtmlPage("Nature - " + name, htmlPath + name + ".html");
 		
-		final TreeSet<HerbierPic> tsOrderPics = order.getPicsCascade();
-		int nPics = tsOrderPics.size();
+		int nPics = version.getPicsCascadeCount(order);
 
 		orderPage.addTitle(1, "Ordre des " + name + taxonNameSeparator + order.getNameFr());
 		orderPage.addSpan("pics-count", String.valueOf(nPics) + " photo" + (nPics == 1 ? "" : "s"));
@@ -162,9 +166,8 @@ public class WebsiteExporter extends BaseExporter {
 		writeTaxonHierarchy(orderPage, order);
 		orderPage.addMenuItem(2, "#", "Familles");
 		
-		for (Taxon family : order.getChildren()) {
-			final TreeSet<HerbierPic> tsFamilyPics = family.getPicsCascade();
-			nPics = tsFamilyPics.size();
+		for (Taxon family : version.getChildren(order)) {
+			nPics = version.getPicsCascadeCount(family);
 			
 			TreeSet<Taxon> tsTaxa = new TreeSet<>();
 			
@@ -183,23 +186,23 @@ public class WebsiteExporter extends BaseExporter {
 			table.setClass("table-thumbs");
 			
 			// export each genus and species
-			for (Taxon genus : family.getChildren()) {
-				for (Taxon species : genus.getChildren()) {
-					HerbierPic pic = species.getBestPic();
+			for (Taxon genus : version.getChildren(family)) {
+				for (Taxon species : version.getChildren(genus)) {
+					HerbierPic pic = version.getBestPic(species);
 					if (pic != null) {
-						exportPicture(pic, table, false, species.getPics().size());
+						exportPicture(pic, table, false, version.getPics(species).size());
 						tsTaxa.add(species);
 					}
 				}
-				if (!genus.getPics().isEmpty()) {
-					HerbierPic pic = genus.getBestPic();
-					exportPicture(pic, table, false, genus.getPics().size());
+				if (!version.getPics(genus).isEmpty()) {
+					HerbierPic pic = version.getBestPic(genus);
+					exportPicture(pic, table, false, version.getPics(genus).size());
 					tsTaxa.add(genus);
 				}
 			}
-			if (!family.getPics().isEmpty()) {
-				HerbierPic pic = family.getBestPic();
-				exportPicture(pic, table, false, family.getPics().size());
+			if (!version.getPics(family).isEmpty()) {
+				HerbierPic pic = version.getBestPic(family);
+				exportPicture(pic, table, false, version.getPics(family).size());
 				tsTaxa.add(family);
 			}
 			
@@ -333,7 +336,7 @@ public class WebsiteExporter extends BaseExporter {
 	
 	private void exportJsonTree() {
 		//Collection<Taxon> taxa = TaxonCache.getInstance().getAll();
-		Set<Taxon> taxa = TaxonCache.getInstance().getTopLevel();
+		Set<Taxon> taxa = version.getTopLevel();
 		log.info("Exporting " + taxa.size() + " top-level taxa as JSON tree");
 		
 		if (taxa == null || taxa.isEmpty()) {
@@ -363,7 +366,7 @@ public class WebsiteExporter extends BaseExporter {
 		jsonTree.add(json);
 		
 		// export child taxa
-		for (Taxon child : taxon.getChildren()) {
+		for (Taxon child : version.getChildren(taxon)) {
 			exportJsonTree(child, jsonTree);
 		}
 	}
@@ -377,14 +380,14 @@ public class WebsiteExporter extends BaseExporter {
 		json.put("id", String.valueOf(taxon.getIdx()));
 		json.put("parent", parent == null ? "#" : String.valueOf(parent.getIdx()));
 		json.put("text", taxon.getName());
-		HerbierPic pic = taxon.getTypicalPic();
+		HerbierPic pic = version.getTypicalPic(taxon);
 		if (pic != null) {
 			JSONObject jsonAAttr = new JSONObject();
 			json.put("a_attr", jsonAAttr);
 			jsonAAttr.put("href", getTaxonLink(taxon, pic));
 			jsonAAttr.put("title", taxon.getNameFr());
 			jsonAAttr.put("link", pic.getFileName().replace(".jpg", ""));
-			jsonAAttr.put("pics", taxon.getPicsCascade().size());
+			jsonAAttr.put("pics", version.getPicsCascadeCount(taxon));
 		} else {
 			log.error("No typical pic for " + taxon);
 		}
@@ -0,0 +1,21 @@
+package controller.listeners;
+
+/**
+ * Listener for objects fetched one by one from database.
+ * 
+ * <p>Used with the streaming fetch methods of the DataAccess,
+ * which hydrate objects as rows arrive and never hold the full result.
+ * 
+ * @author nicz
+ *
+ * @param <T>  the class of fetched objects
+ */
+public interface FetchListener<T> {
+	
+	/**
+	 * An object was fetched from database.
+	 * @param obj  the fetched object (never null)
+	 */
+	public void objectFetched(T obj);
+
+}
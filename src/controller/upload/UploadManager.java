@@ -16,8 +16,9 @@ import model.TaxonRank;
 import common.base.Logger;
 import common.listeners.ProgressListener;
 
+import controller.CacheVersion;
 import controller.Controller;
-import controller.TaxonCache;
+import controller.TaxonIndex;
 import controller.export.ExpeditionsExporter;
 
 /**
@@ -203,9 +204,11 @@ public class UploadManager {
 		Vector<HerbierPic> vecPics = Controller.getInstance().getPicsToUpload();
 		// get all orders with modified pics
 		Set<Taxon> setModifiedOrders = new HashSet<>();
+		CacheVersion version = CacheVersion.getSnapshot();
+		TaxonIndex index = version.getTaxonIndex();
 		for (HerbierPic pic : vecPics) {
-			Taxon taxon = TaxonCache.getInstance().getTaxon(pic.getIdxTaxon());
-			Taxon order = taxon.getAncestor(TaxonRank.ORDER);
+			Taxon taxon = version.getTaxon(pic.getIdxTaxon());
+			Taxon order = index.getAncestor(taxon, TaxonRank.ORDER);
 			if (order != null) {
 				setModifiedOrders.add(order);
 			}
@@ -219,7 +222,7 @@ public class UploadManager {
 		// get the list of html files to upload for these orders
 		Set<File> setFiles = new HashSet<>();
 		for (Taxon order : setModifiedOrders) {
-			for (HerbierPic pic : order.getPicsCascade()) {
+			for (HerbierPic pic : index.getPicsUnder(order)) {
 				//String filename = htmlPath + "pages/" + pic.getFileName().replace(".jpg", ".html");
 				String filename = htmlPath + "pages/" + getTaxonHtmlFileName(pic.getTaxon());
 				File file = new File(filename);
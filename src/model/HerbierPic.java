@@ -14,13 +14,14 @@ public class HerbierPic extends DataObject
 	public static Comparator<HerbierPic> comparatorByShotAt = new Comparator<HerbierPic>() {
 		@Override
 		public int compare(HerbierPic pic1, HerbierPic pic2) {
-			return (pic1.getShotAt().before(pic2.getShotAt()) ? -1 : 1);
+			return (pic1.getShotAtTime() < pic2.getShotAtTime() ? -1 : 1);
 		}
 	};
 
 	private int idx;
 	private String fileName;
-	private Date shotAt;
+	/** Shot-at timestamp in ms since epoch, or noDate if unknown */
+	private long shotAt;
 	private Location location;
 	private String remarks;
 	private int idxTaxon;
@@ -31,20 +32,49 @@ public class HerbierPic extends DataObject
 	private Double dLat;
 	private Double dLon;
 	
+	/** Value of a timestamp that is not set */
+	private static final long noDate = Long.MIN_VALUE;
+	
 	public HerbierPic(int idx, String fileName) {
 		this.fileName = fileName;
 		this.idx = idx;
+		this.shotAt = noDate;
 		this.idxTaxon = -1;
 		this.rating = 3;
 	}
 
+	/**
+	 * Copies the fields of this picture, without its taxon and location.
+	 * @return a new picture, not linked to any other object
+	 */
+	public HerbierPic copy() {
+		HerbierPic copy = new HerbierPic(idx, fileName);
+		copy.shotAt    = shotAt;
+		copy.remarks   = remarks;
+		copy.idxTaxon  = idxTaxon;
+		copy.updatedAt = (updatedAt == null ? null : new Date(updatedAt.getTime()));
+		copy.rating    = rating;
+		copy.dLat      = dLat;
+		copy.dLon      = dLon;
+		return copy;
+	}
+
 	@Override
 	public String getFileName() {
 		return fileName;
 	}
 
+	/**
+	 * Sets the file name, which is the sort key of pictures.
+	 * The aggregates of the taxon are dropped, as its pictures may be
+	 * sorted differently.
+	 * @param fileName  the new file name
+	 */
 	public void setFileName(String fileName) {
 		this.fileName = fileName;
+		if (taxon != null) {
+			taxon.invalidateAggregates();
+		}
 	}
 
 	public String getGenus() {
@@ -83,12 +113,24 @@ public class HerbierPic extends DataObject
 		//return getTaxonName(TaxonRank.SPECIES, true);
 	}
 
+	/**
+	 * Gets the shot-at timestamp.
+	 * @return a new Date, or null if unknown
+	 */
 	public Date getShotAt() {
-		return shotAt;
+		return (shotAt == noDate ? null : new Date(shotAt));
 	}
 
 	public void setShotAt(Date shotAt) {
-		this.shotAt = shotAt;
+		this.shotAt = (shotAt == null ? noDate : shotAt.getTime());
+	}
+
+	/**
+	 * Gets the shot-at timestamp without allocating a Date.
+	 * @return the timestamp in ms since epoch, or Long.MIN_VALUE if unknown
+	 */
+	public long getShotAtTime() {
+		return shotAt;
 	}
 
 	public Date getUpdatedAt() {
@@ -119,8 +161,16 @@ public class HerbierPic extends DataObject
 		return rating;
 	}
 
+	/**
+	 * Sets the rating. The aggregates of the taxon are dropped,
+	 * as its best and typical pictures may change.
+	 * @param rating  the new rating
+	 */
 	public void setRating(int rating) {
 		this.rating = rating;
+		if (taxon != null) {
+			taxon.invalidateAggregates();
+		}
 	}
 
 	@Override
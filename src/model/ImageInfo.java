@@ -0,0 +1,86 @@
+package model;
+
+import java.util.Date;
+
+/**
+ * Metadata read from the EXIF tags of an image file.
+ * 
+ * @author nicz
+ * 
+ */
+public class ImageInfo {
+	
+	private final Date shotAt;
+	private final Double latitude;
+	private final Double longitude;
+	private final int width;
+	private final int height;
+	private final String cameraMake;
+	private final String cameraModel;
+	
+	/**
+	 * @param shotAt       the original date-time (may be null)
+	 * @param latitude     the GPS latitude (may be null)
+	 * @param longitude    the GPS longitude (may be null)
+	 * @param width        the image width in pixels, or 0 if unknown
+	 * @param height       the image height in pixels, or 0 if unknown
+	 * @param cameraMake   the camera maker (may be null)
+	 * @param cameraModel  the camera model (may be null)
+	 */
+	public ImageInfo(Date shotAt, Double latitude, Double longitude, int width, int height,
+			String cameraMake, String cameraModel) {
+		this.shotAt = shotAt;
+		this.latitude = latitude;
+		this.longitude = longitude;
+		this.width = width;
+		this.height = height;
+		this.cameraMake = cameraMake;
+		this.cameraModel = cameraModel;
+	}
+	
+	/**
+	 * Creates the metadata of a file without readable tags.
+	 */
+	public ImageInfo() {
+		this(null, null, null, 0, 0, null, null);
+	}
+	
+	public Date getShotAt() {
+		return shotAt;
+	}
+	
+	public Double getLatitude() {
+		return latitude;
+	}
+	
+	public Double getLongitude() {
+		return longitude;
+	}
+	
+	public boolean hasGeoLocation() {
+		return (latitude != null && longitude != null);
+	}
+	
+	public int getWidth() {
+		return width;
+	}
+	
+	public int getHeight() {
+		return height;
+	}
+	
+	public String getCameraMake() {
+		return cameraMake;
+	}
+	
+	public String getCameraModel() {
+		return cameraModel;
+	}
+	
+	@Override
+	public String toString() {
+		return "ImageInfo " + shotAt + " " + width + "x" + height + " " + cameraModel +
+				(hasGeoLocation() ? " (" + latitude + ", " + longitude + ")" : "");
+	}
+
+}
@@ -1,11 +1,9 @@
 package model;
 
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
-import java.util.TreeSet;
-import java.util.Vector;
 
 import common.data.HasMapCoordinates;
 import controller.GeoTrack;
@@ -31,9 +29,9 @@ public class Location extends DataObject implements HasMapCoordinates, Comparabl
 	private Double dLatitude;
 	
 	private AltitudeLevel level;
-	private Date dateFirstPic;
 	
 	private final Set<HerbierPic> pics;
+	private final ShotAtIndex picsByShotAt;
 
 	public Location(int idx, String name) {
 		this.idx = idx;
@@ -43,8 +41,8 @@ public class Location extends DataObject implements HasMapCoordinates, Comparabl
 		this.dLongitude = null;
 		this.dLatitude  = null;
 		
-		this.pics = new TreeSet<>();
-		this.dateFirstPic = null;
+		this.pics = new SortedArraySet<>();
+		this.picsByShotAt = new ShotAtIndex();
 	}
 	
 	/**
@@ -85,6 +83,25 @@ public class Location extends DataObject implements HasMapCoordinates, Comparabl
 		return newObj;
 	}
 	
+	/**
+	 * Copies the fields of this location, without its pictures.
+	 * @return a new location, not linked to any picture
+	 */
+	public Location copy() {
+		Location copy = new Location(idx, name);
+		copy.description = description;
+		copy.kind        = kind;
+		copy.town        = town;
+		copy.region      = region;
+		copy.state       = state;
+		copy.altitude    = altitude;
+		copy.level       = level;
+		copy.iMapZoom    = iMapZoom;
+		copy.dLongitude  = dLongitude;
+		copy.dLatitude   = dLatitude;
+		return copy;
+	}
+	
 	public String getName() {
 		return name;
 	}
@@ -190,6 +207,27 @@ public class Location extends DataObject implements HasMapCoordinates, Comparabl
 	public void addPic(HerbierPic pic) {
 		if (pic != null) {
 			pics.add(pic);
+			picsByShotAt.add(pic);
+		}
+	}
+
+	/**
+	 * Removes a picture that was taken at this location.
+	 * Also works if the picture filename changed since it was added.
+	 * @param pic  the picture to remove
+	 */
+	public void removePic(HerbierPic pic) {
+		if (pic != null) {
+			if (!pics.remove(pic)) {
+				Iterator<HerbierPic> it = pics.iterator();
+				while (it.hasNext()) {
+					if (it.next() == pic) {
+						it.remove();
+						break;
+					}
+				}
+			}
+			picsByShotAt.remove(pic);
 		}
 	}
 
@@ -201,26 +239,24 @@ public class Location extends DataObject implements HasMapCoordinates, Comparabl
 		return pics;
 	}
 	
+	/**
+	 * Gets the pictures taken at this location between two dates, included.
+	 * @param tFrom  the start date
+	 * @param tTo    the end date
+	 * @return a read-only list of pictures, oldest first
+	 */
+	public List<HerbierPic> getPicsShotBetween(Date tFrom, Date tTo) {
+		return picsByShotAt.getBetween(tFrom, tTo);
+	}
+	
 	/**
 	 * Gets the date the first picture was taken at this location.
-	 * @return date of first pic for this location
+	 * Pictures without shot-at date are ignored.
+	 * @return date of first pic for this location, or null if no dated pictures
 	 */
 	public Date getDateFirstPic() {
-		return dateFirstPic;
-	}
-
-	public void computeDateFirstPic() {
-		if (!pics.isEmpty()) {
-			Vector<HerbierPic> vecPics = new Vector<>();
-			vecPics.addAll(pics);
-			Collections.sort(vecPics, new Comparator<HerbierPic>() {
-				@Override
-				public int compare(HerbierPic pic1, HerbierPic pic2) {
-					return pic1.getShotAt().compareTo(pic2.getShotAt());
-				}
-			});
-			dateFirstPic = vecPics.firstElement().getShotAt();
-		}
+		HerbierPic first = picsByShotAt.getFirst();
+		return (first == null ? null : first.getShotAt());
 	}
 
 	@Override
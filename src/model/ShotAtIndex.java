@@ -0,0 +1,134 @@
+package model;
+
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * A set of pictures ordered by shot-at timestamp, for range
+ * and latest-pictures queries in logarithmic time.
+ * Backed by a {@link SortedArraySet}, so that each location can keep one.
+ * 
+ * <p>Pictures with the same timestamp are ordered by database idx,
+ * so that distinct pictures are never considered equal.
+ * Pictures without timestamp are kept first in the index,
+ * but are ignored by the queries.
+ * 
+ * @author nicz
+ * 
+ */
+public class ShotAtIndex {
+	
+	/**
+	 * Compares pictures by shot-at timestamp, then by idx. Unknown timestamps come first.
+	 */
+	private static final Comparator<HerbierPic> comparator = new Comparator<HerbierPic>() {
+		@Override
+		public int compare(HerbierPic pic1, HerbierPic pic2) {
+			int result = Long.compare(pic1.getShotAtTime(), pic2.getShotAtTime());
+			if (result == 0) {
+				result = Integer.compare(pic1.getIdx(), pic2.getIdx());
+			}
+			return result;
+		}
+	};
+	
+	private final SortedArraySet<HerbierPic> pics;
+	
+	public ShotAtIndex() {
+		pics = new SortedArraySet<>(comparator);
+	}
+	
+	/**
+	 * Adds a picture to the index.
+	 * @param pic  the picture to add
+	 */
+	public void add(HerbierPic pic) {
+		if (pic != null) {
+			pics.add(pic);
+		}
+	}
+	
+	/**
+	 * Removes a picture from the index.
+	 * Also works if the picture timestamp changed since it was added.
+	 * @param pic  the picture to remove
+	 */
+	public void remove(HerbierPic pic) {
+		if (pic != null && !pics.remove(pic)) {
+			Iterator<HerbierPic> it = pics.iterator();
+			while (it.hasNext()) {
+				if (it.next() == pic) {
+					it.remove();
+					return;
+				}
+			}
+		}
+	}
+	
+	public void clear() {
+		pics.clear();
+	}
+	
+	public int size() {
+		return pics.size();
+	}
+	
+	/**
+	 * Gets the oldest picture with a known timestamp.
+	 * @return the first picture shot, or null if none
+	 */
+	public HerbierPic getFirst() {
+		int iFirst = indexOfFirstDated();
+		return (iFirst < pics.size() ? pics.get(iFirst) : null);
+	}
+	
+	/**
+	 * Gets the pictures shot between two dates, included.
+	 * 
+	 * @param tFrom  the start date
+	 * @param tTo    the end date
+	 * @return a read-only view of the pictures, oldest first
+	 */
+	public List<HerbierPic> getBetween(Date tFrom, Date tTo) {
+		HerbierPic picFrom = new HerbierPic(Integer.MIN_VALUE, null);
+		picFrom.setShotAt(tFrom);
+		HerbierPic picTo = new HerbierPic(Integer.MAX_VALUE, null);
+		picTo.setShotAt(tTo);
+		
+		int iFrom = Math.max(pics.indexOfCeiling(picFrom), indexOfFirstDated());
+		int iTo   = pics.indexOfCeiling(picTo);
+		return pics.subList(iFrom, Math.max(iFrom, iTo));
+	}
+	
+	/**
+	 * Gets the latest pictures.
+	 * 
+	 * @param nLatest  the max number of pictures to get
+	 * @return a vector of at most nLatest pictures, newest first
+	 */
+	public Vector<HerbierPic> getLatest(int nLatest) {
+		Vector<HerbierPic> vecPics = new Vector<>();
+		int iFirst = indexOfFirstDated();
+		for (int i = pics.size() - 1; i >= iFirst && vecPics.size() < nLatest; --i) {
+			vecPics.add(pics.get(i));
+		}
+		return vecPics;
+	}
+	
+	/**
+	 * Gets the position of the first picture with a known timestamp.
+	 * @return the position, or the size of the index if none
+	 */
+	private int indexOfFirstDated() {
+		if (pics.isEmpty() || pics.get(0).getShotAt() != null) {
+			return 0;
+		}
+		HerbierPic picFirst = new HerbierPic(Integer.MIN_VALUE, null);
+		picFirst.setShotAt(new Date(Long.MIN_VALUE + 1));
+		return pics.indexOfCeiling(picFirst);
+	}
+
+}
@@ -0,0 +1,225 @@
+package model;
+
+import java.util.AbstractList;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A sorted set backed by an array, with binary-search lookup, insert and remove.
+ * 
+ * <p>Uses much less memory than a <code>TreeSet</code> for the small sets
+ * of children and pictures held by each taxon and location: no array is
+ * allocated until the first element is added, and each element then costs
+ * a single array slot instead of a tree node.
+ * 
+ * @author nicz
+ * 
+ * @param <E>  the type of elements
+ */
+public class SortedArraySet<E> extends AbstractSet<E> {
+	
+	private static final Object[] emptyElements = new Object[0];
+	
+	/** The comparator, or null to use natural ordering */
+	private final Comparator<? super E> comparator;
+	
+	private Object[] elements;
+	private int size;
+	
+	/** Incremented on each change, to detect concurrent modifications */
+	private int modCount;
+	
+	
+	/**
+	 * Creates an empty set sorted by natural ordering.
+	 */
+	public SortedArraySet() {
+		this(null);
+	}
+	
+	/**
+	 * Creates an empty set sorted by the specified comparator.
+	 * @param comparator  the comparator, or null for natural ordering
+	 */
+	public SortedArraySet(Comparator<? super E> comparator) {
+		this.comparator = comparator;
+		this.elements = emptyElements;
+		this.size = 0;
+	}
+	
+	@Override
+	public int size() {
+		return size;
+	}
+	
+	@Override
+	public boolean contains(Object obj) {
+		return indexOf(obj) >= 0;
+	}
+	
+	@Override
+	public boolean add(E element) {
+		int i = indexOf(element);
+		if (i >= 0) {
+			return false;
+		}
+		i = -(i + 1);
+		if (size == elements.length) {
+			elements = Arrays.copyOf(elements, size < 2 ? size + 1 : size + (size >> 1));
+		}
+		System.arraycopy(elements, i, elements, i + 1, size - i);
+		elements[i] = element;
+		size++;
+		modCount++;
+		return true;
+	}
+	
+	@Override
+	public boolean remove(Object obj) {
+		int i = indexOf(obj);
+		if (i < 0) {
+			return false;
+		}
+		removeAt(i);
+		return true;
+	}
+	
+	@Override
+	public void clear() {
+		elements = emptyElements;
+		size = 0;
+		modCount++;
+	}
+	
+	@Override
+	public Iterator<E> iterator() {
+		return new ArrayIterator();
+	}
+	
+	/**
+	 * Gets the element at the specified position.
+	 * @param i  the position, from 0 to size-1
+	 * @return the element
+	 */
+	@SuppressWarnings("unchecked")
+	public E get(int i) {
+		if (i < 0 || i >= size) {
+			throw new IndexOutOfBoundsException("Index " + i + ", size " + size);
+		}
+		return (E) elements[i];
+	}
+	
+	/**
+	 * Gets the position of the first element not lower than the specified one.
+	 * @param element  the element to compare to (may not be in the set)
+	 * @return the position, from 0 to size
+	 */
+	public int indexOfCeiling(E element) {
+		int i = indexOf(element);
+		return (i >= 0 ? i : -(i + 1));
+	}
+	
+	/**
+	 * Gets a read-only view of a range of the set.
+	 * @param iFrom  the first position, included
+	 * @param iTo    the last position, excluded
+	 * @return the elements of the range, sorted
+	 */
+	public List<E> subList(final int iFrom, final int iTo) {
+		if (iFrom < 0 || iTo > size || iFrom > iTo) {
+			throw new IndexOutOfBoundsException("Range " + iFrom + "-" + iTo + ", size " + size);
+		}
+		return new AbstractList<E>() {
+			@Override
+			public E get(int i) {
+				return SortedArraySet.this.get(iFrom + i);
+			}
+			
+			@Override
+			public int size() {
+				return iTo - iFrom;
+			}
+		};
+	}
+	
+	/**
+	 * Binary search of an element.
+	 * @return the position of the element if found, else (-(insertion point) - 1)
+	 */
+	@SuppressWarnings("unchecked")
+	private int indexOf(Object obj) {
+		int lo = 0;
+		int hi = size - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int cmp = compare((E) elements[mid], (E) obj);
+			if (cmp < 0) {
+				lo = mid + 1;
+			} else if (cmp > 0) {
+				hi = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -(lo + 1);
+	}
+	
+	@SuppressWarnings("unchecked")
+	private int compare(E e1, E e2) {
+		if (comparator != null) {
+			return comparator.compare(e1, e2);
+		}
+		return ((Comparable<? super E>) e1).compareTo(e2);
+	}
+	
+	private void removeAt(int i) {
+		System.arraycopy(elements, i + 1, elements, i, size - i - 1);
+		elements[--size] = null;
+		modCount++;
+	}
+	
+	private class ArrayIterator implements Iterator<E> {
+		
+		private int next = 0;
+		private int last = -1;
+		private int expectedModCount = modCount;
+		
+		@Override
+		public boolean hasNext() {
+			return next < size;
+		}
+		
+		@Override
+		@SuppressWarnings("unchecked")
+		public E next() {
+			if (modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			if (next >= size) {
+				throw new NoSuchElementException();
+			}
+			last = next++;
+			return (E) elements[last];
+		}
+		
+		@Override
+		public void remove() {
+			if (last < 0) {
+				throw new IllegalStateException();
+			}
+			if (modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			removeAt(last);
+			next = last;
+			last = -1;
+			expectedModCount = modCount;
+		}
+	}
+
+}
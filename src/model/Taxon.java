@@ -1,10 +1,11 @@
 package model;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
-import java.util.TreeSet;
-import java.util.Vector;
 
 
 /**
@@ -25,6 +26,9 @@ public class Taxon extends DataObject implements Comparable<Taxon> {
 	private boolean isTypical;
 	private final Set<Taxon> children;
 	private final Set<HerbierPic> pics;
+	
+	/** Memoized aggregates of this taxon and its descendants, or null if stale */
+	private volatile Aggregates aggregates;
 
 	public Taxon(int idx, String name, TaxonRank rank) {
 		super();
@@ -32,9 +36,22 @@ public class Taxon extends DataObject implements Comparable<Taxon> {
 		this.name = name;
 		this.rank = rank;
 		
-		// use a TreeSet to sort children by name
-		this.children = new TreeSet<>();
-		this.pics     = new TreeSet<>();
+		// use compact sorted sets, to sort children by order and name
+		this.children = new SortedArraySet<>();
+		this.pics     = new SortedArraySet<>();
+	}
+
+	/**
+	 * Copies the fields of this taxon, without its parent, children and pictures.
+	 * @return a new taxon, not linked to any other object
+	 */
+	public Taxon copy() {
+		Taxon copy = new Taxon(idx, name, rank);
+		copy.nameFr    = nameFr;
+		copy.idxParent = idxParent;
+		copy.order     = order;
+		copy.isTypical = isTypical;
+		return copy;
 	}
 
 	public String getName() {
@@ -59,6 +76,7 @@ public class Taxon extends DataObject implements Comparable<Taxon> {
 
 	public void setRank(TaxonRank rank) {
 		this.rank = rank;
+		invalidateAggregates();
 	}
 
 	public Taxon getParent() {
@@ -91,6 +109,9 @@ public class Taxon extends DataObject implements Comparable<Taxon> {
 
 	public void setTypical(boolean isTypical) {
 		this.isTypical = isTypical;
+		if (parent != null) {
+			parent.invalidateAggregates();
+		}
 	}
 
 	/**
@@ -124,17 +145,29 @@ public class Taxon extends DataObject implements Comparable<Taxon> {
 	 * @param child  the taxon to add as child
 	 */
 	public void addChild(Taxon child) {
-		if (child != null) {
-			children.add(child);
+		if (child != null && children.add(child)) {
+			invalidateAggregates();
 		}
 	}
 	
-	public void removeChild(int idxTaxon) {
-		for (Taxon child : children) {
-			if (child.getIdx() == idxTaxon) {
-				children.remove(child);
-				return;
+	/**
+	 * Removes the specified child taxon.
+	 * Falls back to a linear scan if the child was modified
+	 * since it was added, so that its sort key no longer matches.
+	 * @param child  the child taxon to remove
+	 */
+	public void removeChild(Taxon child) {
+		if (child != null) {
+			if (!children.remove(child)) {
+				Iterator<Taxon> it = children.iterator();
+				while (it.hasNext()) {
+					if (it.next() == child) {
+						it.remove();
+						break;
+					}
+				}
 			}
+			invalidateAggregates();
 		}
 	}
 	
@@ -155,16 +188,22 @@ public class Taxon extends DataObject implements Comparable<Taxon> {
 	}
 	
 	/**
-	 * Gets the set of pictures linked to this taxon and all its descendants.
-	 * @return a set of pictures (may be empty, bet never null)
+	 * Gets the pictures linked to this taxon and all its descendants,
+	 * sorted by file name.
+	 * The list is computed once, and kept until a picture or a child
+	 * of this taxon or of its descendants changes.
+	 * @return a read-only list of pictures (may be empty, bet never null)
 	 */
-	public TreeSet<HerbierPic> getPicsCascade() {
-		TreeSet<HerbierPic> result = new TreeSet<>();
-		result.addAll(pics);
-		for (Taxon child : children) {
-			result.addAll(child.getPicsCascade());
-		}
-		return result;
+	public List<HerbierPic> getPicsCascade() {
+		return getAggregates().picsCascade;
+	}
+	
+	/**
+	 * Gets the number of pictures linked to this taxon and all its descendants.
+	 * @return the number of pictures
+	 */
+	public int getPicsCascadeCount() {
+		return getPicsCascade().size();
 	}
 	
 	/**
@@ -174,71 +213,133 @@ public class Taxon extends DataObject implements Comparable<Taxon> {
 	 * @return a picture (may be null)
 	 */
 	public HerbierPic getTypicalPic() {
-		HerbierPic result = null;
-		
-		// first look for a typical child
-		for (Taxon child : children) {
-			if (child.isTypical) {
-				result = child.getTypicalPic();
-				break;
+		return getAggregates().typicalPic;
+	}
+	
+	/**
+	 * Gets the highest-rated picture directly linked to this taxon.
+	 * 
+	 * @return  the best taxon picture, or null if no pictures.
+	 */
+	public HerbierPic getBestPic() {
+		return getAggregates().bestPic;
+	}
+	
+	/**
+	 * Adds a picture that is directly linked to this taxon.
+	 * @param pic  the picture to add
+	 */
+	public void addPic(HerbierPic pic) {
+		if (pic != null && pics.add(pic)) {
+			invalidateAggregates();
+		}
+	}
+
+	/**
+	 * Removes a picture that was directly linked to this taxon.
+	 * Also works if the picture filename changed since it was added.
+	 * @param pic  the picture to remove
+	 */
+	public void removePic(HerbierPic pic) {
+		if (pic != null) {
+			if (!pics.remove(pic)) {
+				Iterator<HerbierPic> it = pics.iterator();
+				while (it.hasNext()) {
+					if (it.next() == pic) {
+						it.remove();
+						break;
+					}
+				}
 			}
+			invalidateAggregates();
 		}
-		
-		// return the best species pic
-		if (result == null && TaxonRank.SPECIES == rank) {
-			result = getBestPic();
+	}
+	
+	/**
+	 * Drops the memoized aggregates of this taxon and of all its ancestors.
+	 * Called when a picture of this taxon changes in a way
+	 * that may change its rating or its sort order.
+	 */
+	public void invalidateAggregates() {
+		for (Taxon taxon = this; taxon != null; taxon = taxon.getParent()) {
+			taxon.aggregates = null;
 		}
-		
-		// else return the best pic of all
+	}
+	
+	/**
+	 * Gets the memoized aggregates, computing them if needed.
+	 * They are published at once in a volatile field, so that a reader
+	 * sees either none or all of them, fully computed.
+	 */
+	private Aggregates getAggregates() {
+		Aggregates result = aggregates;
 		if (result == null) {
-			TreeSet<HerbierPic> allPics = getPicsCascade();
-			if (!allPics.isEmpty()) {
-				Vector<HerbierPic> vPics = new Vector<>();
-				vPics.addAll(allPics);
-				Collections.sort(vPics, new Comparator<HerbierPic>() {
-					@Override
-					public int compare(HerbierPic pic1, HerbierPic pic2) {
-						return pic2.getRating() - pic1.getRating();
-					}
-				});
-				result = vPics.firstElement();
-			}
+			result = new Aggregates(this);
+			aggregates = result;
 		}
-		
 		return result;
 	}
 	
 	/**
-	 * Gets the highest-rated picture directly linked to this taxon.
-	 * 
-	 * @return  the best taxon picture, or null if no pictures.
+	 * The immutable aggregates of a taxon and its descendants.
 	 */
-	public HerbierPic getBestPic() {
-		HerbierPic result = null;
+	private static class Aggregates {
+		
+		/** Pictures of the taxon and its descendants, sorted by file name */
+		private final List<HerbierPic> picsCascade;
+		
+		/** The first of the highest-rated pictures of the taxon */
+		private final HerbierPic bestPic;
 		
-		if (!pics.isEmpty()) {
-			Vector<HerbierPic> vPics = new Vector<>();
-			vPics.addAll(pics);
-			Collections.sort(vPics, new Comparator<HerbierPic>() {
-				@Override
-				public int compare(HerbierPic pic1, HerbierPic pic2) {
-					return pic2.getRating() - pic1.getRating();
+		/** The typical picture of the taxon */
+		private final HerbierPic typicalPic;
+		
+		private Aggregates(Taxon taxon) {
+			ArrayList<HerbierPic> list = new ArrayList<>(taxon.pics);
+			for (Taxon child : taxon.children) {
+				list.addAll(child.getPicsCascade());
+			}
+			Collections.sort(list);
+			list.trimToSize();
+			picsCascade = Collections.unmodifiableList(list);
+			
+			bestPic = getHighestRated(taxon.pics);
+			
+			// first look for a typical child
+			HerbierPic typical = null;
+			for (Taxon child : taxon.children) {
+				if (child.isTypical) {
+					typical = child.getTypicalPic();
+					break;
 				}
-			});
-			result = vPics.firstElement();
+			}
+			
+			// return the best species pic
+			if (typical == null && TaxonRank.SPECIES == taxon.rank) {
+				typical = bestPic;
+			}
+			
+			// else return the best pic of all
+			if (typical == null) {
+				typical = getHighestRated(picsCascade);
+			}
+			typicalPic = typical;
 		}
-		
-		return result;
 	}
 	
 	/**
-	 * Adds a picture that is directly linked to this taxon.
-	 * @param pic  the picture to add
+	 * Gets the first picture with the highest rating.
+	 * @param pics  the sorted pictures
+	 * @return the highest-rated picture, or null if no pictures
 	 */
-	public void addPic(HerbierPic pic) {
-		if (pic != null) {
-			pics.add(pic);
+	public static HerbierPic getHighestRated(Collection<HerbierPic> pics) {
+		HerbierPic result = null;
+		for (HerbierPic pic : pics) {
+			if (result == null || pic.getRating() > result.getRating()) {
+				result = pic;
+			}
 		}
+		return result;
 	}
 
 	@Override
@@ -46,6 +46,8 @@ public class DialogRenamePicture {
 	private TaxonTree tree;
 	private Button btnSave;
 	private Label  lblOldName, lblNewName;
+	/** New filename reserved for the picture, to give back if not used */
+	private String reservedName;
 	
 	public DialogRenamePicture(Shell parent) {
 		this.parent = parent;
@@ -57,6 +59,7 @@ public class DialogRenamePicture {
 		
 		this.hpic = hpic;
 		this.newTaxon = null;
+		this.reservedName = null;
 		
 		Display display = parent.getDisplay();
 		final Shell shell =
@@ -133,12 +136,17 @@ public class DialogRenamePicture {
 		while (!shell.isDisposed()) {
 			if (!display.readAndDispatch()) display.sleep();
 		}
+		releaseName();
 	}
 	
 	private void getNewName() {
 		if (newTaxon != null) {
+			releaseName();
 			try {
 				String newName = Controller.getInstance().getAvailableFilename(hpic, newTaxon);
+				if (!newName.equals(hpic.getFileName())) {
+					reservedName = newName;
+				}
 				lblNewName.setText(newName);
 			} catch (AppException e) {
 				ViewTools.displayException(e);
@@ -146,6 +154,13 @@ public class DialogRenamePicture {
 		}
 		enableButtons();
 	}
+	
+	private void releaseName() {
+		if (reservedName != null) {
+			Controller.getInstance().releaseFilename(reservedName);
+			reservedName = null;
+		}
+	}
 
 	private void showObject(HerbierPic pic) {
 		tree.expandTree(hpic.getTaxon());
@@ -173,6 +188,11 @@ public class DialogRenamePicture {
 				Controller.getInstance().renamePic(hpic, newTaxon, lblNewName.getText());
 			} catch (AppException e) {
 				ViewTools.displayException(e);
+			} finally {
+				// once the files are renamed, the name is used even if saving failed
+				if (hpic.getFileName().equals(reservedName)) {
+					reservedName = null;
+				}
 			}
 		}
 	}
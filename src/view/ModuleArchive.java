@@ -3,7 +3,6 @@ package view;
 import java.io.File;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.Date;
 import java.util.Vector;
 
 import model.HerbierPic;
@@ -143,12 +142,12 @@ public class ModuleArchive extends SashModule {
 				Collections.sort(vecPics, new Comparator<HerbierPic>() {
 					@Override
 					public int compare(HerbierPic pic1, HerbierPic pic2) {
-						Date date1 = pic1.getShotAt();
-						Date date2 = pic2.getShotAt();
-						if (date1.equals(date2)) {
+						long tShot1 = pic1.getShotAtTime();
+						long tShot2 = pic2.getShotAtTime();
+						if (tShot1 == tShot2) {
 							return pic1.getFileName().compareTo(pic2.getFileName());
 						}
-						return date2.compareTo(date1);
+						return (tShot2 < tShot1 ? -1 : 1);
 					}
 				});
 				
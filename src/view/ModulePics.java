@@ -20,6 +20,7 @@ import common.view.IncrementalSearchBox;
 import controller.Controller;
 import controller.DatabaseTools;
 import controller.FileManager;
+import controller.PicturePager;
 
 public class ModulePics extends AbstractModule<HerbierPic> {
 	private EditorPics editor;
@@ -27,13 +28,16 @@ public class ModulePics extends AbstractModule<HerbierPic> {
 	private LocationSelector defaultLocationSelector;
 	private File dirPics;
 	
+	/** the displayed pictures, shown in a virtual table */
+	private PicturePager pager;
+	
 	protected final DatabaseTools.eOrdering eOrder[] = {DatabaseTools.eOrdering.BY_IDX, 
 			DatabaseTools.eOrdering.BY_FILENAME, DatabaseTools.eOrdering.BY_FILENAME, 
 			DatabaseTools.eOrdering.BY_FILENAME, DatabaseTools.eOrdering.BY_LOCATION,
 			DatabaseTools.eOrdering.BY_RATING};
 
 	public ModulePics() {
-		super(3);
+		super(3, true);
 		
 		dirPics = new File(FileManager.getInstance().getCurrentBaseDir() + "photos/");
 		if (!dirPics.exists()) {
@@ -63,9 +67,24 @@ public class ModulePics extends AbstractModule<HerbierPic> {
 	@Override
 	public void showObjects() {
 		showObject(null);
-		vecObjects = Controller.getInstance().getHerbierPics(eOrder[selCol], searchBox.getSearchText());
+		pager = Controller.getInstance().getPicturePager(eOrder[selCol], searchBox.getSearchText());
 		reloadTable();
-		lblStatus.setText(String.format("%d images", vecObjects.size()));
+		lblStatus.setText(String.format("%d images", pager.size()));
+	}
+	
+	@Override
+	protected int getObjectCount() {
+		return (pager == null ? 0 : pager.size());
+	}
+	
+	@Override
+	protected HerbierPic getObject(int index) {
+		return (pager == null ? null : pager.get(index));
+	}
+	
+	@Override
+	protected int indexOfObject(int idx) {
+		return (pager == null ? -1 : pager.indexOf(idx));
 	}
 	
 	@Override
@@ -132,12 +151,18 @@ public class ModulePics extends AbstractModule<HerbierPic> {
 		setNewButtonTooltip("Importer une nouvelle photo");
 	}
 
+	@Override
+	protected void reloadObjects() {
+		Controller.getInstance().refreshPictures();
+		showObjects();
+	}
+
 	@Override
 	protected void loadData() {
 		showObjects();
-		if (!vecObjects.isEmpty()) {
+		if (!pager.isEmpty()) {
 			tblData.select(0);
-			showObject(vecObjects.firstElement());
+			showObject(pager.get(0));
 		}
 		
 		defaultLocationSelector.setValue(Controller.getInstance().getDefaultLocation());
@@ -114,7 +114,11 @@ public class ModuleTaxonsTree extends SashModule implements DataListener {
 
 	@Override
 	public void taxonUpdated(int idx) {
-		loadData();
+		// only move the updated taxon, unless the tree must be rebuilt
+		Taxon taxon = TaxonCache.getInstance().getTaxon(idx);
+		if (!tree.updateTaxon(taxon)) {
+			loadData();
+		}
 	}
 	
 	@Override
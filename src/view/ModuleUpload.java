@@ -41,6 +41,7 @@ public class ModuleUpload extends SashModule implements DataListener {
 	private Label lblLastBackup;
 	private Label lblPicsToBackup;
 	private Button btnBackup;
+	private Button btnThumbnails;
 	
 	private Button btnCheckCleanup;
 	private Button btnCleanup;
@@ -112,6 +113,14 @@ public class ModuleUpload extends SashModule implements DataListener {
 					}
 				});
 		
+		btnThumbnails = widgetsFactory.createPushButton(gBackup, "Vignettes", "refresh", 
+				"Régénérer les vignettes des photos modifiées", false, new SelectionAdapter() {
+					@Override
+					public void widgetSelected(SelectionEvent e) {
+						regenerateThumbnails();
+					}
+				});
+		
 		btnCheckCleanup = widgetsFactory.createPushButton(gCleanup, "Vérifier", "system-search", 
 				"Vérifier les fichiers à nettoyer", false, new SelectionAdapter() {
 					@Override
@@ -191,6 +200,17 @@ public class ModuleUpload extends SashModule implements DataListener {
 		}
 	}
 	
+	private void regenerateThumbnails() {
+		enableButtons(false);
+		Runnable runRegenerate = new Runnable() {
+			public void run() {
+				Controller.getInstance().regenerateThumbnails(progressBox);
+			}
+		};
+		BusyIndicator.showWhile(getDisplay(), runRegenerate);
+		enableButtons(true);
+	}
+	
 	private void exportToHtml() {
 		enableButtons(false);
 		Runnable runExport = new Runnable() {
@@ -273,6 +293,8 @@ public class ModuleUpload extends SashModule implements DataListener {
 		btnOpenBrowser.update();
 		btnBackup.setEnabled(enabled);
 		btnBackup.update();
+		btnThumbnails.setEnabled(enabled);
+		btnThumbnails.update();
 		btnCheckCleanup.setEnabled(enabled);
 		btnCheckCleanup.update();
 		btnCleanup.setEnabled(enabled);
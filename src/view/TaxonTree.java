@@ -38,6 +38,9 @@ public abstract class TaxonTree {
 	/** Map of Taxon by Taxon idx */
 	private Map<Integer, Taxon> mapData;
 	
+	/** Map of tree items by Taxon idx */
+	private Map<Integer, TreeItem> mapItems;
+	
 	/** The selected taxon */
 	private Taxon selection;
 	
@@ -50,6 +53,7 @@ public abstract class TaxonTree {
 	public TaxonTree(String treeId, Composite parent) {
 		
 		this.mapData = new HashMap<Integer, Taxon>();
+		this.mapItems = new HashMap<Integer, TreeItem>();
 		this.treeId = treeId;
 		this.selection = null;
 
@@ -100,8 +104,69 @@ public abstract class TaxonTree {
 			updateTree(treeItem);
 	}
 	
+	/**
+	 * Updates the tree item of the specified taxon, and moves it under
+	 * the item of its parent if needed. Other tree items are left untouched.
+	 * A taxon not yet in the tree is added under its parent item.
+	 * 
+	 * @param taxon  the updated taxon
+	 * @return false if the parent of the taxon isn't in the tree,
+	 *         in which case tree data must be set again
+	 */
+	public boolean updateTaxon(Taxon taxon) {
+		if (taxon == null) {
+			return false;
+		}
+		
+		Taxon parent = taxon.getParent();
+		TreeItem parentItem = (parent == null ? null : mapItems.get(parent.getIdx()));
+		if (parent != null && parentItem == null) {
+			return false;
+		}
+		
+		// remove the current item and its sub-items
+		boolean isExpanded = false;
+		TreeItem oldParentItem = null;
+		TreeItem item = mapItems.get(taxon.getIdx());
+		if (item != null) {
+			isExpanded = item.getExpanded();
+			oldParentItem = item.getParentItem();
+			removeItem(item);
+		}
+		
+		// insert the new item at its sorted position
+		TreeItem[] siblings = (parentItem == null ? tree.getItems() : parentItem.getItems());
+		int index = 0;
+		for (TreeItem sibling : siblings) {
+			Taxon other = mapData.get(sibling.getData());
+			if (other != null && other.compareTo(taxon) < 0) {
+				index++;
+			}
+		}
+		TreeItem newItem = (parentItem == null ? 
+				new TreeItem(tree, 0, index) : new TreeItem(parentItem, 0, index));
+		mapData.put(taxon.getIdx(), taxon);
+		setItemData(newItem, taxon);
+		addChildren(newItem, taxon);
+		newItem.setExpanded(isExpanded);
+		
+		// children counts of parents may have changed
+		if (oldParentItem != null) {
+			setItemData(oldParentItem, mapData.get(oldParentItem.getData()));
+		}
+		if (parentItem != null) {
+			setItemData(parentItem, parent);
+		}
+		
+		if (selection != null && selection.getIdx() == taxon.getIdx()) {
+			expandTree(taxon);
+		}
+		return true;
+	}
+	
 	public void clearData() {
 		mapData.clear();
+		mapItems.clear();
 		tree.removeAll();
 		selection = null;
 	}
@@ -164,7 +229,6 @@ public abstract class TaxonTree {
 	 */
 	public void searchInTree(String strSearch) {
 		if (strSearch != null && !strSearch.isEmpty()) {
-			strSearch = strSearch.replaceAll(" ", "%");
 			Vector<Taxon> vecSearchResult = Controller.getInstance().getTaxons(null, strSearch);
 			for (Taxon res : vecSearchResult) {
 				expandTree(res);
@@ -291,7 +355,7 @@ public abstract class TaxonTree {
 			for (TreeItem child : item.getItems())
 				updateTree(child);			
 		} else {
-			item.dispose();
+			removeItem(item);
 		}
 	}
 
@@ -299,6 +363,17 @@ public abstract class TaxonTree {
 		item.setText(getItemLabel(taxon));
 		item.setImage(ViewTools.getRankIcon(taxon.getRank()));
 		item.setData(Integer.valueOf(taxon.getIdx()));
+		mapItems.put(Integer.valueOf(taxon.getIdx()), item);
+	}
+	
+	private void removeItem(TreeItem item) {
+		for (TreeItem child : item.getItems()) {
+			removeItem(child);
+		}
+		if (mapItems.get(item.getData()) == item) {
+			mapItems.remove(item.getData());
+		}
+		item.dispose();
 	}
 	
 	private String getItemLabel(final Taxon taxon) {
@@ -27,6 +27,10 @@ import common.view.SearchBox;
  * <p>Provides widgets for the table, creation and reload buttons,
  * a search box, and a simple table ordering mecanism.</p>
  * 
+ * <p>Modules with very long lists may use a virtual table: rows are then
+ * filled only when shown, from {@link #getObject(int)}, and the objects
+ * need not be copied into {@link #vecObjects}.</p>
+ * 
  * @author nicz
  *
  * @param <T> the type of objects displayed in this module.
@@ -50,6 +54,9 @@ public abstract class AbstractModule<T extends DataObject> extends TabbedModule
 	/** ID of the currently selected object */
 	protected Integer selIdx;
 	
+	/** true if table rows are filled only when shown */
+	private final boolean isVirtual;
+	
 	/** A visitor that can be used to customize created objects */
 //	protected final CreationVisitor creationVisitor =
 //		new CreationVisitor();
@@ -68,13 +75,24 @@ public abstract class AbstractModule<T extends DataObject> extends TabbedModule
 	 * @param nCols the number of columns in the layout
 	 */
 	public AbstractModule(int nCols) {
+		this(nCols, false);
+	}
+	
+	/**
+	 * Create a module with the given number of columns.
+	 * @param nCols      the number of columns in the layout
+	 * @param isVirtual  true to fill table rows only when shown
+	 */
+	public AbstractModule(int nCols, boolean isVirtual) {
 		super();
+		this.isVirtual = isVirtual;
 		
 		GridLayout gl =  new GridLayout(nCols, false);
 		this.setLayout(gl);
 		GridData data;
 
-		tblData = new Table(this, SWT.SINGLE | SWT.BORDER | SWT.FULL_SELECTION);
+		tblData = new Table(this, SWT.SINGLE | SWT.BORDER | SWT.FULL_SELECTION | 
+				(isVirtual ? SWT.VIRTUAL : SWT.NONE));
 		tblData.setLinesVisible(true);
 		tblData.setHeaderVisible(true);
 		data = new GridData(SWT.FILL, SWT.FILL, true, true);
@@ -85,8 +103,8 @@ public abstract class AbstractModule<T extends DataObject> extends TabbedModule
 		tblData.addListener(SWT.Selection, new Listener() {
 			public void handleEvent(Event e) {
 				int idxTableSelection = tblData.getSelectionIndex();
-				if (idxTableSelection >= 0 && idxTableSelection < vecObjects.size()) {
-					T selObj = vecObjects.get(idxTableSelection);
+				if (idxTableSelection >= 0 && idxTableSelection < getObjectCount()) {
+					T selObj = getObject(idxTableSelection);
 					selIdx = Integer.valueOf(selObj.getIdx());
 					onTableSelection(selObj);
 				} else {
@@ -94,6 +112,16 @@ public abstract class AbstractModule<T extends DataObject> extends TabbedModule
 				}
 			}
 		});
+		if (isVirtual) {
+			tblData.addListener(SWT.SetData, new Listener() {
+				public void handleEvent(Event e) {
+					T obj = getObject(e.index);
+					if (obj != null) {
+						((TableItem) e.item).setText(obj.getDataRow());
+					}
+				}
+			});
+		}
 
 		cRight = new Composite(this, 0);
 		cRight.setLayout(new GridLayout());
@@ -129,7 +157,7 @@ public abstract class AbstractModule<T extends DataObject> extends TabbedModule
 	    		"refresh", "Recharger depuis la base de donnees", false, 
 	    		new SelectionAdapter() {
 			public void widgetSelected(SelectionEvent e) {
-				showObjects();
+				reloadObjects();
 			}
 		});
 
@@ -164,14 +192,56 @@ public abstract class AbstractModule<T extends DataObject> extends TabbedModule
 	}
 	
 	protected void reloadTable() {
-		tblData.removeAll();
-		for (T obj : vecObjects) {
-			TableItem item = new TableItem(tblData, SWT.NONE);
-			item.setText(obj.getDataRow());
+		if (isVirtual) {
+			tblData.clearAll();
+			tblData.setItemCount(getObjectCount());
+		} else {
+			tblData.removeAll();
+			for (T obj : vecObjects) {
+				TableItem item = new TableItem(tblData, SWT.NONE);
+				item.setText(obj.getDataRow());
+			}
 		}
 		reselectObject();
 	}
 	
+	/**
+	 * Gets the number of objects displayed in the table.
+	 * Must be overridden with {@link #getObject(int)} by modules
+	 * which do not keep their objects in vecObjects.
+	 * 
+	 * @return  the number of table rows
+	 */
+	protected int getObjectCount() {
+		return (vecObjects == null ? 0 : vecObjects.size());
+	}
+	
+	/**
+	 * Gets the object displayed at a table row.
+	 * @param index  the row index
+	 * @return  the object, or null if out of range
+	 */
+	protected T getObject(int index) {
+		if (index < 0 || index >= getObjectCount()) {
+			return null;
+		}
+		return vecObjects.get(index);
+	}
+	
+	/**
+	 * Gets the table row of an object.
+	 * @param idx  database index of the object
+	 * @return  the row index, or -1 if not displayed
+	 */
+	protected int indexOfObject(int idx) {
+		for (int k=0; k<getObjectCount(); k++) {
+			if (getObject(k).getIdx() == idx) {
+				return k;
+			}
+		}
+		return -1;
+	}
+	
 	protected abstract void onTableSelection(T obj);
 	
 	protected void orderByColumn(int col) {
@@ -198,6 +268,14 @@ public abstract class AbstractModule<T extends DataObject> extends TabbedModule
 	 */
 	protected abstract void showObjects();
 	
+	/**
+	 * Reloads the objects from database and redisplays them.
+	 * Subclasses showing cached objects refresh the cache first.
+	 */
+	protected void reloadObjects() {
+		showObjects();
+	}
+	
 	protected void createObject() {}
 	
 	/**
@@ -216,12 +294,11 @@ public abstract class AbstractModule<T extends DataObject> extends TabbedModule
 	private void reselectObject() {
 		if (selIdx == null) return;
 		
-		for (int k=0; k<vecObjects.size(); k++) {
-			if (vecObjects.get(k).getIdx() == selIdx.intValue()) {
-				T selObj = vecObjects.get(k);
-				tblData.select(k);
-				onTableSelection(selObj);
-			}
+		int k = indexOfObject(selIdx.intValue());
+		if (k >= 0) {
+			T selObj = getObject(k);
+			tblData.select(k);
+			onTableSelection(selObj);
 		}
 	}
 
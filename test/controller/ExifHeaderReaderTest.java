@@ -0,0 +1,275 @@
+package controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+
+import model.ImageInfo;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link ExifHeaderReader}, on JPEG and TIFF files built byte by byte,
+ * including corrupt files whose offsets or counts point beyond the file.
+ * 
+ * @author nicz
+ * 
+ */
+public class ExifHeaderReaderTest {
+	
+	private static final int TYPE_ASCII    = 2;
+	private static final int TYPE_SHORT    = 3;
+	private static final int TYPE_LONG     = 4;
+	private static final int TYPE_RATIONAL = 5;
+	
+	@Test
+	public void readsJpeg() throws Exception {
+		ImageInfo info = read(jpeg(newCameraTiff(ByteOrder.BIG_ENDIAN, "N", "E").toBytes(), 4000, 3000));
+		assertNotNull(info);
+		assertEquals("Nikon", info.getCameraMake());
+		assertEquals("D750", info.getCameraModel());
+		assertEquals(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse("2020-05-17 10:30:00"), info.getShotAt());
+		assertEquals(46.5, info.getLatitude(), 1e-9);
+		assertEquals(6.6, info.getLongitude(), 1e-9);
+		assertEquals(4000, info.getWidth());
+		assertEquals(3000, info.getHeight());
+	}
+	
+	@Test
+	public void readsLittleEndianSouthWest() throws Exception {
+		ImageInfo info = read(jpeg(newCameraTiff(ByteOrder.LITTLE_ENDIAN, "S", "W").toBytes(), 640, 480));
+		assertNotNull(info);
+		assertEquals("Nikon", info.getCameraMake());
+		assertEquals(-46.5, info.getLatitude(), 1e-9);
+		assertEquals(-6.6, info.getLongitude(), 1e-9);
+		assertEquals(640, info.getWidth());
+	}
+	
+	@Test
+	public void readsLargestRawSubImage() throws Exception {
+		Tiff tiff = new Tiff(ByteOrder.LITTLE_ENDIAN);
+		int ifd0 = tiff.addIfd(2);
+		tiff.setAscii(ifd0, 0, 0x010F, "Nikon");
+		int[] subIfds = { tiff.addIfd(2), tiff.addIfd(2) };
+		tiff.setEntry(subIfds[0], 0, 0x0100, TYPE_SHORT, 1, 160);
+		tiff.setEntry(subIfds[0], 1, 0x0101, TYPE_SHORT, 1, 120);
+		tiff.setEntry(subIfds[1], 0, 0x0100, TYPE_LONG, 1, 6016);
+		tiff.setEntry(subIfds[1], 1, 0x0101, TYPE_LONG, 1, 4016);
+		int offsets = tiff.addLongs(subIfds);
+		tiff.setEntry(ifd0, 1, 0x014A, TYPE_LONG, 2, offsets);
+		
+		ImageInfo info = read(tiff.toBytes());
+		assertNotNull(info);
+		assertEquals(6016, info.getWidth());
+		assertEquals(4016, info.getHeight());
+	}
+	
+	@Test
+	public void jpegWithoutExif() throws Exception {
+		assertNull(read(jpeg(null, 100, 100)));
+	}
+	
+	@Test
+	public void notAnImage() throws Exception {
+		assertNull(read("Not an image, just some text".getBytes(StandardCharsets.US_ASCII)));
+		assertNull(read(new byte[] { (byte) 0xFF, (byte) 0xD8, 0 }));
+		assertNull(read(new byte[0]));
+	}
+	
+	@Test
+	public void directoryBeyondFile() throws Exception {
+		Tiff tiff = newCameraTiff(ByteOrder.BIG_ENDIAN, "N", "E");
+		tiff.buf.putInt(4, 0x7FFFFFF0);
+		assertNull(read(jpeg(tiff.toBytes(), 100, 100)));
+	}
+	
+	@Test
+	public void subDirectoryBeyondFile() throws Exception {
+		Tiff tiff = new Tiff(ByteOrder.BIG_ENDIAN);
+		int ifd0 = tiff.addIfd(1);
+		tiff.setEntry(ifd0, 0, 0x8769, TYPE_LONG, 1, 1 << 20);
+		assertNull(read(jpeg(tiff.toBytes(), 100, 100)));
+	}
+	
+	@Test
+	public void valueBeyondFile() throws Exception {
+		Tiff tiff = new Tiff(ByteOrder.BIG_ENDIAN);
+		int ifd0 = tiff.addIfd(1);
+		tiff.setEntry(ifd0, 0, 0x010F, TYPE_ASCII, 32, 100000);
+		assertNull(read(jpeg(tiff.toBytes(), 100, 100)));
+	}
+	
+	@Test
+	public void hugeValueCount() throws Exception {
+		Tiff tiff = new Tiff(ByteOrder.BIG_ENDIAN);
+		int ifd0 = tiff.addIfd(1);
+		tiff.setEntry(ifd0, 0, 0x010F, TYPE_ASCII, 0xFFFFFFF0, 8);
+		assertNull(read(jpeg(tiff.toBytes(), 100, 100)));
+	}
+	
+	@Test
+	public void tooManyEntries() throws Exception {
+		Tiff tiff = new Tiff(ByteOrder.BIG_ENDIAN);
+		int ifd0 = tiff.addIfd(1);
+		tiff.buf.putShort(ifd0, (short) 5000);
+		assertNull(read(jpeg(tiff.toBytes(), 100, 100)));
+	}
+	
+	@Test
+	public void tooManySubImages() throws Exception {
+		Tiff tiff = new Tiff(ByteOrder.BIG_ENDIAN);
+		int ifd0 = tiff.addIfd(1);
+		tiff.setEntry(ifd0, 0, 0x014A, TYPE_LONG, 100000, 8);
+		assertNull(read(tiff.toBytes()));
+	}
+	
+	/**
+	 * Builds the EXIF data of a camera picture: make, model, date and GPS position.
+	 */
+	private static Tiff newCameraTiff(ByteOrder order, String latRef, String lonRef) {
+		Tiff tiff = new Tiff(order);
+		int ifd0 = tiff.addIfd(4);
+		tiff.setAscii(ifd0, 0, 0x010F, "Nikon");
+		tiff.setAscii(ifd0, 1, 0x0110, "D750");
+		
+		int exif = tiff.addIfd(1);
+		tiff.setAscii(exif, 0, 0x9003, "2020:05:17 10:30:00");
+		tiff.setEntry(ifd0, 2, 0x8769, TYPE_LONG, 1, exif);
+		
+		int gps = tiff.addIfd(4);
+		tiff.setAscii(gps, 0, 0x0001, latRef);
+		tiff.setEntry(gps, 1, 0x0002, TYPE_RATIONAL, 3, tiff.addLongs(46, 1, 30, 1, 0, 1));
+		tiff.setAscii(gps, 2, 0x0003, lonRef);
+		tiff.setEntry(gps, 3, 0x0004, TYPE_RATIONAL, 3, tiff.addLongs(6, 1, 3600, 100, 0, 1));
+		tiff.setEntry(ifd0, 3, 0x8825, TYPE_LONG, 1, gps);
+		return tiff;
+	}
+	
+	/**
+	 * Builds a JPEG header: an optional EXIF segment, a frame with the image size,
+	 * and the start of the compressed data.
+	 */
+	private static byte[] jpeg(byte[] tiff, int width, int height) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(new byte[] { (byte) 0xFF, (byte) 0xD8 });
+		// a JFIF segment, skipped by the reader
+		writeSegment(out, 0xE0, "JFIF\0".getBytes(StandardCharsets.US_ASCII));
+		if (tiff != null) {
+			byte[] exif = Arrays.copyOf("Exif\0\0".getBytes(StandardCharsets.US_ASCII), 6 + tiff.length);
+			System.arraycopy(tiff, 0, exif, 6, tiff.length);
+			writeSegment(out, 0xE1, exif);
+		}
+		writeSegment(out, 0xC0, new byte[] { 8, (byte) (height >> 8), (byte) height,
+				(byte) (width >> 8), (byte) width, 1, 1, 0x11, 0 });
+		writeSegment(out, 0xDA, new byte[] { 1, 1, 0, 0, 63, 0 });
+		out.write(new byte[64]);
+		out.write(new byte[] { (byte) 0xFF, (byte) 0xD9 });
+		return out.toByteArray();
+	}
+	
+	private static void writeSegment(OutputStream out, int marker, byte[] data) throws IOException {
+		int length = data.length + 2;
+		out.write(new byte[] { (byte) 0xFF, (byte) marker, (byte) (length >> 8), (byte) length });
+		out.write(data);
+	}
+	
+	private static ImageInfo read(byte[] bytes) throws IOException {
+		File file = File.createTempFile("exif-test", ".jpg");
+		try {
+			try (OutputStream out = new FileOutputStream(file)) {
+				out.write(bytes);
+			}
+			return ExifHeaderReader.read(file);
+		} finally {
+			file.delete();
+		}
+	}
+	
+	/**
+	 * A TIFF structure, built by appending directories and values.
+	 * Offsets are relative to the start of the structure.
+	 */
+	private static class Tiff {
+		
+		private final ByteBuffer buf = ByteBuffer.allocate(4096);
+		private int end = 8;
+		
+		public Tiff(ByteOrder order) {
+			buf.order(order);
+			byte b = (byte) (order == ByteOrder.LITTLE_ENDIAN ? 'I' : 'M');
+			buf.put(0, b);
+			buf.put(1, b);
+			buf.putShort(2, (short) 42);
+			buf.putInt(4, 8);
+		}
+		
+		/**
+		 * Appends a directory, whose entries are set afterwards.
+		 * @return  the offset of the directory
+		 */
+		public int addIfd(int nEntries) {
+			int ifd = end;
+			buf.putShort(ifd, (short) nEntries);
+			end += 2 + 12 * nEntries + 4;
+			return ifd;
+		}
+		
+		public void setEntry(int ifd, int i, int tag, int type, int count, int value) {
+			int entry = ifd + 2 + 12 * i;
+			buf.putShort(entry, (short) tag);
+			buf.putShort(entry + 2, (short) type);
+			buf.putInt(entry + 4, count);
+			if (type == TYPE_SHORT && count == 1) {
+				buf.putShort(entry + 8, (short) value);
+			} else {
+				buf.putInt(entry + 8, value);
+			}
+		}
+		
+		public void setAscii(int ifd, int i, int tag, String text) {
+			byte[] bytes = (text + "\0").getBytes(StandardCharsets.US_ASCII);
+			int entry = ifd + 2 + 12 * i;
+			setEntry(ifd, i, tag, TYPE_ASCII, bytes.length, 0);
+			if (bytes.length <= 4) {
+				for (int k = 0; k < bytes.length; ++k) {
+					buf.put(entry + 8 + k, bytes[k]);
+				}
+			} else {
+				buf.putInt(entry + 8, end);
+				for (byte b : bytes) {
+					buf.put(end++, b);
+				}
+				end += (end & 1);
+			}
+		}
+		
+		/**
+		 * Appends LONG values, or the numerators and denominators of RATIONAL values.
+		 * @return  the offset of the values
+		 */
+		public int addLongs(int... values) {
+			int pos = end;
+			for (int value : values) {
+				buf.putInt(end, value);
+				end += 4;
+			}
+			return pos;
+		}
+		
+		public byte[] toBytes() {
+			return Arrays.copyOf(buf.array(), end);
+		}
+	}
+
+}
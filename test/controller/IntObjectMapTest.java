@@ -0,0 +1,197 @@
+package controller;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link IntObjectMap}, checked against a <code>HashMap</code>.
+ * 
+ * @author nicz
+ * 
+ */
+public class IntObjectMapTest {
+	
+	@Test
+	public void putGetRemove() {
+		IntObjectMap<String> map = new IntObjectMap<>();
+		assertTrue(map.isEmpty());
+		assertNull(map.put(7, "seven"));
+		assertNull(map.put(42, "forty-two"));
+		assertEquals("seven", map.get(7));
+		assertEquals("forty-two", map.get(42));
+		assertNull(map.get(8));
+		assertTrue(map.containsKey(7));
+		assertFalse(map.containsKey(8));
+		assertEquals(2, map.size());
+		
+		assertEquals("seven", map.put(7, "sept"));
+		assertEquals("sept", map.get(7));
+		assertEquals(2, map.size());
+		
+		assertEquals("sept", map.remove(7));
+		assertNull(map.remove(7));
+		assertNull(map.get(7));
+		assertEquals(1, map.size());
+	}
+	
+	@Test
+	public void putNullRemoves() {
+		IntObjectMap<String> map = new IntObjectMap<>();
+		map.put(3, "three");
+		assertEquals("three", map.put(3, null));
+		assertFalse(map.containsKey(3));
+		assertEquals(0, map.size());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void putZeroKey() {
+		new IntObjectMap<String>().put(0, "zero");
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void putNegativeKey() {
+		new IntObjectMap<String>().put(-1, "minus one");
+	}
+	
+	@Test
+	public void invalidKeysAreNotFound() {
+		IntObjectMap<String> map = new IntObjectMap<>();
+		map.put(1, "one");
+		assertNull(map.get(0));
+		assertNull(map.get(-1));
+		assertNull(map.remove(0));
+		assertNull(map.remove(-1));
+	}
+	
+	@Test
+	public void growsPastLoadFactor() {
+		IntObjectMap<Integer> map = new IntObjectMap<>(4);
+		for (int key = 1; key <= 10000; ++key) {
+			map.put(key, key * 2);
+		}
+		assertEquals(10000, map.size());
+		for (int key = 1; key <= 10000; ++key) {
+			assertEquals(Integer.valueOf(key * 2), map.get(key));
+		}
+		assertNull(map.get(10001));
+	}
+	
+	/**
+	 * Removes entries from dense tables, where most keys are probed past their home slot
+	 * and probe sequences wrap around the end of the table: each remove must move back
+	 * the following entries, so that no remaining key is hidden behind a free slot.
+	 */
+	@Test
+	public void removeKeepsProbeSequences() {
+		Random random = new Random(1234);
+		for (int round = 0; round < 200; ++round) {
+			IntObjectMap<Integer> map = new IntObjectMap<>();
+			Map<Integer, Integer> expected = new HashMap<>();
+			int maxKey = 8 + random.nextInt(200);
+			for (int op = 0; op < 2000; ++op) {
+				int key = 1 + random.nextInt(maxKey);
+				if (random.nextInt(3) == 0) {
+					assertEquals(expected.remove(key), map.remove(key));
+				} else {
+					assertEquals(expected.put(key, op), map.put(key, op));
+				}
+				assertEquals(expected.size(), map.size());
+			}
+			for (int key = 1; key <= maxKey; ++key) {
+				assertEquals("key " + key, expected.get(key), map.get(key));
+			}
+		}
+	}
+	
+	@Test
+	public void removeAllThenReuse() {
+		IntObjectMap<String> map = new IntObjectMap<>();
+		for (int key = 1; key <= 12; ++key) {
+			map.put(key, "v" + key);
+		}
+		for (int key = 12; key >= 1; --key) {
+			assertEquals("v" + key, map.remove(key));
+		}
+		assertTrue(map.isEmpty());
+		assertEquals(0, map.keys().length);
+		map.put(5, "five");
+		assertEquals("five", map.get(5));
+	}
+	
+	@Test
+	public void keysAndValues() {
+		IntObjectMap<String> map = new IntObjectMap<>();
+		map.put(10, "a");
+		map.put(20, "b");
+		map.put(30, "c");
+		map.remove(20);
+		
+		int[] keys = map.keys();
+		Arrays.sort(keys);
+		assertArrayEquals(new int[] { 10, 30 }, keys);
+		
+		Set<String> values = new HashSet<>(map.values());
+		assertEquals(new HashSet<>(Arrays.asList("a", "c")), values);
+		assertEquals(2, map.values().size());
+	}
+	
+	@Test
+	public void copyIsIndependent() {
+		IntObjectMap<String> map = new IntObjectMap<>();
+		map.put(1, "one");
+		map.put(2, "two");
+		IntObjectMap<String> copy = new IntObjectMap<>(map);
+		map.remove(1);
+		map.put(3, "three");
+		
+		assertEquals("one", copy.get(1));
+		assertNull(copy.get(3));
+		assertEquals(2, copy.size());
+		assertSame(map.get(2), copy.get(2));
+	}
+	
+	@Test
+	public void clear() {
+		IntObjectMap<String> map = new IntObjectMap<>();
+		map.put(1, "one");
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertNull(map.get(1));
+	}
+	
+	@Test(expected = ConcurrentModificationException.class)
+	public void valuesFailFast() {
+		IntObjectMap<String> map = new IntObjectMap<>();
+		map.put(1, "one");
+		map.put(2, "two");
+		Iterator<String> it = map.values().iterator();
+		it.next();
+		map.put(3, "three");
+		it.next();
+	}
+	
+	@Test(expected = UnsupportedOperationException.class)
+	public void valuesAreReadOnly() {
+		IntObjectMap<String> map = new IntObjectMap<>();
+		map.put(1, "one");
+		Iterator<String> it = map.values().iterator();
+		it.next();
+		it.remove();
+	}
+
+}
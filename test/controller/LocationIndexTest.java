@@ -0,0 +1,142 @@
+package controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import model.Location;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link LocationIndex}, checked against a linear scan.
+ * 
+ * @author nicz
+ * 
+ */
+public class LocationIndexTest {
+	
+	@Test
+	public void ignoresLocationsWithoutCoordinates() {
+		Location noCoords = new Location(1, "Nowhere");
+		Location lausanne = newLocation(2, "Lausanne", 46.52, 6.63);
+		LocationIndex index = new LocationIndex(Arrays.asList(noCoords, lausanne));
+		assertEquals(1, index.size());
+		assertSame(lausanne, index.getClosest(newLocation(0, "q", 46.0, 7.0)));
+	}
+	
+	@Test
+	public void emptyResults() {
+		LocationIndex empty = new LocationIndex(new ArrayList<Location>());
+		assertNull(empty.getClosest(newLocation(0, "q", 46.0, 7.0)));
+		
+		LocationIndex index = new LocationIndex(Arrays.asList(newLocation(1, "Lausanne", 46.52, 6.63)));
+		assertTrue(index.getClosest(new Location(0, "q"), 5, 1000).isEmpty());
+		assertTrue(index.getClosest(newLocation(0, "q", 46.0, 7.0), 0, 1000).isEmpty());
+		assertTrue(index.getWithin(newLocation(0, "q", 0.0, 0.0), 100).isEmpty());
+	}
+	
+	@Test
+	public void distance() {
+		// Lausanne to Geneva, about 51 km
+		double d = LocationIndex.getDistanceKm(newLocation(1, "Lausanne", 46.5197, 6.6323),
+				newLocation(2, "Genève", 46.2044, 6.1432));
+		assertEquals(51.0, d, 1.5);
+	}
+	
+	@Test
+	public void closestAcrossDateLine() {
+		Location east = newLocation(1, "East", 0.0, 179.9);
+		Location west = newLocation(2, "West", 0.0, -179.0);
+		Location far = newLocation(3, "Far", 0.0, 170.0);
+		LocationIndex index = new LocationIndex(Arrays.asList(east, west, far));
+		
+		List<Location> closest = index.getClosest(newLocation(0, "q", 0.0, -179.95), 2, Double.POSITIVE_INFINITY);
+		assertEquals(Arrays.asList(east, west), closest);
+	}
+	
+	@Test
+	public void nearestSameAsLinearScan() {
+		Random random = new Random(7);
+		List<Location> locations = newRandomLocations(random, 500);
+		LocationIndex index = new LocationIndex(locations);
+		assertEquals(locations.size(), index.size());
+		
+		for (int i = 0; i < 100; ++i) {
+			Location query = newRandomLocation(random, 0);
+			int k = 1 + random.nextInt(10);
+			List<Location> expected = sortByDistance(locations, query);
+			assertEquals(expected.subList(0, k), index.getClosest(query, k, Double.POSITIVE_INFINITY));
+			assertSame(expected.get(0), index.getClosest(query));
+		}
+	}
+	
+	@Test
+	public void radiusSameAsLinearScan() {
+		Random random = new Random(11);
+		List<Location> locations = newRandomLocations(random, 500);
+		LocationIndex index = new LocationIndex(locations);
+		
+		for (int i = 0; i < 100; ++i) {
+			Location query = newRandomLocation(random, 0);
+			double dMaxKm = 50 + random.nextInt(2000);
+			List<Location> expected = new ArrayList<>();
+			for (Location location : sortByDistance(locations, query)) {
+				if (LocationIndex.getDistanceKm(query, location) <= dMaxKm) {
+					expected.add(location);
+				}
+			}
+			assertEquals(expected, index.getWithin(query, dMaxKm));
+			
+			int k = 1 + random.nextInt(5);
+			assertEquals(expected.subList(0, Math.min(k, expected.size())), index.getClosest(query, k, dMaxKm));
+		}
+	}
+	
+	private static List<Location> sortByDistance(List<Location> locations, final Location query) {
+		List<Location> result = new ArrayList<>(locations);
+		Collections.sort(result, new Comparator<Location>() {
+			@Override
+			public int compare(Location loc1, Location loc2) {
+				return Double.compare(LocationIndex.getDistanceKm(query, loc1), LocationIndex.getDistanceKm(query, loc2));
+			}
+		});
+		return result;
+	}
+	
+	/**
+	 * Locations around the Alps, with a few of them all over the world.
+	 */
+	private static List<Location> newRandomLocations(Random random, int n) {
+		List<Location> locations = new ArrayList<>();
+		for (int idx = 1; idx <= n; ++idx) {
+			if (idx % 10 == 0) {
+				locations.add(newRandomLocation(random, idx));
+			} else {
+				locations.add(newLocation(idx, "Loc" + idx, 44 + 4 * random.nextDouble(), 5 + 6 * random.nextDouble()));
+			}
+		}
+		return locations;
+	}
+	
+	private static Location newRandomLocation(Random random, int idx) {
+		double lat = Math.toDegrees(Math.asin(2 * random.nextDouble() - 1));
+		return newLocation(idx, "Loc" + idx, lat, 360 * random.nextDouble() - 180);
+	}
+	
+	private static Location newLocation(int idx, String name, double lat, double lon) {
+		Location location = new Location(idx, name);
+		location.setLatitude(lat);
+		location.setLongitude(lon);
+		return location;
+	}
+
+}
@@ -0,0 +1,132 @@
+package controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Timestamp;
+import java.util.Calendar;
+import java.util.Date;
+
+import model.HerbierPic;
+import model.Location;
+import model.Taxon;
+import model.TaxonRank;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the delta refresh of {@link PictureCache}: which rows are fetched again,
+ * and which fetched rows are skipped as unchanged.
+ * 
+ * @author nicz
+ * 
+ */
+public class PictureCacheTest {
+	
+	private Taxon taxon;
+	private Location location;
+	private HerbierPic cached;
+	
+	@Before
+	public void setUp() {
+		taxon = new Taxon(1, "Ophrys apifera", TaxonRank.SPECIES);
+		location = new Location(1, "Alpes");
+		cached = newRow(new Date(at(2021, 6, 1, 12, 0, 0)));
+		cached.setTaxon(taxon);
+		cached.setLocation(location);
+	}
+	
+	@Test
+	public void deltaWithoutHighWater() {
+		assertEquals(" WHERE idxPicture > 0", PictureCache.getDeltaWhere(0, null));
+	}
+	
+	/**
+	 * Rows updated in the same second as the high water mark are fetched again,
+	 * as the database only keeps whole seconds.
+	 */
+	@Test
+	public void deltaIncludesHighWaterSecond() {
+		Date tHighWater = new Date(at(2021, 6, 1, 12, 0, 5) + 999);
+		assertEquals(" WHERE idxPicture > 42 OR picUpdatedAt >= '2021-06-01 12:00:05'",
+				PictureCache.getDeltaWhere(42, tHighWater));
+	}
+	
+	@Test
+	public void sameRow() {
+		HerbierPic pic = newRow(new Timestamp(cached.getUpdatedAt().getTime()));
+		assertTrue(PictureCache.isSameRow(cached, pic, taxon, location));
+	}
+	
+	@Test
+	public void sameRowWithoutDates() {
+		cached.setUpdatedAt(null);
+		cached.setShotAt(null);
+		HerbierPic pic = newRow(null);
+		pic.setShotAt(null);
+		assertTrue(PictureCache.isSameRow(cached, pic, taxon, location));
+	}
+	
+	@Test
+	public void changedInSameSecond() {
+		// an update in the same second keeps picUpdatedAt, but changes a field
+		HerbierPic pic = newRow(cached.getUpdatedAt());
+		pic.setRemarks("Prairie sèche");
+		assertFalse(PictureCache.isSameRow(cached, pic, taxon, location));
+		
+		pic = newRow(cached.getUpdatedAt());
+		pic.setRating(5);
+		assertFalse(PictureCache.isSameRow(cached, pic, taxon, location));
+		
+		pic = newRow(cached.getUpdatedAt());
+		pic.setFileName("ophrys-apifera-2.jpg");
+		assertFalse(PictureCache.isSameRow(cached, pic, taxon, location));
+	}
+	
+	@Test
+	public void changedLinks() {
+		HerbierPic pic = newRow(cached.getUpdatedAt());
+		assertFalse(PictureCache.isSameRow(cached, pic, taxon, new Location(2, "Jura")));
+		assertFalse(PictureCache.isSameRow(cached, pic, taxon, null));
+		
+		Taxon other = new Taxon(2, "Ophrys insectifera", TaxonRank.SPECIES);
+		pic.setIdxTaxon(other.getIdx());
+		assertFalse(PictureCache.isSameRow(cached, pic, other, location));
+	}
+	
+	@Test
+	public void changedDates() {
+		HerbierPic pic = newRow(new Date(cached.getUpdatedAt().getTime() + 1000));
+		assertFalse(PictureCache.isSameRow(cached, pic, taxon, location));
+		
+		pic = newRow(null);
+		assertFalse(PictureCache.isSameRow(cached, pic, taxon, location));
+		
+		pic = newRow(cached.getUpdatedAt());
+		pic.setShotAt(new Date(at(2021, 5, 30, 9, 0, 0)));
+		assertFalse(PictureCache.isSameRow(cached, pic, taxon, location));
+	}
+	
+	/**
+	 * Builds a fetched row, not linked to its taxon and location.
+	 */
+	private HerbierPic newRow(Date updatedAt) {
+		HerbierPic pic = new HerbierPic(7, "ophrys-apifera-1.jpg");
+		pic.setShotAt(new Date(at(2021, 5, 29, 14, 30, 0)));
+		pic.setRemarks("Prairie");
+		pic.setRating(4);
+		pic.setIdxTaxon(1);
+		pic.setUpdatedAt(updatedAt);
+		return pic;
+	}
+	
+	private static long at(int year, int month, int day, int hour, int min, int sec) {
+		Calendar cal = Calendar.getInstance();
+		cal.clear();
+		cal.set(year, month - 1, day, hour, min, sec);
+		return cal.getTimeInMillis();
+	}
+
+}
@@ -0,0 +1,163 @@
+package controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.Vector;
+
+import model.HerbierPic;
+import model.Location;
+import model.Taxon;
+import model.TaxonRank;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import controller.DatabaseTools.eOrdering;
+
+/**
+ * Tests of {@link PictureQuery}, on a cache version of linked test objects,
+ * checked against {@link PictureQuery#matches(HerbierPic)} on all pictures.
+ * 
+ * @author nicz
+ * 
+ */
+public class PictureQueryTest {
+	
+	private static final long day = 24 * 3600 * 1000L;
+	
+	private Taxon genus;
+	private Taxon apifera;
+	private Taxon insectifera;
+	private Location alps;
+	private Location jura;
+	private List<HerbierPic> pics;
+	private CacheVersion version;
+	
+	@Before
+	public void setUp() {
+		genus = new Taxon(1, "Ophrys", TaxonRank.GENUS);
+		apifera = new Taxon(2, "Ophrys apifera", TaxonRank.SPECIES);
+		insectifera = new Taxon(3, "Ophrys insectifera", TaxonRank.SPECIES);
+		for (Taxon species : Arrays.asList(apifera, insectifera)) {
+			species.setParent(genus);
+			species.setIdxParent(genus.getIdx());
+			genus.addChild(species);
+		}
+		alps = new Location(1, "Alpes");
+		alps.setLatitude(46.3);
+		alps.setLongitude(7.1);
+		jura = new Location(2, "Jura");
+		
+		Random random = new Random(5);
+		Taxon[] taxa = { genus, apifera, insectifera };
+		pics = new ArrayList<>();
+		for (int idx = 1; idx <= 60; ++idx) {
+			HerbierPic pic = new HerbierPic(idx, String.format("pic-%03d.jpg", 61 - idx));
+			pic.setShotAt(new Date(idx * day + random.nextInt(1000)));
+			pic.setRating(1 + random.nextInt(5));
+			pic.setRemarks(idx % 7 == 0 ? "Prairie sèche" : null);
+			if (idx % 4 == 0) {
+				pic.setLatitude(46.0);
+				pic.setLongitude(7.0);
+			}
+			Taxon taxon = taxa[random.nextInt(taxa.length)];
+			pic.setIdxTaxon(taxon.getIdx());
+			pic.setTaxon(taxon);
+			taxon.addPic(pic);
+			Location location = (random.nextBoolean() ? alps : jura);
+			pic.setLocation(location);
+			location.addPic(pic);
+			pics.add(pic);
+		}
+		
+		version = new CacheVersion(1, Arrays.asList(alps, jura), Arrays.asList(genus, apifera, insectifera),
+				Collections.singleton(genus), pics);
+	}
+	
+	@Test
+	public void ratingAtLeast() {
+		check(new PictureQuery().ratingAtLeast(4));
+		check(new PictureQuery().ratingBetween(2, 3));
+		assertTrue(new PictureQuery().ratingBetween(4, 2).select(version).isEmpty());
+	}
+	
+	@Test
+	public void taxonIncludesDescendants() {
+		Vector<HerbierPic> result = check(new PictureQuery().inTaxon(genus));
+		assertEquals(pics.size(), result.size());
+		check(new PictureQuery().inTaxon(apifera));
+		check(new PictureQuery().inTaxon(genus).withRank(TaxonRank.SPECIES));
+	}
+	
+	@Test
+	public void locationAndDates() {
+		check(new PictureQuery().inLocation(jura));
+		check(new PictureQuery().inLocation(alps).shotBetween(new Date(10 * day), new Date(30 * day)));
+		check(new PictureQuery().shotBetween(null, new Date(5 * day)));
+		check(new PictureQuery().shotBetween(new Date(55 * day), null));
+	}
+	
+	@Test
+	public void gps() {
+		Vector<HerbierPic> result = check(new PictureQuery().withGps(true));
+		assertEquals(15, result.size());
+		check(new PictureQuery().withGps(false).ratingAtLeast(3));
+	}
+	
+	@Test
+	public void orderAndLimit() {
+		Vector<HerbierPic> result = check(new PictureQuery().orderBy(eOrdering.BY_DATE, true).limit(5));
+		assertEquals(5, result.size());
+		assertEquals(60, result.get(0).getIdx());
+		
+		check(new PictureQuery().ratingAtLeast(3).orderBy(eOrdering.BY_FILENAME).limit(7));
+		check(new PictureQuery().inTaxon(insectifera).orderBy(eOrdering.BY_RATING, true));
+		check(new PictureQuery().limit(3));
+	}
+	
+	@Test
+	public void matchingText() {
+		Vector<HerbierPic> result = new PictureQuery().matching("prairie seche").select(version);
+		assertEquals(8, result.size());
+		for (HerbierPic pic : result) {
+			assertEquals(0, pic.getIdx() % 7);
+		}
+		
+		result = new PictureQuery().matching("prairie").inLocation(alps).orderBy(eOrdering.BY_IDX).select(version);
+		List<HerbierPic> expected = new ArrayList<>();
+		for (HerbierPic pic : pics) {
+			if (pic.getIdx() % 7 == 0 && pic.getLocation() == alps) {
+				expected.add(pic);
+			}
+		}
+		assertEquals(expected, result);
+	}
+	
+	/**
+	 * Runs a query, and checks its result against a scan of all pictures.
+	 */
+	private Vector<HerbierPic> check(PictureQuery query) {
+		Vector<HerbierPic> result = query.select(version);
+		
+		// the same query without limit gives all matching pictures, in the same order
+		List<HerbierPic> all = new ArrayList<>(query.limit(0).select(version));
+		List<HerbierPic> expected = new ArrayList<>();
+		for (HerbierPic pic : pics) {
+			if (query.matches(pic)) {
+				expected.add(pic);
+			}
+		}
+		assertEquals(expected.size(), all.size());
+		assertTrue(all.containsAll(expected));
+		assertEquals(all.subList(0, result.size()), result);
+		return result;
+	}
+
+}
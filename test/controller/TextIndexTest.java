@@ -0,0 +1,122 @@
+package controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link TextIndex}, on strings indexed as a single field,
+ * or split into fields at '|'.
+ * 
+ * @author nicz
+ * 
+ */
+public class TextIndexTest {
+	
+	private static final TextIndex.TextFields<String> fields = new TextIndex.TextFields<String>() {
+		@Override
+		public String[] getTexts(String obj) {
+			return obj.split("\\|", -1);
+		}
+	};
+	
+	@Test
+	public void normalize() {
+		assertEquals("oeillet des bois", TextIndex.normalize("  Œillet  des\tBOIS "));
+		assertEquals("orchidee", TextIndex.normalize("Orchidée"));
+		assertEquals("", TextIndex.normalize(null));
+	}
+	
+	@Test
+	public void ignoresCaseAndAccents() {
+		TextIndex<String> index = newIndex("Orchidée sauvage", "Épervière", "Lis martagon");
+		assertEquals(Arrays.asList("Orchidée sauvage"), index.search("ORCHIDEE"));
+		assertEquals(Arrays.asList("Épervière"), index.search("eperv"));
+		assertEquals(3, index.size());
+	}
+	
+	@Test
+	public void allTermsMustMatch() {
+		TextIndex<String> index = newIndex("Ophrys apifera", "Ophrys insectifera", "Orchis mascula");
+		assertEquals(Arrays.asList("Ophrys apifera"), index.search("ophrys api"));
+		assertEquals(Arrays.asList("Ophrys apifera", "Ophrys insectifera"), index.search("fera ophrys"));
+		assertTrue(index.search("ophrys mascula").isEmpty());
+	}
+	
+	@Test
+	public void shortTerms() {
+		TextIndex<String> index = newIndex("Col de la Croix", "Lac Léman", "Dent de Morcles");
+		// "Dent" starts with the term, which is better than the word "de"
+		assertEquals(Arrays.asList("Dent de Morcles", "Col de la Croix"), index.search("de"));
+		assertEquals(Arrays.asList("Col de la Croix"), index.search("la cr"));
+	}
+	
+	@Test
+	public void sqlWildcardsAreSeparators() {
+		TextIndex<String> index = newIndex("Ophrys apifera", "Orchis mascula");
+		assertEquals(Arrays.asList("Ophrys apifera"), index.search("%oph%api%"));
+		assertTrue(index.search("%").isEmpty());
+		assertTrue(index.search("   ").isEmpty());
+		assertTrue(index.search(null).isEmpty());
+	}
+	
+	@Test
+	public void ranksMatches() {
+		// equal field, start of field, start of word, inside a word
+		TextIndex<String> index = newIndex("a rosa", "rosace", "rosa", "grosa");
+		assertEquals(Arrays.asList("rosa", "rosace", "a rosa", "grosa"), index.search("rosa"));
+	}
+	
+	@Test
+	public void ranksFirstFieldsHigher() {
+		TextIndex<String> index = newIndex("b|rosa", "rosa|b", "a|b");
+		assertEquals(Arrays.asList("rosa|b", "b|rosa"), index.search("rosa"));
+		assertEquals(Arrays.asList("b|rosa", "a|b", "rosa|b"), index.search("b"));
+	}
+	
+	@Test
+	public void tiesKeepNaturalOrder() {
+		TextIndex<String> index = newIndex("c rosa", "a rosa", "b rosa");
+		assertEquals(Arrays.asList("a rosa", "b rosa", "c rosa"), index.search("rosa"));
+	}
+	
+	@Test
+	public void sameAsLinearScan() {
+		Random random = new Random(3);
+		String[] words = { "ophrys", "orchis", "épervière", "lis", "gentiane", "bois", "col", "lac" };
+		List<String> docs = new ArrayList<>();
+		for (int i = 0; i < 300; ++i) {
+			docs.add(words[random.nextInt(words.length)] + " " + words[random.nextInt(words.length)] + " " + i);
+		}
+		TextIndex<String> index = new TextIndex<>(docs, fields);
+		
+		String[] queries = { "oph", "is", "pervi", "lac col", "gentiane 1", "s b", "x" };
+		for (String query : queries) {
+			List<String> expected = new ArrayList<>();
+			for (String doc : docs) {
+				boolean isMatch = true;
+				for (String term : TextIndex.normalize(query).split(" ")) {
+					isMatch &= TextIndex.normalize(doc).contains(term);
+				}
+				if (isMatch) {
+					expected.add(doc);
+				}
+			}
+			List<String> hits = new ArrayList<>(index.search(query.toUpperCase(Locale.ROOT)));
+			assertEquals(query, expected.size(), hits.size());
+			assertTrue(query, hits.containsAll(expected));
+		}
+	}
+	
+	private static TextIndex<String> newIndex(String... docs) {
+		return new TextIndex<>(Arrays.asList(docs), fields);
+	}
+
+}
@@ -0,0 +1,140 @@
+package model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link SortedArraySet}, checked against a <code>TreeSet</code>.
+ * 
+ * @author nicz
+ * 
+ */
+public class SortedArraySetTest {
+	
+	@Test
+	public void keepsOrderWithoutDuplicates() {
+		SortedArraySet<String> set = new SortedArraySet<>();
+		assertTrue(set.add("pear"));
+		assertTrue(set.add("apple"));
+		assertTrue(set.add("fig"));
+		assertFalse(set.add("apple"));
+		
+		assertEquals(Arrays.asList("apple", "fig", "pear"), new ArrayList<>(set));
+		assertEquals(3, set.size());
+		assertTrue(set.contains("fig"));
+		assertFalse(set.contains("kiwi"));
+	}
+	
+	@Test
+	public void usesComparator() {
+		SortedArraySet<String> set = new SortedArraySet<>(Collections.<String>reverseOrder());
+		set.addAll(Arrays.asList("b", "c", "a"));
+		assertEquals(Arrays.asList("c", "b", "a"), new ArrayList<>(set));
+	}
+	
+	@Test
+	public void remove() {
+		SortedArraySet<Integer> set = new SortedArraySet<>();
+		set.addAll(Arrays.asList(5, 1, 3));
+		assertTrue(set.remove(1));
+		assertFalse(set.remove(1));
+		assertEquals(Arrays.asList(3, 5), new ArrayList<>(set));
+		
+		set.clear();
+		assertTrue(set.isEmpty());
+		assertTrue(set.add(2));
+		assertEquals(Integer.valueOf(2), set.get(0));
+	}
+	
+	@Test
+	public void positionsAndRanges() {
+		SortedArraySet<Integer> set = new SortedArraySet<>();
+		set.addAll(Arrays.asList(10, 20, 30, 40));
+		assertEquals(Integer.valueOf(30), set.get(2));
+		assertEquals(0, set.indexOfCeiling(5));
+		assertEquals(1, set.indexOfCeiling(20));
+		assertEquals(2, set.indexOfCeiling(25));
+		assertEquals(4, set.indexOfCeiling(45));
+		assertEquals(Arrays.asList(20, 30), set.subList(1, 3));
+		assertTrue(set.subList(2, 2).isEmpty());
+	}
+	
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void getOutOfRange() {
+		SortedArraySet<Integer> set = new SortedArraySet<>();
+		set.add(1);
+		set.get(1);
+	}
+	
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void subListOutOfRange() {
+		SortedArraySet<Integer> set = new SortedArraySet<>();
+		set.add(1);
+		set.subList(0, 2);
+	}
+	
+	@Test
+	public void iteratorRemove() {
+		SortedArraySet<Integer> set = new SortedArraySet<>();
+		set.addAll(Arrays.asList(1, 2, 3, 4, 5, 6));
+		for (Iterator<Integer> it = set.iterator(); it.hasNext(); ) {
+			if (it.next() % 2 == 0) {
+				it.remove();
+			}
+		}
+		assertEquals(Arrays.asList(1, 3, 5), new ArrayList<>(set));
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void iteratorRemoveTwice() {
+		SortedArraySet<Integer> set = new SortedArraySet<>();
+		set.addAll(Arrays.asList(1, 2));
+		Iterator<Integer> it = set.iterator();
+		it.next();
+		it.remove();
+		it.remove();
+	}
+	
+	@Test(expected = ConcurrentModificationException.class)
+	public void iteratorFailFast() {
+		SortedArraySet<Integer> set = new SortedArraySet<>();
+		set.addAll(Arrays.asList(1, 2));
+		Iterator<Integer> it = set.iterator();
+		it.next();
+		set.add(3);
+		it.next();
+	}
+	
+	@Test
+	public void sameAsTreeSet() {
+		Random random = new Random(42);
+		SortedArraySet<Integer> set = new SortedArraySet<>();
+		TreeSet<Integer> expected = new TreeSet<>();
+		for (int op = 0; op < 5000; ++op) {
+			Integer value = random.nextInt(300);
+			if (random.nextInt(3) == 0) {
+				assertEquals(expected.remove(value), set.remove(value));
+			} else {
+				assertEquals(expected.add(value), set.add(value));
+			}
+		}
+		List<Integer> listExpected = new ArrayList<>(expected);
+		assertEquals(listExpected, new ArrayList<>(set));
+		for (int i = 0; i < listExpected.size(); ++i) {
+			assertEquals(listExpected.get(i), set.get(i));
+		}
+	}
+
+}